@@ -31,6 +31,10 @@ import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -57,6 +61,8 @@ public class AwsFacade implements ProvidesZones {
 	public static final String PARAMETER_STACKNAME = "stackname";
 	public static final String NAT_EIP = "natEip";
 
+	private static final int VALIDATION_PARALLELISM = 4;
+
 	private final VpcRepository vpcRepository;
 	private final CloudFormRepository cfnRepository;
 	private final ELBRepository elbRepository;
@@ -87,11 +93,31 @@ public class AwsFacade implements ProvidesZones {
 		return parameters;
 	}
 
-	private List<TemplateParameter> validateTemplate(File file) throws IOException {
+	private List<TemplateParameter> validateTemplate(File file, String contents) {
 		logger.info("Validating template and discovering parameters for file " + file.getAbsolutePath());
-		String contents = loadFileContents(file);
 		return validateTemplate(contents);
 	}
+
+	// validation results are memoised by the repository, so unchanged templates are only validated once
+	private Map<File, List<TemplateParameter>> validateTemplates(Map<File, String> contents) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(VALIDATION_PARALLELISM, contents.size())));
+		Map<File, Future<List<TemplateParameter>>> validating = new HashMap<>();
+		try {
+			contents.forEach((file, body) -> validating.put(file, executor.submit(() -> validateTemplate(file, body))));
+			Map<File, List<TemplateParameter>> results = new HashMap<>();
+			for (Map.Entry<File, Future<List<TemplateParameter>>> entry : validating.entrySet()) {
+				results.put(entry.getKey(), entry.getValue().get());
+			}
+			return results;
+		} catch (ExecutionException exception) {
+			if (exception.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new RuntimeException("Unable to validate templates", exception.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 	
 	public StackNameAndId applyTemplate(String filename, ProjectAndEnv projAndEnv) throws CfnAssistException, IOException, InterruptedException {
 		File file = new File(filename);
@@ -111,9 +137,14 @@ public class AwsFacade implements ProvidesZones {
 
     private StackNameAndId applyTemplate(File file, ProjectAndEnv projAndEnv, Collection<Parameter> userParameters,
                                         Tagging tagging) throws CfnAssistException, IOException, InterruptedException {
+        return applyTemplate(file, loadFileContents(file), projAndEnv, userParameters, tagging);
+    }
+
+    private StackNameAndId applyTemplate(File file, String contents, ProjectAndEnv projAndEnv, Collection<Parameter> userParameters,
+                                        Tagging tagging) throws CfnAssistException, IOException, InterruptedException {
         logger.info(format("Applying template %s for %s", file.getAbsoluteFile(), projAndEnv));
         Vpc vpcForEnv = findVpcForEnv(projAndEnv);
-        List<TemplateParameter> declaredParameters = validateTemplate(file);
+        List<TemplateParameter> declaredParameters = validateTemplate(file, contents);
 
         List<PopulatesParameters> populators = new LinkedList<>();
         populators.add(new CfnBuiltInParams(vpcForEnv.vpcId()));
@@ -125,8 +156,6 @@ public class AwsFacade implements ProvidesZones {
             tagging.setCommentTag(projAndEnv.getComment());
         }
 
-        String contents = loadFileContents(file);
-
         if (isUpdate(file)) {
             logger.info("Request to update a stack, filename is " + file.getAbsolutePath());
             return updateStack(projAndEnv, userParameters, declaredParameters, contents, parameterFactory);
@@ -135,7 +164,8 @@ public class AwsFacade implements ProvidesZones {
         }
     }
 
-	private boolean isUpdate(File file) {
+	// also used to decide which templates in a folder must be applied in order
+	public static boolean isUpdate(File file) {
         String name = file.getName();
         return (name.contains(UPDATE_EXTENSTION) || name.contains(UPDATE_EXTENSTION_LEGACY));
 	}
@@ -335,22 +365,31 @@ public class AwsFacade implements ProvidesZones {
 		List<File> files = loadFiles(folder);
 		
 		logger.info("Attempt to Validate all files");
+		Map<File, String> contents = new HashMap<>();
 		for(File file : files) {
-			validateTemplate(file);
+			contents.put(file, loadFileContents(file));
 		}
+		Map<File, List<TemplateParameter>> declaredParameters = validateTemplates(contents);
 		
 		int highestAppliedDelta = getDeltaIndex(projAndEnv);
 		logger.info("Current index is " + highestAppliedDelta);
 		
 		logger.info("Validation ok, apply template files");
 
+		if (projAndEnv.getParallelism()>1) {
+			updatedStacks.addAll(applyTemplatesConcurrently(files, contents, declaredParameters, highestAppliedDelta,
+					projAndEnv, cfnParams));
+			logger.info("All templates successfully invoked");
+			return updatedStacks;
+		}
+
 		for(File file : files) {
 			int deltaIndex = extractIndexFrom(file);
 			if (deltaIndex>highestAppliedDelta) {
 				logger.info(format("Apply template file: %s, index is %s", file.getAbsolutePath(), deltaIndex));
                 Tagging tagging = new Tagging();
                 tagging.setIndexTag(deltaIndex);
-				StackNameAndId stackId = applyTemplate(file, projAndEnv, cfnParams, tagging);
+				StackNameAndId stackId = applyTemplate(file, contents.get(file), projAndEnv, cfnParams, tagging);
 				logger.info("Create/Updated stack " + stackId);
 				updatedStacks.add(stackId); 
 				setDeltaIndex(projAndEnv, deltaIndex);
@@ -364,6 +403,32 @@ public class AwsFacade implements ProvidesZones {
 		return updatedStacks;
 	}
 
+	private List<StackNameAndId> applyTemplatesConcurrently(List<File> files, Map<File, String> contents,
+															Map<File, List<TemplateParameter>> declaredParameters,
+															int highestAppliedDelta, ProjectAndEnv projAndEnv,
+															Collection<Parameter> cfnParams)
+			throws CfnAssistException, IOException, InterruptedException {
+		List<File> toApply = new LinkedList<>();
+		for(File file : files) {
+			if (extractIndexFrom(file)>highestAppliedDelta) {
+				toApply.add(file);
+			} else {
+				logger.info(format("Skipping file %s as already applied, index was %s", file.getAbsolutePath(), extractIndexFrom(file)));
+			}
+		}
+		int parallelism = projAndEnv.getParallelism();
+		logger.info(format("Apply %s template files with up to %s at once", toApply.size(), parallelism));
+
+		TemplateDependencies dependencies = new TemplateDependencies(files, declaredParameters);
+		ConcurrentTemplateApplier applier = new ConcurrentTemplateApplier(toApply, dependencies, this::extractIndexFrom,
+				parallelism);
+		return applier.apply(file -> {
+			Tagging tagging = new Tagging();
+			tagging.setIndexTag(extractIndexFrom(file));
+			return applyTemplate(file, contents.get(file), projAndEnv, cfnParams, tagging);
+		}, newDelta -> setDeltaIndex(projAndEnv, newDelta), (file, stackId) -> deleteStackFrom(file, projAndEnv));
+	}
+
 	private List<File> loadFiles(File folder) {
 		FilenameFilter jsonFilter = new TemplateExtensionFilter();
 		File[] files = folder.listFiles(jsonFilter);
@@ -625,9 +690,13 @@ public class AwsFacade implements ProvidesZones {
 	public List<InstanceSummary> listInstances(SearchCriteria searchCriteria) throws CfnAssistException {
 		List<InstanceSummary> result = new LinkedList<>();
 		List<String> instanceIds = cfnRepository.getAllInstancesFor(searchCriteria);
+		Map<String, software.amazon.awssdk.services.ec2.model.Instance> instances = cloudRepository.getInstancesById(instanceIds);
 		
 		for(String id: instanceIds) {
-			software.amazon.awssdk.services.ec2.model.Instance instance = cloudRepository.getInstanceById(id);
+			software.amazon.awssdk.services.ec2.model.Instance instance = instances.get(id);
+			if (instance==null) {
+				throw new CfnAssistException(format("Failed to find Instance with id '%s'", id));
+			}
 			InstanceSummary summary = new InstanceSummary(id, instance.privateIpAddress(), instance.tags());
 			result.add(summary);
 		}
@@ -671,13 +740,15 @@ public class AwsFacade implements ProvidesZones {
         return command;
 	}
 
-	public void removeCloudWatchLogsOlderThan(ProjectAndEnv projectAndEnv, int days) {
+	public LogPurgeSummary removeCloudWatchLogsOlderThan(ProjectAndEnv projectAndEnv, int days) {
         List<String> groups = logRepository.logGroupsFor(projectAndEnv);
+        LogPurgeSummary summary = new LogPurgeSummary(projectAndEnv.isDryRun());
         groups.forEach(group -> {
             logger.info(format("Removing streams over %s days from log group %s", days, group));
-            logRepository.removeOldStreamsFor(group, Duration.ofDays(days));
+            summary.add(logRepository.removeOldStreamsFor(group, Duration.ofDays(days), projectAndEnv.isDryRun()));
         });
-
+        logger.info(format("Log streams removed for %s: %s", projectAndEnv, summary));
+        return summary;
 	}
 
 	public void tagCloudWatchLog(ProjectAndEnv projectAndEnv, String groupName) {
@@ -688,4 +759,8 @@ public class AwsFacade implements ProvidesZones {
 		return logRepository.fetchLogs(projectAndEnv, Duration.ofHours(hours));
 	}
 
+	public List<Path> searchLogs(ProjectAndEnv projectAndEnv, Integer hours, String filterPattern) {
+		return logRepository.searchLogs(projectAndEnv, Duration.ofHours(hours), filterPattern);
+	}
+
 }
@@ -0,0 +1,149 @@
+package tw.com;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tw.com.entity.StackNameAndId;
+import tw.com.exceptions.CfnAssistException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+
+import static java.lang.String.format;
+
+// applies delta files as soon as the files they depend on are done, up to parallelism at once. The delta
+// index is only ever moved to the highest file for which it and every earlier file has been applied, so after
+// a failure the stacks created by files beyond that are removed again, otherwise running the folder again
+// would try to create them a second time
+public class ConcurrentTemplateApplier {
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentTemplateApplier.class);
+
+	public interface AppliesTemplate {
+		StackNameAndId apply(File file) throws CfnAssistException, IOException, InterruptedException;
+	}
+
+	public interface RemovesTemplate {
+		void remove(File file, StackNameAndId stackId) throws CfnAssistException;
+	}
+
+	private final List<File> toApply;
+	private final TemplateDependencies dependencies;
+	private final ToIntFunction<File> indexOf;
+	private final int parallelism;
+
+	public ConcurrentTemplateApplier(List<File> toApply, TemplateDependencies dependencies,
+									 ToIntFunction<File> indexOf, int parallelism) {
+		this.toApply = toApply;
+		this.dependencies = dependencies;
+		this.indexOf = indexOf;
+		this.parallelism = parallelism;
+	}
+
+	public List<StackNameAndId> apply(AppliesTemplate applier, SetsDeltaIndex setsDeltaIndex, RemovesTemplate remover)
+			throws CfnAssistException, IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		CompletionService<StackNameAndId> completion = new ExecutorCompletionService<>(executor);
+		Map<Future<StackNameAndId>, File> running = new HashMap<>();
+		Set<File> waiting = new LinkedHashSet<>(toApply);
+		Map<File, StackNameAndId> applied = new HashMap<>();
+		Throwable failure = null;
+		int contiguous = 0;
+
+		try {
+			while (!waiting.isEmpty() || !running.isEmpty()) {
+				if (failure==null) {
+					Iterator<File> candidates = waiting.iterator();
+					while (candidates.hasNext() && running.size()<parallelism) {
+						File file = candidates.next();
+						if (isReady(file, applied)) {
+							logger.info(format("Apply template file: %s, index is %s", file.getAbsolutePath(), indexOf.applyAsInt(file)));
+							running.put(completion.submit(() -> applier.apply(file)), file);
+							candidates.remove();
+						}
+					}
+				}
+				if (running.isEmpty()) {
+					break;
+				}
+
+				Future<StackNameAndId> done = completion.take();
+				File file = running.remove(done);
+				try {
+					StackNameAndId stackId = done.get();
+					logger.info("Create/Updated stack " + stackId);
+					applied.put(file, stackId);
+				} catch (ExecutionException exception) {
+					logger.error("Failed to apply template " + file.getAbsolutePath(), exception.getCause());
+					if (failure==null) {
+						failure = exception.getCause();
+					}
+				}
+
+				int previous = contiguous;
+				while (contiguous<toApply.size() && applied.containsKey(toApply.get(contiguous))) {
+					contiguous++;
+				}
+				if (contiguous>previous) {
+					setsDeltaIndex.setDeltaIndex(indexOf.applyAsInt(toApply.get(contiguous-1)));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (failure!=null) {
+			removeBeyond(contiguous, applied, remover);
+			rethrow(failure);
+		}
+		if (!waiting.isEmpty()) {
+			throw new IllegalStateException("Unable to apply templates, unmet dependencies for " + waiting);
+		}
+
+		List<StackNameAndId> results = new LinkedList<>();
+		toApply.forEach(file -> results.add(applied.get(file)));
+		return results;
+	}
+
+	// latest first as later files may use resources from earlier ones, updates are never beyond as they wait
+	// for every earlier file
+	private void removeBeyond(int contiguous, Map<File, StackNameAndId> applied, RemovesTemplate remover) {
+		for (int index = toApply.size()-1; index>=contiguous; index--) {
+			File file = toApply.get(index);
+			StackNameAndId stackId = applied.get(file);
+			if (stackId!=null) {
+				logger.warn(format("Removing stack %s as an earlier template failed, file was %s", stackId,
+						file.getAbsolutePath()));
+				try {
+					remover.remove(file, stackId);
+				} catch (CfnAssistException exception) {
+					logger.error(format("Unable to remove stack %s, delete it before applying the folder again", stackId),
+							exception);
+				}
+			}
+		}
+	}
+
+	private boolean isReady(File file, Map<File, StackNameAndId> applied) {
+		return dependencies.dependsOn(file).stream().
+				filter(toApply::contains).
+				allMatch(applied::containsKey);
+	}
+
+	private void rethrow(Throwable failure) throws CfnAssistException, IOException, InterruptedException {
+		if (failure instanceof CfnAssistException cfnAssistException) {
+			throw cfnAssistException;
+		}
+		if (failure instanceof IOException ioException) {
+			throw ioException;
+		}
+		if (failure instanceof InterruptedException interruptedException) {
+			throw interruptedException;
+		}
+		if (failure instanceof RuntimeException runtimeException) {
+			throw runtimeException;
+		}
+		throw new RuntimeException(failure);
+	}
+}
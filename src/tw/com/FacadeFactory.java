@@ -1,6 +1,8 @@
 package tw.com;
 
 import org.apache.commons.cli.MissingArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.regions.providers.AwsRegionProvider;
@@ -14,19 +16,38 @@ import software.amazon.awssdk.services.iam.IamClient;
 import software.amazon.awssdk.services.rds.RdsClient;
 import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sts.StsClient;
 import tw.com.commandline.CommandExecutor;
+import tw.com.commandline.LogFetchReporter;
 import tw.com.exceptions.CfnAssistException;
 import tw.com.pictures.AmazonVPCFacade;
 import tw.com.pictures.DiagramCreator;
 import tw.com.providers.*;
 import tw.com.repository.*;
 
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Optional;
 
 public class FacadeFactory implements ProvidesNow {
+	private static final Logger logger = LoggerFactory.getLogger(FacadeFactory.class);
+
 	private boolean snsMonitoring = false;
+	private boolean snsQueuePerRun = false;
+	private boolean snsWithPolling = false;
+	private boolean streamStackEvents = false;
 	private String project;
+	private Duration stackCacheTTL = Duration.ZERO;
+	private LogFileOptions logFileOptions = LogFileOptions.defaults();
+	private boolean incrementalLogs = false;
+	private Duration followLogs = Duration.ZERO;
+	private Optional<String> logFilter = Optional.empty();
+	private long logMemoryCeiling = LogMemoryBudget.DEFAULT_CEILING;
+	private Optional<Path> logMetricsFile = Optional.empty();
+	private final LogFetchMetrics logFetchMetrics = new LogFetchMetrics();
 	
 	private boolean init;
 
@@ -38,7 +59,9 @@ public class FacadeFactory implements ProvidesNow {
 	private ElasticLoadBalancingV2Client elbClientV2;
 	private RdsClient rdsClient;
 	private IamClient iamClient;
+	private StsClient stsClient;
     private CloudWatchLogsClient awsLogClient;
+	private AwsRegionProvider regionProvider;
 
     // providers
 //	private ArtifactUploader artifactUploader;
@@ -75,6 +98,55 @@ public class FacadeFactory implements ProvidesNow {
 		this.snsMonitoring = true;		
 	}
 
+	public void setSNSQueuePerRun() {
+		this.snsQueuePerRun = true;
+	}
+
+	public void setSNSWithPolling() {
+		this.snsWithPolling = true;
+	}
+
+	public void setStreamStackEvents() {
+		this.streamStackEvents = true;
+	}
+
+	public void setStackCacheTTL(Duration stackCacheTTL) {
+		this.stackCacheTTL = stackCacheTTL;
+	}
+
+	public void setLogFileOptions(LogFileOptions logFileOptions) {
+		this.logFileOptions = logFileOptions;
+	}
+
+	public void setIncrementalLogs() {
+		this.incrementalLogs = true;
+	}
+
+	public void setFollowLogs(Duration interval) {
+		this.followLogs = interval;
+	}
+
+	// zero if not following
+	public Duration getFollowLogs() {
+		return followLogs;
+	}
+
+	public void setLogFilter(String filterPattern) {
+		this.logFilter = Optional.of(filterPattern);
+	}
+
+	public Optional<String> getLogFilter() {
+		return logFilter;
+	}
+
+	public void setLogMemoryCeiling(long bytes) {
+		this.logMemoryCeiling = bytes;
+	}
+
+	public void setLogMetricsFile(Path path) {
+		this.logMetricsFile = Optional.of(path);
+	}
+
 	private void init() {
 		if (!init) {
 			createAmazonAPIClients();	
@@ -97,42 +169,91 @@ public class FacadeFactory implements ProvidesNow {
 				credentialsProvider(DefaultCredentialsProvider.create())
 				.region(Region.AWS_GLOBAL).
 				build();
+		stsClient = StsClient.create();
 	}
 	
 	private void createProviders() {
 		loadBalancerClient = new LoadBalancerClassicClient(elbClient);
 		loadBalancerClientV2 = new LoadBalancerClientV2(elbClientV2);
-        AwsRegionProvider regionProvider = new DefaultAwsRegionProviderChain();
+        regionProvider = new DefaultAwsRegionProviderChain();
         cloudClient = new CloudClient(ec2Client, regionProvider);
 		formationClient = new CFNClient(cfnClient);
 		datastoreClient = new RDSClient(rdsClient);
 		notificationSender = new SNSNotificationSender(snsClient);
-		identityProvider = new IdentityProvider(iamClient);
-		logClient = new LogClient(awsLogClient);
+		identityProvider = new IdentityProvider(iamClient, stsClient);
+		logClient = new LogClient(awsLogClient, LogClient.DEFAULT_BACKOFF_MILLIS, LogClient.DEFAULT_TAG_CACHE_TTL,
+				logFetchMetrics);
 	}
 
 	private void createRepo() {	
 		cloudRepository = new CloudRepository(cloudClient);
-		cfnRepository = new CfnRepository(formationClient, cloudRepository, project);
+		cfnRepository = new CfnRepository(formationClient, cloudRepository, project, createStackSnapshotStore(),
+				createTemplateValidationStore());
 		vpcRepository = new VpcRepository(cloudClient);
 		elbRepository = new ELBRepository(loadBalancerClient, vpcRepository, cfnRepository);
 		targetGroupRepository = new TargetGroupRepository(loadBalancerClientV2, vpcRepository, cfnRepository);
-		logRepository = new LogRepository(logClient, this, getSavesFile());
+		Optional<LogCheckpointStore> checkpointStore = incrementalLogs ?
+				Optional.of(new LogCheckpointStore(LogCheckpointStore.defaultLocation())) : Optional.empty();
+		logRepository = new LogRepository(logClient, this, getSavesFile(), checkpointStore,
+				new LogMemoryBudget(logMemoryCeiling), logFetchMetrics);
+	}
+
+
+
+	private Optional<StackSnapshotStore> createStackSnapshotStore() {
+		if (stackCacheTTL.isZero() || project==null) {
+			return Optional.empty();
+		}
+		String account = identityProvider.getAccountId();
+		if (account==null) {
+			logger.warn("Unable to determine account, persistent stack cache disabled");
+			return Optional.empty();
+		}
+		String region = regionProvider.getRegion().id();
+		return Optional.of(new StackSnapshotStore(StackSnapshotStore.defaultLocation(), account, region, project,
+				stackCacheTTL, this));
 	}
 
+	private StackDurationStore createStackDurationStore() {
+		String account = identityProvider.getAccountId();
+		if (account==null || project==null) {
+			logger.warn("Unable to determine account or project, stack durations will not be saved");
+			return StackDurationStore.notSaved();
+		}
+		String region = regionProvider.getRegion().id();
+		return new StackDurationStore(StackSnapshotStore.defaultLocation(), account, region, project);
+	}
 
+	private Optional<TemplateValidationStore> createTemplateValidationStore() {
+		if (stackCacheTTL.isZero()) {
+			return Optional.empty();
+		}
+		return Optional.of(new TemplateValidationStore(StackSnapshotStore.defaultLocation()));
+	}
 
 	public AwsFacade createFacade() throws MissingArgumentException, CfnAssistException, InterruptedException {		
 		if (awsFacade==null) {
 			init();
-			SNSEventSource eventSource = new SNSEventSource(snsClient, sqsClient);
-			MonitorStackEvents monitor;
+			StackMonitor monitor;
 			if (snsMonitoring) {	
-				monitor = new SNSMonitor(eventSource, cfnRepository, cfnRepository);
+				SNSEventSource eventSource = new SNSEventSource(snsClient, sqsClient, snsQueuePerRun);
+				if (snsQueuePerRun) {
+					// also covers ctrl-c, a run killed outright leaves its queue for the next run to remove
+					Runtime.getRuntime().addShutdownHook(new Thread(eventSource::deleteRunQueue, "sns-queue-cleanup"));
+				}
+				if (snsWithPolling) {
+					monitor = new HybridStackMonitor(eventSource, cfnRepository, cfnRepository,
+							createStackDurationStore());
+				} else {
+					monitor = new SNSMonitor(eventSource, cfnRepository, cfnRepository);
+				}
 			} else {
 				monitor = new PollingStackMonitor(cfnRepository);
 			}
 			
+			if (streamStackEvents) {
+				monitor.setEventStreamer(new StackEventStreamer(cfnRepository));
+			}
 			monitor.init();
 			awsFacade = new AwsFacade(monitor, cfnRepository, vpcRepository, elbRepository,
 					cloudRepository, notificationSender, targetGroupRepository, identityProvider, logRepository);
@@ -158,13 +279,23 @@ public class FacadeFactory implements ProvidesNow {
 		return diagramCreator;
 	}
 
+	// progress is only shown when run from a terminal
+	public LogFetchReporter createLogFetchReporter() {
+		Optional<PrintStream> progress = System.console()==null ? Optional.empty() : Optional.of(System.err);
+		return new LogFetchReporter(logFetchMetrics, progress, logMetricsFile, LogFetchReporter.DEFAULT_INTERVAL);
+	}
+
+	public LogIndexQuery createLogIndexQuery() {
+		return new LogIndexQuery();
+	}
+
 	public ProvidesCurrentIp getCurrentIpProvider() {
 		return new ProvidesCurrentIp();
 	}
 
 	public SavesFile getSavesFile() {
         if (savesFile==null) {
-            savesFile = new SavesFile();
+            savesFile = new SavesFile(logFileOptions, logFetchMetrics);
         }
         return savesFile;
 	}
@@ -0,0 +1,225 @@
+package tw.com;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.entity.DeletionPending;
+import tw.com.entity.DeletionsPending;
+import tw.com.entity.StackNameAndId;
+import tw.com.entity.StackNotification;
+import tw.com.exceptions.CfnAssistException;
+import tw.com.exceptions.NotReadyException;
+import tw.com.exceptions.WrongNumberOfStacksException;
+import tw.com.exceptions.WrongStackStatus;
+import tw.com.providers.StackDurationStore;
+import tw.com.repository.CheckStackExists;
+import tw.com.repository.StackRepository;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.lang.String.format;
+
+// reacts to SNS notifications as they arrive, but if nothing is heard about a stack for a while checks its status
+// directly, so a lost notification costs a status check rather than the whole SNS timeout. How long to stay quiet
+// and how often to check comes from how long the same operation on the stack took before
+public class HybridStackMonitor extends SNSMonitor {
+	private static final Logger logger = LoggerFactory.getLogger(HybridStackMonitor.class);
+
+	private final StackDurationStore durations;
+	private final Pacing pacing;
+
+	public HybridStackMonitor(NotificationProvider eventSource, CheckStackExists checkStackExists,
+							  StackRepository cfnRepository, StackDurationStore durations) {
+		this(eventSource, checkStackExists, cfnRepository, durations, Pacing.DEFAULT);
+	}
+
+	public HybridStackMonitor(NotificationProvider eventSource, CheckStackExists checkStackExists,
+							  StackRepository cfnRepository, StackDurationStore durations, Pacing pacing) {
+		super(eventSource, checkStackExists, cfnRepository);
+		this.durations = durations;
+		this.pacing = pacing;
+	}
+
+	@Override
+	protected StackStatus waitForStatus(StackNameAndId stackId, StackStatus requiredStatus, List<StackStatus> aborts)
+			throws WrongStackStatus, NotReadyException, InterruptedException {
+		String operation = requiredStatus.toString();
+		Duration expected = durations.expected(operation, stackId.getStackName()).orElse(pacing.defaultExpected());
+		logger.info(format("Waiting for stack %s to change to status %s, expect it to take about %ss", stackId,
+				requiredStatus, expected.toSeconds()));
+
+		long started = System.nanoTime();
+		long giveUpAt = started + pacing.giveUpAfter(expected).toNanos();
+		long nextCheck = started + pacing.silenceAllowed(expected).toNanos();
+		int overdueChecks = 0;
+		boolean notificationsFailed = false;
+		StackStatus lastKnown = StackStatus.UNKNOWN_TO_SDK_VERSION;
+		try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(List.of(stackId.getStackId()))) {
+			while (System.nanoTime() - giveUpAt < 0) {
+				StackStatus status = StackStatus.UNKNOWN_TO_SDK_VERSION;
+				long now = System.nanoTime();
+				if (now - nextCheck >= 0) {
+					StackStatus current = checkStatus(stackId, requiredStatus, aborts);
+					if (current.equals(requiredStatus)) {
+						status = current;
+					} else if (!current.equals(StackStatus.UNKNOWN_TO_SDK_VERSION)) {
+						lastKnown = current;
+					}
+					Duration elapsed = Duration.ofNanos(now - started);
+					if (elapsed.compareTo(expected) > 0) {
+						overdueChecks++;
+					}
+					nextCheck = now + pacing.interval(expected, elapsed, overdueChecks).toNanos();
+				} else if (notificationsFailed) {
+					Thread.sleep(Math.max(1, (nextCheck - now) / 1_000_000));
+				} else {
+					try {
+						List<StackNotification> notifications = subscription.next(Duration.ofNanos(nextCheck - now));
+						if (!notifications.isEmpty()) {
+							status = processNotification(stackId, requiredStatus, aborts, notifications);
+							// still hearing about the stack so no need to check on it yet
+							nextCheck = Math.max(nextCheck, System.nanoTime() + pacing.silenceAllowed(expected).toNanos());
+						}
+					}
+					catch (NotReadyException exception) {
+						logger.warn("Unable to receive notifications, carry on by checking stack status", exception);
+						notificationsFailed = true;
+					}
+				}
+				if (!status.equals(StackStatus.UNKNOWN_TO_SDK_VERSION)) {
+					durations.record(operation, stackId.getStackName(), Duration.ofNanos(System.nanoTime() - started));
+					return status;
+				}
+			}
+		}
+		logger.error(format("Timed out waiting for stack %s to change to status %s", stackId, requiredStatus));
+		logStackEvents(stackId.getStackName());
+		throw new WrongStackStatus(stackId, requiredStatus, lastKnown);
+	}
+
+	// the current status when it is the required one or still in progress, UNKNOWN_TO_SDK_VERSION if it could not
+	// be found. Checks with cloud formation directly as the stack cache does not know about stacks it did not load
+	private StackStatus checkStatus(StackNameAndId stackId, StackStatus requiredStatus, List<StackStatus> aborts)
+			throws WrongStackStatus {
+		String stackName = stackId.getStackName();
+		boolean deleting = requiredStatus.equals(StackStatus.DELETE_COMPLETE);
+		logger.info(format("Nothing heard about stack %s for a while, checking status", stackName));
+		// the id still finds the stack once deleted, the name does not
+		String stack = stackId.getStackId()==null || stackId.getStackId().isEmpty() ? stackName : stackId.getStackId();
+		StackStatus current;
+		try {
+			current = stackRepository.getCurrentStackStatus(stack);
+		}
+		catch (WrongNumberOfStacksException exception) {
+			logger.warn(format("Could not find status of stack %s", stackName), exception);
+			return deleting ? StackStatus.DELETE_COMPLETE : StackStatus.UNKNOWN_TO_SDK_VERSION;
+		}
+		if (current.equals(requiredStatus)) {
+			logger.info(format("Stack %s is now %s", stackName, current));
+			return current;
+		}
+		if (current.equals(StackStatus.UNKNOWN_TO_SDK_VERSION) || (current.toString().endsWith("_IN_PROGRESS")
+				&& !aborts.contains(current))) {
+			logger.info(format("Stack %s still %s", stackName, current));
+			return current;
+		}
+		logger.error(format("Stack %s is %s while waiting for status %s", stackName, current, requiredStatus));
+		logStackEvents(stackName);
+		throw new WrongStackStatus(stackId, requiredStatus, current);
+	}
+
+	@Override
+	protected void waitForPendingDeletes(DeletionsPending pending) throws CfnAssistException {
+		String operation = StackStatus.DELETE_COMPLETE.toString();
+		Duration expected = Duration.ZERO;
+		for (DeletionPending item : pending) {
+			Duration forStack = durations.expected(operation, item.getStackId().getStackName()).orElse(pacing.defaultExpected());
+			expected = forStack.compareTo(expected) > 0 ? forStack : expected;
+		}
+
+		long started = System.nanoTime();
+		long giveUpAt = started + pacing.giveUpAfter(expected).toNanos();
+		long nextCheck = started + pacing.silenceAllowed(expected).toNanos();
+		int overdueChecks = 0;
+		boolean notificationsFailed = false;
+		try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(stackIdsOf(pending))) {
+			while (pending.hasMore() && System.nanoTime() - giveUpAt < 0) {
+				long now = System.nanoTime();
+				if (now - nextCheck >= 0) {
+					checkPendingDeletes(pending);
+					Duration elapsed = Duration.ofNanos(now - started);
+					if (elapsed.compareTo(expected) > 0) {
+						overdueChecks++;
+					}
+					nextCheck = now + pacing.interval(expected, elapsed, overdueChecks).toNanos();
+				} else if (notificationsFailed) {
+					Thread.sleep(Math.max(1, (nextCheck - now) / 1_000_000));
+				} else {
+					try {
+						List<StackNotification> notifications = subscription.next(Duration.ofNanos(nextCheck - now));
+						if (!notifications.isEmpty()) {
+							processNotificationsWithPendingDeletions(pending, notifications);
+							nextCheck = Math.max(nextCheck, System.nanoTime() + pacing.silenceAllowed(expected).toNanos());
+						}
+					}
+					catch (NotReadyException exception) {
+						logger.warn("Unable to receive notifications, carry on by checking stack status", exception);
+						notificationsFailed = true;
+					}
+				}
+			}
+		} catch (InterruptedException interrupted) {
+			Thread.currentThread().interrupt();
+			throw new NotReadyException("Interrupted waiting for stacks to be deleted");
+		}
+		if (pending.hasMore()) {
+			logger.error("Timed out waiting for stacks to be deleted");
+		}
+	}
+
+	private void checkPendingDeletes(DeletionsPending pending) throws WrongStackStatus {
+		for (DeletionPending item : pending) {
+			StackNameAndId id = item.getStackId();
+			if (pending.isDeleted(id.getStackId())) {
+				continue;
+			}
+			if (checkStatus(id, StackStatus.DELETE_COMPLETE, List.of(DELETE_ABORTS)).equals(StackStatus.DELETE_COMPLETE)) {
+				pending.markIdAsDeleted(id.getStackId());
+			}
+		}
+	}
+
+	// minInterval and maxInterval bound both the quiet period before checking and the time between checks,
+	// defaultExpected is used for operations not seen before, and a wait gives up after timeout or three times
+	// the expected duration, whichever is longer
+	public record Pacing(Duration minInterval, Duration maxInterval, Duration defaultExpected, Duration timeout) {
+		public static final Pacing DEFAULT = new Pacing(Duration.ofSeconds(10), Duration.ofMinutes(2), Duration.ofMinutes(5),
+				Duration.ofHours(1));
+
+		public Duration giveUpAfter(Duration expected) {
+			Duration longest = expected.multipliedBy(3);
+			return longest.compareTo(timeout) > 0 ? longest : timeout;
+		}
+
+		// how long to go without hearing anything about a stack before checking on it
+		public Duration silenceAllowed(Duration expected) {
+			return clamp(expected.dividedBy(4));
+		}
+
+		// closer together as the expected finish nears, then backing off once it is overdue
+		public Duration interval(Duration expected, Duration elapsed, int overdueChecks) {
+			if (elapsed.compareTo(expected) < 0) {
+				return clamp(expected.minus(elapsed).dividedBy(2));
+			}
+			return clamp(minInterval.multipliedBy(1L << Math.min(overdueChecks, 16)));
+		}
+
+		private Duration clamp(Duration duration) {
+			if (duration.compareTo(minInterval) < 0) {
+				return minInterval;
+			}
+			return duration.compareTo(maxInterval) > 0 ? maxInterval : duration;
+		}
+	}
+}
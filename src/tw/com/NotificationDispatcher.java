@@ -0,0 +1,222 @@
+package tw.com;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tw.com.entity.StackNotification;
+import tw.com.exceptions.NotReadyException;
+
+import java.time.Duration;
+import java.util.*;
+
+import static java.lang.String.format;
+
+// reads notifications from the provider on one background thread and hands each one to the subscription for its
+// stack, so several waits can share the queue without taking each other's notifications. The queue is only read
+// while a subscriber is waiting, so messages are left on the queue when no one is. Notifications for stacks no
+// one has subscribed to yet are kept for a while, as a wait usually starts just after its stack is created
+public class NotificationDispatcher {
+	private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+	public static final Duration UNCLAIMED_TTL = Duration.ofMinutes(5);
+
+	private final NotificationProvider provider;
+	private final Duration unclaimedTTL;
+	private final Map<String, List<Subscription>> byStackId; // all guarded by this
+	private final Map<String, List<Unclaimed>> unclaimed;
+	private int subscriptions;
+	private boolean demand; // a subscriber is waiting with nothing to return
+	private boolean reading;
+	private long emptyReceives;
+	private Thread consumer;
+
+	public NotificationDispatcher(NotificationProvider provider) {
+		this(provider, UNCLAIMED_TTL);
+	}
+
+	public NotificationDispatcher(NotificationProvider provider, Duration unclaimedTTL) {
+		this.provider = provider;
+		this.unclaimedTTL = unclaimedTTL;
+		byStackId = new HashMap<>();
+		unclaimed = new HashMap<>();
+	}
+
+	// notifications for the given stack ids from now on, plus any recently received and not yet claimed
+	public synchronized Subscription subscribe(Collection<String> stackIds) {
+		Subscription subscription = new Subscription(new HashSet<>(stackIds));
+		expireUnclaimed();
+		for (String stackId : subscription.stackIds) {
+			byStackId.computeIfAbsent(stackId, id -> new LinkedList<>()).add(subscription);
+			List<Unclaimed> early = unclaimed.remove(stackId);
+			if (early!=null) {
+				early.forEach(item -> subscription.received.add(item.notification()));
+			}
+		}
+		subscriptions++;
+		if (consumer==null) {
+			consumer = Thread.ofVirtual().name("sns-dispatcher").start(this::consume);
+		}
+		return subscription;
+	}
+
+	private void consume() {
+		logger.info("Started dispatching notifications");
+		while (true) {
+			synchronized (this) {
+				while (!demand && subscriptions>0) {
+					try {
+						wait();
+					} catch (InterruptedException interrupted) {
+						Thread.currentThread().interrupt();
+						failAll(interrupted);
+						consumer = null;
+						return;
+					}
+				}
+				if (subscriptions==0) {
+					logger.info("No more subscriptions, stop dispatching notifications");
+					consumer = null;
+					return;
+				}
+				demand = false;
+				reading = true;
+			}
+			List<StackNotification> notifications;
+			try {
+				notifications = provider.receiveNotifications(); // blocks and then times out if no messages received
+			} catch (NotReadyException | RuntimeException | Error exception) {
+				logger.error("Unable to receive notifications", exception);
+				synchronized (this) {
+					reading = false;
+					failAll(exception);
+					consumer = null;
+				}
+				return;
+			}
+			synchronized (this) {
+				reading = false;
+				route(notifications);
+				notifyAll();
+			}
+		}
+	}
+
+	private void route(List<StackNotification> notifications) {
+		if (notifications.isEmpty()) {
+			emptyReceives++;
+			return;
+		}
+		long now = System.nanoTime();
+		for (StackNotification notification : notifications) {
+			List<Subscription> subscribers = byStackId.get(notification.getStackId());
+			if (subscribers==null) {
+				logger.info(format("No subscriber yet for stack id %s, keeping notification", notification.getStackId()));
+				unclaimed.computeIfAbsent(notification.getStackId(), id -> new LinkedList<>()).
+						add(new Unclaimed(notification, now));
+			} else {
+				subscribers.forEach(subscriber -> subscriber.received.add(notification));
+			}
+		}
+		expireUnclaimed();
+	}
+
+	private void expireUnclaimed() {
+		long oldest = System.nanoTime() - unclaimedTTL.toNanos();
+		unclaimed.values().forEach(items -> items.removeIf(item -> item.receivedAt() - oldest < 0));
+		unclaimed.values().removeIf(List::isEmpty);
+	}
+
+	private void failAll(Throwable failure) {
+		byStackId.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.failure = failure));
+		notifyAll();
+	}
+
+	private synchronized void unsubscribe(Subscription subscription) {
+		for (String stackId : subscription.stackIds) {
+			List<Subscription> subscribers = byStackId.get(stackId);
+			if (subscribers!=null) {
+				subscribers.remove(subscription);
+				if (subscribers.isEmpty()) {
+					byStackId.remove(stackId);
+				}
+			}
+		}
+		subscriptions--;
+		notifyAll();
+	}
+
+	private record Unclaimed(StackNotification notification, long receivedAt) {
+	}
+
+	public class Subscription implements AutoCloseable {
+		private final Set<String> stackIds;
+		private final List<StackNotification> received; // guarded by the dispatcher
+		private Throwable failure;
+		private boolean closed;
+
+		private Subscription(Set<String> stackIds) {
+			this.stackIds = stackIds;
+			received = new LinkedList<>();
+		}
+
+		// blocks until there are notifications for these stacks, or a read of the queue times out with nothing in
+		// which case the list is empty
+		public List<StackNotification> next() throws NotReadyException, InterruptedException {
+			return next(Duration.ZERO);
+		}
+
+		// as above but gives up with an empty list after maxWait, zero waits for as long as it takes. Reads of the
+		// queue that only had notifications for other stacks do not return so need a limit if the caller has
+		// something else to do meanwhile
+		public List<StackNotification> next(Duration maxWait) throws NotReadyException, InterruptedException {
+			long deadline = System.nanoTime() + maxWait.toNanos();
+			synchronized (NotificationDispatcher.this) {
+				long timeoutsSoFar = emptyReceives;
+				while (received.isEmpty() && failure==null && emptyReceives==timeoutsSoFar) {
+					// ask for another read unless one is under way, a round that only had notifications for
+					// other stacks does not count
+					if (!reading) {
+						demand = true;
+						NotificationDispatcher.this.notifyAll();
+					}
+					if (maxWait.isZero()) {
+						NotificationDispatcher.this.wait();
+					} else {
+						long remaining = deadline - System.nanoTime();
+						if (remaining<=0) {
+							break;
+						}
+						NotificationDispatcher.this.wait(Math.max(1, remaining / 1_000_000));
+					}
+				}
+				if (failure!=null) {
+					rethrow(failure);
+				}
+				List<StackNotification> result = new LinkedList<>(received);
+				received.clear();
+				return result;
+			}
+		}
+
+		@Override
+		public void close() {
+			synchronized (NotificationDispatcher.this) {
+				if (!closed) {
+					closed = true;
+					unsubscribe(this);
+				}
+			}
+		}
+
+		private void rethrow(Throwable failure) throws NotReadyException, InterruptedException {
+			if (failure instanceof NotReadyException notReadyException) {
+				throw notReadyException;
+			}
+			if (failure instanceof InterruptedException interruptedException) {
+				throw interruptedException;
+			}
+			if (failure instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw (Error) failure;
+		}
+	}
+}
@@ -14,8 +14,11 @@ import tw.com.exceptions.WrongStackStatus;
 import tw.com.repository.StackRepository;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 
 public class PollingStackMonitor extends StackMonitor {
@@ -28,42 +31,57 @@ public class PollingStackMonitor extends StackMonitor {
 
 	@Override
 	public StackStatus waitForCreateFinished(StackNameAndId stackId) throws WrongNumberOfStacksException, InterruptedException, WrongStackStatus {
-		String stackName = stackId.getStackName();
-		StackStatus result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.CREATE_IN_PROGRESS,
-				Arrays.asList(CREATE_ABORTS));
-		if (!result.equals(StackStatus.CREATE_COMPLETE)) {
-			logger.error(String.format("Failed to create stack %s, status is %s", stackId, result));
-			logStackEvents(stackName);
-			throw new WrongStackStatus(stackId,  StackStatus.CREATE_COMPLETE,result);
+		StackEventStreamer.Watch watch = watchEvents(stackId);
+		try {
+			String stackName = stackId.getStackName();
+			StackStatus result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.CREATE_IN_PROGRESS,
+					Arrays.asList(CREATE_ABORTS));
+			if (!result.equals(StackStatus.CREATE_COMPLETE)) {
+				logger.error(String.format("Failed to create stack %s, status is %s", stackId, result));
+				logStackEvents(stackName);
+				throw new WrongStackStatus(stackId,  StackStatus.CREATE_COMPLETE,result);
+			}
+			return result;
+		} finally {
+			watch.close();
 		}
-		return result;
 	}
 
 	@Override
 	public StackStatus waitForRollbackComplete(StackNameAndId id) throws
 			WrongNumberOfStacksException, WrongStackStatus, InterruptedException {
-		String stackName = id.getStackName();
-		StackStatus result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.ROLLBACK_IN_PROGRESS, Arrays.asList(ROLLBACK_ABORTS));
-		if (!result.equals(StackStatus.ROLLBACK_COMPLETE)) {
-			logger.error("Expected " + StackStatus.ROLLBACK_COMPLETE);
-			logStackEvents(stackName);
-			throw new WrongStackStatus(id, StackStatus.ROLLBACK_COMPLETE, result);
+		StackEventStreamer.Watch watch = watchEvents(id);
+		try {
+			String stackName = id.getStackName();
+			StackStatus result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.ROLLBACK_IN_PROGRESS, Arrays.asList(ROLLBACK_ABORTS));
+			if (!result.equals(StackStatus.ROLLBACK_COMPLETE)) {
+				logger.error("Expected " + StackStatus.ROLLBACK_COMPLETE);
+				logStackEvents(stackName);
+				throw new WrongStackStatus(id, StackStatus.ROLLBACK_COMPLETE, result);
+			}
+			return result;
+		} finally {
+			watch.close();
 		}
-		return result;
 	}
 	
 	public StackStatus waitForDeleteFinished(StackNameAndId stackId) throws WrongNumberOfStacksException, InterruptedException {
-		StackStatus initialStatus = StackStatus.DELETE_IN_PROGRESS;
-		StackStatus result;
+		StackEventStreamer.Watch watch = watchEvents(stackId);
+		try {
+			StackStatus initialStatus = StackStatus.DELETE_IN_PROGRESS;
+			StackStatus result;
 
-		result = stackRepository.waitForStatusToChangeFrom(stackId.getStackName(), initialStatus, Arrays.asList(DELETE_ABORTS));
+			result = stackRepository.waitForStatusToChangeFrom(stackId.getStackName(), initialStatus, Arrays.asList(DELETE_ABORTS));
 		
-		if (!result.equals(StackStatus.DELETE_COMPLETE)) {
-			logger.error("Failed to delete stack, status is " + result);
-			//final List<StackEvent> stackEvents = cfnRepository.getStackEvents(stackId.getStackName());
-			logStackEvents(stackId.getStackName());
+			if (!result.equals(StackStatus.DELETE_COMPLETE)) {
+				logger.error("Failed to delete stack, status is " + result);
+				//final List<StackEvent> stackEvents = cfnRepository.getStackEvents(stackId.getStackName());
+				logStackEvents(stackId.getStackName());
+			}
+			return result;
+		} finally {
+			watch.close();
 		}
-		return result;
 	}
 
 	@Override
@@ -73,33 +91,55 @@ public class PollingStackMonitor extends StackMonitor {
 
 	@Override
 	public StackStatus waitForUpdateFinished(StackNameAndId id) throws WrongNumberOfStacksException, InterruptedException, WrongStackStatus {
-		String stackName = id.getStackName();
-		StackStatus result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.UPDATE_IN_PROGRESS, Arrays.asList(UPDATE_ABORTS));
-		if (result.equals(StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS)) {
-			logger.info("Update now in cleanup status");
-			result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS, Arrays.asList(UPDATE_ABORTS));
-		}
-		StackStatus complete = StackStatus.UPDATE_COMPLETE;
-		if (!result.equals(complete)) {
-			logger.error("Expected " + complete);
-			logStackEvents(id.getStackName());
-			throw new WrongStackStatus(id, complete, result);
+		StackEventStreamer.Watch watch = watchEvents(id);
+		try {
+			String stackName = id.getStackName();
+			StackStatus result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.UPDATE_IN_PROGRESS, Arrays.asList(UPDATE_ABORTS));
+			if (result.equals(StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS)) {
+				logger.info("Update now in cleanup status");
+				result = stackRepository.waitForStatusToChangeFrom(stackName, StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS, Arrays.asList(UPDATE_ABORTS));
+			}
+			StackStatus complete = StackStatus.UPDATE_COMPLETE;
+			if (!result.equals(complete)) {
+				logger.error("Expected " + complete);
+				logStackEvents(id.getStackName());
+				throw new WrongStackStatus(id, complete, result);
+			}
+			return result;
+		} finally {
+			watch.close();
 		}
-		return result;
 	}
 
 	@Override
 	public List<String> waitForDeleteFinished(DeletionsPending pending, SetsDeltaIndex setDeltaIndex) {
-		return monitorDeletions(pending, setDeltaIndex);
+		List<StackNameAndId> stackIds = new LinkedList<>();
+		pending.forEach(item -> stackIds.add(item.getStackId()));
+		StackEventStreamer.Watch watch = watchEvents(stackIds);
+		try {
+			return monitorDeletions(pending, setDeltaIndex);
+		} finally {
+			watch.close();
+		}
 	}
 	
 	private List<String> monitorDeletions(DeletionsPending allPending, SetsDeltaIndex setDeltaIndex) {
 		List<String> deletedOk = new LinkedList<>();
+
+		// watch all the deletions at once, they then share a single status check per poll
+		List<CompletableFuture<StackStatus>> changes = new LinkedList<>();
+		for(DeletionPending pending : allPending) {
+			changes.add(stackRepository.watchForStatusToChangeFrom(pending.getStackId().getStackName(),
+					StackStatus.DELETE_IN_PROGRESS, Arrays.asList(DELETE_ABORTS)));
+		}
+
+		// but results are processed in delta order so the delta index only ever steps down by one
+		Iterator<CompletableFuture<StackStatus>> results = changes.iterator();
 		try {
 			for(DeletionPending pending : allPending) {
 				StackNameAndId id = pending.getStackId();
 				logger.info("Now waiting for deletion of " + id);
-				StackStatus status = waitForDeleteFinished(id );
+				StackStatus status = results.next().get();
 				if (StackStatus.DELETE_COMPLETE.equals(status)) {
 					deletedOk.add(id.getStackName());
 					int newDelta = pending.getDelta()-1;
@@ -108,13 +148,18 @@ public class PollingStackMonitor extends StackMonitor {
 						setDeltaIndex.setDeltaIndex(newDelta);
 					}
 				} else {
+					logger.error("Failed to delete stack, status is " + status);
+					logStackEvents(id.getStackName());
 					break;
 				}
 			}
 		}
-		catch(CfnAssistException | InterruptedException exception) {
+		catch(CfnAssistException | InterruptedException | ExecutionException exception) {
 			reportDeletionIssue(exception);
 		}
+		finally {
+			changes.forEach(change -> change.cancel(false));
+		}
 		return deletedOk;
 	}
 
@@ -29,40 +29,44 @@ public class SNSMonitor extends StackMonitor  {
 	
 	private final List<StackStatus> deleteAborts = Arrays.asList(DELETE_ABORTS);
 	private final NotificationProvider notifProvider;
-	private final CheckStackExists checkStackExists;
+	protected final NotificationDispatcher dispatcher;
+	protected final CheckStackExists checkStackExists;
 
+	// waits can run at the same time, i.e. when applying templates in parallel, as the dispatcher gives each one
+	// only the notifications for its own stacks
 	public SNSMonitor(NotificationProvider eventSource, CheckStackExists checkStackExists, StackRepository cfnRepository) {
 		super(cfnRepository);
 		this.notifProvider = eventSource;
 		this.checkStackExists = checkStackExists;
+		dispatcher = new NotificationDispatcher(eventSource);
 	}
 
 	@Override
-	public StackStatus waitForCreateFinished(StackNameAndId stackId) throws NotReadyException, WrongStackStatus {
+	public StackStatus waitForCreateFinished(StackNameAndId stackId) throws NotReadyException, WrongStackStatus, InterruptedException {
 		guardForInit();
-		return waitForStatus(stackId, StackStatus.CREATE_COMPLETE, Arrays.asList(CREATE_ABORTS));
+		return watchAndWait(stackId, StackStatus.CREATE_COMPLETE, Arrays.asList(CREATE_ABORTS));
 	}
 	
 	@Override
 	public StackStatus waitForDeleteFinished(StackNameAndId stackId)
-			throws WrongNumberOfStacksException, NotReadyException, WrongStackStatus {
+			throws WrongNumberOfStacksException, NotReadyException, WrongStackStatus, InterruptedException {
 		guardForInit();
 		if (!checkStackExists.stackExists(stackId.getStackName())) {
 			return StackStatus.DELETE_COMPLETE; // assume already gone
 		}
-		return waitForStatus(stackId, StackStatus.DELETE_COMPLETE, deleteAborts);
+		return watchAndWait(stackId, StackStatus.DELETE_COMPLETE, deleteAborts);
 	}
 
 	@Override
-	public StackStatus waitForUpdateFinished(StackNameAndId stackId) throws WrongStackStatus, NotReadyException {
+	public StackStatus waitForUpdateFinished(StackNameAndId stackId) throws WrongStackStatus, NotReadyException, InterruptedException {
 		guardForInit();
-		return waitForStatus(stackId, StackStatus.UPDATE_COMPLETE, Arrays.asList(UPDATE_ABORTS));
+		return watchAndWait(stackId, StackStatus.UPDATE_COMPLETE, Arrays.asList(UPDATE_ABORTS));
 	}
 	
 	@Override
-	public StackStatus waitForRollbackComplete(StackNameAndId id) throws NotReadyException, WrongStackStatus {
+	public StackStatus waitForRollbackComplete(StackNameAndId id) throws NotReadyException, WrongStackStatus, InterruptedException {
 		guardForInit();
-		return waitForStatus(id, StackStatus.ROLLBACK_COMPLETE, Arrays.asList(ROLLBACK_ABORTS));
+		return watchAndWait(id, StackStatus.ROLLBACK_COMPLETE, Arrays.asList(ROLLBACK_ABORTS));
 	}
 	
 	@Override
@@ -77,23 +81,44 @@ public class SNSMonitor extends StackMonitor  {
 			}
 		}
 		
-		int retryCount = 0;
-		while ((retryCount<LIMIT) && (pending.hasMore())) {
-			List<StackNotification>  notifications = notifProvider.receiveNotifications();
-			if (notifications.size()==0) {
-				logger.info("No messages received within timeout, increment try counter");
-				retryCount++;
-			} else {
-				retryCount = 0; // reset retries
-				processNotificationsWithPendingDeletions(pending, notifications);
-				notifications.clear();	
-			}	
+		List<StackNameAndId> stackIds = new LinkedList<>();
+		pending.forEach(item -> stackIds.add(item.getStackId()));
+		StackEventStreamer.Watch watch = watchEvents(stackIds);
+		try {
+			waitForPendingDeletes(pending);
+		} finally {
+			watch.close();
 		}
 		pending.updateDeltaIndex(setsDeltaIndex);
 		return pending.getNamesOfDeleted();
 	}
 
-	private void processNotificationsWithPendingDeletions(DeletionsPending pending, List<StackNotification> notifications) throws WrongStackStatus {
+	protected void waitForPendingDeletes(DeletionsPending pending) throws CfnAssistException {
+		int retryCount = 0;
+		try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(stackIdsOf(pending))) {
+			while ((retryCount<LIMIT) && (pending.hasMore())) {
+				List<StackNotification>  notifications = subscription.next();
+				if (notifications.size()==0) {
+					logger.info("No messages received within timeout, increment try counter");
+					retryCount++;
+				} else {
+					retryCount = 0; // reset retries
+					processNotificationsWithPendingDeletions(pending, notifications);
+				}
+			}
+		} catch (InterruptedException interrupted) {
+			Thread.currentThread().interrupt();
+			throw new NotReadyException("Interrupted waiting for stacks to be deleted");
+		}
+	}
+
+	protected List<String> stackIdsOf(DeletionsPending pending) {
+		List<String> stackIds = new LinkedList<>();
+		pending.forEach(item -> stackIds.add(item.getStackId().getStackId()));
+		return stackIds;
+	}
+
+	protected void processNotificationsWithPendingDeletions(DeletionsPending pending, List<StackNotification> notifications) throws WrongStackStatus {
 		for(StackNotification notification : notifications) {
 			String resourceType = notification.getResourceType();
 			if (resourceType.equals(STACK_RESOURCE_TYPE)) {
@@ -117,29 +142,43 @@ public class SNSMonitor extends StackMonitor  {
 		}	
 	}
 
-	private StackStatus waitForStatus(StackNameAndId stackId, StackStatus requiredStatus, List<StackStatus> aborts) throws WrongStackStatus, NotReadyException {
+	private StackStatus watchAndWait(StackNameAndId stackId, StackStatus requiredStatus, List<StackStatus> aborts)
+			throws WrongStackStatus, NotReadyException, InterruptedException {
+		StackEventStreamer.Watch watch = watchEvents(stackId);
+		try {
+			return waitForStatus(stackId, requiredStatus, aborts);
+		} finally {
+			watch.close();
+		}
+	}
+
+	protected StackStatus waitForStatus(StackNameAndId stackId, StackStatus requiredStatus, List<StackStatus> aborts)
+			throws WrongStackStatus, NotReadyException, InterruptedException {
 		logger.info(String.format("Waiting for stack %s to change to status %s", stackId, requiredStatus));
 		int retryCount = 0;
-		while (retryCount<LIMIT) {
-			List<StackNotification> notifications = notifProvider.receiveNotifications(); // blocks and then times out if no messages received
-			if (notifications.size()==0) {
-				logger.info("No notifications received within timeout, increment try counter");
-				retryCount++;
-			} else {
-				retryCount = 0;
-				StackStatus status = processNotification(stackId, requiredStatus, aborts, notifications);
-				if (!status.equals(StackStatus.UNKNOWN_TO_SDK_VERSION)) {
-					return status;
+		try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(List.of(stackId.getStackId()))) {
+			while (retryCount<LIMIT) {
+				List<StackNotification> notifications = subscription.next(); // blocks and then times out if no messages received
+				if (notifications.size()==0) {
+					logger.info("No notifications received within timeout, increment try counter");
+					retryCount++;
+				} else {
+					retryCount = 0;
+					StackStatus status = processNotification(stackId, requiredStatus, aborts, notifications);
+					if (!status.equals(StackStatus.UNKNOWN_TO_SDK_VERSION)) {
+						return status;
+					}
 				}
-				notifications.clear();	
-			}		
+			}
 		}
 		logger.error("Timed out waiting for status to change");
 		logStackEvents(stackId.getStackName());
 		throw new WrongStackStatus(stackId, requiredStatus, StackStatus.CREATE_FAILED);
 	}
 
-	private StackStatus processNotification(StackNameAndId stackId, StackStatus requiredStatus,
+	// the status if a notification is for the stack itself and it either reached the required status or aborted,
+	// otherwise UNKNOWN_TO_SDK_VERSION
+	protected StackStatus processNotification(StackNameAndId stackId, StackStatus requiredStatus,
 											List<StackStatus> aborts, List<StackNotification> notifications)
 			throws WrongStackStatus {
 		for(StackNotification notification : notifications) {
@@ -7,42 +7,98 @@ import software.amazon.awssdk.services.cloudformation.model.StackResource;
 import software.amazon.awssdk.services.cloudformation.model.StackStatus;
 import software.amazon.awssdk.services.cloudformation.model.Tag;
 import tw.com.entity.EnvironmentTag;
+import tw.com.entity.LogicalIdIndex;
+import tw.com.entity.StackEntries;
 import tw.com.entity.StackEntry;
 import tw.com.entity.StackNameAndId;
 import tw.com.entity.StackResources;
 import tw.com.exceptions.WrongNumberOfStacksException;
 import tw.com.providers.CFNClient;
+import tw.com.providers.StackSnapshotStore;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class StackCache {
 	private static final Logger logger = LoggerFactory.getLogger(StackCache.class);
+	private static final int RESOURCE_FETCH_PARALLELISM = 4;
 
-	private final List<StackEntry> theEntries;
+	private final StackEntries theEntries;
 	private final CFNClient formationClient;
 	private final StackResources stackResources;
+	private final LogicalIdIndex logicalIds;
 	private final String project;
+	private final Optional<StackSnapshotStore> snapshots;
 	
 	public StackCache(CFNClient formationClient, String project) {
+		this(formationClient, project, Optional.empty());
+	}
+
+	public StackCache(CFNClient formationClient, String project, Optional<StackSnapshotStore> snapshots) {
 		this.formationClient = formationClient;
 		this.project = project;
+		this.snapshots = snapshots;
 		stackResources = new StackResources();
-		theEntries = new LinkedList<>();
+		logicalIds = new LogicalIdIndex();
+		theEntries = new StackEntries();
+	}
+
+	// synchronized as templates in a folder may be applied concurrently
+	public synchronized List<StackEntry> getEntries() {
+		getAllStacksForProject();
+		return theEntries.all();
+	}
+
+	public synchronized Optional<StackEntry> getEntry(String stackName) {
+		getAllStacksForProject();
+		return theEntries.named(stackName);
+	}
+
+	public synchronized List<StackEntry> getEntriesFor(EnvironmentTag envTag) {
+		getAllStacksForProject();
+		return theEntries.forEnv(envTag);
 	}
 
-	public List<StackEntry> getEntries() {
+	public synchronized List<StackEntry> getEntriesForIndex(EnvironmentTag envTag, Integer index) {
 		getAllStacksForProject();
-		return theEntries;
+		return theEntries.forIndex(envTag, index);
+	}
+
+	public synchronized List<StackEntry> getEntriesForUpdateIndex(EnvironmentTag envTag, Integer updateIndex) {
+		getAllStacksForProject();
+		return theEntries.forUpdateIndex(envTag, updateIndex);
+	}
+
+	public synchronized List<StackEntry> getEntriesForBuild(Integer buildNumber) {
+		getAllStacksForProject();
+		return theEntries.forBuildNumber(buildNumber);
 	}
 	
 	private void getAllStacksForProject() {
-		// TODO handle "next token"?
 		if (theEntries.isEmpty()) {
+			Optional<List<Stack>> fromSnapshot = snapshots.flatMap(StackSnapshotStore::loadStacks);
+			if (fromSnapshot.isPresent()) {
+				populateEntriesIfProjectMatches(fromSnapshot.get());
+				logger.info(String.format("Loaded %s stacks from snapshot", theEntries.size()));
+				return;
+			}
+
 			logger.info("No cached stacks, loading all stacks");
-	
-			List<Stack> stacks = formationClient.describeAllStacks();
-			populateEntriesIfProjectMatches(stacks);
-			logger.info(String.format("Loaded %s stacks", theEntries.size()));
+
+			// entries are filtered for the project page by page as they arrive
+			int pages;
+			try {
+				pages = formationClient.describeAllStacks(this::populateEntriesIfProjectMatches);
+			} catch (RuntimeException exception) {
+				// drop the pages loaded so far, otherwise they would be taken as all the stacks
+				theEntries.clear();
+				throw exception;
+			}
+			logger.info(String.format("Loaded %s stacks from %s pages", theEntries.size(), pages));
+			snapshots.ifPresent(store -> store.saveStacks(theEntries.all().stream().map(StackEntry::getStack).toList()));
 		} else {
 			logger.debug("Cache hit on stacks");
 		}
@@ -111,13 +167,12 @@ public class StackCache {
 		if (keyValues.containsKey(AwsFacade.UPDATE_INDEX_TAG)) {
             addUpdateIndexTag(keyValues, entry);
         }
-		if (theEntries.contains(entry)) {
-			theEntries.remove(entry);
+		if (theEntries.put(entry).isPresent()) {
 			logger.info("Replacing or Removing entry for stack " + stackName);
 		}
 		StackStatus stackStatus = stack.stackStatus();
-		theEntries.add(entry);
 		stackResources.removeResources(stackName);
+		logicalIds.remove(stackName);
 		logger.debug(String.format("Added stack %s matched, environment is %s, status was %s", stackName, envTag, stackStatus));
 	}
 
@@ -138,8 +193,9 @@ public class StackCache {
         entry.setIndex(number);
     }
 
-    public Stack updateRepositoryFor(StackNameAndId id) throws WrongNumberOfStacksException {
+    public synchronized Stack updateRepositoryFor(StackNameAndId id) throws WrongNumberOfStacksException {
 		logger.info("Update stack repository for stack: " + id);
+		invalidate(id.getStackName());
 		Stack stack = formationClient.describeStack(id.getStackName());
 		
 		populateEntriesIfProjectMatches(stack);
@@ -153,19 +209,84 @@ public class StackCache {
 		this.populateEntriesIfProjectMatches(list);
 	}
 
-	public List<StackResource> getResourcesForStack(String stackName) {
+	public void invalidate(String stackName) {
+		snapshots.ifPresent(store -> store.invalidate(stackName));
+	}
 
-		List<StackResource> resources;
+	public synchronized List<StackResource> getResourcesForStack(String stackName) {
 		if (stackResources.containsStack(stackName)) {
 			logger.debug("Cache hit on stack resources for stack " + stackName);
-			resources = stackResources.getStackResources(stackName);
-		} else {
-			logger.debug("Cache miss, loading resources for stack " + stackName);
-			resources = formationClient.describeStackResources(stackName);
-		
-			stackResources.addStackResources(stackName, resources);
+			return stackResources.getStackResources(stackName);
 		}
+		List<StackResource> resources = loadResources(stackName);
+		addResources(stackName, resources);
 		return resources;
 	}
 
+	// resources of stacks in the env are loaded in parallel the first time, after that only for stacks that have changed
+	public List<LogicalIdIndex.Location> findByLogicalId(EnvironmentTag envTag, String logicalId) {
+		List<String> notIndexed;
+		synchronized (this) {
+			getAllStacksForProject();
+			notIndexed = theEntries.forEnv(envTag).stream().
+					map(StackEntry::getStackName).
+					filter(stackName -> !logicalIds.contains(stackName)).
+					toList();
+		}
+
+		Map<String, List<StackResource>> loaded = loadResources(notIndexed);
+
+		synchronized (this) {
+			loaded.forEach((stackName, resources) -> {
+				if (!logicalIds.contains(stackName)) {
+					addResources(stackName, resources);
+				}
+			});
+			return logicalIds.find(envTag, logicalId);
+		}
+	}
+
+	private Map<String, List<StackResource>> loadResources(List<String> stackNames) {
+		Map<String, List<StackResource>> loaded = new HashMap<>();
+		if (stackNames.isEmpty()) {
+			return loaded;
+		}
+		logger.info(String.format("Loading resources for %s stacks", stackNames.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(RESOURCE_FETCH_PARALLELISM, stackNames.size()));
+		Map<String, Future<List<StackResource>>> loading = new HashMap<>();
+		try {
+			stackNames.forEach(stackName -> loading.put(stackName, executor.submit(() -> loadResources(stackName))));
+			for (Map.Entry<String, Future<List<StackResource>>> entry : loading.entrySet()) {
+				try {
+					loaded.put(entry.getKey(), entry.getValue().get());
+				} catch (ExecutionException exception) {
+					logger.warn("Unable to check for resources, stack name: " + entry.getKey(), exception.getCause());
+				}
+			}
+		} catch (InterruptedException exception) {
+			logger.warn("Interrupted while loading stack resources", exception);
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		return loaded;
+	}
+
+	private List<StackResource> loadResources(String stackName) {
+		Optional<List<StackResource>> fromSnapshot = snapshots.flatMap(store -> store.loadResources(stackName));
+		if (fromSnapshot.isPresent()) {
+			logger.debug("Snapshot hit on stack resources for stack " + stackName);
+			return fromSnapshot.get();
+		}
+		logger.debug("Cache miss, loading resources for stack " + stackName);
+		List<StackResource> fetched = formationClient.describeStackResources(stackName);
+		snapshots.ifPresent(store -> store.saveResources(stackName, fetched));
+		return fetched;
+	}
+
+	private void addResources(String stackName, List<StackResource> resources) {
+		stackResources.addStackResources(stackName, resources);
+		theEntries.named(stackName).ifPresent(entry -> logicalIds.add(entry.getEnvTag(), stackName, resources));
+	}
+
 }
@@ -0,0 +1,151 @@
+package tw.com;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.StackEvent;
+import tw.com.entity.StackNameAndId;
+import tw.com.repository.StackRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+// follows the events of stacks while they are waited on, each check only fetches events newer than the last one
+// seen. Logs each event as it arrives and keeps the most recent per stack to report a failure with
+public class StackEventStreamer {
+	private static final Logger logger = LoggerFactory.getLogger(StackEventStreamer.class);
+	public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(5);
+	public static final int DEFAULT_CAPACITY = 100;
+	private static final Duration CLOCK_SKEW = Duration.ofSeconds(30); // events from just before the wait started
+
+	public static final Watch NOT_WATCHING = new Watch(null, List.of());
+
+	private final StackRepository stackRepository;
+	private final Duration interval;
+	private final int capacity;
+	private final Map<String, Followed> followed; // by stack name
+	private ScheduledExecutorService scheduler;
+
+	public StackEventStreamer(StackRepository stackRepository) {
+		this(stackRepository, DEFAULT_INTERVAL, DEFAULT_CAPACITY);
+	}
+
+	public StackEventStreamer(StackRepository stackRepository, Duration interval, int capacity) {
+		this.stackRepository = stackRepository;
+		this.interval = interval;
+		this.capacity = capacity;
+		followed = new ConcurrentHashMap<>();
+	}
+
+	public Watch watch(StackNameAndId stackId) {
+		return watch(List.of(stackId));
+	}
+
+	// follows the stacks until the watch is closed
+	public Watch watch(Collection<StackNameAndId> stackIds) {
+		List<Followed> started = new LinkedList<>();
+		Instant since = Instant.now().minus(CLOCK_SKEW);
+		for (StackNameAndId stackId : stackIds) {
+			Followed stack = new Followed(stackId, since);
+			followed.put(stackId.getStackName(), stack);
+			stack.task = scheduler().scheduleWithFixedDelay(stack::fetch, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+			started.add(stack);
+		}
+		return new Watch(this, started);
+	}
+
+	// catches up first, empty if the stack is not being followed
+	public Optional<List<StackEvent>> recentFor(String stackName) {
+		Followed stack = followed.get(stackName);
+		if (stack==null) {
+			return Optional.empty();
+		}
+		return Optional.of(stack.recent());
+	}
+
+	private synchronized ScheduledExecutorService scheduler() {
+		if (scheduler==null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "stack-events");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return scheduler;
+	}
+
+	private void stop(List<Followed> stacks) {
+		for (Followed stack : stacks) {
+			stack.task.cancel(false);
+			followed.remove(stack.stackId.getStackName(), stack);
+		}
+	}
+
+	private class Followed {
+		private final StackNameAndId stackId;
+		private final Instant since;
+		private final Deque<StackEvent> recent; // guarded by this
+		private String lastSeenEventId;
+		private ScheduledFuture<?> task;
+
+		private Followed(StackNameAndId stackId, Instant since) {
+			this.stackId = stackId;
+			this.since = since;
+			recent = new ArrayDeque<>(capacity);
+		}
+
+		private synchronized void fetch() {
+			// the id still finds the stack once deleted, the name does not
+			String stack = stackId.getStackId()==null || stackId.getStackId().isEmpty() ? stackId.getStackName() :
+					stackId.getStackId();
+			List<StackEvent> events;
+			try {
+				events = stackRepository.getStackEventsSince(stack, lastSeenEventId, since);
+			}
+			catch (RuntimeException exception) {
+				logger.warn(format("Unable to get events for stack %s", stackId.getStackName()), exception);
+				return;
+			}
+			for (StackEvent event : events) {
+				logger.info(format("%s %s (%s) %s %s", stackId.getStackName(), event.logicalResourceId(),
+						event.resourceType(), event.resourceStatusAsString(),
+						event.resourceStatusReason()==null ? "" : event.resourceStatusReason()));
+				if (recent.size()==capacity) {
+					recent.removeFirst();
+				}
+				recent.addLast(event);
+				lastSeenEventId = event.eventId();
+			}
+		}
+
+		private synchronized List<StackEvent> recent() {
+			fetch();
+			return new ArrayList<>(recent);
+		}
+	}
+
+	// stops following the stacks when closed
+	public static class Watch implements AutoCloseable {
+		private final StackEventStreamer streamer;
+		private final List<Followed> stacks;
+
+		private Watch(StackEventStreamer streamer, List<Followed> stacks) {
+			this.streamer = streamer;
+			this.stacks = stacks;
+		}
+
+		@Override
+		public void close() {
+			if (streamer!=null) {
+				streamer.stop(stacks);
+			}
+		}
+	}
+}
@@ -4,14 +4,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.cloudformation.model.StackEvent;
 import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.entity.StackNameAndId;
 import tw.com.repository.StackRepository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+import static java.lang.String.format;
 
 public abstract class StackMonitor implements MonitorStackEvents {
 	private static final Logger logger = LoggerFactory.getLogger(StackMonitor.class);
 
 	protected final StackRepository stackRepository;
+	private Optional<StackEventStreamer> eventStreamer = Optional.empty();
 
 	public static final StackStatus[] DELETE_ABORTS = { StackStatus.DELETE_FAILED };
 	public static final StackStatus[] CREATE_ABORTS = { StackStatus.CREATE_FAILED, StackStatus.ROLLBACK_IN_PROGRESS };
@@ -22,8 +28,27 @@ public abstract class StackMonitor implements MonitorStackEvents {
 		this.stackRepository = stackRepository;
 	}
 
+	// log stack events as they happen while waiting
+	public void setEventStreamer(StackEventStreamer eventStreamer) {
+		this.eventStreamer = Optional.of(eventStreamer);
+	}
+
+	protected StackEventStreamer.Watch watchEvents(StackNameAndId stackId) {
+		return eventStreamer.map(streamer -> streamer.watch(stackId)).orElse(StackEventStreamer.NOT_WATCHING);
+	}
+
+	protected StackEventStreamer.Watch watchEvents(Collection<StackNameAndId> stackIds) {
+		return eventStreamer.map(streamer -> streamer.watch(stackIds)).orElse(StackEventStreamer.NOT_WATCHING);
+	}
+
 	// TODO StackNameAndId
 	protected void logStackEvents(String stackName) {
+		Optional<List<StackEvent>> recent = eventStreamer.flatMap(streamer -> streamer.recentFor(stackName));
+		if (recent.isPresent()) {
+			logger.error(format("Most recent %s events for %s", recent.get().size(), stackName));
+			recent.get().forEach(event -> logger.info(event.toString()));
+			return;
+		}
 		final List<StackEvent> stackEvents = stackRepository.getStackEvents(stackName);
 		if (stackEvents.isEmpty()) {
 			logger.error("Not stack events for " + stackName);
@@ -0,0 +1,104 @@
+package tw.com;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.TemplateParameter;
+import tw.com.parameters.PopulatesParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static java.lang.String.format;
+
+// works out which delta files in a folder need others to be applied first, a file depends on an earlier file
+// when it has a ::logicalId parameter for a resource declared there, or a ::CFN_TAG parameter for one of its
+// CFN_TAG outputs. Updates and templates that cannot be read (i.e. yaml) are treated as a barrier
+public class TemplateDependencies {
+	private static final Logger logger = LoggerFactory.getLogger(TemplateDependencies.class);
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final Map<File, Set<File>> dependsOn;
+
+	public TemplateDependencies(List<File> files, Map<File, List<TemplateParameter>> declaredParameters) {
+		dependsOn = new HashMap<>();
+
+		Map<String, Set<File>> logicalIds = new HashMap<>();
+		Map<String, Set<File>> outputTags = new HashMap<>();
+		List<File> barriers = new LinkedList<>();
+		List<File> earlier = new LinkedList<>();
+
+		for (File file : files) {
+			Optional<JsonNode> template = isBarrier(file) ? Optional.empty() : readTemplate(file);
+			Set<File> needs = new HashSet<>();
+			if (template.isEmpty()) {
+				logger.info(format("Template %s must wait for all earlier templates", file.getName()));
+				needs.addAll(earlier);
+				barriers.add(file);
+			} else {
+				needs.addAll(barriers);
+				for (TemplateParameter parameter : declaredParameters.getOrDefault(file, Collections.emptyList())) {
+					needs.addAll(providersFor(parameter, logicalIds, outputTags));
+				}
+				recordProvided(file, template.get(), logicalIds, outputTags);
+			}
+			logger.info(format("Template %s depends on %s", file.getName(), names(needs)));
+			dependsOn.put(file, needs);
+			earlier.add(file);
+		}
+	}
+
+	public Set<File> dependsOn(File file) {
+		return dependsOn.getOrDefault(file, Collections.emptySet());
+	}
+
+	private Set<File> providersFor(TemplateParameter parameter, Map<String, Set<File>> logicalIds,
+								   Map<String, Set<File>> outputTags) {
+		String description = parameter.description();
+		if (description==null || !description.startsWith(PopulatesParameters.PARAM_PREFIX)) {
+			return Collections.emptySet();
+		}
+		if (description.equals(PopulatesParameters.CFN_TAG_ON_OUTPUT)) {
+			return outputTags.getOrDefault(parameter.parameterKey(), Collections.emptySet());
+		}
+		if (description.equals(PopulatesParameters.ENV_TAG) || description.startsWith(PopulatesParameters.CFN_TAG_ZONE)) {
+			return Collections.emptySet();
+		}
+		String logicalId = description.substring(PopulatesParameters.PARAM_PREFIX.length());
+		// not found means it comes from a stack that already exists
+		return logicalIds.getOrDefault(logicalId, Collections.emptySet());
+	}
+
+	private void recordProvided(File file, JsonNode template, Map<String, Set<File>> logicalIds,
+								Map<String, Set<File>> outputTags) {
+		JsonNode resources = template.path("Resources");
+		resources.fieldNames().forEachRemaining(logicalId ->
+				logicalIds.computeIfAbsent(logicalId, key -> new HashSet<>()).add(file));
+		JsonNode outputs = template.path("Outputs");
+		outputs.fieldNames().forEachRemaining(outputKey -> {
+			if (PopulatesParameters.CFN_TAG_ON_OUTPUT.equals(outputs.get(outputKey).path("Description").asText())) {
+				outputTags.computeIfAbsent(outputKey, key -> new HashSet<>()).add(file);
+			}
+		});
+	}
+
+	private boolean isBarrier(File file) {
+		return AwsFacade.isUpdate(file) || !FilenameUtils.getExtension(file.getName()).endsWith("json");
+	}
+
+	private Optional<JsonNode> readTemplate(File file) {
+		try {
+			return Optional.of(mapper.readTree(file));
+		} catch (IOException exception) {
+			logger.warn("Unable to read template to find dependencies " + file.getAbsolutePath(), exception);
+			return Optional.empty();
+		}
+	}
+
+	private List<String> names(Set<File> files) {
+		return files.stream().map(File::getName).sorted().toList();
+	}
+}
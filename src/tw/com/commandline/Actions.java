@@ -74,5 +74,6 @@ public class Actions {
         actions.add(new RemoveLogsAction());
         actions.add(new TagLogAction());
         actions.add(new FetchLogsAction());
+        actions.add(new QueryLogsAction());
 	}
 }
@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import tw.com.AwsFacade;
 import tw.com.entity.Tagging;
 import tw.com.exceptions.InvalidStackParameterException;
+import tw.com.providers.LogFileOptions;
 import tw.com.providers.SNSEventSource;
 
 import java.util.Arrays;
@@ -16,14 +17,35 @@ import java.util.List;
 
 public class CommandFlags {
 	private static final Logger logger = LoggerFactory.getLogger(CommandFlags.class);
+	private static final String CACHE_TTL_ENV = "CFN_ASSIST_CACHE_TTL";
+	private static final String PARALLEL_ENV = "CFN_ASSIST_PARALLEL";
+	private static final String LOG_PARALLEL_ENV = "CFN_ASSIST_LOG_PARALLEL";
+	private static final String ROTATE_LOGS_ENV = "CFN_ASSIST_ROTATE_LOGS";
+	private static final String LOG_MEMORY_ENV = "CFN_ASSIST_LOG_MEMORY";
+	private static final String LOG_METRICS_ENV = "CFN_ASSIST_LOG_METRICS";
 	
 	private Option projectParam;
 	private Option envParam;
 	private Option buildNumberParam;
 	private Option keysValuesParam;
 	private Option snsParam;
+	private Option snsQueuePerRunParam;
+	private Option snsWithPollingParam;
+	private Option streamEventsParam;
 	private Option capIAMParam;
 	private Option commentParam;
+	private Option cacheTTLParam;
+	private Option parallelParam;
+	private Option logParallelParam;
+	private Option gzipLogsParam;
+	private Option rotateLogsParam;
+	private Option indexLogsParam;
+	private Option incrementalParam;
+	private Option followParam;
+	private Option dryRunParam;
+	private Option grepParam;
+	private Option logMemoryParam;
+	private Option logMetricsParam;
 //	private Option artifactParam;
 //	private Option bucketParam;
 
@@ -34,8 +56,21 @@ public class CommandFlags {
 	private String env;
 	private Integer buildNumber = null;
 	private Boolean sns;
+	private Boolean snsQueuePerRun;
+	private Boolean snsWithPolling;
+	private Boolean streamEvents;
 	private Boolean capabilityIAM;
 	private String comment;
+	private Integer cacheTTL = null;
+	private Integer parallel = null;
+	private Integer logParallel = null;
+	private LogFileOptions logFileOptions;
+	private Boolean incremental;
+	private Integer follow = null;
+	private Boolean dryRun;
+	private String grep;
+	private Long logMemory = null;
+	private String logMetrics;
 	private Collection<Parameter> cfnParams;
 
 	public CommandFlags(String executableName, Options commandLineOptions) {
@@ -51,8 +86,23 @@ public class CommandFlags {
 		commandLineOptions.addOption(keysValuesParam);
 		commandLineOptions.addOption(buildNumberParam);
 		commandLineOptions.addOption(snsParam);
+		commandLineOptions.addOption(snsQueuePerRunParam);
+		commandLineOptions.addOption(snsWithPollingParam);
+		commandLineOptions.addOption(streamEventsParam);
 		commandLineOptions.addOption(capIAMParam);
 		commandLineOptions.addOption(commentParam);
+		commandLineOptions.addOption(cacheTTLParam);
+		commandLineOptions.addOption(parallelParam);
+		commandLineOptions.addOption(logParallelParam);
+		commandLineOptions.addOption(gzipLogsParam);
+		commandLineOptions.addOption(rotateLogsParam);
+		commandLineOptions.addOption(indexLogsParam);
+		commandLineOptions.addOption(incrementalParam);
+		commandLineOptions.addOption(followParam);
+		commandLineOptions.addOption(dryRunParam);
+		commandLineOptions.addOption(grepParam);
+		commandLineOptions.addOption(logMemoryParam);
+		commandLineOptions.addOption(logMetricsParam);
 	}
 	
 	public void populateFlags(CommandLine commandLine, HelpFormatter formatter) throws MissingArgumentException, InvalidStackParameterException {
@@ -63,8 +113,54 @@ public class CommandFlags {
 			buildNumber = Integer.parseInt(buildNumberAsString);
 		}
 		sns = checkForArgumentPresent(commandLine, snsParam);
+		snsQueuePerRun = checkForArgumentPresent(commandLine, snsQueuePerRunParam);
+		snsWithPolling = checkForArgumentPresent(commandLine, snsWithPollingParam);
+		streamEvents = checkForArgumentPresent(commandLine, streamEventsParam);
 		capabilityIAM = checkForArgumentPresent(commandLine, capIAMParam);
 		comment = checkForArgument(commandLine, formatter, commentParam, "", false);
+		String cacheTTLAsString = checkForArgument(commandLine, formatter, cacheTTLParam, CACHE_TTL_ENV, false);
+		if (!cacheTTLAsString.isEmpty()) {
+			cacheTTL = Integer.parseInt(cacheTTLAsString);
+		}
+		String parallelAsString = checkForArgument(commandLine, formatter, parallelParam, PARALLEL_ENV, false);
+		if (!parallelAsString.isEmpty()) {
+			parallel = Integer.parseInt(parallelAsString);
+		}
+		String logParallelAsString = checkForArgument(commandLine, formatter, logParallelParam, LOG_PARALLEL_ENV, false);
+		if (!logParallelAsString.isEmpty()) {
+			logParallel = Integer.parseInt(logParallelAsString);
+		}
+		String rotateLogs = checkForArgument(commandLine, formatter, rotateLogsParam, ROTATE_LOGS_ENV, false);
+		try {
+			logFileOptions = LogFileOptions.parse(checkForArgumentPresent(commandLine, gzipLogsParam), rotateLogs);
+			if (checkForArgumentPresent(commandLine, indexLogsParam)) {
+				logFileOptions = logFileOptions.withIndex();
+			}
+		}
+		catch (IllegalArgumentException exception) {
+			throw new InvalidStackParameterException(exception.getMessage());
+		}
+		incremental = checkForArgumentPresent(commandLine, incrementalParam);
+		String followAsString = checkForArgument(commandLine, formatter, followParam, "", false);
+		if (!followAsString.isEmpty()) {
+			follow = Integer.parseInt(followAsString);
+		}
+		dryRun = checkForArgumentPresent(commandLine, dryRunParam);
+		grep = checkForArgument(commandLine, formatter, grepParam, "", false);
+		if (haveFollow() && haveGrep()) {
+			// searches don't keep checkpoints, each fetch would search the whole window and save the same events again
+			throw new InvalidStackParameterException("Can not use follow with grep, searches always cover the whole N hours");
+		}
+		String logMemoryAsString = checkForArgument(commandLine, formatter, logMemoryParam, LOG_MEMORY_ENV, false);
+		if (!logMemoryAsString.isEmpty()) {
+			try {
+				logMemory = LogFileOptions.parseBytes(logMemoryAsString);
+			}
+			catch (IllegalArgumentException exception) {
+				throw new InvalidStackParameterException(exception.getMessage());
+			}
+		}
+		logMetrics = checkForArgument(commandLine, formatter, logMetricsParam, LOG_METRICS_ENV, false);
 		cfnParams = checkForKeyValueParameters(commandLine, keysValuesParam);
 //		artifacts = checkForKeyValueParameters(commandLine, artifactParam);
 //		s3bucket = checkForArgument(commandLine, formatter, bucketParam, AwsFacade.ENV_S3_BUCKET, bucketRequired);
@@ -84,11 +180,53 @@ public class CommandFlags {
         snsParam = createParamNoArg("sns", String.format("Use SNS to publish updates from cloud formation, uses the topic %s"
                 , SNSEventSource.SNS_TOPIC_NAME));
 
+        snsQueuePerRunParam = createParamNoArg("snsQueuePerRun", "With -sns, read from a queue created for this run " +
+                "and removed at exit, instead of one queue shared by every run");
+
+        snsWithPollingParam = createParamNoArg("snsWithPolling", "With -sns, check stack status directly when no " +
+                "notifications arrive for a while, paced by how long earlier runs took");
+
+        streamEventsParam = createParamNoArg("streamEvents", "Log the events of stacks being created, updated or " +
+                "deleted as they happen, rather than only after a failure");
+
         capIAMParam = createParamNoArg("capabilityIAM",
                 "Pass capability IAM to create stack (needed if you get capability missing exceptions)");
 
         commentParam = createParam("comment", "Add a comment within the tag " + Tagging.COMMENT_TAG);
 
+        cacheTTLParam = createParam("cacheTTL", "Cache stack details under ~/.cfnassist/cache for this many seconds, " +
+                "or use env var: " + CACHE_TTL_ENV);
+
+        parallelParam = createParam("parallel", "Apply up to this many independent templates from a folder at once, " +
+                "or use env var: " + PARALLEL_ENV);
+
+        logParallelParam = createParam("logParallel", "Fetch up to this many log groups at once, or use env var: " +
+                LOG_PARALLEL_ENV);
+
+        gzipLogsParam = createParamNoArg("gzipLogs", "Compress the files that fetched logs are saved to");
+
+        rotateLogsParam = createParam("rotateLogs", "Start a new file for fetched logs after a size (100MB, 1GB) or a " +
+                "span of event time (30m, 6h), or use env var: " + ROTATE_LOGS_ENV);
+
+        indexLogsParam = createParamNoArg("indexLogs", "Write an index next to each file of fetched logs, used by " +
+                "queryLogs, can't be used with gzipLogs");
+
+        incrementalParam = createParamNoArg("incremental", "Only fetch log events newer than those fetched last " +
+                "time, appending to the same files");
+
+        followParam = createParam("follow", "Keep fetching new log events every this many seconds, implies incremental");
+
+        dryRunParam = createParamNoArg("dryRun", "Report the log streams removeLogs would delete without deleting them");
+
+        grepParam = createParam("grep", "Only fetch log events matching this CloudWatch Logs filter pattern, " +
+                "i.e. ERROR or \"?ERROR ?WARN\"");
+
+        logMemoryParam = createParam("logMemory", "Most memory to use holding fetched log events before they are " +
+                "written, i.e. 256MB, or use env var: " + LOG_MEMORY_ENV);
+
+        logMetricsParam = createParam("logMetrics", "Save a summary of the metrics for fetching logs to this " +
+                "JSON file, or use env var: " + LOG_METRICS_ENV);
+
 //        artifactParam = createParamMultiArgs("artifacts","Provide files to be uploaded to S3 bucket, param values will " +
 //                "be replaced with the S3 URLs and passed into the template file");
 
@@ -208,11 +346,96 @@ public class CommandFlags {
 	public boolean haveComment() {
 		return !comment.isEmpty();
 	}
+
+	public Integer getCacheTTL() {
+		return cacheTTL;
+	}
+
+	public boolean haveCacheTTL() {
+		return cacheTTL!=null && cacheTTL>0;
+	}
+
+	public Integer getParallel() {
+		return parallel;
+	}
+
+	public boolean haveParallel() {
+		return parallel!=null && parallel>1;
+	}
+
+	public Integer getLogParallel() {
+		return logParallel;
+	}
+
+	public boolean haveLogParallel() {
+		return logParallel!=null && logParallel>1;
+	}
 	
+	public LogFileOptions getLogFileOptions() {
+		return logFileOptions;
+	}
+
+	public boolean haveLogFileOptions() {
+		return logFileOptions.isCompress() || logFileOptions.rotatesBySize() || logFileOptions.rotatesByTime() ||
+				logFileOptions.isIndex();
+	}
+
+	public boolean haveIncremental() {
+		return incremental || haveFollow();
+	}
+
+	public Integer getFollow() {
+		return follow;
+	}
+
+	public boolean haveFollow() {
+		return follow!=null && follow>0;
+	}
+
+	public String getGrep() {
+		return grep;
+	}
+
+	public boolean haveGrep() {
+		return !grep.isEmpty();
+	}
+
+	public Long getLogMemory() {
+		return logMemory;
+	}
+
+	public boolean haveLogMemory() {
+		return logMemory!=null && logMemory>0;
+	}
+
+	public String getLogMetrics() {
+		return logMetrics;
+	}
+
+	public boolean haveLogMetrics() {
+		return !logMetrics.isEmpty();
+	}
+
+	public boolean haveDryRun() {
+		return dryRun;
+	}
+
 	public boolean haveSnsEnable() {
 		return sns;
 	}
 
+	public boolean haveSnsQueuePerRun() {
+		return snsQueuePerRun;
+	}
+
+	public boolean haveSnsWithPolling() {
+		return snsWithPolling;
+	}
+
+	public boolean haveStreamEvents() {
+		return streamEvents;
+	}
+
 //	public Collection<Parameter> getUploadParams() {
 //		return artifacts;
 //	}
@@ -0,0 +1,141 @@
+package tw.com.commandline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tw.com.providers.LogFetchMetrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+// shows a progress line, rewritten in place, while logs are fetched, then prints a summary of the metrics and
+// saves them as JSON if asked to
+public class LogFetchReporter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LogFetchReporter.class);
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(1);
+
+    private final LogFetchMetrics metrics;
+    private final Optional<PrintStream> progress;
+    private final Optional<Path> jsonFile;
+    private final Duration interval;
+
+    private ScheduledExecutorService scheduler;
+    private long lastEvents;
+    private long lastTick;
+    private int lastLength;
+
+    // progress goes to the given stream, usually stderr when it is a terminal, so output can still be piped
+    public LogFetchReporter(LogFetchMetrics metrics, Optional<PrintStream> progress, Optional<Path> jsonFile,
+                            Duration interval) {
+        this.metrics = metrics;
+        this.progress = progress;
+        this.jsonFile = jsonFile;
+        this.interval = interval;
+    }
+
+    public void start() {
+        nextFetch();
+        if (progress.isEmpty()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::showProgress, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // when following logs, so each summary covers one fetch and not the time spent waiting before it
+    public synchronized void nextFetch() {
+        metrics.start();
+        lastEvents = 0;
+        lastTick = System.nanoTime();
+    }
+
+    // summary of everything fetched since start or the last call to nextFetch, to output and the json file
+    public void report(PrintStream output) {
+        clearProgress();
+        output.println(format("Fetched %s events from %s groups in %s pages, wrote %s in %.1fs (%.0f events/s)",
+                metrics.getEventsFetched(), metrics.getGroups(), metrics.getPages(), bytes(metrics.getBytesWritten()),
+                metrics.getElapsedSeconds(), metrics.getEventsPerSecond()));
+        output.println(format("Waited %sms for rate limits, %s calls throttled and retried",
+                metrics.getRateLimitMillis(), metrics.getThrottleRetries()));
+        metrics.getApiLatency().forEach((callType, histogram) ->
+                output.println(format("%s %s calls, latency %s", callType, histogram.getCount(), percentiles(histogram, "ms"))));
+        output.println(format("Disk writes %s, %s", metrics.getDiskWrites().getCount(), percentiles(metrics.getDiskWrites(), "ms")));
+        output.println(format("Merge queue depth %s", percentiles(metrics.getQueueDepths(), "")));
+        if (jsonFile.isPresent()) {
+            try {
+                metrics.writeJson(jsonFile.get());
+                output.println(format("Saved metrics to '%s'", jsonFile.get().toAbsolutePath()));
+            } catch (IOException exception) {
+                logger.error("Unable to save metrics to " + jsonFile.get().toAbsolutePath(), exception);
+            }
+        }
+        output.flush();
+    }
+
+    @Override
+    public void close() {
+        if (scheduler!=null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        clearProgress();
+    }
+
+    public synchronized String progressLine() {
+        long now = System.nanoTime();
+        long events = metrics.getEventsWritten();
+        double seconds = (now - lastTick) / 1_000_000_000D;
+        double rate = seconds <= 0 ? 0 : (events - lastEvents) / seconds;
+        lastEvents = events;
+        lastTick = now;
+        return format("groups %s pages %s events %s (%.0f/s) written %s buffered %s throttled %s",
+                metrics.getGroups(), metrics.getPages(), events, rate, bytes(metrics.getBytesWritten()),
+                bytes(metrics.getBufferedBytes()), metrics.getThrottleRetries());
+    }
+
+    private synchronized void showProgress() {
+        String line = progressLine();
+        PrintStream output = progress.get();
+        // pad to cover a longer previous line
+        output.print("\r" + line + " ".repeat(Math.max(0, lastLength - line.length())));
+        output.flush();
+        lastLength = line.length();
+    }
+
+    private synchronized void clearProgress() {
+        if (lastLength > 0 && progress.isPresent()) {
+            progress.get().print("\r" + " ".repeat(lastLength) + "\r");
+            progress.get().flush();
+            lastLength = 0;
+        }
+    }
+
+    private static String percentiles(LogFetchMetrics.Histogram histogram, String unit) {
+        return format("p50 %s%s p90 %s%s p99 %s%s max %s%s", histogram.percentile(0.5), unit, histogram.percentile(0.9),
+                unit, histogram.percentile(0.99), unit, histogram.getMax(), unit);
+    }
+
+    static String bytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        if (bytes < 1024 * 1024) {
+            return format("%.1fKB", bytes / 1024D);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return format("%.1fMB", bytes / (1024D * 1024));
+        }
+        return format("%.1fGB", bytes / (1024D * 1024 * 1024));
+    }
+}
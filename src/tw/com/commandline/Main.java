@@ -10,6 +10,8 @@ import tw.com.entity.ProjectAndEnv;
 import tw.com.exceptions.CfnAssistException;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Collection;
 
 public class Main {
@@ -73,6 +75,15 @@ public class Main {
                 String comment = flags.getComment();
                 projectAndEnv.setComment(comment);
             }
+			if (flags.haveParallel()) {
+				projectAndEnv.setParallelism(flags.getParallel());
+			}
+			if (flags.haveLogParallel()) {
+				projectAndEnv.setLogParallelism(flags.getLogParallel());
+			}
+			if (flags.haveDryRun()) {
+				projectAndEnv.setDryRun();
+			}
 			logger.info("Invoking for " + projectAndEnv);
 			
 			String[] argsForAction = commandLine.getOptionValues(action.getArgName());
@@ -110,9 +121,39 @@ public class Main {
 		// TODO move some validation checking to here
 		if (action.usesProject()) {
 			factory.setProject(flags.getProject());
+			if (flags.haveCacheTTL()) {
+				factory.setStackCacheTTL(Duration.ofSeconds(flags.getCacheTTL()));
+			}
+		}
+		if (flags.haveLogFileOptions()) {
+			factory.setLogFileOptions(flags.getLogFileOptions());
+		}
+		if (flags.haveIncremental()) {
+			factory.setIncrementalLogs();
+		}
+		if (flags.haveFollow()) {
+			factory.setFollowLogs(Duration.ofSeconds(flags.getFollow()));
+		}
+		if (flags.haveGrep()) {
+			factory.setLogFilter(flags.getGrep());
+		}
+		if (flags.haveLogMemory()) {
+			factory.setLogMemoryCeiling(flags.getLogMemory());
+		}
+		if (flags.haveLogMetrics()) {
+			factory.setLogMetricsFile(Paths.get(flags.getLogMetrics()));
+		}
+		if (flags.haveStreamEvents()) {
+			factory.setStreamStackEvents();
 		}
 		if (action.usesSNS() && flags.haveSnsEnable()) {
 			factory.setSNSMonitoring();
+			if (flags.haveSnsQueuePerRun()) {
+				factory.setSNSQueuePerRun();
+			}
+			if (flags.haveSnsWithPolling()) {
+				factory.setSNSWithPolling();
+			}
 		}
 	}
 
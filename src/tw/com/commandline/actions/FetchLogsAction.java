@@ -7,12 +7,17 @@ import software.amazon.awssdk.services.cloudformation.model.Parameter;
 import tw.com.AwsFacade;
 import tw.com.FacadeFactory;
 import tw.com.commandline.CommandLineException;
+import tw.com.commandline.LogFetchReporter;
 import tw.com.entity.ProjectAndEnv;
 import tw.com.exceptions.CfnAssistException;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+import static java.lang.String.format;
 
 public class FetchLogsAction extends SharedAction {
 	private static final Logger logger = LoggerFactory.getLogger(FetchLogsAction.class);
@@ -28,12 +33,26 @@ public class FetchLogsAction extends SharedAction {
 		AwsFacade aws = factory.createFacade();
 		int hours = Integer.parseInt(args[0]);
 
-		List<Path> filenames = aws.fetchLogs(projectAndEnv, hours);
-		System.out.println("Logs for " + projectAndEnv);
-		filenames.forEach(filename -> {
-		    System.out.println(String.format("Saved file '%s'", filename.toAbsolutePath().toString()));;
-        });
-        System.out.flush();
+		Duration follow = factory.getFollowLogs();
+		Optional<String> filter = factory.getLogFilter();
+		try (LogFetchReporter reporter = factory.createLogFetchReporter()) {
+			reporter.start();
+			do {
+				List<Path> filenames = filter.isPresent() ? aws.searchLogs(projectAndEnv, hours, filter.get()) :
+						aws.fetchLogs(projectAndEnv, hours);
+				reporter.report(System.out);
+				System.out.println("Logs for " + projectAndEnv);
+				filenames.forEach(filename -> {
+					System.out.println(String.format("Saved file '%s'", filename.toAbsolutePath().toString()));;
+				});
+				System.out.flush();
+				if (!follow.isZero()) {
+					logger.info(format("Waiting %s before fetching new events", follow));
+					Thread.sleep(follow.toMillis());
+					reporter.nextFetch();
+				}
+			} while (!follow.isZero());
+		}
     }
 
 	@Override
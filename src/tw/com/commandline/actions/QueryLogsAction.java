@@ -0,0 +1,81 @@
+package tw.com.commandline.actions;
+
+import org.apache.commons.cli.MissingArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.Parameter;
+import tw.com.FacadeFactory;
+import tw.com.commandline.CommandLineException;
+import tw.com.entity.ProjectAndEnv;
+import tw.com.exceptions.CfnAssistException;
+import tw.com.providers.LogIndexQuery;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Optional;
+
+import static java.lang.String.format;
+
+public class QueryLogsAction extends SharedAction {
+	private static final Logger logger = LoggerFactory.getLogger(QueryLogsAction.class);
+
+	@SuppressWarnings("static-access")
+	public QueryLogsAction() {
+		createOptionWithOptionalArgs("queryLogs", "Print events from a file of fetched logs between two UTC times, " +
+				"i.e. file.log 2024-05-01T10:00:00Z 2024-05-01T11:00:00Z, optionally followed by a stream name", 4);
+	}
+
+	public void invoke(FacadeFactory factory, ProjectAndEnv projectAndEnv, Collection<Parameter> unused,
+					   String... args) throws CfnAssistException, MissingArgumentException, InterruptedException, IOException {
+		Path logFile = Paths.get(args[0]);
+		Instant from = Instant.parse(args[1]);
+		Instant to = Instant.parse(args[2]);
+		Optional<String> streamName = args.length > 3 ? Optional.of(args[3]) : Optional.empty();
+		logger.info(format("Invoking query logs for %s from %s to %s stream %s", logFile, from, to, streamName));
+
+		LogIndexQuery query = factory.createLogIndexQuery();
+		OutputStream output = new BufferedOutputStream(System.out);
+		long found = query.query(logFile, from, to, streamName, output);
+		logger.info(format("Found %s events in %s", found, logFile));
+	}
+
+	@Override
+	public void validate(ProjectAndEnv projectAndEnv, Collection<Parameter> cfnParams,
+						 String... argumentForAction) throws CommandLineException {
+		guardForNoBuildNumber(projectAndEnv);
+		guardForSNSNotSet(projectAndEnv);
+		if (argumentForAction==null || argumentForAction.length < 3) {
+			throw new CommandLineException("Provide a log file and the start and end times");
+		}
+		try {
+			if (!Instant.parse(argumentForAction[1]).isBefore(Instant.parse(argumentForAction[2]))) {
+				throw new CommandLineException("Start time must be before the end time");
+			}
+		}
+		catch (DateTimeParseException exception) {
+			throw new CommandLineException("Times should be in UTC, i.e. 2024-05-01T10:00:00Z " + exception.getMessage());
+		}
+	}
+
+	@Override
+	public boolean usesProject() {
+		return false;
+	}
+
+	@Override
+	public boolean usesComment() {
+		return false;
+	}
+
+	@Override
+	public boolean usesSNS() {
+		return false;
+	}
+
+}
@@ -7,6 +7,7 @@ import software.amazon.awssdk.services.cloudformation.model.Parameter;
 import tw.com.AwsFacade;
 import tw.com.FacadeFactory;
 import tw.com.commandline.CommandLineException;
+import tw.com.entity.LogPurgeSummary;
 import tw.com.entity.ProjectAndEnv;
 import tw.com.exceptions.CfnAssistException;
 
@@ -26,7 +27,10 @@ public class RemoveLogsAction extends SharedAction {
 		AwsFacade aws = factory.createFacade();
 		try {
             int days = Integer.parseInt(args[0]);
-			aws.removeCloudWatchLogsOlderThan(projectAndEnv, days);
+			LogPurgeSummary summary = aws.removeCloudWatchLogsOlderThan(projectAndEnv, days);
+			String verb = summary.isDryRun() ? "Would remove" : "Removed";
+			System.out.println(String.format("%s %s log streams for %s", verb, summary.getStreams(),
+					projectAndEnv));
         }
         catch (NumberFormatException parseFailed) {
 		    throw new CfnAssistException("Unable to parse number of weeks " + args[0]);
@@ -31,6 +31,11 @@ public abstract class SharedAction implements CommandLineAction {
         option =  Option.builder(name).argName(name).desc(description).hasArgs().numberOfArgs(numberOfArgs).build();
     }
 
+    // up to maxArgs, validate should check enough were given
+    protected void createOptionWithOptionalArgs(String name, String description, int maxArgs) {
+        option =  Option.builder(name).argName(name).desc(description).hasArgs().numberOfArgs(maxArgs).optionalArg(true).build();
+    }
+
 	protected void createOptionalWithOptionalArg(String name, String description) {
 		option =  Option.builder(name).argName(name).desc(description).hasArg().optionalArg(true).build();
 	}
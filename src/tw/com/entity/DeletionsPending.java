@@ -70,6 +70,9 @@ public class DeletionsPending implements Iterable<DeletionPending> {
 	}
 
 	public void markIdAsDeleted(String stackId) {
+		if (isDeleted(stackId)) {
+			return;
+		}
 		for(DeletionPending item : items) {
 			StackNameAndId itemStackId = item.getStackId();
 			if (itemStackId.getStackId().equals(stackId)) {
@@ -80,6 +83,15 @@ public class DeletionsPending implements Iterable<DeletionPending> {
 		}
 	}
 
+	public boolean isDeleted(String stackId) {
+		for(DeletionPending item : deleted) {
+			if (item.getStackId().getStackId().equals(stackId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public boolean hasMore() {
 		return deleted.size()<items.size();
 	}
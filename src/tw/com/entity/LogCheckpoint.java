@@ -0,0 +1,96 @@
+package tw.com.entity;
+
+import java.util.*;
+
+// how far the events of a stream have been saved. A fetch resumes OVERLAP_MILLIS before the last event saved, so
+// events sharing its timestamp or ingested late with a slightly older one are still found, the events saved within
+// that overlap are remembered by timestamp and message so they are not saved twice
+public class LogCheckpoint {
+    public static final long OVERLAP_MILLIS = 30_000;
+
+    private long from; // every event saved at or after this is in recent
+    private long lastSaved;
+    private long ingested; // the stream's last ingestion time when it was fetched, 0 if not known
+    private final NavigableMap<Long, Set<Integer>> recent; // timestamp -> hashes of the messages saved with it
+
+    public LogCheckpoint(long from, long lastSaved, long ingested, Map<Long, Set<Integer>> recent) {
+        this.from = from;
+        this.lastSaved = lastSaved;
+        this.ingested = ingested;
+        this.recent = new TreeMap<>();
+        recent.forEach((timestamp, hashes) -> this.recent.put(timestamp, new HashSet<>(hashes)));
+    }
+
+    // a stream not fetched before, from the start of the window
+    public static LogCheckpoint startingAt(long from) {
+        return new LogCheckpoint(from, from - 1, 0, Collections.emptyMap());
+    }
+
+    // checkpoints from before the overlap was kept only recorded the last timestamp
+    public static LogCheckpoint timestampOnly(long lastSaved) {
+        return new LogCheckpoint(lastSaved + 1, lastSaved, 0, Collections.emptyMap());
+    }
+
+    public long resumeFrom() {
+        return from;
+    }
+
+    // true if there could be events not saved yet, using the ingestion time when known so an idle stream is skipped
+    public boolean hasNewEvents(long lastEventTimestamp, Long lastIngestionTime) {
+        if (lastEventTimestamp > lastSaved) {
+            return true;
+        }
+        if (lastIngestionTime!=null && ingested>0) {
+            return lastIngestionTime > ingested;
+        }
+        return lastEventTimestamp >= from;
+    }
+
+    public boolean alreadySaved(long timestamp, String message) {
+        if (timestamp < from) {
+            return true;
+        }
+        Set<Integer> hashes = recent.get(timestamp);
+        return hashes!=null && hashes.contains(Objects.hashCode(message));
+    }
+
+    // events of a stream are saved in timestamp order, except late ones within the overlap
+    public void saved(long timestamp, String message) {
+        recent.computeIfAbsent(timestamp, missing -> new HashSet<>()).add(Objects.hashCode(message));
+        if (timestamp > lastSaved) {
+            lastSaved = timestamp;
+            long cutOff = lastSaved - OVERLAP_MILLIS;
+            if (cutOff > from) {
+                from = cutOff;
+                recent.headMap(cutOff, false).clear();
+            }
+        }
+    }
+
+    public void fetched(Long lastIngestionTime) {
+        if (lastIngestionTime!=null) {
+            ingested = Math.max(ingested, lastIngestionTime);
+        }
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getLastSaved() {
+        return lastSaved;
+    }
+
+    public long getIngested() {
+        return ingested;
+    }
+
+    public Map<Long, Set<Integer>> getRecent() {
+        return Collections.unmodifiableMap(recent);
+    }
+
+    @Override
+    public String toString() {
+        return "LogCheckpoint [from=" + from + ", lastSaved=" + lastSaved + ", ingested=" + ingested + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package tw.com.entity;
+
+// streams removed, or that would be removed for a dry run
+public class LogPurgeSummary {
+
+	private final boolean dryRun;
+	private long streams;
+
+	public LogPurgeSummary(boolean dryRun) {
+		this.dryRun = dryRun;
+	}
+
+	public LogPurgeSummary(boolean dryRun, long streams) {
+		this.dryRun = dryRun;
+		this.streams = streams;
+	}
+
+	public void add(LogPurgeSummary other) {
+		streams = streams + other.streams;
+	}
+
+	public boolean isDryRun() {
+		return dryRun;
+	}
+
+	public long getStreams() {
+		return streams;
+	}
+
+	@Override
+	public String toString() {
+		return "LogPurgeSummary [dryRun=" + dryRun + ", streams=" + streams + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (dryRun ? 1231 : 1237);
+		result = prime * result + Long.hashCode(streams);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		LogPurgeSummary other = (LogPurgeSummary) obj;
+		return dryRun == other.dryRun && streams == other.streams;
+	}
+}
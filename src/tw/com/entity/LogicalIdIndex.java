@@ -0,0 +1,76 @@
+package tw.com.entity;
+
+import software.amazon.awssdk.services.cloudformation.model.StackResource;
+
+import java.util.*;
+
+// (env, logical ID) -> resources with that logical ID, along with the stack they are in. Stacks are added once their
+// resources have been loaded and removed when the stack changes. Not thread safe, owner must synchronize
+public class LogicalIdIndex {
+
+	public static class Location {
+		private final String stackName;
+		private final String physicalId;
+		private final String resourceType;
+
+		public Location(String stackName, String physicalId, String resourceType) {
+			this.stackName = stackName;
+			this.physicalId = physicalId;
+			this.resourceType = resourceType;
+		}
+
+		public String getStackName() {
+			return stackName;
+		}
+
+		public String getPhysicalId() {
+			return physicalId;
+		}
+
+		public String getResourceType() {
+			return resourceType;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Location [stackName=%s, physicalId=%s, resourceType=%s]", stackName, physicalId, resourceType);
+		}
+	}
+
+	private final Map<EnvironmentTag, Map<String, List<Location>>> byEnv;
+	private final Map<String, EnvironmentTag> indexedStacks;
+
+	public LogicalIdIndex() {
+		byEnv = new HashMap<>();
+		indexedStacks = new HashMap<>();
+	}
+
+	public void add(EnvironmentTag envTag, String stackName, List<StackResource> resources) {
+		remove(stackName);
+		Map<String, List<Location>> forEnv = byEnv.computeIfAbsent(envTag, key -> new HashMap<>());
+		for (StackResource resource : resources) {
+			Location location = new Location(stackName, resource.physicalResourceId(), resource.resourceType());
+			forEnv.computeIfAbsent(resource.logicalResourceId(), key -> new LinkedList<>()).add(location);
+		}
+		indexedStacks.put(stackName, envTag);
+	}
+
+	public void remove(String stackName) {
+		EnvironmentTag envTag = indexedStacks.remove(stackName);
+		if (envTag==null) {
+			return;
+		}
+		Map<String, List<Location>> forEnv = byEnv.get(envTag);
+		forEnv.values().forEach(locations -> locations.removeIf(location -> location.getStackName().equals(stackName)));
+		forEnv.values().removeIf(List::isEmpty);
+	}
+
+	public boolean contains(String stackName) {
+		return indexedStacks.containsKey(stackName);
+	}
+
+	public List<Location> find(EnvironmentTag envTag, String logicalId) {
+		List<Location> locations = byEnv.getOrDefault(envTag, Collections.emptyMap()).get(logicalId);
+		return locations==null ? Collections.emptyList() : List.copyOf(locations);
+	}
+}
@@ -18,8 +18,16 @@ public class OutputLogEventDecorator implements Comparable<OutputLogEventDecorat
     public String getGroupName() {
         return groupName;
     }
+    public String getStreamName() {
+        return streamName;
+    }
+
+    public String getMessage() {
+        return outputLogEvent.message();
+    }
+
     public String toString() {
-        return String.format("%s %s", streamName, outputLogEvent.message());
+        return streamName + " " + outputLogEvent.message();
     }
 
     public Long getTimestamp() {
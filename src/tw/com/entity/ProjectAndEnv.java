@@ -10,6 +10,9 @@ public class ProjectAndEnv {
 	private String s3Bucket;
 	private boolean useCapabilityIAM;
 	private String comment = "";
+	private int parallelism = 1;
+	private int logParallelism = 1;
+	private boolean dryRun = false;
 
 	public ProjectAndEnv(String project, String env) {
 		useSns = false;
@@ -138,4 +141,28 @@ public class ProjectAndEnv {
 	public String getComment() {
 		return comment;
 	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setLogParallelism(int logParallelism) {
+		this.logParallelism = logParallelism;
+	}
+
+	public int getLogParallelism() {
+		return logParallelism;
+	}
+
+	public void setDryRun() {
+		dryRun = true;
+	}
+
+	public boolean isDryRun() {
+		return dryRun;
+	}
 }
@@ -103,6 +103,10 @@ public class SearchCriteria {
 		return buildNumber.isPresent();
 	}
 
+	public Optional<Integer> getBuildNumber() {
+		return buildNumber;
+	}
+
 	private boolean haveEnv() {
 		return !env.isEmpty();
 	}
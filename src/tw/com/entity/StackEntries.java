@@ -0,0 +1,130 @@
+package tw.com.entity;
+
+import java.util.*;
+
+// stack entries indexed by name, env, (env, delta index), (env, update index) and build number, each index holds
+// entries keyed by stack name so replacing or removing an entry is constant time. Reads return immutable copies
+// so callers can iterate while the entries are being updated. Not thread safe, owner must synchronize
+public class StackEntries {
+
+	private final Map<String, StackEntry> byName;
+	private final Map<EnvironmentTag, Map<String, StackEntry>> byEnv;
+	private final Map<EnvironmentTag, Map<Integer, Map<String, StackEntry>>> byEnvAndIndex;
+	private final Map<EnvironmentTag, Map<Integer, Map<String, StackEntry>>> byEnvAndUpdateIndex;
+	private final Map<Integer, Map<String, StackEntry>> byBuildNumber;
+
+	private List<StackEntry> snapshot;
+
+	public StackEntries() {
+		byName = new LinkedHashMap<>();
+		byEnv = new HashMap<>();
+		byEnvAndIndex = new HashMap<>();
+		byEnvAndUpdateIndex = new HashMap<>();
+		byBuildNumber = new HashMap<>();
+		snapshot = Collections.emptyList();
+	}
+
+	// returns the entry that was replaced, if any
+	public Optional<StackEntry> put(StackEntry entry) {
+		String stackName = entry.getStackName();
+		Optional<StackEntry> previous = remove(stackName);
+
+		byName.put(stackName, entry);
+		EnvironmentTag envTag = entry.getEnvTag();
+		bucket(byEnv, envTag).put(stackName, entry);
+		if (entry.hasIndex()) {
+			bucket(byEnvAndIndex.computeIfAbsent(envTag, key -> new HashMap<>()), entry.getIndex()).put(stackName, entry);
+		}
+		Map<Integer, Map<String, StackEntry>> updates = byEnvAndUpdateIndex.computeIfAbsent(envTag, key -> new HashMap<>());
+		entry.getUpdateIndex().forEach(updateIndex -> bucket(updates, updateIndex).put(stackName, entry));
+		if (entry.hasBuildNumber()) {
+			bucket(byBuildNumber, entry.getBuildNumber()).put(stackName, entry);
+		}
+		snapshot = null;
+		return previous;
+	}
+
+	public Optional<StackEntry> remove(String stackName) {
+		StackEntry existing = byName.remove(stackName);
+		if (existing==null) {
+			return Optional.empty();
+		}
+		EnvironmentTag envTag = existing.getEnvTag();
+		removeFrom(byEnv, envTag, stackName);
+		if (existing.hasIndex()) {
+			removeFrom(byEnvAndIndex.get(envTag), existing.getIndex(), stackName);
+		}
+		existing.getUpdateIndex().forEach(updateIndex -> removeFrom(byEnvAndUpdateIndex.get(envTag), updateIndex, stackName));
+		if (existing.hasBuildNumber()) {
+			removeFrom(byBuildNumber, existing.getBuildNumber(), stackName);
+		}
+		snapshot = null;
+		return Optional.of(existing);
+	}
+
+	public void clear() {
+		byName.clear();
+		byEnv.clear();
+		byEnvAndIndex.clear();
+		byEnvAndUpdateIndex.clear();
+		byBuildNumber.clear();
+		snapshot = null;
+	}
+
+	public boolean isEmpty() {
+		return byName.isEmpty();
+	}
+
+	public int size() {
+		return byName.size();
+	}
+
+	// immutable, only rebuilt after a change
+	public List<StackEntry> all() {
+		if (snapshot==null) {
+			snapshot = List.copyOf(byName.values());
+		}
+		return snapshot;
+	}
+
+	public Optional<StackEntry> named(String stackName) {
+		return Optional.ofNullable(byName.get(stackName));
+	}
+
+	public List<StackEntry> forEnv(EnvironmentTag envTag) {
+		return copyOf(byEnv.get(envTag));
+	}
+
+	public List<StackEntry> forIndex(EnvironmentTag envTag, Integer index) {
+		return copyOf(byEnvAndIndex.getOrDefault(envTag, Collections.emptyMap()).get(index));
+	}
+
+	public List<StackEntry> forUpdateIndex(EnvironmentTag envTag, Integer updateIndex) {
+		return copyOf(byEnvAndUpdateIndex.getOrDefault(envTag, Collections.emptyMap()).get(updateIndex));
+	}
+
+	public List<StackEntry> forBuildNumber(Integer buildNumber) {
+		return copyOf(byBuildNumber.get(buildNumber));
+	}
+
+	private <K> Map<String, StackEntry> bucket(Map<K, Map<String, StackEntry>> index, K key) {
+		return index.computeIfAbsent(key, missing -> new LinkedHashMap<>());
+	}
+
+	private <K> void removeFrom(Map<K, Map<String, StackEntry>> index, K key, String stackName) {
+		if (index==null) {
+			return;
+		}
+		Map<String, StackEntry> entries = index.get(key);
+		if (entries!=null) {
+			entries.remove(stackName);
+			if (entries.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	private List<StackEntry> copyOf(Map<String, StackEntry> entries) {
+		return entries==null ? Collections.emptyList() : List.copyOf(entries.values());
+	}
+}
@@ -18,37 +18,75 @@ public class StackNotification {
 		this.statusReason = statusReason;
 	}
 	
+	// the message is lines of Key='Value', values are quoted and can span lines (i.e. ResourceProperties). Walks
+	// the message by index and only takes substrings of the values that are kept
 	public static StackNotification parseNotificationMessage(String notificationMessage) {
-		String[] parts = notificationMessage.split("\n");
 		StackStatus status = StackStatus.UNKNOWN_TO_SDK_VERSION;
 		String foundName="";
 		String stackId="";
 		String type="";
 		String reason="";
-		for(int i=0; i<parts.length; i++) {
-			String[] elements = parts[i].split("=");
-			String key = elements[0];
-			if (elements.length==2) {
-				String containsValue = elements[1];
-				switch (key) { 
-					case "StackName": foundName=extractValue(containsValue);
-						break;
-					case "ResourceStatus": status=StackStatus.fromValue(extractValue(containsValue));
-						break;
-					case "StackId": stackId=extractValue(containsValue);
-						break;
-					case "ResourceType": type=extractValue(containsValue);
-						break;
-					case "ResourceStatusReason": reason=extractValue(containsValue);
-						break;
+		int length = notificationMessage.length();
+		int position = 0;
+		while (position < length) {
+			int endOfLine = indexOrEnd(notificationMessage, '\n', position);
+			int equals = notificationMessage.indexOf('=', position);
+			if (equals<0 || equals>endOfLine) {
+				position = endOfLine + 1;
+				continue;
+			}
+			int valueStart = equals + 1;
+			int valueEnd = endOfLine;
+			int next = endOfLine + 1;
+			if (valueStart<length && notificationMessage.charAt(valueStart)=='\'') {
+				int closingQuote = closingQuote(notificationMessage, valueStart + 1);
+				if (closingQuote>=0) {
+					valueStart++;
+					valueEnd = closingQuote;
+					next = closingQuote + 2; // past the quote and newline
+				} else {
+					valueStart = Math.min(valueStart + 1, endOfLine); // unterminated, rest of the line
 				}
 			}
+			if (isKey(notificationMessage, position, equals, "StackName")) {
+				foundName = value(notificationMessage, valueStart, valueEnd);
+			} else if (isKey(notificationMessage, position, equals, "ResourceStatus")) {
+				status = StackStatus.fromValue(value(notificationMessage, valueStart, valueEnd));
+			} else if (isKey(notificationMessage, position, equals, "StackId")) {
+				stackId = value(notificationMessage, valueStart, valueEnd);
+			} else if (isKey(notificationMessage, position, equals, "ResourceType")) {
+				type = value(notificationMessage, valueStart, valueEnd);
+			} else if (isKey(notificationMessage, position, equals, "ResourceStatusReason")) {
+				reason = value(notificationMessage, valueStart, valueEnd);
+			}
+			position = next;
 		}
 		return new StackNotification(foundName,status,stackId,type,reason);
 	}
-	
-	private static String extractValue(String value) {
-		return value.replace('\'',' ').trim();
+
+	private static int indexOrEnd(String text, char toFind, int from) {
+		int index = text.indexOf(toFind, from);
+		return index<0 ? text.length() : index;
+	}
+
+	// a quote that ends the line, or the message, closes the value
+	private static int closingQuote(String text, int from) {
+		int quote = text.indexOf('\'', from);
+		while (quote>=0) {
+			if (quote+1==text.length() || text.charAt(quote+1)=='\n') {
+				return quote;
+			}
+			quote = text.indexOf('\'', quote+1);
+		}
+		return -1;
+	}
+
+	private static boolean isKey(String text, int start, int end, String key) {
+		return end-start==key.length() && text.startsWith(key, start);
+	}
+
+	private static String value(String text, int start, int end) {
+		return text.substring(start, end).trim();
 	}
 
 	public StackStatus getStatus() {
@@ -14,13 +14,24 @@ import tw.com.exceptions.MissingCapabilities;
 import tw.com.exceptions.NotReadyException;
 import tw.com.exceptions.WrongNumberOfStacksException;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class CFNClient {
 	private static final Logger logger = LoggerFactory.getLogger(CFNClient.class);
+	public static final List<StackStatus> NOT_DELETED = StackStatus.knownValues().stream().
+			filter(status -> !status.equals(StackStatus.DELETE_COMPLETE)).toList();
 
 	private final CloudFormationClient cloudFormationClient;
 
@@ -80,6 +91,24 @@ public class CFNClient {
 		throw new WrongNumberOfStacksException(0,1);
 	}
 
+	// single paged sweep of ListStacks giving status by stack name, deleted stacks are filtered out as ListStacks
+	// keeps them for 90 days, so a stack missing from the result has been deleted
+	public Map<String, StackStatus> listStackStatuses() {
+		Map<String, StackStatus> statuses = new HashMap<>();
+		String nextToken = null;
+		do {
+			ListStacksRequest request = ListStacksRequest.builder().stackStatusFilters(NOT_DELETED).
+					nextToken(nextToken).build();
+			ListStacksResponse result = cloudFormationClient.listStacks(request);
+			for (StackSummary summary : result.stackSummaries()) {
+				statuses.put(summary.stackName(), summary.stackStatus());
+			}
+			nextToken = result.nextToken();
+		} while (nextToken!=null);
+		logger.debug(String.format("Listed status of %s stacks", statuses.size()));
+		return statuses;
+	}
+
 	// todo pass down stack id and name, name is not uique for diagnostics
 	public List<StackEvent> describeStackEvents(String stackName) {
 		logger.info("Get statck events for " + stackName);
@@ -95,6 +124,26 @@ public class CFNClient {
 		}
 	}
 
+	// events come newest first, so page back only until the last event already seen or one from before notBefore,
+	// returns the new events oldest first
+	public List<StackEvent> describeStackEventsSince(String stackNameOrId, String lastSeenEventId, Instant notBefore) {
+		LinkedList<StackEvent> newEvents = new LinkedList<>();
+		String nextToken = null;
+		do {
+			DescribeStackEventsRequest request = DescribeStackEventsRequest.builder().stackName(stackNameOrId).
+					nextToken(nextToken).build();
+			DescribeStackEventsResponse result = cloudFormationClient.describeStackEvents(request);
+			for (StackEvent event : result.stackEvents()) {
+				if (event.eventId().equals(lastSeenEventId) || event.timestamp().isBefore(notBefore)) {
+					return newEvents;
+				}
+				newEvents.addFirst(event);
+			}
+			nextToken = result.nextToken();
+		} while (nextToken!=null);
+		return newEvents;
+	}
+
 	public List<TemplateParameter> validateTemplate(String contents) {
 		ValidateTemplateRequest validateTemplateRequest = ValidateTemplateRequest.builder().templateBody(contents).build();
 
@@ -116,8 +165,53 @@ public class CFNClient {
 	}
 
 	public List<Stack> describeAllStacks() {
-		DescribeStacksResponse results = cloudFormationClient.describeStacks();
-		return results.stacks();
+		List<Stack> stacks = new LinkedList<>();
+		describeAllStacks(stacks::addAll);
+		return stacks;
+	}
+
+	// follows nextToken, each page is handed to the consumer on a single decode thread so that
+	// page N is processed while page N+1 is still being fetched, returns number of pages fetched.
+	// Throws rather than return part of the stacks if interrupted
+	public int describeAllStacks(Consumer<List<Stack>> pageConsumer) {
+		ExecutorService decoder = Executors.newSingleThreadExecutor();
+		List<Future<?>> decoding = new LinkedList<>();
+		int pages = 0;
+		long totalMillis = 0;
+		try {
+			String token = "";
+			do {
+				DescribeStacksRequest.Builder requestBuilder = DescribeStacksRequest.builder();
+				if (!token.isEmpty()) {
+					requestBuilder.nextToken(token);
+				}
+				long start = System.currentTimeMillis();
+				DescribeStacksResponse result = cloudFormationClient.describeStacks(requestBuilder.build());
+				long pageMillis = System.currentTimeMillis() - start;
+				totalMillis = totalMillis + pageMillis;
+				pages++;
+
+				List<Stack> page = result.stacks();
+				logger.info(String.format("Fetched page %s with %s stacks in %s ms", pages, page.size(), pageMillis));
+				decoding.add(decoder.submit(() -> pageConsumer.accept(page)));
+
+				token = result.nextToken()==null ? "" : result.nextToken();
+			} while (!token.isEmpty());
+
+			for (Future<?> pageDecode : decoding) {
+				pageDecode.get();
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(String.format("Interrupted while decoding stack pages, after %s pages", pages),
+					exception);
+		} catch (ExecutionException exception) {
+			throw new RuntimeException("Unable to process page of stacks", exception.getCause());
+		} finally {
+			decoder.shutdownNow();
+		}
+		logger.info(String.format("Fetched %s pages of stacks in %s ms", pages, totalMillis));
+		return pages;
 	}
 
 	private Collection<Tag> createTagsForStack(ProjectAndEnv projectAndEnv, Tagging tagging) {
@@ -16,6 +16,9 @@ import static java.lang.String.format;
 public class CloudClient { //implements ProgressListener {
     private static final Logger logger = LoggerFactory.getLogger(CloudClient.class);
 
+    // limit on the number of values in a single DescribeInstances filter
+    public static final int MAX_IDS_PER_DESCRIBE = 200;
+
     private final Ec2Client ec2Client;
     private final AwsRegionProvider regionProvider;
 
@@ -103,6 +106,28 @@ public class CloudClient { //implements ProgressListener {
         return result.networkAcls();
     }
 
+    // ids are described in chunks using an instance-id filter, ids that do not exist are left out of the result
+    // rather than failing the whole request
+    public List<Instance> getInstancesById(final Collection<String> ids) {
+        final List<String> unique = new ArrayList<>(new LinkedHashSet<>(ids));
+        final List<Instance> instances = new LinkedList<>();
+        for (int start = 0; start < unique.size(); start = start + MAX_IDS_PER_DESCRIBE) {
+            final List<String> chunk = unique.subList(start, Math.min(start + MAX_IDS_PER_DESCRIBE, unique.size()));
+            logger.debug(format("Describe %s instances by id", chunk.size()));
+            final Filter filter = Filter.builder().name("instance-id").values(chunk).build();
+            String nextToken = null;
+            do {
+                final DescribeInstancesRequest request = DescribeInstancesRequest.builder().
+                        filters(filter).nextToken(nextToken).build();
+                final DescribeInstancesResponse result = ec2Client.describeInstances(request);
+                result.reservations().forEach(reservation -> instances.addAll(reservation.instances()));
+                nextToken = result.nextToken();
+            } while (nextToken!=null);
+        }
+        logger.info(format("Found %s of %s instances requested by id", instances.size(), unique.size()));
+        return instances;
+    }
+
     public List<Instance> getInstances() {
         List<Instance> instances = new LinkedList<>();
         DescribeInstancesResponse result = ec2Client.describeInstances();
@@ -113,6 +138,68 @@ public class CloudClient { //implements ProgressListener {
         return instances;
     }
 
+    // the *ForVpc variants push the VPC down to EC2 as a filter and follow every page, so only that VPC is downloaded
+
+    public List<Subnet> getSubnetsForVpc(final String vpcId) {
+        final List<Subnet> subnets = new LinkedList<>();
+        String nextToken = null;
+        do {
+            final DescribeSubnetsRequest request = DescribeSubnetsRequest.builder().
+                    filters(vpcFilter(vpcId)).nextToken(nextToken).build();
+            final DescribeSubnetsResponse result = ec2Client.describeSubnets(request);
+            subnets.addAll(result.subnets());
+            nextToken = result.nextToken();
+        } while (nextToken!=null);
+        logger.debug(format("Found %s subnets for vpc %s", subnets.size(), vpcId));
+        return subnets;
+    }
+
+    public List<Instance> getInstancesForVpc(final String vpcId) {
+        final List<Instance> instances = new LinkedList<>();
+        String nextToken = null;
+        do {
+            final DescribeInstancesRequest request = DescribeInstancesRequest.builder().
+                    filters(vpcFilter(vpcId)).nextToken(nextToken).build();
+            final DescribeInstancesResponse result = ec2Client.describeInstances(request);
+            result.reservations().forEach(reservation -> instances.addAll(reservation.instances()));
+            nextToken = result.nextToken();
+        } while (nextToken!=null);
+        logger.debug(format("Found %s instances for vpc %s", instances.size(), vpcId));
+        return instances;
+    }
+
+    public List<RouteTable> getRouteTablesForVpc(final String vpcId) {
+        final List<RouteTable> tables = new LinkedList<>();
+        String nextToken = null;
+        do {
+            final DescribeRouteTablesRequest request = DescribeRouteTablesRequest.builder().
+                    filters(vpcFilter(vpcId)).nextToken(nextToken).build();
+            final DescribeRouteTablesResponse result = ec2Client.describeRouteTables(request);
+            tables.addAll(result.routeTables());
+            nextToken = result.nextToken();
+        } while (nextToken!=null);
+        logger.debug(format("Found %s route tables for vpc %s", tables.size(), vpcId));
+        return tables;
+    }
+
+    public List<NetworkAcl> getACLsForVpc(final String vpcId) {
+        final List<NetworkAcl> acls = new LinkedList<>();
+        String nextToken = null;
+        do {
+            final DescribeNetworkAclsRequest request = DescribeNetworkAclsRequest.builder().
+                    filters(vpcFilter(vpcId)).nextToken(nextToken).build();
+            final DescribeNetworkAclsResponse result = ec2Client.describeNetworkAcls(request);
+            acls.addAll(result.networkAcls());
+            nextToken = result.nextToken();
+        } while (nextToken!=null);
+        logger.debug(format("Found %s acls for vpc %s", acls.size(), vpcId));
+        return acls;
+    }
+
+    private Filter vpcFilter(final String vpcId) {
+        return Filter.builder().name("vpc-id").values(vpcId).build();
+    }
+
     public List<RouteTable> getRouteTables() {
         DescribeRouteTablesResponse result = ec2Client.describeRouteTables();
         return result.routeTables();
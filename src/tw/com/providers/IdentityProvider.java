@@ -7,14 +7,18 @@ import software.amazon.awssdk.services.iam.IamClient;
 import software.amazon.awssdk.services.iam.model.GetUserResponse;
 import software.amazon.awssdk.services.iam.model.IamException;
 import software.amazon.awssdk.services.iam.model.User;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.model.StsException;
 
 public class IdentityProvider {
 	private static final Logger logger = LoggerFactory.getLogger(IdentityProvider.class);
 
 	private IamClient iamClient;
+	private StsClient stsClient;
 
-	public IdentityProvider(IamClient iamClient) {
+	public IdentityProvider(IamClient iamClient, StsClient stsClient) {
 		this.iamClient = iamClient;
+		this.stsClient = stsClient;
 	}
 
 	// needs iam:GetUser
@@ -32,4 +36,17 @@ public class IdentityProvider {
 		}	
 	}
 
+	// unlike iam:GetUser this works for roles and assumed roles too, null if the caller cannot be fetched
+	public String getAccountId() {
+		try {
+			String account = stsClient.getCallerIdentity().account();
+			logger.debug("Fetched current account: " + account);
+			return account;
+		}
+		catch(StsException exception) {
+			logger.warn("Unable to fetch current account: " + exception.toString());
+			return null;
+		}
+	}
+
 }
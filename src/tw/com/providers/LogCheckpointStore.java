@@ -0,0 +1,104 @@
+package tw.com.providers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tw.com.entity.LogCheckpoint;
+import tw.com.entity.ProjectAndEnv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static java.lang.String.format;
+
+// remembers how far the events of each stream of a log group have been saved, so the next fetch for the
+// same project and env only asks for newer events, kept under <baseDir>/<project>/<env>/<group>.json
+public class LogCheckpointStore {
+    private static final Logger logger = LoggerFactory.getLogger(LogCheckpointStore.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Path baseDir;
+
+    public LogCheckpointStore(Path baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    public static Path defaultLocation() {
+        return Paths.get(System.getProperty("user.home"), ".cfnassist", "logs");
+    }
+
+    // stream name -> checkpoint
+    public Map<String, LogCheckpoint> load(ProjectAndEnv projectAndEnv, String groupName) {
+        Map<String, LogCheckpoint> checkpoints = new HashMap<>();
+        Path path = pathFor(projectAndEnv, groupName);
+        if (!Files.exists(path)) {
+            return checkpoints;
+        }
+        try {
+            mapper.readTree(path.toFile()).fields().forEachRemaining(field ->
+                    checkpoints.put(field.getKey(), fromJson(field.getValue())));
+            logger.info(format("Loaded checkpoints for %s streams of group %s", checkpoints.size(), groupName));
+        } catch (IOException exception) {
+            logger.warn("Unable to read log checkpoints " + path, exception);
+        }
+        return checkpoints;
+    }
+
+    public void save(ProjectAndEnv projectAndEnv, String groupName, Map<String, LogCheckpoint> checkpoints) {
+        ObjectNode node = mapper.createObjectNode();
+        checkpoints.forEach((streamName, checkpoint) -> node.set(streamName, toJson(checkpoint)));
+        Path path = pathFor(projectAndEnv, groupName);
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), "checkpoint", ".tmp");
+            mapper.writeValue(temp.toFile(), node);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            logger.warn("Unable to save log checkpoints " + path, exception);
+        }
+    }
+
+    private LogCheckpoint fromJson(JsonNode node) {
+        if (node.isNumber()) {
+            return LogCheckpoint.timestampOnly(node.asLong());
+        }
+        Map<Long, Set<Integer>> recent = new HashMap<>();
+        node.path("recent").fields().forEachRemaining(field -> {
+            Set<Integer> hashes = new HashSet<>();
+            field.getValue().forEach(hash -> hashes.add(hash.asInt()));
+            recent.put(Long.parseLong(field.getKey()), hashes);
+        });
+        return new LogCheckpoint(node.path("from").asLong(), node.path("last").asLong(), node.path("ingested").asLong(),
+                recent);
+    }
+
+    private ObjectNode toJson(LogCheckpoint checkpoint) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("from", checkpoint.getFrom());
+        node.put("last", checkpoint.getLastSaved());
+        node.put("ingested", checkpoint.getIngested());
+        ObjectNode recent = node.putObject("recent");
+        checkpoint.getRecent().forEach((timestamp, hashes) -> {
+            ArrayNode array = recent.putArray(timestamp.toString());
+            hashes.forEach(array::add);
+        });
+        return node;
+    }
+
+    private Path pathFor(ProjectAndEnv projectAndEnv, String groupName) {
+        return baseDir.resolve(safe(projectAndEnv.getProject())).resolve(safe(projectAndEnv.getEnv())).
+                resolve(safe(groupName) + ".json");
+    }
+
+    private String safe(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -2,13 +2,18 @@ package tw.com.providers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
 import software.amazon.awssdk.services.cloudwatchlogs.model.*;
 import tw.com.AwsFacade;
 import tw.com.entity.OutputLogEventDecorator;
 import tw.com.entity.ProjectAndEnv;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -18,29 +23,100 @@ import static java.util.Spliterator.ORDERED;
 
 public class LogClient {
     private static final Logger logger = LoggerFactory.getLogger(LogClient.class);
+    // per account and region CloudWatch Logs quotas, calls are spaced out to stay under these and retried with
+    // backoff if throttled anyway, for example by other tools sharing the account
+    public static final double GET_EVENTS_TPS = 25;
+    public static final double DESCRIBE_STREAMS_TPS = 25;
+    public static final double DELETE_STREAMS_TPS = 10;
+    public static final double FILTER_EVENTS_TPS = 5;
+    public static final int MAX_STREAMS_PER_FILTER = 100;
+    public static final double OTHER_TPS = 5;
+    public static final long DEFAULT_BACKOFF_MILLIS = 200;
+    private static final int MAX_ATTEMPTS = 6;
+    public static final Duration DEFAULT_TAG_CACHE_TTL = Duration.ofMinutes(5);
+    private static final int TAG_FETCH_PARALLELISM = 4;
+
     private final CloudWatchLogsClient theClient;
+    private final RateLimiter eventsLimiter;
+    private final RateLimiter streamsLimiter;
+    private final RateLimiter deleteLimiter;
+    private final RateLimiter filterLimiter;
+    private final RateLimiter otherLimiter;
+    private final long backoffMillis;
+    private final Duration tagCacheTTL;
+    private final LogFetchMetrics metrics;
+
+    private Map<String, Map<String, String>> cachedGroupTags; // GroupName -> Tags, null until scanned
+    private long cachedAt;
 
     public LogClient(CloudWatchLogsClient theClient) {
+        this(theClient, DEFAULT_BACKOFF_MILLIS);
+    }
+
+    public LogClient(CloudWatchLogsClient theClient, long backoffMillis) {
+        this(theClient, backoffMillis, DEFAULT_TAG_CACHE_TTL);
+    }
+
+    public LogClient(CloudWatchLogsClient theClient, long backoffMillis, Duration tagCacheTTL) {
+        this(theClient, backoffMillis, tagCacheTTL, new LogFetchMetrics());
+    }
+
+    // metrics records the latency and throttling of every call, and the pages of events fetched
+    public LogClient(CloudWatchLogsClient theClient, long backoffMillis, Duration tagCacheTTL, LogFetchMetrics metrics) {
         this.theClient = theClient;
+        this.backoffMillis = backoffMillis;
+        this.tagCacheTTL = tagCacheTTL;
+        this.metrics = metrics;
+        eventsLimiter = new RateLimiter(GET_EVENTS_TPS, (int) GET_EVENTS_TPS);
+        streamsLimiter = new RateLimiter(DESCRIBE_STREAMS_TPS, (int) DESCRIBE_STREAMS_TPS);
+        deleteLimiter = new RateLimiter(DELETE_STREAMS_TPS, (int) DELETE_STREAMS_TPS);
+        filterLimiter = new RateLimiter(FILTER_EVENTS_TPS, (int) FILTER_EVENTS_TPS);
+        otherLimiter = new RateLimiter(OTHER_TPS, (int) OTHER_TPS);
     }
 
-    public Map<String, Map<String, String>> getGroupsWithTags() {
-        Map<String, Map<String,String>> groupsWithTags = new HashMap<>(); // GroupName -> Tags for grouop
+    // scans every page of groups and fetches their tags a few at a time, the result is reused until the TTL
+    // expires, tagGroupFor keeps it up to date
+    public synchronized Map<String, Map<String, String>> getGroupsWithTags() {
+        if (cachedGroupTags!=null && (System.nanoTime() - cachedAt) < tagCacheTTL.toNanos()) {
+            logger.info(format("Using cached tags for %s groups", cachedGroupTags.size()));
+            return new HashMap<>(cachedGroupTags);
+        }
 
         List<LogGroup> groups = getLogGroups();
         logger.info(format("Found %s groups", groups.size()));
-        groups.forEach(group->{
-            String logGroupName = group.logGroupName();
-            ListTagsLogGroupRequest request = ListTagsLogGroupRequest.builder().logGroupName(logGroupName).build();
-            ListTagsLogGroupResponse tagResult = theClient.listTagsLogGroup(request);
-            Map<String, String> resultTags = tagResult.tags();
-
-            logger.info(format("Group name: %s has tags '%s'", logGroupName, resultTags));
-            Map<String, String> tags = resultTags; // TAG -> Value
-            groupsWithTags.put(logGroupName, tags);
-        });
 
-        return groupsWithTags;
+        Map<String, Map<String,String>> groupsWithTags = new HashMap<>(); // GroupName -> Tags for grouop
+        ExecutorService executor = Executors.newFixedThreadPool(TAG_FETCH_PARALLELISM);
+        try {
+            Map<String, Future<Map<String, String>>> pending = new LinkedHashMap<>();
+            groups.forEach(group -> pending.put(group.logGroupName(), executor.submit(() -> getTagsFor(group.logGroupName()))));
+            for (Map.Entry<String, Future<Map<String, String>>> entry : pending.entrySet()) {
+                groupsWithTags.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Unable to get tags for log groups", exception.getCause());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted getting tags for log groups", interrupted);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        cachedGroupTags = groupsWithTags;
+        cachedAt = System.nanoTime();
+        return new HashMap<>(groupsWithTags);
+    }
+
+    private Map<String, String> getTagsFor(String logGroupName) {
+        ListTagsLogGroupRequest request = ListTagsLogGroupRequest.builder().logGroupName(logGroupName).build();
+        ListTagsLogGroupResponse tagResult = call(otherLimiter, "ListTagsLogGroup", () -> theClient.listTagsLogGroup(request));
+        Map<String, String> resultTags = tagResult.tags(); // TAG -> Value
+
+        logger.info(format("Group name: %s has tags '%s'", logGroupName, resultTags));
+        return resultTags;
     }
 
     public List<LogStream> getStreamsFor(String groupName, long when) {
@@ -60,7 +136,8 @@ public class LogClient {
         if (!token.isEmpty()) {
             requestBuilder.nextToken(token);
         }
-        DescribeLogStreamsResponse describeResult = theClient.describeLogStreams(requestBuilder.build());
+        DescribeLogStreamsRequest request = requestBuilder.build();
+        DescribeLogStreamsResponse describeResult = call(streamsLimiter, "DescribeLogStreams", () -> theClient.describeLogStreams(request));
         String nextToken = describeResult.nextToken();
 
         List<LogStream> logStreams = describeResult.logStreams();
@@ -101,17 +178,62 @@ public class LogClient {
         return streamsForGroup;
     }
 
+    // oldest first, each page of streams with no events since when is passed on as soon as it arrives so callers
+    // can act on it while the next page is fetched, stops at the first stream with a newer event
+    public void getStreamsOlderThan(String groupName, long when, Consumer<List<LogStream>> onPage) {
+        String nextToken = null;
+        boolean reachedNewer = false;
+        int total = 0;
+        do {
+            DescribeLogStreamsRequest request = DescribeLogStreamsRequest.builder().
+                    logGroupName(groupName).
+                    orderBy(OrderBy.LAST_EVENT_TIME).
+                    descending(false). // oldest first
+                    nextToken(nextToken).build();
+            DescribeLogStreamsResponse describeResult = call(streamsLimiter, "DescribeLogStreams", () -> theClient.describeLogStreams(request));
+
+            List<LogStream> page = new LinkedList<>();
+            for (LogStream stream : describeResult.logStreams()) {
+                Long lastEvent = stream.lastEventTimestamp();
+                if (lastEvent==null) {
+                    // no events, only old if created before the cut off
+                    if (stream.creationTime()!=null && stream.creationTime()<when) {
+                        page.add(stream);
+                    }
+                } else if (lastEvent<when) {
+                    page.add(stream);
+                } else {
+                    reachedNewer = true;
+                    break;
+                }
+            }
+            if (!page.isEmpty()) {
+                onPage.accept(page);
+            }
+            total = total + page.size();
+            nextToken = describeResult.nextToken();
+        } while (!reachedNewer && nextToken!=null);
+        logger.info(format("Found %s streams older than %s for group %s", total, when, groupName));
+    }
+
     public void deleteLogStream(String groupdName, String streamName) {
         DeleteLogStreamRequest request = DeleteLogStreamRequest.builder().
                 logGroupName(groupdName).
                 logStreamName(streamName).build();
-        DeleteLogStreamResponse result = theClient.deleteLogStream(request);
+        DeleteLogStreamResponse result = call(deleteLimiter, "DeleteLogStream", () -> theClient.deleteLogStream(request));
         logger.info(format("Deleted %s for group %s result was %s", streamName, groupdName, result));
     }
 
     private List<LogGroup> getLogGroups() {
-        DescribeLogGroupsResponse result = theClient.describeLogGroups();
-        return result.logGroups();
+        List<LogGroup> groups = new LinkedList<>();
+        String nextToken = null;
+        do {
+            DescribeLogGroupsRequest request = DescribeLogGroupsRequest.builder().nextToken(nextToken).build();
+            DescribeLogGroupsResponse result = call(otherLimiter, "DescribeLogGroups", () -> theClient.describeLogGroups(request));
+            groups.addAll(result.logGroups());
+            nextToken = result.nextToken();
+        } while (nextToken!=null);
+        return groups;
     }
 
     public void tagGroupFor(ProjectAndEnv projectAndEnv, String groupToTag) {
@@ -123,20 +245,80 @@ public class LogClient {
         TagLogGroupRequest.Builder requestBuilder = TagLogGroupRequest.builder().
                 logGroupName(groupToTag).tags(tags);
 
-        theClient.tagLogGroup(requestBuilder.build());
+        call(otherLimiter, "TagLogGroup", () -> theClient.tagLogGroup(requestBuilder.build()));
+        updateCachedTags(groupToTag, tags);
+    }
+
+    private synchronized void updateCachedTags(String groupName, Map<String, String> added) {
+        if (cachedGroupTags==null) {
+            return;
+        }
+        Map<String, String> updated = new HashMap<>(cachedGroupTags.getOrDefault(groupName, Collections.emptyMap()));
+        updated.putAll(added);
+        cachedGroupTags.put(groupName, updated);
+    }
+
+    private <T> T call(RateLimiter limiter, String operation, Supplier<T> action) {
+        long backoff = backoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            long waitFrom = System.nanoTime();
+            limiter.acquire();
+            long callFrom = System.nanoTime();
+            metrics.rateLimited(callFrom - waitFrom);
+            try {
+                T result = action.get();
+                metrics.apiCall(operation, System.nanoTime() - callFrom);
+                return result;
+            }
+            catch (AwsServiceException exception) {
+                metrics.apiCall(operation, System.nanoTime() - callFrom);
+                if (!exception.isThrottlingException() || attempt>=MAX_ATTEMPTS) {
+                    throw exception;
+                }
+                metrics.throttled(operation);
+                long delay = backoff + ThreadLocalRandom.current().nextLong(backoff + 1); // jitter spreads out retries
+                logger.warn(format("%s throttled on attempt %s, retry in %sms", operation, attempt, delay));
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw exception;
+                }
+                backoff = backoff * 2;
+            }
+        }
     }
 
     public List<Stream<OutputLogEventDecorator>> fetchLogs(String groupName, List<String> streamNames, Long endEpoch) {
+        return fetchLogs(groupName, streamNames, endEpoch, null);
+    }
+
+    // eventsPerPage limits the size of each page held while the events are read, null for as many as CloudWatch
+    // will return
+    public List<Stream<OutputLogEventDecorator>> fetchLogs(String groupName, List<String> streamNames, Long endEpoch,
+                                                           Integer eventsPerPage) {
+        Map<String, Long> startForStream = new LinkedHashMap<>();
+        streamNames.forEach(streamName -> startForStream.put(streamName, endEpoch));
+        return fetchLogs(groupName, startForStream, eventsPerPage);
+    }
+
+    // stream name -> epoch of the earliest event to fetch for that stream
+    public List<Stream<OutputLogEventDecorator>> fetchLogs(String groupName, Map<String, Long> startForStream) {
+        return fetchLogs(groupName, startForStream, null);
+    }
+
+    public List<Stream<OutputLogEventDecorator>> fetchLogs(String groupName, Map<String, Long> startForStream,
+                                                           Integer eventsPerPage) {
         List<Stream<OutputLogEventDecorator>> outputStreams = new LinkedList<>();
 
-        if (streamNames.isEmpty()) {
+        if (startForStream.isEmpty()) {
             return outputStreams;
         }
 
-        streamNames.forEach(streamName -> {
+        startForStream.forEach((streamName, startEpoch) -> {
             logger.info(format("Fetching output streams for '%s'", streamName));
             TokenStrategy currentToken = new TokenStrategy();
-            Iterable<OutputLogEventDecorator> iterator = new LogIterator(groupName, streamName, endEpoch, currentToken);
+            Iterable<OutputLogEventDecorator> iterator = new LogIterator(groupName, streamName, startEpoch, eventsPerPage, currentToken);
             Spliterator<OutputLogEventDecorator> spliterator = Spliterators.spliteratorUnknownSize(iterator.iterator(), IMMUTABLE | ORDERED );
 
             outputStreams.add(StreamSupport.stream(spliterator, false));
@@ -145,6 +327,25 @@ public class LogClient {
         return outputStreams;
     }
 
+    // only events matching the filter pattern are returned by CloudWatch, up to MAX_STREAMS_PER_FILTER streams are
+    // searched by each request and the events for them come back interleaved in time order, so there is one
+    // stream of results per batch of stream names
+    public List<Stream<OutputLogEventDecorator>> searchLogs(String groupName, List<String> streamNames, Long startEpoch,
+                                                            String filterPattern) {
+        List<Stream<OutputLogEventDecorator>> outputStreams = new LinkedList<>();
+
+        for (int from = 0; from < streamNames.size(); from = from + MAX_STREAMS_PER_FILTER) {
+            List<String> batch = new ArrayList<>(streamNames.subList(from, Math.min(streamNames.size(), from + MAX_STREAMS_PER_FILTER)));
+            logger.info(format("Searching %s streams of '%s' for '%s'", batch.size(), groupName, filterPattern));
+            Iterable<OutputLogEventDecorator> iterator = new FilterIterator(groupName, batch, startEpoch, filterPattern);
+            Spliterator<OutputLogEventDecorator> spliterator = Spliterators.spliteratorUnknownSize(iterator.iterator(), IMMUTABLE | ORDERED );
+
+            outputStreams.add(StreamSupport.stream(spliterator, false));
+        }
+
+        return outputStreams;
+    }
+
     // control shared token or token per stream
     private class TokenStrategy {
             private String token = "";
@@ -175,14 +376,16 @@ public class LogClient {
         private final String groupName;
         private final String streamName;
         private final Long endEpoch;
+        private final Integer eventsPerPage;
 
         private Iterator<OutputLogEvent> inProgress;
         private TokenStrategy currentToken;
 
-        private LogIterator(String groupName, String streamName, Long endEpoch, TokenStrategy currentToken) {
+        private LogIterator(String groupName, String streamName, Long endEpoch, Integer eventsPerPage, TokenStrategy currentToken) {
             this.groupName = groupName;
             this.streamName = streamName;
             this.endEpoch = endEpoch;
+            this.eventsPerPage = eventsPerPage;
             this.currentToken = currentToken;
             // initially empty
             inProgress = new LinkedList<OutputLogEvent>().iterator();
@@ -211,6 +414,7 @@ public class LogClient {
 
         private boolean loadNextResult() {
             GetLogEventsResponse nextResult = getLogEvents();
+            metrics.pageFetched(nextResult.events().size());
             if (nextResult.events().isEmpty()) {
                 return false;
             }
@@ -229,6 +433,7 @@ public class LogClient {
                     logGroupName(groupName).
                     logStreamName(streamName).
                     startTime(endEpoch). // do we need this if have already selected stream(name)s that are in scope?
+                    limit(eventsPerPage).
                     startFromHead(true); // earlier events come first
 
             if (!currentToken.isEmpty()) {
@@ -236,11 +441,76 @@ public class LogClient {
                 requestBuilder.nextToken(currentToken.get());
             }
 
-            GetLogEventsResponse currentResult = theClient.getLogEvents(requestBuilder.build());
+            GetLogEventsRequest request = requestBuilder.build();
+            GetLogEventsResponse currentResult = call(eventsLimiter, "GetLogEvents", () -> theClient.getLogEvents(request));
             logger.debug(format("LogIterator: Got %s entries for stream %s", currentResult.events().size(), streamName));
             logger.debug(format("LogIterator: Got nextToken on stream %s token: %s", streamName, currentResult.nextForwardToken()));
             return currentResult;
         }
 
     }
+
+    // class to facade the AWS API 'paging' behavior for a search over several log streams, a page can be empty
+    // while the search is still in progress so keep going until there is no next token
+    private class FilterIterator implements Iterable<OutputLogEventDecorator> {
+        private final String groupName;
+        private final List<String> streamNames;
+        private final Long startEpoch;
+        private final String filterPattern;
+
+        private Iterator<FilteredLogEvent> inProgress;
+        private String nextToken;
+        private boolean finished;
+
+        private FilterIterator(String groupName, List<String> streamNames, Long startEpoch, String filterPattern) {
+            this.groupName = groupName;
+            this.streamNames = streamNames;
+            this.startEpoch = startEpoch;
+            this.filterPattern = filterPattern;
+            inProgress = Collections.emptyIterator();
+            finished = false;
+        }
+
+        @Override
+        public Iterator<OutputLogEventDecorator> iterator() {
+            return new Iterator<OutputLogEventDecorator>() {
+                @Override
+                public boolean hasNext() {
+                    while (!inProgress.hasNext() && !finished) {
+                        loadNextResult();
+                    }
+                    return inProgress.hasNext();
+                }
+
+                @Override
+                public OutputLogEventDecorator next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    FilteredLogEvent event = inProgress.next();
+                    OutputLogEvent outputLogEvent = OutputLogEvent.builder().
+                            timestamp(event.timestamp()).
+                            message(event.message()).
+                            ingestionTime(event.ingestionTime()).build();
+                    return new OutputLogEventDecorator(outputLogEvent, groupName, event.logStreamName());
+                }
+            };
+        }
+
+        private void loadNextResult() {
+            FilterLogEventsRequest request = FilterLogEventsRequest.builder().
+                    logGroupName(groupName).
+                    logStreamNames(streamNames).
+                    startTime(startEpoch).
+                    filterPattern(filterPattern).
+                    nextToken(nextToken).build();
+
+            FilterLogEventsResponse result = call(filterLimiter, "FilterLogEvents", () -> theClient.filterLogEvents(request));
+            metrics.pageFetched(result.events().size());
+            logger.debug(format("FilterIterator: Got %s matching entries for group %s", result.events().size(), groupName));
+            inProgress = result.events().iterator();
+            nextToken = result.nextToken();
+            finished = nextToken==null;
+        }
+    }
 }
@@ -0,0 +1,246 @@
+package tw.com.providers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// counters and histograms for fetching logs, shared by the client, the merge and the writers so a slow fetch can
+// be put down to calls to CloudWatch, throttling, or writing to disk. Updated from many threads, cheap enough to
+// always be on, read while the fetch runs for the progress line and at the end for the summary
+public class LogFetchMetrics {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder eventsFetched = new LongAdder();
+    private final LongAdder eventsWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder rateLimitNanos = new LongAdder();
+    private final Map<String, Histogram> apiLatency = new ConcurrentHashMap<>(); // call type -> millis
+    private final Map<String, LongAdder> throttleRetries = new ConcurrentHashMap<>(); // call type -> retries
+    private final Histogram diskWrites = new Histogram();
+    private final Histogram queueDepths = new Histogram();
+    private volatile LongSupplier bufferedBytes = () -> 0;
+    private volatile long startedAt;
+
+    public LogFetchMetrics() {
+        startedAt = System.nanoTime();
+    }
+
+    // events per second are measured from here, counts start again from zero so when following logs each fetch
+    // is reported on its own, only call between fetches
+    public void start() {
+        groups.reset();
+        pages.reset();
+        eventsFetched.reset();
+        eventsWritten.reset();
+        bytesWritten.reset();
+        rateLimitNanos.reset();
+        apiLatency.clear();
+        throttleRetries.clear();
+        diskWrites.reset();
+        queueDepths.reset();
+        startedAt = System.nanoTime();
+    }
+
+    public void groupFetched() {
+        groups.increment();
+    }
+
+    public void pageFetched(int events) {
+        pages.increment();
+        eventsFetched.add(events);
+    }
+
+    public void eventWritten(int bytes) {
+        eventsWritten.increment();
+        bytesWritten.add(bytes);
+    }
+
+    public void apiCall(String callType, long nanos) {
+        apiLatency.computeIfAbsent(callType, type -> new Histogram()).record(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    public void throttled(String callType) {
+        throttleRetries.computeIfAbsent(callType, type -> new LongAdder()).increment();
+    }
+
+    public void rateLimited(long nanos) {
+        rateLimitNanos.add(nanos);
+    }
+
+    public void diskWrite(long nanos) {
+        diskWrites.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    // events waiting in a merge buffer each time one is taken, full buffers mean the writer is behind
+    public void queueDepth(int depth) {
+        queueDepths.record(depth);
+    }
+
+    // the events read ahead and not yet written, across every merge
+    public void setBufferedBytes(LongSupplier bufferedBytes) {
+        this.bufferedBytes = bufferedBytes;
+    }
+
+    public long getGroups() {
+        return groups.sum();
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public long getEventsFetched() {
+        return eventsFetched.sum();
+    }
+
+    public long getEventsWritten() {
+        return eventsWritten.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.getAsLong();
+    }
+
+    public long getThrottleRetries() {
+        return throttleRetries.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getRateLimitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(rateLimitNanos.sum());
+    }
+
+    public Map<String, Histogram> getApiLatency() {
+        return new TreeMap<>(apiLatency);
+    }
+
+    public Histogram getDiskWrites() {
+        return diskWrites;
+    }
+
+    public Histogram getQueueDepths() {
+        return queueDepths;
+    }
+
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startedAt) / 1_000_000_000D;
+    }
+
+    public double getEventsPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed <= 0 ? 0 : getEventsWritten() / elapsed;
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("elapsedSeconds", getElapsedSeconds());
+        node.put("groups", getGroups());
+        node.put("pages", getPages());
+        node.put("eventsFetched", getEventsFetched());
+        node.put("eventsWritten", getEventsWritten());
+        node.put("eventsPerSecond", getEventsPerSecond());
+        node.put("bytesWritten", getBytesWritten());
+        node.put("rateLimitMillis", getRateLimitMillis());
+        ObjectNode throttles = node.putObject("throttleRetries");
+        new TreeMap<>(throttleRetries).forEach((callType, count) -> throttles.put(callType, count.sum()));
+        ObjectNode latency = node.putObject("apiLatencyMillis");
+        getApiLatency().forEach((callType, histogram) -> latency.set(callType, histogram.toJson()));
+        node.set("diskWriteMillis", diskWrites.toJson());
+        node.set("queueDepth", queueDepths.toJson());
+        return node;
+    }
+
+    public void writeJson(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, "metrics", ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), toJson());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // counts values into power of two buckets, so percentiles are approximate (to within a factor of two) but
+    // recording is lock free and the size is fixed
+    public static class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long value) {
+            long positive = Math.max(0, value);
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(positive)); // bit length, 0 for 0
+            count.increment();
+            total.add(positive);
+            max.accumulate(positive);
+        }
+
+        public void reset() {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                buckets.set(bucket, 0);
+            }
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long samples = getCount();
+            return samples==0 ? 0 : (double) total.sum() / samples;
+        }
+
+        // upper bound of the bucket holding the given fraction of the values, never more than the max
+        public long percentile(double fraction) {
+            long samples = getCount();
+            if (samples==0) {
+                return 0;
+            }
+            long wanted = (long) Math.ceil(samples * fraction);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen = seen + buckets.get(bucket);
+                if (seen >= wanted) {
+                    long upper = bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+                    return Math.min(upper, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        public ObjectNode toJson() {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("count", getCount());
+            node.put("mean", getMean());
+            node.put("p50", percentile(0.5));
+            node.put("p90", percentile(0.9));
+            node.put("p99", percentile(0.99));
+            node.put("max", getMax());
+            return node;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package tw.com.providers;
+
+import java.time.Duration;
+import java.util.Locale;
+
+// how fetched log events are written, optionally gzipped and rotated to a new file once a file reaches a size
+// or once events are more than a given time after the first event in the file, and optionally indexed
+public class LogFileOptions {
+    private final boolean compress;
+    private final long maxBytes;
+    private final Duration maxSpan;
+    private final boolean index;
+
+    public LogFileOptions(boolean compress, long maxBytes, Duration maxSpan) {
+        this(compress, maxBytes, maxSpan, false);
+    }
+
+    public LogFileOptions(boolean compress, long maxBytes, Duration maxSpan, boolean index) {
+        this.compress = compress;
+        this.maxBytes = maxBytes;
+        this.maxSpan = maxSpan;
+        this.index = index;
+    }
+
+    // index files can only be written for uncompressed files, as queries map the file
+    public LogFileOptions withIndex() {
+        if (compress) {
+            throw new IllegalArgumentException("Log files can not be both compressed and indexed");
+        }
+        return new LogFileOptions(compress, maxBytes, maxSpan, true);
+    }
+
+    public static LogFileOptions defaults() {
+        return new LogFileOptions(false, 0, Duration.ZERO);
+    }
+
+    // rotation is given as a size, 100MB or 1GB, or as a span of event time, 30m or 6h
+    public static LogFileOptions parse(boolean compress, String rotation) {
+        if (rotation==null || rotation.isEmpty()) {
+            return new LogFileOptions(compress, 0, Duration.ZERO);
+        }
+        String value = rotation.trim().toUpperCase(Locale.ROOT);
+        try {
+            if (value.endsWith("GB") || value.endsWith("MB")) {
+                return new LogFileOptions(compress, parseBytes(value), Duration.ZERO);
+            }
+            if (value.endsWith("H")) {
+                return new LogFileOptions(compress, 0, Duration.ofHours(amount(value, 1)));
+            }
+            if (value.endsWith("M")) {
+                return new LogFileOptions(compress, 0, Duration.ofMinutes(amount(value, 1)));
+            }
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Unable to parse log rotation " + rotation, exception);
+        }
+        throw new IllegalArgumentException("Log rotation should end with MB, GB, m or h, was " + rotation);
+    }
+
+    // a size such as 100MB or 1GB
+    public static long parseBytes(String size) {
+        String value = size.trim().toUpperCase(Locale.ROOT);
+        try {
+            if (value.endsWith("GB")) {
+                return amount(value, 2) * 1024 * 1024 * 1024;
+            }
+            if (value.endsWith("MB")) {
+                return amount(value, 2) * 1024 * 1024;
+            }
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Unable to parse size " + size, exception);
+        }
+        throw new IllegalArgumentException("Size should end with MB or GB, was " + size);
+    }
+
+    private static long amount(String value, int suffixLength) {
+        return Long.parseLong(value.substring(0, value.length() - suffixLength));
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Duration getMaxSpan() {
+        return maxSpan;
+    }
+
+    public boolean rotatesBySize() {
+        return maxBytes > 0;
+    }
+
+    public boolean rotatesByTime() {
+        return !maxSpan.isZero();
+    }
+
+    public boolean isIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LogFileOptions{compress=%s, maxBytes=%s, maxSpan=%s, index=%s}", compress, maxBytes,
+                maxSpan, index);
+    }
+}
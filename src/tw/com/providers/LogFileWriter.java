@@ -0,0 +1,222 @@
+package tw.com.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tw.com.entity.OutputLogEventDecorator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.String.format;
+
+// writes encoded events through a large buffer straight to a file channel, only flushing when the buffer fills
+// or the file is closed, gzipped if asked for, and moves on to <name>.1.log, <name>.2.log etc. when the options
+// say to rotate. Files are appended to if they already exist, when rotating writing carries on from the last
+// rotated file and the size it already has counts towards the limit. If indexing, each file's LogIndex is built as events
+// are written and saved when the file is closed
+public class LogFileWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LogFileWriter.class);
+
+    public static final int BUFFER_SIZE = 256 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final Path basePath;
+    private final LogFileOptions options;
+    private final LogLineEncoder encoder;
+    private final ByteBuffer buffer;
+    private final List<Path> paths;
+    private final LogFetchMetrics metrics;
+
+    private FileChannel channel;
+    private OutputStream gzip;
+    private long bytesInFile;   // before compression
+    private Long firstEventInFile;
+    private long startOfFile;   // size of the file when opened, it may be appended to
+    private LogIndex.Builder index;
+    private int fileNumber = -1; // 0 for <name>.log, 1 for <name>.1.log etc.
+
+    public LogFileWriter(Path basePath, LogFileOptions options) {
+        this(basePath, options, new LogFetchMetrics());
+    }
+
+    public LogFileWriter(Path basePath, LogFileOptions options, LogFetchMetrics metrics) {
+        this.basePath = basePath;
+        this.options = options;
+        this.metrics = metrics;
+        encoder = new LogLineEncoder();
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        paths = new LinkedList<>();
+    }
+
+    // creates the first file even if there are no events to write
+    public void open() throws IOException {
+        if (channel==null) {
+            openNext();
+        }
+    }
+
+    public void write(OutputLogEventDecorator event) throws IOException {
+        if (channel==null || needsRotation(event)) {
+            openNext();
+        }
+        if (firstEventInFile==null) {
+            firstEventInFile = event.getTimestamp();
+        }
+        if (index!=null) {
+            index.add(startOfFile + bytesInFile, event.getTimestamp(), event.getStreamName());
+        }
+
+        int length = encoder.encode(event);
+        byte[] line = encoder.getLine();
+        if (length > buffer.remaining()) {
+            flushBuffer();
+        }
+        if (length > buffer.capacity()) {
+            writeOut(ByteBuffer.wrap(line, 0, length));
+        } else {
+            buffer.put(line, 0, length);
+        }
+        bytesInFile = bytesInFile + length;
+        metrics.eventWritten(length);
+    }
+
+    // the files written so far, in order
+    public List<Path> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    // uncompressed bytes written to the current file by this writer
+    public long getBytesInFile() {
+        return bytesInFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrent();
+    }
+
+    // for a compressed file that was appended to only its compressed size is known
+    private boolean needsRotation(OutputLogEventDecorator event) {
+        if (startOfFile + bytesInFile==0) {
+            return false;
+        }
+        if (options.rotatesBySize() && startOfFile + bytesInFile >= options.getMaxBytes()) {
+            return true;
+        }
+        Long timestamp = event.getTimestamp();
+        return options.rotatesByTime() && firstEventInFile!=null && timestamp!=null &&
+                (timestamp - firstEventInFile) >= options.getMaxSpan().toMillis();
+    }
+
+    private void openNext() throws IOException {
+        closeCurrent();
+        fileNumber = fileNumber<0 ? lastExisting() : fileNumber+1;
+        Path path = pathFor(fileNumber);
+        logger.info("Writing events to " + path.toAbsolutePath());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        if (options.isCompress()) {
+            gzip = new GZIPOutputStream(Channels.newOutputStream(channel), GZIP_BUFFER_SIZE);
+        }
+        paths.add(path);
+        bytesInFile = 0;
+        firstEventInFile = null;
+        startOfFile = channel.size();
+        index = options.isIndex() && !options.isCompress() ? startIndex(path) : null;
+    }
+
+    // an index can only be carried on if it covers all of the file so far, otherwise leave it to be rebuilt when
+    // the file is queried
+    private LogIndex.Builder startIndex(Path path) throws IOException {
+        if (startOfFile==0) {
+            return new LogIndex.Builder();
+        }
+        Optional<LogIndex> existing = LogIndex.load(path);
+        if (existing.isPresent() && existing.get().getLength()==startOfFile) {
+            return new LogIndex.Builder(existing.get());
+        }
+        logger.warn("No up to date index for " + path + ", it will be indexed when queried");
+        Files.deleteIfExists(LogIndex.pathFor(path));
+        return null;
+    }
+
+    private void closeCurrent() throws IOException {
+        if (channel==null) {
+            return;
+        }
+        try {
+            flushBuffer();
+            if (gzip!=null) {
+                gzip.close(); // also closes the channel
+            }
+        } finally {
+            channel.close();
+            channel = null;
+            gzip = null;
+        }
+        if (index!=null) {
+            Path path = paths.get(paths.size()-1);
+            index.build(startOfFile + bytesInFile).save(path);
+            index = null;
+        }
+        logger.debug(format("Closed %s after %s bytes", paths.get(paths.size()-1), bytesInFile));
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeOut(buffer);
+        buffer.clear();
+    }
+
+    private void writeOut(ByteBuffer bytes) throws IOException {
+        long from = System.nanoTime();
+        if (gzip!=null) {
+            gzip.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.position(bytes.limit());
+        } else {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        metrics.diskWrite(System.nanoTime() - from);
+    }
+
+    // so that a run carries on after the files written by earlier runs rather than starting again at <name>.log
+    private int lastExisting() throws IOException {
+        if (!options.rotatesBySize() && !options.rotatesByTime()) {
+            return 0;
+        }
+        int last = 0;
+        while (Files.exists(pathFor(last+1))) {
+            last++;
+        }
+        Path path = pathFor(last);
+        if (options.rotatesBySize() && Files.exists(path) && Files.size(path) >= options.getMaxBytes()) {
+            last++;
+        }
+        return last;
+    }
+
+    private Path pathFor(int index) {
+        String name = basePath.getFileName().toString();
+        if (index > 0) {
+            int dot = name.lastIndexOf('.');
+            name = dot > 0 ? format("%s.%s%s", name.substring(0, dot), index, name.substring(dot)) : name + "." + index;
+        }
+        if (options.isCompress()) {
+            name = name + ".gz";
+        }
+        return basePath.resolveSibling(name);
+    }
+}
@@ -0,0 +1,241 @@
+package tw.com.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.lang.String.format;
+
+// sparse index of a file of fetched log events, the file is split into blocks of about BLOCK_BYTES that start at an
+// event, for each block the offset and the earliest and latest event time are kept along with which blocks have
+// events for each stream, so a query only needs to read the blocks that could match. Kept next to the log file
+// as <file>.idx, and only valid while the log file is the length it records
+public class LogIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LogIndex.class);
+
+    public static final int BLOCK_BYTES = 64 * 1024;
+    private static final int MAGIC = 0x43464958;
+    private static final int VERSION = 1;
+    private static final int SCAN_CHUNK_BYTES = 256 * 1024 * 1024;
+
+    private final long length;
+    private final long[] offsets;
+    private final long[] earliest;
+    private final long[] latest;
+    private final Map<String, BitSet> streamBlocks;
+
+    private LogIndex(long length, long[] offsets, long[] earliest, long[] latest, Map<String, BitSet> streamBlocks) {
+        this.length = length;
+        this.offsets = offsets;
+        this.earliest = earliest;
+        this.latest = latest;
+        this.streamBlocks = streamBlocks;
+    }
+
+    public static Path pathFor(Path logFile) {
+        return logFile.resolveSibling(logFile.getFileName().toString() + ".idx");
+    }
+
+    public static Optional<LogIndex> load(Path logFile) {
+        Path path = pathFor(logFile);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt()!=MAGIC || input.readInt()!=VERSION) {
+                logger.warn("Ignoring index in an unknown format " + path);
+                return Optional.empty();
+            }
+            long length = input.readLong();
+            int blocks = input.readInt();
+            long[] offsets = new long[blocks];
+            long[] earliest = new long[blocks];
+            long[] latest = new long[blocks];
+            for (int block = 0; block < blocks; block++) {
+                offsets[block] = input.readLong();
+                earliest[block] = input.readLong();
+                latest[block] = input.readLong();
+            }
+            int streams = input.readInt();
+            Map<String, BitSet> streamBlocks = new HashMap<>(streams);
+            for (int stream = 0; stream < streams; stream++) {
+                String name = input.readUTF();
+                long[] words = new long[input.readInt()];
+                for (int word = 0; word < words.length; word++) {
+                    words[word] = input.readLong();
+                }
+                streamBlocks.put(name, BitSet.valueOf(words));
+            }
+            return Optional.of(new LogIndex(length, offsets, earliest, latest, streamBlocks));
+        } catch (IOException exception) {
+            logger.warn("Unable to read index " + path, exception);
+            return Optional.empty();
+        }
+    }
+
+    // builds an index by reading through an existing log file
+    public static LogIndex scan(Path logFile) throws IOException {
+        logger.info("Indexing " + logFile.toAbsolutePath());
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SCAN_CHUNK_BYTES, size - position));
+                int start = 0;
+                while (start < buffer.limit()) {
+                    int end = LogLineReader.endOfLine(buffer, start);
+                    if (buffer.get(end - 1)!='\n' && position + end < size) {
+                        break; // line runs into the next chunk
+                    }
+                    long timestamp = LogLineReader.timestampAt(buffer, start, end);
+                    if (timestamp!=LogLineReader.NO_TIMESTAMP) {
+                        builder.add(position + start, timestamp, LogLineReader.streamAt(buffer, start, end));
+                    }
+                    start = end;
+                }
+                if (start==0) {
+                    logger.warn(format("Line longer than %s bytes in %s", SCAN_CHUNK_BYTES, logFile));
+                    start = buffer.limit();
+                }
+                position = position + start;
+            }
+            return builder.build(size);
+        }
+    }
+
+    public void save(Path logFile) throws IOException {
+        Path path = pathFor(logFile);
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "index", ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(length);
+            output.writeInt(offsets.length);
+            for (int block = 0; block < offsets.length; block++) {
+                output.writeLong(offsets[block]);
+                output.writeLong(earliest[block]);
+                output.writeLong(latest[block]);
+            }
+            output.writeInt(streamBlocks.size());
+            for (Map.Entry<String, BitSet> entry : streamBlocks.entrySet()) {
+                output.writeUTF(entry.getKey());
+                long[] words = entry.getValue().toLongArray();
+                output.writeInt(words.length);
+                for (long word : words) {
+                    output.writeLong(word);
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean isCurrentFor(Path logFile) throws IOException {
+        return Files.size(logFile)==length;
+    }
+
+    // byte ranges, start inclusive and end exclusive, that hold every event from the stream (or any stream if not
+    // given) from the from time up to the to time, adjacent blocks are joined up to maxBytes
+    public List<long[]> rangesFor(long from, long to, Optional<String> streamName, long maxBytes) {
+        List<long[]> ranges = new LinkedList<>();
+        BitSet candidates = new BitSet(offsets.length);
+        if (streamName.isEmpty()) {
+            candidates.set(0, offsets.length);
+        } else if (streamBlocks.containsKey(streamName.get())) {
+            candidates.or(streamBlocks.get(streamName.get()));
+        }
+
+        for (int block = candidates.nextSetBit(0); block >= 0; block = candidates.nextSetBit(block + 1)) {
+            if (latest[block] < from || earliest[block] >= to) {
+                continue;
+            }
+            long start = offsets[block];
+            long end = block + 1 < offsets.length ? offsets[block + 1] : length;
+            long[] last = ranges.isEmpty() ? null : ranges.getLast();
+            if (last!=null && last[1]==start && (end - last[0]) <= maxBytes) {
+                last[1] = end;
+            } else {
+                ranges.add(new long[]{start, end});
+            }
+        }
+        return ranges;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getBlocks() {
+        return offsets.length;
+    }
+
+    public Set<String> getStreamNames() {
+        return Collections.unmodifiableSet(streamBlocks.keySet());
+    }
+
+    // add each event as it is written, in the order they are in the file
+    public static class Builder {
+        private long[] offsets;
+        private long[] earliest;
+        private long[] latest;
+        private int blocks;
+        private final Map<String, BitSet> streamBlocks;
+
+        public Builder() {
+            offsets = new long[64];
+            earliest = new long[64];
+            latest = new long[64];
+            blocks = 0;
+            streamBlocks = new HashMap<>();
+        }
+
+        // carry on from an index for the file before more events were appended
+        public Builder(LogIndex existing) {
+            int size = Math.max(64, existing.offsets.length * 2);
+            offsets = Arrays.copyOf(existing.offsets, size);
+            earliest = Arrays.copyOf(existing.earliest, size);
+            latest = Arrays.copyOf(existing.latest, size);
+            blocks = existing.offsets.length;
+            streamBlocks = new HashMap<>();
+            existing.streamBlocks.forEach((name, set) -> streamBlocks.put(name, (BitSet) set.clone()));
+        }
+
+        public void add(long offset, Long timestamp, String streamName) {
+            if (blocks==0 || offset - offsets[blocks - 1] >= BLOCK_BYTES) {
+                startBlock(offset);
+            }
+            int current = blocks - 1;
+            if (timestamp!=null) {
+                earliest[current] = Math.min(earliest[current], timestamp);
+                latest[current] = Math.max(latest[current], timestamp);
+            }
+            streamBlocks.computeIfAbsent(streamName, name -> new BitSet()).set(current);
+        }
+
+        public LogIndex build(long length) {
+            return new LogIndex(length, Arrays.copyOf(offsets, blocks), Arrays.copyOf(earliest, blocks),
+                    Arrays.copyOf(latest, blocks), streamBlocks);
+        }
+
+        private void startBlock(long offset) {
+            if (blocks==offsets.length) {
+                offsets = Arrays.copyOf(offsets, blocks * 2);
+                earliest = Arrays.copyOf(earliest, blocks * 2);
+                latest = Arrays.copyOf(latest, blocks * 2);
+            }
+            offsets[blocks] = offset;
+            earliest[blocks] = Long.MAX_VALUE;
+            latest[blocks] = Long.MIN_VALUE;
+            blocks++;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package tw.com.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static java.lang.String.format;
+
+// finds the events in a fetched log file within a time range, optionally from only one stream, using the file's
+// index to map only the blocks that could hold them. The index is (re)built if missing or out of date
+public class LogIndexQuery {
+    private static final Logger logger = LoggerFactory.getLogger(LogIndexQuery.class);
+
+    private static final long MAX_MAPPED_BYTES = 1024L * 1024 * 1024;
+
+    // writes the matching lines to output in the order they are in the file, from is inclusive and to exclusive,
+    // returns the number of events found
+    public long query(Path logFile, Instant from, Instant to, Optional<String> streamName, OutputStream output) throws IOException {
+        if (!Files.exists(logFile)) {
+            throw new IOException("No such log file " + logFile.toAbsolutePath());
+        }
+        LogIndex index = currentIndexFor(logFile);
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        byte[] stream = streamName.map(name -> name.getBytes(StandardCharsets.UTF_8)).orElse(null);
+
+        List<long[]> ranges = index.rangesFor(fromMillis, toMillis, streamName, MAX_MAPPED_BYTES);
+        logger.info(format("Reading %s ranges of %s for %s to %s", ranges.size(), logFile, from, to));
+
+        long found = 0;
+        byte[] line = new byte[4096];
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            for (long[] range : ranges) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+                boolean matching = false;
+                int start = 0;
+                while (start < buffer.limit()) {
+                    int end = LogLineReader.endOfLine(buffer, start);
+                    long timestamp = LogLineReader.timestampAt(buffer, start, end);
+                    if (timestamp!=LogLineReader.NO_TIMESTAMP) {
+                        matching = timestamp >= fromMillis && timestamp < toMillis &&
+                                (stream==null || LogLineReader.streamMatches(buffer, start, end, stream));
+                        if (matching) {
+                            found++;
+                        }
+                    }
+                    if (matching) { // including the rest of a multi line message
+                        int length = end - start;
+                        if (length > line.length) {
+                            line = new byte[Math.max(length, line.length * 2)];
+                        }
+                        buffer.get(start, line, 0, length);
+                        output.write(line, 0, length);
+                    }
+                    start = end;
+                }
+            }
+        }
+        output.flush();
+        return found;
+    }
+
+    private LogIndex currentIndexFor(Path logFile) throws IOException {
+        Optional<LogIndex> existing = LogIndex.load(logFile);
+        if (existing.isPresent() && existing.get().isCurrentFor(logFile)) {
+            return existing.get();
+        }
+        logger.info("No up to date index for " + logFile);
+        LogIndex index = LogIndex.scan(logFile);
+        try {
+            index.save(logFile);
+        } catch (IOException exception) {
+            logger.warn("Unable to save index for " + logFile, exception);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,127 @@
+package tw.com.providers;
+
+import tw.com.entity.OutputLogEventDecorator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// formats an event as "<ISO timestamp> <stream> <message>\n" straight into a reused byte array, the date part is
+// only rebuilt when the day changes and stream names are encoded once, so steady state encoding allocates nothing
+// for ascii messages. Not thread safe, one per writer
+public class LogLineEncoder {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final int TIMESTAMP_LENGTH = "2000-01-01T00:00:00.000Z".length();
+    private static final int MAX_CACHED_STREAMS = 10000;
+
+    private final Map<String, byte[]> streamNames;
+    private byte[] line;
+    private int length;
+
+    private long cachedDay;
+    private final byte[] datePart; // yyyy-MM-dd
+
+    public LogLineEncoder() {
+        streamNames = new HashMap<>();
+        line = new byte[4096];
+        datePart = new byte[10];
+        cachedDay = Long.MIN_VALUE;
+    }
+
+    // returns the number of bytes in the encoded line, see getLine
+    public int encode(OutputLogEventDecorator event) {
+        length = 0;
+        Long timestamp = event.getTimestamp();
+        if (timestamp!=null) {
+            ensureCapacity(TIMESTAMP_LENGTH + 1);
+            writeTimestamp(timestamp);
+            line[length++] = ' ';
+        }
+        byte[] stream = streamNames.get(event.getStreamName());
+        if (stream==null) {
+            stream = event.getStreamName().getBytes(StandardCharsets.UTF_8);
+            if (streamNames.size() < MAX_CACHED_STREAMS) {
+                streamNames.put(event.getStreamName(), stream);
+            }
+        }
+        ensureCapacity(stream.length + 1);
+        System.arraycopy(stream, 0, line, length, stream.length);
+        length = length + stream.length;
+        line[length++] = ' ';
+
+        writeMessage(event.getMessage());
+        ensureCapacity(1);
+        line[length++] = '\n';
+        return length;
+    }
+
+    // only valid until the next call to encode
+    public byte[] getLine() {
+        return line;
+    }
+
+    private void writeMessage(String message) {
+        if (message==null) {
+            return;
+        }
+        int size = message.length();
+        ensureCapacity(size);
+        for (int index = 0; index < size; index++) {
+            char c = message.charAt(index);
+            if (c >= 0x80) {
+                // not ascii, let the JDK encode the remainder
+                byte[] rest = message.substring(index).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(rest.length);
+                System.arraycopy(rest, 0, line, length, rest.length);
+                length = length + rest.length;
+                return;
+            }
+            line[length++] = (byte) c;
+        }
+    }
+
+    private void writeTimestamp(long epochMillis) {
+        long day = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        if (day!=cachedDay) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            writeDigits(datePart, 0, date.getYear(), 4);
+            datePart[4] = '-';
+            writeDigits(datePart, 5, date.getMonthValue(), 2);
+            datePart[7] = '-';
+            writeDigits(datePart, 8, date.getDayOfMonth(), 2);
+            cachedDay = day;
+        }
+        System.arraycopy(datePart, 0, line, length, datePart.length);
+        length = length + datePart.length;
+
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        line[length++] = 'T';
+        writeDigits(line, length, millisOfDay / 3_600_000, 2);
+        length = length + 2;
+        line[length++] = ':';
+        writeDigits(line, length, (millisOfDay / 60_000) % 60, 2);
+        length = length + 2;
+        line[length++] = ':';
+        writeDigits(line, length, (millisOfDay / 1000) % 60, 2);
+        length = length + 2;
+        line[length++] = '.';
+        writeDigits(line, length, millisOfDay % 1000, 3);
+        length = length + 3;
+        line[length++] = 'Z';
+    }
+
+    private void writeDigits(byte[] target, int offset, int value, int width) {
+        for (int index = offset + width - 1; index >= offset; index--) {
+            target[index] = (byte) ('0' + (value % 10));
+            value = value / 10;
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (length + needed > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + needed));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package tw.com.providers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+// reads back the lines written by LogLineEncoder straight from a (mapped) buffer. A line that does not start with
+// a timestamp is the rest of a multi line message, so belongs to the event before it
+class LogLineReader {
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final int TIMESTAMP_LENGTH = "2000-01-01T00:00:00.000Z".length();
+
+    private LogLineReader() {
+    }
+
+    // position of the start of the next line, or limit if this is the last one
+    static int endOfLine(ByteBuffer buffer, int start) {
+        int limit = buffer.limit();
+        for (int index = start; index < limit; index++) {
+            if (buffer.get(index)=='\n') {
+                return index + 1;
+            }
+        }
+        return limit;
+    }
+
+    // epoch millis of the event starting the line, or NO_TIMESTAMP if the line continues the previous event
+    static long timestampAt(ByteBuffer buffer, int start, int end) {
+        if (end - start <= TIMESTAMP_LENGTH || buffer.get(start + 4)!='-' || buffer.get(start + 10)!='T' ||
+                buffer.get(start + 23)!='Z' || buffer.get(start + TIMESTAMP_LENGTH)!=' ') {
+            return NO_TIMESTAMP;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hours = digits(buffer, start + 11, 2);
+        int minutes = digits(buffer, start + 14, 2);
+        int seconds = digits(buffer, start + 17, 2);
+        int millis = digits(buffer, start + 20, 3);
+        if (year < 0 || month < 1 || day < 1 || hours < 0 || minutes < 0 || seconds < 0 || millis < 0) {
+            return NO_TIMESTAMP;
+        }
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException notADate) {
+            return NO_TIMESTAMP;
+        }
+        return (epochDay * MILLIS_PER_DAY) + (hours * 3_600_000L) + (minutes * 60_000L) + (seconds * 1000L) + millis;
+    }
+
+    // the stream name follows the timestamp
+    static String streamAt(ByteBuffer buffer, int start, int end) {
+        int from = start + TIMESTAMP_LENGTH + 1;
+        int to = from;
+        while (to < end && buffer.get(to)!=' ' && buffer.get(to)!='\n') {
+            to++;
+        }
+        byte[] name = new byte[to - from];
+        buffer.get(from, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // true if the stream name following the timestamp is the one given, without creating a string
+    static boolean streamMatches(ByteBuffer buffer, int start, int end, byte[] streamName) {
+        int from = start + TIMESTAMP_LENGTH + 1;
+        if (from + streamName.length >= end || buffer.get(from + streamName.length)!=' ') {
+            return false;
+        }
+        for (int index = 0; index < streamName.length; index++) {
+            if (buffer.get(from + index)!=streamName[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int index = start; index < start + count; index++) {
+            int digit = buffer.get(index) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = (value * 10) + digit;
+        }
+        return value;
+    }
+}
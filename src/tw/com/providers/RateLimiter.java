@@ -0,0 +1,41 @@
+package tw.com.providers;
+
+import java.util.concurrent.TimeUnit;
+
+// token bucket, tokens refill continuously at the given rate up to the burst size, a caller that finds the
+// bucket empty takes a token on credit and sleeps until it would have been refilled, so callers queue up fairly
+public class RateLimiter {
+    private final double permitsPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        tokens = burst;
+        lastRefill = System.nanoTime();
+    }
+
+    public void acquire() {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for rate limit", interrupted);
+            }
+        }
+    }
+
+    // nanos the caller must wait before using the token it has taken
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + ((now - lastRefill) * permitsPerNano));
+        lastRefill = now;
+        tokens = tokens - 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+}
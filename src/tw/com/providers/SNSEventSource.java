@@ -1,26 +1,29 @@
 package tw.com.providers;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.cli.MissingArgumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sns.model.*;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.*;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
 import tw.com.NotificationProvider;
 import tw.com.entity.StackNotification;
 import tw.com.exceptions.FailedToCreateQueueException;
 import tw.com.exceptions.NotReadyException;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.time.Duration;
+import java.util.*;
 
 public class SNSEventSource extends QueuePolicyManager implements NotificationProvider {
 	private static final Logger logger = LoggerFactory.getLogger(SNSEventSource.class);
+	private static final ObjectMapper mapper = new ObjectMapper();
 
 	private static final int MAX_NUMBER_MSGS_TO_RECEIVE = 10;
 	private static final int QUEUE_READ_TIMEOUT_SECS = 20; // 20 is max allowed
@@ -30,16 +33,32 @@ public class SNSEventSource extends QueuePolicyManager implements NotificationPr
 	public static final String SQS_PROTO = "sqs";
 	private static final int QUEUE_CREATE_RETRYS = 3;
 	private static final long QUEUE_RETRY_INTERNAL_MILLIS = 70 * 1000;
+
+	// per run queues, tagged with a heartbeat so ones left behind by a run that died can be found and removed
+	public static final String RUN_QUEUE_PREFIX = "CFN_ASSIST_RUN_";
+	public static final String HEARTBEAT_TAG = "cfnassist-heartbeat";
+	private static final Duration HEARTBEAT_INTERVAL = Duration.ofMinutes(5);
+	public static final Duration ORPHANED_AFTER = Duration.ofHours(1);
 	
 	private SnsClient snsClient;
+	private final boolean queuePerRun;
 	private String queueURL;
 	private String topicSnsArn;
 	private String sqsQueueArn;
+	private String subscriptionArn;
+	private long lastHeartbeat;
 	private boolean init;
 	
 	public SNSEventSource(SnsClient snsClient, SqsClient sqsClient) {
+		this(snsClient, sqsClient, false);
+	}
+
+	// with queuePerRun a new queue is created and subscribed to the topic, so this run only competes with itself for
+	// messages, call deleteRunQueue when finished
+	public SNSEventSource(SnsClient snsClient, SqsClient sqsClient, boolean queuePerRun) {
 		super(sqsClient);
 		this.snsClient = snsClient;
+		this.queuePerRun = queuePerRun;
 		
 		init = false;
 	}
@@ -56,16 +75,119 @@ public class SNSEventSource extends QueuePolicyManager implements NotificationPr
 		}
 		logger.info("Init SNSMonitor");
 		topicSnsArn = getOrCreateSNSARN();
-		queueURL = getOrCreateQueue();
+		if (queuePerRun) {
+			deleteOrphanedRunQueues();
+			queueURL = createRunQueue();
+		} else {
+			queueURL = getOrCreateQueue();
+		}
 		
 		Map<QueueAttributeName, String> queueAttributes = getQueueAttributes(queueURL);
 		sqsQueueArn = queueAttributes.get(QueueAttributeName.QUEUE_ARN);
 		checkOrCreateQueuePermissions(queueAttributes, topicSnsArn, sqsQueueArn, queueURL);
 
-		String subscriptionArn = createOrGetSQSSubscriptionToSNS();
+		subscriptionArn = queuePerRun ? createNewSQSSubscriptionToSNS() : createOrGetSQSSubscriptionToSNS();
 		logger.info("Using subscription arn " + subscriptionArn);
 		init = true;
 	}
+
+	private String createRunQueue() {
+		String name = RUN_QUEUE_PREFIX + UUID.randomUUID().toString().replace("-", "");
+		logger.info("Create queue for this run with name " + name);
+		lastHeartbeat = System.currentTimeMillis();
+		CreateQueueRequest request = CreateQueueRequest.builder().queueName(name).
+				tags(Map.of(HEARTBEAT_TAG, Long.toString(lastHeartbeat))).build();
+		String url = sqsClient.createQueue(request).queueUrl();
+		logger.info("Created sqs queue URL:" + url);
+		return url;
+	}
+
+	// queues from other runs that have not had a heartbeat for a while, along with their subscriptions to the topic
+	public void deleteOrphanedRunQueues() {
+		long cutOff = System.currentTimeMillis() - ORPHANED_AFTER.toMillis();
+		String nextToken = null;
+		do {
+			ListQueuesResponse response = sqsClient.listQueues(ListQueuesRequest.builder().
+					queueNamePrefix(RUN_QUEUE_PREFIX).nextToken(nextToken).build());
+			for (String url : response.queueUrls()) {
+				try {
+					if (lastHeartbeatOf(url) < cutOff) {
+						logger.warn("Removing orphaned queue " + url);
+						deleteQueueAndSubscription(url, null);
+					}
+				}
+				catch (QueueDoesNotExistException alreadyGone) {
+					logger.info(String.format("Queue %s already removed", url));
+				}
+			}
+			nextToken = response.nextToken();
+		} while (nextToken!=null);
+	}
+
+	private long lastHeartbeatOf(String url) {
+		Map<String, String> tags = sqsClient.listQueueTags(ListQueueTagsRequest.builder().queueUrl(url).build()).tags();
+		try {
+			return Long.parseLong(tags.getOrDefault(HEARTBEAT_TAG, "0"));
+		}
+		catch (NumberFormatException unreadable) {
+			logger.warn(String.format("Unreadable heartbeat tag %s for queue %s", tags.get(HEARTBEAT_TAG), url));
+			return 0;
+		}
+	}
+
+	private void deleteQueueAndSubscription(String url, String knownSubscriptionArn) {
+		String subscription = knownSubscriptionArn;
+		if (subscription==null) {
+			String queueArn = sqsClient.getQueueAttributes(GetQueueAttributesRequest.builder().queueUrl(url).
+					attributeNames(QueueAttributeName.QUEUE_ARN).build()).attributes().get(QueueAttributeName.QUEUE_ARN);
+			subscription = findSubscriptionFor(queueArn);
+		}
+		if (subscription!=null) {
+			snsClient.unsubscribe(UnsubscribeRequest.builder().subscriptionArn(subscription).build());
+		}
+		sqsClient.deleteQueue(DeleteQueueRequest.builder().queueUrl(url).build());
+	}
+
+	private String findSubscriptionFor(String queueArn) {
+		String nextToken = null;
+		do {
+			ListSubscriptionsByTopicResponse response = snsClient.listSubscriptionsByTopic(ListSubscriptionsByTopicRequest.builder().
+					topicArn(topicSnsArn).nextToken(nextToken).build());
+			for (Subscription sub : response.subscriptions()) {
+				if (SQS_PROTO.equals(sub.protocol()) && sub.endpoint().equals(queueArn)) {
+					return sub.subscriptionArn();
+				}
+			}
+			nextToken = response.nextToken();
+		} while (nextToken!=null);
+		return null;
+	}
+
+	// safe to call more than once, on exit or after a failure
+	public synchronized void deleteRunQueue() {
+		if (!queuePerRun || queueURL==null) {
+			return;
+		}
+		logger.info("Removing queue for this run " + queueURL);
+		try {
+			deleteQueueAndSubscription(queueURL, subscriptionArn);
+		}
+		catch (SdkException exception) {
+			logger.warn("Unable to remove queue for this run, it will be removed by a later run", exception);
+		}
+		queueURL = null;
+		init = false;
+	}
+
+	private void heartbeat() {
+		long now = System.currentTimeMillis();
+		if (now - lastHeartbeat < HEARTBEAT_INTERVAL.toMillis()) {
+			return;
+		}
+		sqsClient.tagQueue(TagQueueRequest.builder().queueUrl(queueURL).
+				tags(Map.of(HEARTBEAT_TAG, Long.toString(now))).build());
+		lastHeartbeat = now;
+	}
 	
 	
 	private ReceiveMessageResponse receiveMessages() {
@@ -77,37 +199,51 @@ public class SNSEventSource extends QueuePolicyManager implements NotificationPr
 	@Override
 	public List<StackNotification> receiveNotifications() throws NotReadyException {
 		guardForInit();
+		if (queuePerRun) {
+			heartbeat();
+		}
 		List<StackNotification> notifications = new LinkedList<>();
 		ReceiveMessageResponse result = receiveMessages();
-		ObjectMapper objectMapper = new ObjectMapper();
 
 		List<Message> messages = result.messages();
 		logger.info(String.format("Received %s messages", messages.size()));
 
 		for(Message msg : messages) {
 			logger.debug(msg.toString());
-			JsonNode messageNode;
 			try {
-				messageNode = extractMessageNode(msg, objectMapper);
-				StackNotification notification = StackNotification.parseNotificationMessage(messageNode.textValue());
-				logger.info("Received notification for stackid: " + notification.getStackId());
-				notifications.add(notification);
-			} catch (ArrayIndexOutOfBoundsException | IOException e) {
+				String message = extractMessage(msg);
+				if (message==null) {
+					logger.warn("no Message in: " + msg);
+				} else {
+					StackNotification notification = StackNotification.parseNotificationMessage(message);
+					logger.info("Received notification for stackid: " + notification.getStackId());
+					notifications.add(notification);
+				}
+			} catch (IOException e) {
 				logger.warn("unable to parse message: " +msg);
 			} 
-			deleteMessage(msg);
-		}	
+		}
+		deleteMessages(messages);
 		return notifications;
 	}
 	
-	private JsonNode extractMessageNode(Message msg, ObjectMapper objectMapper)
-			throws IOException {
-		String json = msg.body();
-		
-		//logger.debug("Body json: " + json);
-		
-		JsonNode rootNode = objectMapper.readTree(json);
-		return rootNode.get("Message");
+	// only the Message field of the SNS envelope is needed, the rest (signature, cert url etc) is skipped over
+	// rather than built into a tree
+	private String extractMessage(Message msg) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(msg.body())) {
+			if (parser.nextToken()!=JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken()==JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("Message".equals(field) && value==JsonToken.VALUE_STRING) {
+					return parser.getText();
+				}
+				parser.skipChildren();
+			}
+			return null;
+		}
 	}
 	
 	private ReceiveMessageRequest createWaitRequest() {
@@ -204,10 +340,24 @@ public class SNSEventSource extends QueuePolicyManager implements NotificationPr
 		return null;
 	}
 
-	private void deleteMessage(Message msg) {
-		logger.info("Deleting message " + msg.receiptHandle());
-		sqsClient.deleteMessage(DeleteMessageRequest.builder().queueUrl(queueURL)
-				.receiptHandle(msg.receiptHandle()).build());
+	// one call for everything received, a receive returns at most MAX_NUMBER_MSGS_TO_RECEIVE which is also the
+	// most a batch delete accepts
+	private void deleteMessages(List<Message> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			entries.add(DeleteMessageBatchRequestEntry.builder().id(Integer.toString(i)).
+					receiptHandle(messages.get(i).receiptHandle()).build());
+		}
+		logger.info(String.format("Deleting %s messages", entries.size()));
+		DeleteMessageBatchResponse response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder().
+				queueUrl(queueURL).entries(entries).build());
+		for (BatchResultErrorEntry failed : response.failed()) {
+			logger.warn(String.format("Unable to delete message %s, code %s: %s",
+					messages.get(Integer.parseInt(failed.id())).messageId(), failed.code(), failed.message()));
+		}
 	}
 
 	@Override
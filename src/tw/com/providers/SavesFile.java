@@ -7,16 +7,11 @@ import tw.com.entity.OutputLogEventDecorator;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.OpenOption;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
@@ -24,10 +19,20 @@ import static java.lang.String.format;
 public class SavesFile {
     private static final Logger logger = LoggerFactory.getLogger(SavesFile.class);
     private Set<PosixFilePermission> permissionSet = new HashSet<>();
-    private OpenOption[] options = new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.APPEND,
-            StandardOpenOption.WRITE};
+    private final LogFileOptions logFileOptions;
+    private final LogFetchMetrics metrics;
 
     public SavesFile() {
+        this(LogFileOptions.defaults());
+    }
+
+    public SavesFile(LogFileOptions logFileOptions) {
+        this(logFileOptions, new LogFetchMetrics());
+    }
+
+    public SavesFile(LogFileOptions logFileOptions, LogFetchMetrics metrics) {
+        this.logFileOptions = logFileOptions;
+        this.metrics = metrics;
         permissionSet.add(PosixFilePermission.OWNER_READ);
         permissionSet.add(PosixFilePermission.OWNER_WRITE);
     }
@@ -51,19 +56,22 @@ public class SavesFile {
         Files.setPosixFilePermissions(filename, permissionSet);
     }
 
-    public boolean save(Path path, List<Stream<OutputLogEventDecorator>> fetchLogs) {
+    // returns the files written, more than one if the options rotate, or empty if the events could not be saved
+    public List<Path> saveLogs(Path path, Stream<OutputLogEventDecorator> events) {
         if (Files.exists(path)) {
             logger.warn(format("File '%s' already exists", path.toAbsolutePath().toString()));
         }
-        try {
-            logger.info("Writing events to " + path.toAbsolutePath());
-            PrintWriter printWriter = new PrintWriter(Files.newBufferedWriter(path, options), true);
-            fetchLogs.forEach(stream -> stream.forEach(item -> printWriter.println(item.toString())));
-            printWriter.close();
+        LogFileWriter writer = new LogFileWriter(path, logFileOptions, metrics);
+        try (writer) {
+            writer.open();
+            Iterator<OutputLogEventDecorator> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+            }
         } catch (IOException e) {
             logger.error("Unable to save to file " + path.toAbsolutePath(), e);
-            return false;
+            return Collections.emptyList();
         }
-        return true;
+        return writer.getPaths();
     }
 }
@@ -0,0 +1,128 @@
+package tw.com.providers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.lang.String.format;
+
+// how long stack operations have taken before, as a moving average per operation and stack name plus one per
+// operation across all stacks, kept in <file> so later runs can pace their status checks. Scoped like the stack
+// snapshots as <baseDir>/<account>/<region>/<project>/durations.json, so stacks with the same name elsewhere
+// don't affect each other
+public class StackDurationStore {
+    private static final Logger logger = LoggerFactory.getLogger(StackDurationStore.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String ANY_STACK = "*";
+    private static final int WINDOW = 10; // recent runs count for more, roughly the last WINDOW matter
+    private static final String DURATIONS_FILE = "durations.json";
+
+    private final Optional<Path> file;
+    private Map<String, Average> averages; // loaded on first use, guarded by this
+
+    public StackDurationStore(Path file) {
+        this(Optional.of(file));
+    }
+
+    public StackDurationStore(Path baseDir, String account, String region, String project) {
+        this(baseDir.resolve(StackSnapshotStore.safeName(account)).resolve(StackSnapshotStore.safeName(region)).
+                resolve(StackSnapshotStore.safeName(project)).resolve(DURATIONS_FILE));
+    }
+
+    private StackDurationStore(Optional<Path> file) {
+        this.file = file;
+    }
+
+    // when the account or project is not known, durations are only kept for this run
+    public static StackDurationStore notSaved() {
+        return new StackDurationStore(Optional.empty());
+    }
+
+    // for the stack if seen before, otherwise for the operation on any stack
+    public synchronized Optional<Duration> expected(String operation, String stackName) {
+        Average average = averages().get(key(operation, stackName));
+        if (average==null) {
+            average = averages().get(key(operation, ANY_STACK));
+        }
+        return average==null ? Optional.empty() : Optional.of(Duration.ofMillis(average.millis));
+    }
+
+    public synchronized void record(String operation, String stackName, Duration taken) {
+        update(key(operation, stackName), taken.toMillis());
+        update(key(operation, ANY_STACK), taken.toMillis());
+        save();
+    }
+
+    private void update(String key, long millis) {
+        Average average = averages().computeIfAbsent(key, unused -> new Average(0, 0));
+        long count = Math.min(average.count + 1, WINDOW);
+        average.millis = average.millis + (millis - average.millis) / count;
+        average.count = count;
+    }
+
+    private Map<String, Average> averages() {
+        if (averages==null) {
+            averages = load();
+        }
+        return averages;
+    }
+
+    private Map<String, Average> load() {
+        Map<String, Average> loaded = new HashMap<>();
+        if (file.isEmpty() || !Files.exists(file.get())) {
+            return loaded;
+        }
+        try {
+            mapper.readTree(file.get().toFile()).fields().forEachRemaining(field -> {
+                JsonNode value = field.getValue();
+                loaded.put(field.getKey(), new Average(value.path("millis").asLong(), value.path("count").asLong()));
+            });
+        } catch (IOException exception) {
+            logger.warn("Unable to read stack durations " + file.get(), exception);
+        }
+        return loaded;
+    }
+
+    private void save() {
+        if (file.isEmpty()) {
+            return;
+        }
+        Path path = file.get();
+        ObjectNode node = mapper.createObjectNode();
+        averages.forEach((key, average) -> node.putObject(key).put("millis", average.millis).put("count", average.count));
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "durations", ".tmp");
+            mapper.writeValue(temp.toFile(), node);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            logger.warn(format("Unable to save stack durations %s", path), exception);
+        }
+    }
+
+    private static String key(String operation, String stackName) {
+        return operation + ":" + stackName;
+    }
+
+    private static class Average {
+        private long millis;
+        private long count;
+
+        private Average(long millis, long count) {
+            this.millis = millis;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package tw.com.providers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.Output;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackResource;
+import software.amazon.awssdk.services.cloudformation.model.Tag;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.lang.String.format;
+
+// persists the project's stacks and their resources between invocations, layout is
+// <baseDir>/<account>/<region>/<project>/stacks.json and .../resources/<stackName>.json
+public class StackSnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(StackSnapshotStore.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String STACKS_FILE = "stacks.json";
+    private static final String RESOURCES_DIR = "resources";
+    private static final String SAVED_AT = "savedAt";
+
+    private final Path snapshotDir;
+    private final Duration timeToLive;
+    private final ProvidesNow providesNow;
+
+    public StackSnapshotStore(Path baseDir, String account, String region, String project,
+                              Duration timeToLive, ProvidesNow providesNow) {
+        this.snapshotDir = baseDir.resolve(safeName(account)).resolve(safeName(region)).resolve(safeName(project));
+        this.timeToLive = timeToLive;
+        this.providesNow = providesNow;
+    }
+
+    public static Path defaultLocation() {
+        return Paths.get(System.getProperty("user.home"), ".cfnassist", "cache");
+    }
+
+    public Optional<List<Stack>> loadStacks() {
+        Optional<JsonNode> snapshot = readIfFresh(snapshotDir.resolve(STACKS_FILE));
+        if (snapshot.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Stack> stacks = new LinkedList<>();
+        snapshot.get().get("stacks").forEach(node -> stacks.add(asStack(node)));
+        logger.info(format("Loaded %s stacks from snapshot %s", stacks.size(), snapshotDir));
+        return Optional.of(stacks);
+    }
+
+    public void saveStacks(List<Stack> stacks) {
+        ObjectNode root = createSnapshotNode();
+        ArrayNode array = root.putArray("stacks");
+        stacks.forEach(stack -> array.add(asNode(stack)));
+        write(snapshotDir.resolve(STACKS_FILE), root);
+        logger.info(format("Saved %s stacks to snapshot %s", stacks.size(), snapshotDir));
+    }
+
+    public Optional<List<StackResource>> loadResources(String stackName) {
+        Optional<JsonNode> snapshot = readIfFresh(resourcesFileFor(stackName));
+        if (snapshot.isEmpty()) {
+            return Optional.empty();
+        }
+        List<StackResource> resources = new LinkedList<>();
+        snapshot.get().get("resources").forEach(node -> resources.add(asResource(node)));
+        logger.debug(format("Loaded %s resources for stack %s from snapshot", resources.size(), stackName));
+        return Optional.of(resources);
+    }
+
+    public void saveResources(String stackName, List<StackResource> resources) {
+        ObjectNode root = createSnapshotNode();
+        ArrayNode array = root.putArray("resources");
+        resources.forEach(resource -> array.add(asNode(resource)));
+        write(resourcesFileFor(stackName), root);
+    }
+
+    // stack list is no longer accurate once a stack is created, updated or deleted
+    public void invalidate(String stackName) {
+        logger.info(format("Invalidate snapshot for stack %s", stackName));
+        FileUtils.deleteQuietly(snapshotDir.resolve(STACKS_FILE).toFile());
+        FileUtils.deleteQuietly(resourcesFileFor(stackName).toFile());
+    }
+
+    private Path resourcesFileFor(String stackName) {
+        return snapshotDir.resolve(RESOURCES_DIR).resolve(safeName(stackName) + ".json");
+    }
+
+    private ObjectNode createSnapshotNode() {
+        ObjectNode root = mapper.createObjectNode();
+        root.put(SAVED_AT, Instant.from(providesNow.getUTCNow()).toEpochMilli());
+        return root;
+    }
+
+    private Optional<JsonNode> readIfFresh(Path path) {
+        if (!Files.exists(path)) {
+            logger.debug("No snapshot at " + path);
+            return Optional.empty();
+        }
+        try {
+            JsonNode root = mapper.readTree(path.toFile());
+            Instant savedAt = Instant.ofEpochMilli(root.get(SAVED_AT).asLong());
+            Instant now = Instant.from(providesNow.getUTCNow());
+            if (savedAt.plus(timeToLive).isBefore(now)) {
+                logger.info(format("Snapshot %s has expired, saved at %s", path, savedAt));
+                return Optional.empty();
+            }
+            return Optional.of(root);
+        } catch (IOException | NullPointerException exception) {
+            logger.warn("Unable to read snapshot " + path, exception);
+            return Optional.empty();
+        }
+    }
+
+    private void write(Path path, JsonNode root) {
+        try {
+            Files.createDirectories(path.getParent());
+            // write then move so concurrent invocations never see a partial file
+            Path temp = Files.createTempFile(path.getParent(), "snapshot", ".tmp");
+            mapper.writeValue(temp.toFile(), root);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            logger.warn("Unable to save snapshot " + path, exception);
+        }
+    }
+
+    private ObjectNode asNode(Stack stack) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("stackName", stack.stackName());
+        node.put("stackId", stack.stackId());
+        node.put("stackStatus", stack.stackStatusAsString());
+        ArrayNode tags = node.putArray("tags");
+        stack.tags().forEach(tag -> tags.addObject().put("key", tag.key()).put("value", tag.value()));
+        ArrayNode outputs = node.putArray("outputs");
+        stack.outputs().forEach(output -> outputs.addObject().
+                put("outputKey", output.outputKey()).
+                put("outputValue", output.outputValue()).
+                put("description", output.description()));
+        return node;
+    }
+
+    private Stack asStack(JsonNode node) {
+        List<Tag> tags = new LinkedList<>();
+        node.get("tags").forEach(tag -> tags.add(Tag.builder().
+                key(tag.get("key").asText()).value(tag.get("value").asText()).build()));
+        List<Output> outputs = new LinkedList<>();
+        node.get("outputs").forEach(output -> outputs.add(Output.builder().
+                outputKey(textOrNull(output, "outputKey")).
+                outputValue(textOrNull(output, "outputValue")).
+                description(textOrNull(output, "description")).build()));
+        Stack.Builder builder = Stack.builder().
+                stackName(textOrNull(node, "stackName")).
+                stackId(textOrNull(node, "stackId")).
+                stackStatus(textOrNull(node, "stackStatus"));
+        if (!tags.isEmpty()) {
+            builder.tags(tags);
+        }
+        if (!outputs.isEmpty()) {
+            builder.outputs(outputs);
+        }
+        return builder.build();
+    }
+
+    private ObjectNode asNode(StackResource resource) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("stackName", resource.stackName());
+        node.put("stackId", resource.stackId());
+        node.put("logicalResourceId", resource.logicalResourceId());
+        node.put("physicalResourceId", resource.physicalResourceId());
+        node.put("resourceType", resource.resourceType());
+        node.put("resourceStatus", resource.resourceStatusAsString());
+        return node;
+    }
+
+    private StackResource asResource(JsonNode node) {
+        return StackResource.builder().
+                stackName(textOrNull(node, "stackName")).
+                stackId(textOrNull(node, "stackId")).
+                logicalResourceId(textOrNull(node, "logicalResourceId")).
+                physicalResourceId(textOrNull(node, "physicalResourceId")).
+                resourceType(textOrNull(node, "resourceType")).
+                resourceStatus(textOrNull(node, "resourceStatus")).build();
+    }
+
+    private String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return (value==null || value.isNull()) ? null : value.asText();
+    }
+
+    static String safeName(String name) {
+        return name.replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,92 @@
+package tw.com.providers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.TemplateParameter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.lang.String.format;
+
+// persists the parameters found by validating a template, keyed by the SHA-256 of the template body,
+// as the key is the content itself the entries never need to expire
+public class TemplateValidationStore {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateValidationStore.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Path storeDir;
+
+    public TemplateValidationStore(Path baseDir) {
+        this.storeDir = baseDir.resolve("templates");
+    }
+
+    public static String hashOf(String templateBody) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(templateBody.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 not available", exception);
+        }
+    }
+
+    public Optional<List<TemplateParameter>> load(String hash) {
+        Path path = storeDir.resolve(hash + ".json");
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try {
+            List<TemplateParameter> parameters = new LinkedList<>();
+            mapper.readTree(path.toFile()).forEach(node -> parameters.add(asParameter(node)));
+            logger.debug(format("Loaded %s parameters for template %s", parameters.size(), hash));
+            return Optional.of(parameters);
+        } catch (IOException exception) {
+            logger.warn("Unable to read validation result " + path, exception);
+            return Optional.empty();
+        }
+    }
+
+    public void save(String hash, List<TemplateParameter> parameters) {
+        ArrayNode array = mapper.createArrayNode();
+        parameters.forEach(parameter -> array.addObject().
+                put("parameterKey", parameter.parameterKey()).
+                put("defaultValue", parameter.defaultValue()).
+                put("noEcho", parameter.noEcho()).
+                put("description", parameter.description()));
+        Path path = storeDir.resolve(hash + ".json");
+        try {
+            Files.createDirectories(storeDir);
+            Path temp = Files.createTempFile(storeDir, "template", ".tmp");
+            mapper.writeValue(temp.toFile(), array);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            logger.warn("Unable to save validation result " + path, exception);
+        }
+    }
+
+    private TemplateParameter asParameter(JsonNode node) {
+        return TemplateParameter.builder().
+                parameterKey(textOrNull(node, "parameterKey")).
+                defaultValue(textOrNull(node, "defaultValue")).
+                noEcho(node.hasNonNull("noEcho") ? node.get("noEcho").asBoolean() : null).
+                description(textOrNull(node, "description")).build();
+    }
+
+    private String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return (value==null || value.isNull()) ? null : value.asText();
+    }
+}
@@ -12,8 +12,14 @@ import tw.com.StackCache;
 import tw.com.entity.*;
 import tw.com.exceptions.*;
 import tw.com.providers.CFNClient;
+import tw.com.providers.StackSnapshotStore;
+import tw.com.providers.TemplateValidationStore;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -29,23 +35,28 @@ public class CfnRepository implements CloudFormRepository {
     private final CFNClient formationClient;
 	private final CloudRepository cloudRepository;
 	private final StackCache stackCache;
+	private final StackStatusWatcher statusWatcher;
+	private final Optional<TemplateValidationStore> validationStore;
+	private final Map<String, List<TemplateParameter>> validatedTemplates;
 	
 	public CfnRepository(CFNClient formationClient, CloudRepository cloudRepository, String project) {
+		this(formationClient, cloudRepository, project, Optional.empty(), Optional.empty());
+	}
+
+	public CfnRepository(CFNClient formationClient, CloudRepository cloudRepository, String project,
+						 Optional<StackSnapshotStore> snapshots, Optional<TemplateValidationStore> validationStore) {
 		this.formationClient = formationClient;
 		this.cloudRepository = cloudRepository;
         this.project = project;
-		stackCache = new StackCache(formationClient, project);
+		this.validationStore = validationStore;
+		validatedTemplates = new ConcurrentHashMap<>();
+		stackCache = new StackCache(formationClient, project, snapshots);
+		statusWatcher = new StackStatusWatcher(formationClient, STATUS_CHECK_INTERVAL_MILLIS, MAX_CHECK_INTERVAL_MILLIS);
 	}
 
 	@Override
 	public List<StackEntry> getStacks(EnvironmentTag envTag) {
-		List<StackEntry> results = new LinkedList<>();
-		for(StackEntry entry : stackCache.getEntries()) {
-			if (entry.getEnvTag().equals(envTag)) {
-				results.add(entry);
-			}
-		}
-		return results;
+		return stackCache.getEntriesFor(envTag);
 	}
 
 	@Override
@@ -59,9 +70,9 @@ public class CfnRepository implements CloudFormRepository {
 	public List<StackEntry> getStacksMatching(EnvironmentTag envTag, String name) {
 		logger.info(format("Find stacks matching env %s and name %s", envTag, name));
 		List<StackEntry> results = new LinkedList<>();
-		for(StackEntry entry : stackCache.getEntries()) {
+		for(StackEntry entry : stackCache.getEntriesFor(envTag)) {
 			logger.debug("Check if entry matches " + entry);
-			if (entry.getEnvTag().equals(envTag) && entry.getBaseName().equals(name)) {
+			if (entry.getBaseName().equals(name)) {
 				results.add(entry);		
 			}
 		}
@@ -71,77 +82,48 @@ public class CfnRepository implements CloudFormRepository {
 	@Override
 	public String findPhysicalIdByLogicalId(EnvironmentTag envTag, String logicalId) {
 		logger.info(format("Looking for resource matching logicalID: %s for %s",logicalId, envTag));
-		List<StackEntry> stacks = getStacks(envTag);
-		for (StackEntry stackEntry : stacks) {
-			String stackName = stackEntry.getStackName();
-			logger.debug(format("Checking stack %s for logical id %s", stackName, logicalId));
-			String maybeHaveId = findPhysicalIdByLogicalId(envTag, stackName, logicalId);
-			if (maybeHaveId != null) {
-				logger.info(format(
-						"Found physicalID: %s for logical ID: %s in stack %s", maybeHaveId, logicalId, stackName));
-				return maybeHaveId;
-			}
+		List<LogicalIdIndex.Location> locations = stackCache.findByLogicalId(envTag, logicalId);
+		if (locations.isEmpty()) {
+			logger.warn("No match for logical ID was found");
+			return null;
 		}
-		logger.warn("No match for logical ID was found");
-		return null;
-	}
-
-	private String findPhysicalIdByLogicalId(EnvironmentTag envTag, String stackName, String logicalId) {
-		logger.info(format(
-                "Check Env %s and stack %s for logical ID %s", envTag,
-                stackName, logicalId));
-
-		try {
-			List<StackResource> resources = stackCache.getResourcesForStack(stackName);
-			logger.debug(format("Found %s resources for stack %s",
-					resources.size(), stackName));
-			for (StackResource resource : resources) {
-				String candidateId = resource.logicalResourceId();
-				String physicalResourceId = resource.physicalResourceId();
-				logger.debug(format("Checking for match against resource phyId=%s logId=%s",
-								physicalResourceId,
-								resource.logicalResourceId()));
-				if (candidateId.equals(logicalId)) {
-					return physicalResourceId;
+		if (locations.size()>1) {
+			logger.error(format("Logical ID %s is ambiguous for %s, found in %s", logicalId, envTag, locations));
+		}
+		// use the first stack in the env that has a match, as was done before the index existed
+		for (StackEntry stackEntry : getStacks(envTag)) {
+			for (LogicalIdIndex.Location location : locations) {
+				if (location.getStackName().equals(stackEntry.getStackName())) {
+					logger.info(format("Found physicalID: %s for logical ID: %s in stack %s",
+							location.getPhysicalId(), logicalId, location.getStackName()));
+					return location.getPhysicalId();
 				}
 			}
-		} catch (CloudFormationException exception) {
-			logger.warn("Unable to check for resources, stack name: " + stackName, exception);
 		}
-		return null;
+		return locations.get(0).getPhysicalId();
 	}
 
 	@Override
 	public StackStatus waitForStatusToChangeFrom(String stackName,
 											StackStatus currentStatus, List<StackStatus> aborts)
 			throws WrongNumberOfStacksException, InterruptedException {
-		
-		long pause = STATUS_CHECK_INTERVAL_MILLIS;
-
-		logger.info(format("Waiting for stack %s to change FROM status %s", stackName, currentStatus));
-		StackStatus status = currentStatus;
-		while (status.equals(currentStatus)) {
-			Thread.sleep(pause);
-
-			try {
-				status = formationClient.currentStatus(stackName);
-				logger.debug(format("Waiting for status of stack %s, status was %s, pause was %s",
-						stackName, status, pause));
-				if (pause < MAX_CHECK_INTERVAL_MILLIS) {
-					pause = pause + STATUS_CHECK_INTERVAL_MILLIS;
-				}
-				if (aborts.contains(status)) {
-					logger.error("Matched an abort status");
-					break;
-				}
-			}
-			catch (CloudFormationException exception) {
-				logger.warn("Caught exception while waiting for status change", exception);
-				break;
+		CompletableFuture<StackStatus> change = watchForStatusToChangeFrom(stackName, currentStatus, aborts);
+		try {
+			return change.get();
+		} catch (ExecutionException exception) {
+			if (exception.getCause() instanceof WrongNumberOfStacksException) {
+				throw (WrongNumberOfStacksException) exception.getCause();
 			}
+			throw new RuntimeException("Failed waiting for status of " + stackName, exception.getCause());
+		} finally {
+			change.cancel(false);
 		}
-		logger.info(format("Stack status changed, status is now %s", status));
-		return status;
+	}
+
+	@Override
+	public CompletableFuture<StackStatus> watchForStatusToChangeFrom(String stackName,
+											StackStatus currentStatus, List<StackStatus> aborts) {
+		return statusWatcher.watch(stackName, currentStatus, aborts);
 	}
 
 	@Override
@@ -149,6 +131,11 @@ public class CfnRepository implements CloudFormRepository {
 		return formationClient.describeStackEvents(stackName); 
 	}
 
+	@Override
+	public List<StackEvent> getStackEventsSince(String stackNameOrId, String lastSeenEventId, Instant notBefore) {
+		return formationClient.describeStackEventsSince(stackNameOrId, lastSeenEventId, notBefore);
+	}
+
 	@Override
 	public boolean stackExists(String stackName) {
 		logger.info("Check if stack exists for " + stackName);
@@ -158,20 +145,17 @@ public class CfnRepository implements CloudFormRepository {
 	@Override
 	public StackStatus getStackStatus(String stackName) throws WrongNumberOfStacksException {
 		logger.info("Getting stack status for " + stackName);
-		for (StackEntry entry : stackCache.getEntries()) {
-			Stack stack = entry.getStack();
-			if (stack.stackName().equals(stackName)) {
-				// get latest status
-				try {
-					return getStackCurrentStatus(stackName);
-				} catch (WrongNumberOfStacksException e) {
-					logger.warn("Mismatch on stack status", e);
-					return StackStatus.UNKNOWN_TO_SDK_VERSION;
-				} catch (CloudFormationException e) {
-					logger.warn("Could not check status of stack " +stackName,e);
-					if (e.statusCode()==400) {
-						return StackStatus.UNKNOWN_TO_SDK_VERSION; // stack does not exist, perhaps a delete was in progress
-					}
+		if (stackCache.getEntry(stackName).isPresent()) {
+			// get latest status
+			try {
+				return getStackCurrentStatus(stackName);
+			} catch (WrongNumberOfStacksException e) {
+				logger.warn("Mismatch on stack status", e);
+				return StackStatus.UNKNOWN_TO_SDK_VERSION;
+			} catch (CloudFormationException e) {
+				logger.warn("Could not check status of stack " +stackName,e);
+				if (e.statusCode()==400) {
+					return StackStatus.UNKNOWN_TO_SDK_VERSION; // stack does not exist, perhaps a delete was in progress
 				}
 			}
 		}
@@ -179,6 +163,19 @@ public class CfnRepository implements CloudFormRepository {
 		throw new WrongNumberOfStacksException(1,0);
 	}
 
+	@Override
+	public StackStatus getCurrentStackStatus(String stackNameOrId) throws WrongNumberOfStacksException {
+		try {
+			return getStackCurrentStatus(stackNameOrId);
+		} catch (CloudFormationException e) {
+			if (e.statusCode()==400) {
+				logger.warn("No such stack " + stackNameOrId);
+				throw new WrongNumberOfStacksException(1, 0);
+			}
+			throw e;
+		}
+	}
+
 	private StackStatus getStackCurrentStatus(String stackName)
 			throws WrongNumberOfStacksException {
 		Stack stack = formationClient.describeStack(stackName);
@@ -199,7 +196,10 @@ public class CfnRepository implements CloudFormRepository {
 	public List<String> getAllInstancesFor(SearchCriteria criteria) {
 		logger.info("Finding instances for " + criteria);
 		
-		List<StackEntry> stacks = criteria.matches(stackCache.getEntries());
+		List<StackEntry> candidates = criteria.getBuildNumber().
+				map(stackCache::getEntriesForBuild).
+				orElseGet(stackCache::getEntries);
+		List<StackEntry> stacks = criteria.matches(candidates);
 		
 		List<String> instanceIds = new LinkedList<>();
 		for (StackEntry entry : stacks) {
@@ -229,10 +229,9 @@ public class CfnRepository implements CloudFormRepository {
 
 	@Override
 	public Stack getStack(String stackName) throws WrongNumberOfStacksException {
-		for(StackEntry entry : stackCache.getEntries()) {
-			if (entry.getStackName().equals(stackName)) {
-				return entry.getStack();
-			}
+		Optional<StackEntry> entry = stackCache.getEntry(stackName);
+		if (entry.isPresent()) {
+			return entry.get().getStack();
 		}
 		// TODO we can only get here if stack is not tagged by cfn assist managed, should we throw?
 		return formationClient.describeStack(stackName);
@@ -240,13 +239,9 @@ public class CfnRepository implements CloudFormRepository {
 
     @Override
     public StackEntry getStacknameByIndex(EnvironmentTag envTag, Integer index) throws WrongNumberOfStacksException {
-        SearchCriteria criteriaForIndex = new SearchCriteria(new ProjectAndEnv(project, envTag.getEnv())).withIndex(index);
-
-        List<StackEntry> stacks = criteriaForIndex.matches(stackCache.getEntries());
+        List<StackEntry> stacks = stackCache.getEntriesForIndex(envTag, index);
         if (stacks.isEmpty()) {
-            SearchCriteria criteria = new SearchCriteria(new ProjectAndEnv(project, envTag.getEnv())).
-                    withUpdateIndex(index);
-            stacks = criteria.matches(stackCache.getEntries());
+            stacks = stackCache.getEntriesForUpdateIndex(envTag, index);
         }
         if (stacks.size()!=1) {
             throw new WrongNumberOfStacksException(1, stacks.size());
@@ -262,7 +257,22 @@ public class CfnRepository implements CloudFormRepository {
 	}
 
 	public List<TemplateParameter> validateStackTemplate(String templateBody) {
-		return formationClient.validateTemplate(templateBody);
+		String hash = TemplateValidationStore.hashOf(templateBody);
+		if (validatedTemplates.containsKey(hash)) {
+			logger.info("Template already validated, hash was " + hash);
+			return validatedTemplates.get(hash);
+		}
+		Optional<List<TemplateParameter>> stored = validationStore.flatMap(store -> store.load(hash));
+		if (stored.isPresent()) {
+			logger.info("Using stored validation for template, hash was " + hash);
+			validatedTemplates.put(hash, stored.get());
+			return stored.get();
+		}
+
+		List<TemplateParameter> parameters = formationClient.validateTemplate(templateBody);
+		validatedTemplates.put(hash, parameters);
+		validationStore.ifPresent(store -> store.save(hash, parameters));
+		return parameters;
 	}
 
 //	private CFNClient.DriftStatus getStackDrift(String name) throws InterruptedException {
@@ -310,6 +320,7 @@ public class CfnRepository implements CloudFormRepository {
 
 	@Override
 	public void deleteStack(String stackName) {
+		stackCache.invalidate(stackName);
 		formationClient.deleteStack(stackName);	
 	}
 
@@ -329,9 +340,11 @@ public class CfnRepository implements CloudFormRepository {
 	public Set<Instance> getAllInstancesMatchingType(SearchCriteria criteria, String typeTag) throws CfnAssistException {
 		Collection<String> instancesIds = getAllInstancesFor(criteria);
 		
+		Map<String, List<Tag>> tagsForInstances = cloudRepository.getTagsForInstances(instancesIds);
+
 		Set<Instance> instances = new HashSet<>();
 		for (String id : instancesIds) {
-			if (instanceHasCorrectType(typeTag, id)) {
+			if (hasCorrectType(typeTag, tagsForInstances.getOrDefault(id, Collections.emptyList()))) {
 				logger.info(format("Got instance %s matching %s %s",id, AwsFacade.TYPE_TAG, typeTag));
 				instances.add(Instance.builder().instanceId(id).build());
 			} else {
@@ -342,8 +355,7 @@ public class CfnRepository implements CloudFormRepository {
 		return instances;
 	}
 	
-	private boolean instanceHasCorrectType(String type, String id) throws WrongNumberOfInstancesException {
-		List<Tag> tags = cloudRepository.getTagsForInstance(id);
+	private boolean hasCorrectType(String type, List<Tag> tags) {
 		for(Tag tag : tags) {
 			if (tag.key().equals(AwsFacade.TYPE_TAG)) {
 				return tag.value().equals(type);
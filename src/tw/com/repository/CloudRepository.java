@@ -4,7 +4,6 @@ import software.amazon.awssdk.services.ec2.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tw.com.exceptions.CfnAssistException;
-import tw.com.exceptions.WrongNumberOfInstancesException;
 import tw.com.providers.CloudClient;
 import tw.com.providers.SavesFile;
 
@@ -22,40 +21,45 @@ public class CloudRepository {
 
 	private CloudClient cloudClient;
 	
-	private Map<String,Subnet> subnetsCache = null; // id -> Subnet
+	// the caches below are loaded on first use and only read or loaded while holding the lock on this repository,
+	// as templates in a folder may be applied concurrently
+	// per VPC data is fetched from EC2 filtered by VPC the first time that VPC is asked for
+	private final VpcPartitions<Subnet> subnets;
+	private final VpcPartitions<Instance> instances;
+	private final VpcPartitions<RouteTable> routeTables;
+	private final VpcPartitions<NetworkAcl> acls;
+
 	private List<Address> addressCache = null;
-	private List<SecurityGroup> groupsCache = null;
-	private List<Instance> instancesCache = null;
-	private List<RouteTable> routeTableCache = null;
-	private List<NetworkAcl> aclsCache = null;
+	private Map<String,SecurityGroup> groupsById = null; // id -> SecurityGroup
+	private Map<String,SecurityGroup> groupsByName = null; // name -> SecurityGroup
 	private Map<String, AvailabilityZone> zones = null;
 
-	private Map<String,String> subnetToVpc; // subnet id -> vpc id
-	private Map<String,String> instanceToVpc; // instance id -> vpc id
+	private final Map<String,Subnet> subnetsById; // id -> Subnet
+	private final Map<String,String> subnetToVpc; // subnet id -> vpc id
+	private final Map<String,Instance> instancesById; // instance id -> Instance, from all loads and batch lookups
+	private final Map<String,Map<String,Instance>> instancesBySubnet; // subnet id -> (instance id -> Instance)
 
 	public CloudRepository(CloudClient cloudClient) {
 		this.cloudClient = cloudClient;
+		subnetsById = new HashMap<>();
 		subnetToVpc = new HashMap<>();
-		instanceToVpc = new HashMap<>();
-	}
-
-	public List<Subnet> getSubnetsForVpc(String vpcId) {
-		loadSubnets();	
-		List<Subnet> filtered = new LinkedList<>();
-		for (Subnet subnet : subnetsCache.values()) {
-			String subnetVpcId = subnet.vpcId();
-			if (subnetVpcId!=null) {
-				if (subnetVpcId.equals(vpcId)) {
-					filtered.add(subnet);
-				}
-			}
-		}
-		return filtered;
+		instancesById = new HashMap<>();
+		instancesBySubnet = new HashMap<>();
+		subnets = new VpcPartitions<>(cloudClient::getSubnetsForVpc, Subnet::vpcId, this::indexSubnet);
+		instances = new VpcPartitions<>(cloudClient::getInstancesForVpc, Instance::vpcId, this::indexInstance);
+		routeTables = new VpcPartitions<>(cloudClient::getRouteTablesForVpc, RouteTable::vpcId, table -> {});
+		acls = new VpcPartitions<>(cloudClient::getACLsForVpc, NetworkAcl::vpcId, acl -> {});
+	}
+
+	public synchronized List<Subnet> getSubnetsForVpc(String vpcId) {
+		return subnets.forVpc(vpcId);
 	}
 
-	public Subnet getSubnetById(String subnetId) {
-		loadSubnets();
-		return subnetsCache.get(subnetId);
+	public synchronized Subnet getSubnetById(String subnetId) {
+		if (!subnetsById.containsKey(subnetId) && !subnets.isAllLoaded()) {
+			subnets.loadedAll(cloudClient.getAllSubnets());
+		}
+		return subnetsById.get(subnetId);
 	}
 
 	public List<Vpc> getAllVpcs() {
@@ -63,124 +67,103 @@ public class CloudRepository {
 		return cloudClient.getVpcs();
 	}
 
-	public List<Instance> getInstancesForSubnet(String subnetId) {
-		loadInstances();
-		List<Instance> result = new LinkedList<>();
-
-		for(Instance i : instancesCache) {	
-			String instanceSubnetId = i.subnetId();
-			if (instanceSubnetId!=null) {
-				if (instanceSubnetId.equals(subnetId)) {
-					result.add(i);
-				}
-			}
+	public synchronized List<Instance> getInstancesForSubnet(String subnetId) {
+		String vpcId = subnetToVpc.get(subnetId);
+		if (vpcId==null) {
+			loadAllInstances();
+		} else {
+			instances.forVpc(vpcId);
 		}
-		return result;
+		return new LinkedList<>(instancesBySubnet.getOrDefault(subnetId, Collections.emptyMap()).values());
 	}
 
-	public SecurityGroup getSecurityGroupByName(String groupName) throws CfnAssistException {
+	public synchronized SecurityGroup getSecurityGroupByName(String groupName) throws CfnAssistException {
 		loadGroups();
-		for(SecurityGroup group : groupsCache) {
-			if (group.groupName().equals(groupName)) {
-				return group;
-			}
+		SecurityGroup group = groupsByName.get(groupName);
+		if (group==null) {
+			throw new CfnAssistException(format("Failed to find SecurityGroup with name '%s'", groupName));
 		}
-		throw new CfnAssistException(format("Failed to find SecurityGroup with name '%s'", groupName));
+		return group;
 	}
 
-	public SecurityGroup getSecurityGroupById(String groupId) throws CfnAssistException {
+	public synchronized SecurityGroup getSecurityGroupById(String groupId) throws CfnAssistException {
 		loadGroups();
-		for(SecurityGroup group : groupsCache) {
-			if (group.groupId().equals(groupId)) {
-				return group;
-			}
+		SecurityGroup group = groupsById.get(groupId);
+		if (group==null) {
+			throw new CfnAssistException(format("Failed to find SecurityGroup with id '%s'", groupId));
 		}
-		throw new CfnAssistException(format("Failed to find SecurityGroup with id '%s'", groupId));
+		return group;
 	}
 
-	public Instance getInstanceById(String instanceId) throws CfnAssistException {
-		loadInstances();
-		for(Instance i : instancesCache) {
-			if (i.instanceId().equals(instanceId)) {
-				return i;
-			}
+	public synchronized Instance getInstanceById(String instanceId) throws CfnAssistException {
+		if (!instancesById.containsKey(instanceId)) {
+			loadAllInstances();
+		}
+		Instance instance = instancesById.get(instanceId);
+		if (instance==null) {
+			throw new CfnAssistException(format("Failed to find Instance with id '%s'", instanceId));
 		}
-		throw new CfnAssistException(format("Failed to find Instance with id '%s'", instanceId));
+		return instance;
 	}
 
-	public List<Address> getEIPForVPCId(String vpcId) throws CfnAssistException {
+	public synchronized List<Address> getEIPForVPCId(String vpcId) throws CfnAssistException {
 		loadAddresses();
 		
-		// find the instance each address is associated with and then check the VPC ID on the instance
+		// addresses are not tagged with a VPC, so match them against the instances in the VPC
+		Set<String> instanceIds = new HashSet<>();
+		instances.forVpc(vpcId).forEach(instance -> instanceIds.add(instance.instanceId()));
+
 		List<Address> filtered = new LinkedList<>();
 		for(Address address : addressCache) {
 			String instanceId = address.instanceId();
-			if (instanceId!=null) {
-				String instanceVpcId = getVpcIdForInstance(instanceId);
-				if (instanceVpcId.equals(vpcId)) {
-					filtered.add(address);
-				}
+			if (instanceId!=null && instanceIds.contains(instanceId)) {
+				filtered.add(address);
 			}
 		}
 		return filtered;
 	}
 
-	
-	private String getVpcIdForInstance(String instanceId) throws CfnAssistException {
-		if (!instanceToVpc.containsKey(instanceId)) {
-			Instance instance = getInstanceById(instanceId);
-			String instanceVpc = instance.vpcId();
-			//String instanceVpc = getVpcForSubnet(instance.getSubnetId());
-			instanceToVpc.put(instanceId, instanceVpc);	
-		}			
-		return instanceToVpc.get(instanceId);
-	}
-
-	public List<NetworkAcl> getALCsForVPC(String vpcId) {
-		loadACLs();
-		List<NetworkAcl> result = new LinkedList<>();
-		for (NetworkAcl acl : aclsCache) {
-			if (acl.vpcId().equals(vpcId)) {
-				result.add(acl);
-			}
-		}
-		return result;
+	public synchronized List<NetworkAcl> getALCsForVPC(String vpcId) {
+		return acls.forVpc(vpcId);
 	}
 
-	public List<RouteTable> getRouteTablesForVPC(String vpcId) {
-		loadRouteTables();
-		List<RouteTable> result = new LinkedList<>();
-
-		for(RouteTable table : routeTableCache) {
-			if (table.vpcId().equals(vpcId)) {
-				result.add(table);
-			}
-		}
-		return result;
-	}
-	
-	private void loadRouteTables() {
-		if (routeTableCache==null) {
-			routeTableCache = cloudClient.getRouteTables();
-		}	
+	public synchronized List<RouteTable> getRouteTablesForVPC(String vpcId) {
+		return routeTables.forVpc(vpcId);
 	}
 
 	private void loadGroups() {
-		if (groupsCache==null) {
-			groupsCache = cloudClient.getSecurityGroups();
+		if (groupsById==null) {
+			List<SecurityGroup> groups = cloudClient.getSecurityGroups();
+			groupsById = new HashMap<>();
+			groupsByName = new HashMap<>();
+			for (SecurityGroup group : groups) {
+				groupsById.put(group.groupId(), group);
+				// names are only unique within a VPC, the first one found wins
+				groupsByName.putIfAbsent(group.groupName(), group);
+			}
 		}	
 	}
 	
-	private void loadInstances() {
-		if (instancesCache==null) {
-			instancesCache = cloudClient.getInstances();
+	private void loadAllInstances() {
+		if (!instances.isAllLoaded()) {
+			instances.loadedAll(cloudClient.getInstances());
 		}		
 	}
-	
-	private void loadACLs() {
-		if (aclsCache==null) {
-			aclsCache = cloudClient.getACLs();
-		}	
+
+	private void indexInstance(Instance instance) {
+		instancesById.put(instance.instanceId(), instance);
+		String subnetId = instance.subnetId();
+		if (subnetId!=null) {
+			instancesBySubnet.computeIfAbsent(subnetId, missing -> new LinkedHashMap<>()).put(instance.instanceId(), instance);
+		}
+	}
+
+	private void indexSubnet(Subnet subnet) {
+		subnetsById.put(subnet.subnetId(), subnet);
+		String vpc = subnet.vpcId();
+		if (vpc!=null) {
+			subnetToVpc.put(subnet.subnetId(), vpc);
+		}
 	}
 	
 	private void loadAddresses() {
@@ -189,21 +172,6 @@ public class CloudRepository {
 		}
 	}
 	
-	private void loadSubnets() {
-		if (subnetsCache==null) {	
-			
-			List<Subnet> results = cloudClient.getAllSubnets();
-			subnetsCache = new HashMap<>();
-			for(Subnet subnet : results) {
-				subnetsCache.put(subnet.subnetId(), subnet);
-				String vpc = subnet.vpcId();
-				if (vpc!=null) {
-					subnetToVpc.put(subnet.subnetId(), vpc);
-				}
-			}
-		}
-	}
-
     public void updateAddIpsAndPortToSecGroup(String groupId, List<InetAddress> addresses, Integer port) {
         cloudClient.addIpsToSecGroup(groupId, port, addresses);
     }
@@ -212,12 +180,35 @@ public class CloudRepository {
 		cloudClient.deleteIpFromSecGroup(groupId, port, addresses);
 	}
 
-	public List<Tag> getTagsForInstance(String instanceId) throws WrongNumberOfInstancesException {
-		Instance instance = cloudClient.getInstanceById(instanceId);
-		return instance.tags();
+	// id -> tags, only instances not already cached are described and those are fetched together in chunks,
+	// ids that could not be found are not included in the result
+	public synchronized Map<String, List<Tag>> getTagsForInstances(Collection<String> instanceIds) {
+		Map<String, List<Tag>> result = new HashMap<>();
+		getInstancesById(instanceIds).forEach((instanceId, instance) -> result.put(instanceId, instance.tags()));
+		return result;
+	}
+
+	// id -> instance, in the order given, described in batches filtered by id rather than loading every instance
+	// in the region, ids that could not be found are not included in the result
+	public synchronized Map<String, Instance> getInstancesById(Collection<String> instanceIds) {
+		List<String> missing = instanceIds.stream().filter(id -> !instancesById.containsKey(id)).distinct().toList();
+		if (!missing.isEmpty()) {
+			cloudClient.getInstancesById(missing).forEach(instance -> instancesById.put(instance.instanceId(), instance));
+		}
+
+		Map<String, Instance> result = new LinkedHashMap<>();
+		for (String instanceId : instanceIds) {
+			Instance instance = instancesById.get(instanceId);
+			if (instance==null) {
+				logger.warn(format("Could not find instance with id '%s'", instanceId));
+			} else {
+				result.put(instanceId, instance);
+			}
+		}
+		return result;
 	}
 
-	public Map<String, AvailabilityZone> getZones() {
+	public synchronized Map<String, AvailabilityZone> getZones() {
 		initAvailabilityZones();
 		return zones;
 	}
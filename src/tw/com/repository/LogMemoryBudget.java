@@ -0,0 +1,73 @@
+package tw.com.repository;
+
+import tw.com.entity.OutputLogEventDecorator;
+
+import java.util.function.BooleanSupplier;
+
+// caps the estimated size of the log events read ahead and waiting to be merged, shared by every merge of a fetch
+// so concurrent groups stay within the same ceiling. Also sizes the pages asked for from CloudWatch, as every
+// stream being merged holds one page while its events are handed over
+public class LogMemoryBudget {
+    public static final long DEFAULT_CEILING = 64L * 1024 * 1024;
+    public static final int EVENT_OVERHEAD_BYTES = 128; // event, decorator and queue slot
+    public static final int ESTIMATED_EVENT_BYTES = 512;
+    public static final int MIN_EVENTS_PER_PAGE = 50;
+    public static final int MAX_EVENTS_PER_PAGE = 10000; // the most GetLogEvents will return
+
+    private final long ceiling;
+    private long used;
+    private long peak;
+
+    public LogMemoryBudget(long ceiling) {
+        this.ceiling = ceiling;
+    }
+
+    public static long estimate(OutputLogEventDecorator event) {
+        String message = event.getMessage();
+        return EVENT_OVERHEAD_BYTES + (message==null ? 0 : message.length());
+    }
+
+    // waits up to timeoutMillis for space, always succeeds once force is true or nothing else is held so one large
+    // event cannot block a merge forever, force is checked again each time the budget is released or woken
+    public synchronized boolean tryAcquire(long bytes, BooleanSupplier force, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (used > 0 && used + bytes > ceiling && !force.getAsBoolean()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        used = used + bytes;
+        peak = Math.max(peak, used);
+        return true;
+    }
+
+    public synchronized void release(long bytes) {
+        used = used - bytes;
+        notifyAll();
+    }
+
+    // for when whatever force depends on has changed
+    public synchronized void wake() {
+        notifyAll();
+    }
+
+    // page size so that one page from each of the streams fits within the ceiling
+    public int eventsPerPage(int streams) {
+        long perStream = ceiling / ((long) Math.max(1, streams) * ESTIMATED_EVENT_BYTES);
+        return (int) Math.max(MIN_EVENTS_PER_PAGE, Math.min(MAX_EVENTS_PER_PAGE, perStream));
+    }
+
+    public long getCeiling() {
+        return ceiling;
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    public synchronized long getPeak() {
+        return peak;
+    }
+}
@@ -4,9 +4,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.cloudwatchlogs.model.LogStream;
 import tw.com.AwsFacade;
+import tw.com.entity.LogCheckpoint;
+import tw.com.entity.LogPurgeSummary;
 import tw.com.entity.OutputLogEventDecorator;
 import tw.com.entity.ProjectAndEnv;
+import tw.com.providers.LogCheckpointStore;
 import tw.com.providers.LogClient;
+import tw.com.providers.LogFetchMetrics;
 import tw.com.providers.ProvidesNow;
 import tw.com.providers.SavesFile;
 
@@ -16,6 +20,12 @@ import java.nio.file.Paths;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -27,14 +37,43 @@ public class LogRepository {
     private final LogClient logClient;
     private final ProvidesNow providesNow;
     private final SavesFile savesFile;
+    private final Optional<LogCheckpointStore> checkpointStore;
+    private final LogStreamPurger purger;
+    private final LogMemoryBudget memoryBudget;
+    private final LogFetchMetrics metrics;
 
     List<String> required = Arrays.asList(AwsFacade.ENVIRONMENT_TAG, AwsFacade.PROJECT_TAG);
     private String fileSeperator;
 
     public LogRepository(LogClient logClient, ProvidesNow providesNow, SavesFile savesFile) {
+        this(logClient, providesNow, savesFile, Optional.empty());
+    }
+
+    // with a checkpoint store each fetch only gets events newer than those already saved, and appends them
+    // to <group>.log rather than creating a new file
+    public LogRepository(LogClient logClient, ProvidesNow providesNow, SavesFile savesFile,
+                         Optional<LogCheckpointStore> checkpointStore) {
+        this(logClient, providesNow, savesFile, checkpointStore, new LogMemoryBudget(LogMemoryBudget.DEFAULT_CEILING));
+    }
+
+    // the budget caps the events read ahead across all the groups being fetched at once
+    public LogRepository(LogClient logClient, ProvidesNow providesNow, SavesFile savesFile,
+                         Optional<LogCheckpointStore> checkpointStore, LogMemoryBudget memoryBudget) {
+        this(logClient, providesNow, savesFile, checkpointStore, memoryBudget, new LogFetchMetrics());
+    }
+
+    // metrics should be the same as given to the client and the saves file, so one fetch is reported as a whole
+    public LogRepository(LogClient logClient, ProvidesNow providesNow, SavesFile savesFile,
+                         Optional<LogCheckpointStore> checkpointStore, LogMemoryBudget memoryBudget,
+                         LogFetchMetrics metrics) {
         this.logClient = logClient;
         this.providesNow = providesNow;
         this.savesFile = savesFile;
+        this.checkpointStore = checkpointStore;
+        purger = new LogStreamPurger(logClient);
+        this.memoryBudget = memoryBudget;
+        this.metrics = metrics;
+        metrics.setBufferedBytes(memoryBudget::getUsed);
         fileSeperator = File.separator;
     }
 
@@ -54,22 +93,13 @@ public class LogRepository {
         return matched;
     }
 
-    public void removeOldStreamsFor(String groupName, Duration duration) {
+    public LogPurgeSummary removeOldStreamsFor(String groupName, Duration duration, boolean dryRun) {
         ZonedDateTime timestamp = providesNow.getUTCNow();
         long when = timestampFromDuration(duration, timestamp);
 
         logger.info(format("Remove streams from group %s if older than %s (%s)", groupName, duration, when));
 
-        List<LogStream> streams = logClient.getStreamsFor(groupName, when);
-
-        streams.stream().
-                filter(logStream -> (logStream.lastEventTimestamp()<when))
-                .forEach(oldStream -> {
-                    LocalDateTime last = LocalDateTime.ofInstant(Instant.ofEpochMilli(oldStream.lastEventTimestamp()), ZoneId.systemDefault());
-                    String streamName = oldStream.logStreamName();
-                    logger.info(format("Deleting stream %s from group %s, last event was %s", streamName, groupName, last));
-                    logClient.deleteLogStream(groupName, streamName);
-        });
+        return purger.purge(groupName, when, dryRun);
     }
 
     public void tagCloudWatchLog(ProjectAndEnv projectAndEnv, String groupToTag) {
@@ -82,6 +112,16 @@ public class LogRepository {
     }
 
     public List<Path> fetchLogs(ProjectAndEnv projectAndEnv, Duration duration) {
+        return fetchLogs(projectAndEnv, duration, Optional.empty());
+    }
+
+    // only events matching the CloudWatch filter pattern are fetched, always over the whole window, checkpoints are
+    // not used or updated as they record every event saved from a stream
+    public List<Path> searchLogs(ProjectAndEnv projectAndEnv, Duration duration, String filterPattern) {
+        return fetchLogs(projectAndEnv, duration, Optional.of(filterPattern));
+    }
+
+    private List<Path> fetchLogs(ProjectAndEnv projectAndEnv, Duration duration, Optional<String> filterPattern) {
         List<Path> filenames = new LinkedList<>();
         ZonedDateTime timestamp = providesNow.getUTCNow();
         long when = timestampFromDuration(duration, timestamp);
@@ -97,37 +137,141 @@ public class LogRepository {
 
         logger.info("Matched groups " + groupNames);
 
-        groupNames.forEach(groupName -> {
-            List<LogStream> streamsForGroup = logClient.getStreamsFor(groupName, when);
+        int parallelism = Math.min(projectAndEnv.getLogParallelism(), groupNames.size());
+        if (parallelism>1) {
+            filenames.addAll(fetchGroupsConcurrently(projectAndEnv, groupNames, when, timestamp, filterPattern, parallelism));
+        } else {
+            groupNames.forEach(groupName -> filenames.addAll(fetchGroup(projectAndEnv, groupName, when, timestamp, filterPattern)));
+        }
+
+        return filenames;
+    }
 
-            // todo is comparing needed, should be in time order already?
-            List<String> streamNames = streamsForGroup.stream().
-                    filter(stream -> stream.lastEventTimestamp()>=when).         // if within time window
-                    sorted(Comparator.comparing(LogStream::lastEventTimestamp))  // and in time order
-                    .map(LogStream::logStreamName).
-                    collect(Collectors.toList());
+    // each group is listed, downloaded and written by one worker, calls to CloudWatch are rate limited by the LogClient
+    private List<Path> fetchGroupsConcurrently(ProjectAndEnv projectAndEnv, List<String> groupNames, long when,
+                                               ZonedDateTime timestamp, Optional<String> filterPattern,
+                                               int parallelism) {
+        logger.info(format("Fetching %s groups using %s workers", groupNames.size(), parallelism));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<List<Path>>> pending = new LinkedList<>();
+            groupNames.forEach(groupName -> pending.add(executor.submit(() -> fetchGroup(projectAndEnv, groupName, when, timestamp, filterPattern))));
 
-            logger.info(format("Got %s streams with events in scope for group %s", streamNames.size(), groupName));
+            List<Path> filenames = new LinkedList<>();
+            for (Future<List<Path>> future : pending) {
+                filenames.addAll(future.get());
+            }
+            return filenames;
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to fetch logs", exception.getCause());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted fetching logs", interrupted);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            List<Stream<OutputLogEventDecorator>> fetchLogs = logClient.fetchLogs(groupName, streamNames, when);
+    private List<Path> fetchGroup(ProjectAndEnv projectAndEnv, String groupName, long when, ZonedDateTime timestamp,
+                                  Optional<String> filterPattern) {
+        try {
+            return fetchGroupEvents(projectAndEnv, groupName, when, timestamp, filterPattern);
+        } finally {
+            metrics.groupFetched();
+        }
+    }
 
-            Path path = formFilenameFor(groupName,timestamp);
-            filenames.add(path);
-            if (!savesFile.save(path, fetchLogs)) {
-                logger.error(format("Unable to save file '%s' for groupname '%s'", path.toAbsolutePath().toString(), groupName));
+    private List<Path> fetchGroupEvents(ProjectAndEnv projectAndEnv, String groupName, long when, ZonedDateTime timestamp,
+                                        Optional<String> filterPattern) {
+        boolean incremental = checkpointStore.isPresent() && filterPattern.isEmpty();
+        Map<String, LogCheckpoint> checkpoints = new HashMap<>();
+        if (incremental) {
+            checkpoints.putAll(checkpointStore.get().load(projectAndEnv, groupName));
+        }
+
+        List<LogStream> streamsForGroup = logClient.getStreamsFor(groupName, when);
+
+        // stream name -> epoch to fetch from, either the start of the window or from the checkpoint
+        Map<String, Long> startForStream = new LinkedHashMap<>();
+        streamsForGroup.stream().
+                filter(stream -> hasEventsInScope(stream, when, checkpoints)).
+                sorted(Comparator.comparing(LogStream::lastEventTimestamp)).  // merge breaks timestamp ties in this order
+                forEach(stream -> startForStream.put(stream.logStreamName(), startFor(stream.logStreamName(), when, checkpoints)));
+
+        logger.info(format("Got %s streams with events in scope for group %s", startForStream.size(), groupName));
+        int eventsPerPage = memoryBudget.eventsPerPage(startForStream.size());
+
+        if (filterPattern.isPresent()) {
+            List<String> streamNames = new LinkedList<>(startForStream.keySet());
+            if (streamNames.isEmpty()) {
+                return Collections.emptyList();
             }
+            List<Stream<OutputLogEventDecorator>> found = logClient.searchLogs(groupName, streamNames, when, filterPattern.get());
+            return save(groupName, formFilenameFor(groupName, timestamp), found, event -> true, event -> {});
+        }
 
-        });
+        if (!incremental) {
+            List<String> streamNames = new LinkedList<>(startForStream.keySet());
+            List<Stream<OutputLogEventDecorator>> fetchLogs = logClient.fetchLogs(groupName, streamNames, when, eventsPerPage);
+            return save(groupName, formFilenameFor(groupName, timestamp), fetchLogs, event -> true, event -> {});
+        }
 
-        return filenames;
+        List<Stream<OutputLogEventDecorator>> fetchLogs = logClient.fetchLogs(groupName, startForStream, eventsPerPage);
+        streamsForGroup.stream().filter(stream -> startForStream.containsKey(stream.logStreamName())).
+                forEach(stream -> checkpoints.computeIfAbsent(stream.logStreamName(), missing -> LogCheckpoint.startingAt(when)).
+                        fetched(stream.lastIngestionTime()));
+        List<Path> saved = save(groupName, formFilenameFor(groupName), fetchLogs,
+                event -> !checkpoints.get(event.getStreamName()).alreadySaved(event.getTimestamp(), event.getMessage()),
+                event -> checkpoints.get(event.getStreamName()).saved(event.getTimestamp(), event.getMessage()));
+        if (!saved.isEmpty()) {
+            checkpointStore.get().save(projectAndEnv, groupName, checkpoints);
+        }
+        return saved;
+    }
+
+    private boolean hasEventsInScope(LogStream stream, long when, Map<String, LogCheckpoint> checkpoints) {
+        LogCheckpoint checkpoint = checkpoints.get(stream.logStreamName());
+        if (checkpoint==null) {
+            return stream.lastEventTimestamp()>=when;
+        }
+        return stream.lastEventTimestamp()>=when && checkpoint.hasNewEvents(stream.lastEventTimestamp(), stream.lastIngestionTime());
+    }
+
+    private long startFor(String streamName, long when, Map<String, LogCheckpoint> checkpoints) {
+        LogCheckpoint checkpoint = checkpoints.get(streamName);
+        return checkpoint==null ? when : Math.max(when, checkpoint.resumeFrom());
+    }
+
+    // events failing the filter, i.e. already saved by an earlier fetch, are dropped before they are written
+    private List<Path> save(String groupName, Path path, List<Stream<OutputLogEventDecorator>> fetchLogs,
+                            Predicate<OutputLogEventDecorator> filter, Consumer<OutputLogEventDecorator> onSaved) {
+        try (LogStreamMerger merger = new LogStreamMerger(fetchLogs, LogStreamMerger.DEFAULT_BUFFER_SIZE, memoryBudget, metrics)) {
+            List<Path> saved = savesFile.saveLogs(path, merger.merged().filter(filter).peek(onSaved));
+            if (saved.isEmpty()) {
+                logger.error(format("Unable to save file '%s' for groupname '%s'", path.toAbsolutePath().toString(), groupName));
+            }
+            return saved;
+        }
+    }
+
+    // used when fetching incrementally, so each fetch appends to the same file
+    public Path formFilenameFor(String groupName) {
+        return Paths.get(format("%s.log", safeGroupName(groupName)));
     }
 
     public Path formFilenameFor(String groupName, ZonedDateTime timestamp) {
+        return Paths.get(format("%s_%s.log", safeGroupName(groupName), timestamp.format(DateTimeFormatter.ISO_DATE_TIME)));
+    }
+
+    private String safeGroupName(String groupName) {
         // group names can contain paths....
         if (groupName.contains(fileSeperator)) {
-            groupName = groupName.replace(File.separatorChar, '_');
+            return groupName.replace(File.separatorChar, '_');
         }
-        return Paths.get(format("%s_%s.log", groupName, timestamp.format(DateTimeFormatter.ISO_DATE_TIME)));
+        return groupName;
     }
 
     private long timestampFromDuration(Duration duration, ZonedDateTime timestamp) {
@@ -0,0 +1,236 @@
+package tw.com.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tw.com.entity.OutputLogEventDecorator;
+import tw.com.providers.LogFetchMetrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.lang.String.format;
+
+// merges per log stream events into one time ordered stream, each source is read ahead on its own (virtual) thread
+// into a bounded buffer so the pages for every stream are fetched at the same time, a min heap on the timestamp
+// of the head of each buffer then picks the next event.
+// Events held in the buffers count against a memory budget, a source waits for the writer to catch up once the
+// budget is used, unless its buffer is empty as the merge may be waiting on it. Buffer slots are reused.
+// ASSUME: each source stream has earlier events first, as returned by LogClient.fetchLogs and searchLogs
+public class LogStreamMerger implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LogStreamMerger.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final List<BlockingQueue<Slot>> buffers;
+    private final List<Queue<Slot>> spareSlots;
+    private final List<Stream<OutputLogEventDecorator>> sources;
+    private final LogMemoryBudget budget;
+    private final LogFetchMetrics metrics;
+    private final ExecutorService executor;
+    private final Object accounting = new Object();
+    private volatile boolean closed;
+    private long heldBytes; // guarded by accounting
+
+    public LogStreamMerger(List<Stream<OutputLogEventDecorator>> sources) {
+        this(sources, DEFAULT_BUFFER_SIZE);
+    }
+
+    public LogStreamMerger(List<Stream<OutputLogEventDecorator>> sources, int bufferSize) {
+        this(sources, bufferSize, new LogMemoryBudget(LogMemoryBudget.DEFAULT_CEILING));
+    }
+
+    public LogStreamMerger(List<Stream<OutputLogEventDecorator>> sources, int bufferSize, LogMemoryBudget budget) {
+        this(sources, bufferSize, budget, new LogFetchMetrics());
+    }
+
+    // metrics records how many events are waiting in a buffer each time one is taken
+    public LogStreamMerger(List<Stream<OutputLogEventDecorator>> sources, int bufferSize, LogMemoryBudget budget,
+                           LogFetchMetrics metrics) {
+        this.sources = sources;
+        this.budget = budget;
+        this.metrics = metrics;
+        buffers = new ArrayList<>(sources.size());
+        spareSlots = new ArrayList<>(sources.size());
+        sources.forEach(source -> {
+            buffers.add(new ArrayBlockingQueue<>(bufferSize));
+            spareSlots.add(new ConcurrentLinkedQueue<>());
+        });
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        closed = false;
+    }
+
+    public Stream<OutputLogEventDecorator> merged() {
+        for (int index = 0; index < sources.size(); index++) {
+            int source = index;
+            executor.submit(() -> prefetch(source));
+        }
+        logger.info(format("Merging %s log streams", sources.size()));
+
+        Spliterator<OutputLogEventDecorator> spliterator = Spliterators.spliteratorUnknownSize(new MergeIterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    // gives back anything still buffered to the budget, which may be shared with other merges
+    @Override
+    public void close() {
+        synchronized (accounting) {
+            if (!closed) {
+                closed = true;
+                budget.release(heldBytes);
+                heldBytes = 0;
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    private void prefetch(int index) {
+        try {
+            Iterator<OutputLogEventDecorator> iterator = sources.get(index).iterator();
+            while (iterator.hasNext()) {
+                OutputLogEventDecorator event = iterator.next();
+                long bytes = LogMemoryBudget.estimate(event);
+                if (!reserve(index, bytes) || !put(index, slotFor(index).set(event, null, bytes))) {
+                    return;
+                }
+            }
+            put(index, slotFor(index).set(null, null, 0));
+        }
+        catch (RuntimeException | Error exception) {
+            logger.error("Failed to fetch log events", exception);
+            put(index, slotFor(index).set(null, exception, 0));
+        }
+    }
+
+    // blocks while the budget is used up, gives up if the merge is closed
+    private boolean reserve(int index, long bytes) {
+        try {
+            BlockingQueue<Slot> buffer = buffers.get(index);
+            while (!closed) {
+                if (budget.tryAcquire(bytes, buffer::isEmpty, OFFER_TIMEOUT_MILLIS)) {
+                    synchronized (accounting) {
+                        if (closed) {
+                            budget.release(bytes);
+                            return false;
+                        }
+                        heldBytes = heldBytes + bytes;
+                        return true;
+                    }
+                }
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void released(long bytes) {
+        if (bytes==0) {
+            return;
+        }
+        synchronized (accounting) {
+            if (!closed) {
+                heldBytes = heldBytes - bytes;
+                budget.release(bytes);
+            }
+        }
+    }
+
+    // blocks while the buffer is full, gives up if the merge is closed
+    private boolean put(int index, Slot slot) {
+        BlockingQueue<Slot> buffer = buffers.get(index);
+        try {
+            while (!closed) {
+                if (buffer.offer(slot, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private Slot slotFor(int index) {
+        Slot slot = spareSlots.get(index).poll();
+        return slot==null ? new Slot() : slot;
+    }
+
+    // holds an event, or the failure of a source, or with neither marks the end of a source
+    private static class Slot {
+        private OutputLogEventDecorator event;
+        private Throwable failure;
+        private long bytes;
+
+        Slot set(OutputLogEventDecorator event, Throwable failure, long bytes) {
+            this.event = event;
+            this.failure = failure;
+            this.bytes = bytes;
+            return this;
+        }
+    }
+
+    // the current earliest event from a source, index breaks ties so equal timestamps keep the order of the sources
+    private record Head(OutputLogEventDecorator event, int index) {
+        static final Comparator<Head> ORDER = Comparator.<Head, Long>comparing(head -> head.event().getTimestamp(),
+                Comparator.nullsFirst(Comparator.naturalOrder())).thenComparingInt(Head::index);
+    }
+
+    private class MergeIterator implements Iterator<OutputLogEventDecorator> {
+        private PriorityQueue<Head> heap;
+
+        @Override
+        public boolean hasNext() {
+            if (heap==null) {
+                heap = new PriorityQueue<>(Math.max(1, buffers.size()), Head.ORDER);
+                for (int index = 0; index < buffers.size(); index++) {
+                    takeFrom(index);
+                }
+            }
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public OutputLogEventDecorator next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Head head = heap.poll();
+            takeFrom(head.index());
+            return head.event();
+        }
+
+        private void takeFrom(int index) {
+            BlockingQueue<Slot> buffer = buffers.get(index);
+            int depth = buffer.size();
+            metrics.queueDepth(depth);
+            if (depth==0) {
+                budget.wake(); // the source may be waiting for space
+            }
+            Slot slot;
+            try {
+                slot = buffer.take();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while merging log streams", interrupted);
+            }
+            OutputLogEventDecorator event = slot.event;
+            Throwable failure = slot.failure;
+            released(slot.bytes);
+            spareSlots.get(index).offer(slot.set(null, null, 0));
+
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            if (event!=null) {
+                heap.add(new Head(event, index));
+            }
+        }
+    }
+}
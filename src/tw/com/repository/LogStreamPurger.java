@@ -0,0 +1,114 @@
+package tw.com.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudwatchlogs.model.LogStream;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ResourceNotFoundException;
+import tw.com.entity.LogPurgeSummary;
+import tw.com.providers.LogClient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.String.format;
+
+// deletes the streams of a group with no events since a cut off, streams are listed oldest first and each page is
+// handed to a pool of workers while the next one is fetched, the delete rate itself is limited by the LogClient.
+// Listing is faster than deleting so at most two deletes per worker are in flight, listing waits for the rest and
+// stops at the first failed delete
+public class LogStreamPurger {
+    private static final Logger logger = LoggerFactory.getLogger(LogStreamPurger.class);
+
+    public static final int DEFAULT_WORKERS = 8;
+
+    private final LogClient logClient;
+    private final int workers;
+
+    public LogStreamPurger(LogClient logClient) {
+        this(logClient, DEFAULT_WORKERS);
+    }
+
+    public LogStreamPurger(LogClient logClient, int workers) {
+        this.logClient = logClient;
+        this.workers = workers;
+    }
+
+    public LogPurgeSummary purge(String groupName, long when, boolean dryRun) {
+        AtomicLong streams = new AtomicLong();
+
+        if (dryRun) {
+            logClient.getStreamsOlderThan(groupName, when, page -> page.forEach(stream -> {
+                logger.info(format("Dry run, would delete stream %s from group %s", stream.logStreamName(), groupName));
+                streams.incrementAndGet();
+            }));
+            return new LogPurgeSummary(true, streams.get());
+        }
+
+        int limit = workers * 2;
+        Semaphore inFlight = new Semaphore(limit);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            logClient.getStreamsOlderThan(groupName, when, page -> {
+                for (LogStream stream : page) {
+                    throwIfFailed(failure);
+                    acquire(inFlight);
+                    executor.execute(() -> {
+                        try {
+                            if (delete(groupName, stream)) {
+                                streams.incrementAndGet();
+                            }
+                        } catch (RuntimeException exception) {
+                            failure.compareAndSet(null, exception);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            });
+            inFlight.acquire(limit); // the deletes still in flight have finished
+            throwIfFailed(failure);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted deleting log streams", interrupted);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logger.info(format("Deleted %s streams from group %s", streams.get(), groupName));
+        return new LogPurgeSummary(false, streams.get());
+    }
+
+    private static void throwIfFailed(AtomicReference<RuntimeException> failure) {
+        RuntimeException exception = failure.get();
+        if (exception!=null) {
+            throw exception;
+        }
+    }
+
+    private static void acquire(Semaphore inFlight) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted deleting log streams", interrupted);
+        }
+    }
+
+    // false if the stream had already gone, i.e. removed by another run
+    private boolean delete(String groupName, LogStream stream) {
+        try {
+            logger.info(format("Deleting stream %s from group %s, last event was %s", stream.logStreamName(), groupName,
+                    stream.lastEventTimestamp()));
+            logClient.deleteLogStream(groupName, stream.logStreamName());
+            return true;
+        }
+        catch (ResourceNotFoundException notFound) {
+            logger.warn(format("Stream %s was already removed from group %s", stream.logStreamName(), groupName));
+            return false;
+        }
+    }
+}
@@ -7,8 +7,10 @@ import tw.com.exceptions.CfnAssistException;
 import tw.com.exceptions.WrongNumberOfStacksException;
 import tw.com.providers.CFNClient;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface StackRepository {
 
@@ -24,8 +26,17 @@ public interface StackRepository {
 									 StackStatus currentStatus, List<StackStatus> aborts)
 			throws WrongNumberOfStacksException, InterruptedException;
 
+	// status checks for all watched stacks share the same ListStacks call
+	CompletableFuture<StackStatus> watchForStatusToChangeFrom(String stackName,
+									 StackStatus currentStatus, List<StackStatus> aborts);
+
 	List<StackEvent> getStackEvents(String stackName);
+	// only events after lastSeenEventId, or all since notBefore if null, oldest first
+	List<StackEvent> getStackEventsSince(String stackNameOrId, String lastSeenEventId, Instant notBefore);
 	StackStatus getStackStatus(String stackName) throws WrongNumberOfStacksException;
+	// straight from cloud formation, so also finds stacks created since the cache was loaded, and given the id
+	// finds deleted stacks too
+	StackStatus getCurrentStackStatus(String stackNameOrId) throws WrongNumberOfStacksException;
 
 	StackNameAndId getStackNameAndId(String stackName) throws WrongNumberOfStacksException;
 	Stack getStack(String stackName) throws WrongNumberOfStacksException;
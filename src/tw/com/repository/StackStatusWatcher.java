@@ -0,0 +1,127 @@
+package tw.com.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudformation.model.CloudFormationException;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.providers.CFNClient;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+// shares a single ListStacks sweep per tick between all stacks currently being waited on
+public class StackStatusWatcher {
+	private static final Logger logger = LoggerFactory.getLogger(StackStatusWatcher.class);
+
+	private final CFNClient formationClient;
+	private final long intervalMillis;
+	private final long maxIntervalMillis;
+	private final List<Waiter> waiters;
+	private final ScheduledExecutorService scheduler;
+
+	private boolean scheduled;
+	private long pause;
+
+	public StackStatusWatcher(CFNClient formationClient, long intervalMillis, long maxIntervalMillis) {
+		this.formationClient = formationClient;
+		this.intervalMillis = intervalMillis;
+		this.maxIntervalMillis = maxIntervalMillis;
+		waiters = new LinkedList<>();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "StackStatusWatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduled = false;
+	}
+
+	// completes once the status of the stack is no longer currentStatus
+	public CompletableFuture<StackStatus> watch(String stackName, StackStatus currentStatus, List<StackStatus> aborts) {
+		logger.info(format("Waiting for stack %s to change FROM status %s", stackName, currentStatus));
+		Waiter waiter = new Waiter(stackName, currentStatus, aborts);
+		synchronized (waiters) {
+			waiters.add(waiter);
+			pause = intervalMillis; // new work so check again promptly
+			if (!scheduled) {
+				scheduled = true;
+				scheduler.schedule(this::sweep, pause, TimeUnit.MILLISECONDS);
+			}
+		}
+		return waiter.future;
+	}
+
+	private void sweep() {
+		List<Waiter> current;
+		synchronized (waiters) {
+			waiters.removeIf(waiter -> waiter.future.isDone());
+			current = new LinkedList<>(waiters);
+		}
+
+		if (!current.isEmpty()) {
+			logger.debug(format("Checking status for %s stacks, pause was %s", current.size(), pause));
+			try {
+				Map<String, StackStatus> statuses = formationClient.listStackStatuses();
+				current.forEach(waiter -> waiter.update(statuses));
+			}
+			catch (CloudFormationException exception) {
+				logger.warn("Caught exception while waiting for status change", exception);
+				current.forEach(Waiter::giveUp);
+			}
+			catch (RuntimeException exception) {
+				logger.error("Unexpected exception while waiting for status change", exception);
+				current.forEach(waiter -> waiter.future.completeExceptionally(exception));
+			}
+		}
+
+		synchronized (waiters) {
+			waiters.removeIf(waiter -> waiter.future.isDone());
+			if (waiters.isEmpty()) {
+				scheduled = false;
+			} else {
+				if (pause < maxIntervalMillis) {
+					pause = pause + intervalMillis;
+				}
+				scheduler.schedule(this::sweep, pause, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private static class Waiter {
+		private final String stackName;
+		private final StackStatus currentStatus;
+		private final List<StackStatus> aborts;
+		private final CompletableFuture<StackStatus> future;
+
+		private Waiter(String stackName, StackStatus currentStatus, List<StackStatus> aborts) {
+			this.stackName = stackName;
+			this.currentStatus = currentStatus;
+			this.aborts = aborts;
+			future = new CompletableFuture<>();
+		}
+
+		// deleted stacks are not included in the statuses
+		private void update(Map<String, StackStatus> statuses) {
+			StackStatus status = statuses.getOrDefault(stackName, StackStatus.DELETE_COMPLETE);
+			logger.debug(format("Waiting for status of stack %s, status was %s", stackName, status));
+			if (status.equals(currentStatus)) {
+				return;
+			}
+			if (aborts.contains(status)) {
+				logger.error(format("Matched an abort status %s for stack %s", status, stackName));
+			}
+			logger.info(format("Stack status changed, status of %s is now %s", stackName, status));
+			future.complete(status);
+		}
+
+		private void giveUp() {
+			future.complete(currentStatus);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package tw.com.repository;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// items partitioned by VPC id, each VPC is fetched on first use unless everything has already been loaded,
+// every fetched item is also passed to onLoad so the owner can keep other indexes up to date. Not thread safe,
+// the owner guards access
+class VpcPartitions<T> {
+	private final Function<String, List<T>> fetchForVpc;
+	private final Function<T, String> vpcOf;
+	private final Consumer<T> onLoad;
+
+	private final Map<String, List<T>> byVpc;
+	private boolean allLoaded;
+
+	VpcPartitions(Function<String, List<T>> fetchForVpc, Function<T, String> vpcOf, Consumer<T> onLoad) {
+		this.fetchForVpc = fetchForVpc;
+		this.vpcOf = vpcOf;
+		this.onLoad = onLoad;
+		byVpc = new HashMap<>();
+		allLoaded = false;
+	}
+
+	List<T> forVpc(String vpcId) {
+		if (!allLoaded && !byVpc.containsKey(vpcId)) {
+			List<T> items = fetchForVpc.apply(vpcId);
+			items.forEach(onLoad);
+			byVpc.put(vpcId, new LinkedList<>(items));
+		}
+		return new LinkedList<>(byVpc.getOrDefault(vpcId, Collections.emptyList()));
+	}
+
+	boolean isAllLoaded() {
+		return allLoaded;
+	}
+
+	// replaces any partitions already fetched, items without a VPC are only passed to onLoad
+	void loadedAll(List<T> items) {
+		byVpc.clear();
+		for (T item : items) {
+			onLoad.accept(item);
+			String vpcId = vpcOf.apply(item);
+			if (vpcId!=null) {
+				byVpc.computeIfAbsent(vpcId, missing -> new LinkedList<>()).add(item);
+			}
+		}
+		allLoaded = true;
+	}
+}
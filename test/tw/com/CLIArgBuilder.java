@@ -183,6 +183,17 @@ public class CLIArgBuilder {
                 };
 	}
 
+	public static String[] deployFromDirWithSNS(String orderedScriptsFolder, String testName, String snsOption) {
+        return new String[]{
+                "-env", EnvironmentSetupForTests.ENV,
+                "-project", EnvironmentSetupForTests.PROJECT,
+                "-dir", orderedScriptsFolder,
+                "-comment", testName,
+                "-sns",
+                snsOption
+                };
+	}
+
     public static String[] purge(String sns) {
         return new String[]{
                 "-env", EnvironmentSetupForTests.ENV,
@@ -326,6 +337,15 @@ public class CLIArgBuilder {
         };
     }
 
+    public static String[] tidyCloudWatchDryRun(Integer days) {
+        return new String[]{
+                "-env", EnvironmentSetupForTests.ENV,
+                "-project", EnvironmentSetupForTests.PROJECT,
+                "-removeLogs", days.toString(),
+                "-dryRun"
+        };
+    }
+
     public static String[] tagCloudWatchLog(String logGroupName) {
         return new String[]{
                 "-env", EnvironmentSetupForTests.ENV,
@@ -341,4 +361,47 @@ public class CLIArgBuilder {
                 "-logs", days.toString()
         };
     }
+
+    public static String[] searchLogs(Integer hours, String filterPattern) {
+        return new String[]{
+                "-env", EnvironmentSetupForTests.ENV,
+                "-project", EnvironmentSetupForTests.PROJECT,
+                "-logs", hours.toString(),
+                "--grep", filterPattern
+        };
+    }
+
+    public static String[] getLogsIncrementally(Integer hours) {
+        return new String[]{
+                "-env", EnvironmentSetupForTests.ENV,
+                "-project", EnvironmentSetupForTests.PROJECT,
+                "-logs", hours.toString(),
+                "-incremental"
+        };
+    }
+
+    public static String[] getLogsWithMemory(Integer hours, String memory) {
+        return new String[]{
+                "-env", EnvironmentSetupForTests.ENV,
+                "-project", EnvironmentSetupForTests.PROJECT,
+                "-logs", hours.toString(),
+                "-logMemory", memory
+        };
+    }
+
+    public static String[] getLogsWithMetrics(Integer hours, String metricsFile) {
+        return new String[]{
+                "-env", EnvironmentSetupForTests.ENV,
+                "-project", EnvironmentSetupForTests.PROJECT,
+                "-logs", hours.toString(),
+                "-logMetrics", metricsFile
+        };
+    }
+
+    public static String[] queryLogs(String... fileFromAndTo) {
+        String[] args = new String[fileFromAndTo.length + 1];
+        args[0] = "-queryLogs";
+        System.arraycopy(fileFromAndTo, 0, args, 1, fileFromAndTo.length);
+        return args;
+    }
 }
@@ -2,6 +2,7 @@ package tw.com;
 
 
 import org.apache.commons.io.FileUtils;
+import org.easymock.EasyMock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
@@ -10,6 +11,7 @@ import software.amazon.awssdk.services.cloudformation.CloudFormationClient;
 import software.amazon.awssdk.services.cloudformation.model.CreateStackRequest;
 import software.amazon.awssdk.services.cloudformation.model.CreateStackResponse;
 import software.amazon.awssdk.services.cloudformation.model.Parameter;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
 import software.amazon.awssdk.services.cloudformation.model.TemplateParameter;
 import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
 import software.amazon.awssdk.services.ec2.Ec2Client;
@@ -27,6 +29,7 @@ import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import tw.com.entity.ProjectAndEnv;
 import tw.com.entity.StackNameAndId;
+import tw.com.providers.CFNClient;
 import tw.com.repository.VpcRepository;
 
 import java.io.File;
@@ -39,6 +42,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static java.nio.file.attribute.PosixFilePermission.*;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -271,5 +275,17 @@ public class EnvironmentSetupForTests {
 		return Instant.from(zonedDateTime).toEpochMilli();
 	}
 
+	// each list is delivered to the stack page consumer as a separate page
+	@SafeVarargs
+	public static void expectAllStacks(CFNClient formationClient, List<Stack>... pages) {
+		EasyMock.expect(formationClient.describeAllStacks(EasyMock.<Consumer<List<Stack>>>anyObject())).andAnswer(() -> {
+			Consumer<List<Stack>> consumer = EasyMock.getCurrentArgument(0);
+			for (List<Stack> page : pages) {
+				consumer.accept(page);
+			}
+			return pages.length;
+		});
+	}
+
 
 }
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import software.amazon.awssdk.services.iam.IamClient;
 import software.amazon.awssdk.services.iam.model.User;
+import software.amazon.awssdk.services.sts.StsClient;
 import tw.com.EnvironmentSetupForTests;
 import tw.com.providers.IdentityProvider;
 
@@ -18,7 +19,7 @@ public class TestIdentityProvider {
     @BeforeEach
     public void shouldRunBeforeEachTest() {
         iamClient = EnvironmentSetupForTests.createIamClient();
-        identityProvider = new IdentityProvider(iamClient);
+        identityProvider = new IdentityProvider(iamClient, StsClient.create());
     }
 
     @Test
@@ -27,4 +28,11 @@ public class TestIdentityProvider {
         assertNotNull(result);
         assertFalse(result.userName().isEmpty());
     }
+
+    @Test
+    public void shouldGetAccountId() {
+        String result = identityProvider.getAccountId();
+        assertNotNull(result);
+        assertFalse(result.isEmpty());
+    }
 }
@@ -17,6 +17,7 @@ import tw.com.EnvironmentSetupForTests;
 import tw.com.FilesForTesting;
 import tw.com.MonitorStackEvents;
 import tw.com.entity.InstanceSummary;
+import tw.com.entity.LogPurgeSummary;
 import tw.com.entity.ProjectAndEnv;
 import tw.com.entity.SearchCriteria;
 import tw.com.entity.StackEntry;
@@ -134,14 +135,16 @@ class TestAwsFacade extends EasyMockSupport {
 
 		List<String> groups = Arrays.asList("groupA","groupB");
         EasyMock.expect(logRepository.logGroupsFor(projectAndEnv)).andReturn(groups);
-        logRepository.removeOldStreamsFor("groupA", Duration.ofDays(42));
-        EasyMock.expectLastCall();
-        logRepository.removeOldStreamsFor("groupB", Duration.ofDays(42));
-        EasyMock.expectLastCall();
+        EasyMock.expect(logRepository.removeOldStreamsFor("groupA", Duration.ofDays(42), false)).
+                andReturn(new LogPurgeSummary(false, 2));
+        EasyMock.expect(logRepository.removeOldStreamsFor("groupB", Duration.ofDays(42), false)).
+                andReturn(new LogPurgeSummary(false, 3));
 
         replayAll();
-        aws.removeCloudWatchLogsOlderThan(projectAndEnv, 42);
+        LogPurgeSummary result = aws.removeCloudWatchLogsOlderThan(projectAndEnv, 42);
         verifyAll();
+
+        Assertions.assertEquals(new LogPurgeSummary(false, 5), result);
     }
 
     @Test
@@ -168,6 +171,19 @@ class TestAwsFacade extends EasyMockSupport {
         Assertions.assertFalse(result.isEmpty());
         Assertions.assertEquals(filename, result.get(0));
     }
+
+    @Test
+    void shouldSearchLogs() {
+        Path filename = Paths.get("filename.log");
+        EasyMock.expect(logRepository.searchLogs(projectAndEnv, Duration.ofHours(6), "ERROR")).
+				andReturn(Collections.singletonList(filename));
+
+        replayAll();
+        List<Path> result = aws.searchLogs(projectAndEnv, 6, "ERROR");
+        verifyAll();
+
+        Assertions.assertEquals(Collections.singletonList(filename), result);
+    }
 	
 	@Test
     void shouldThrowForUnknownProjectAndEnvCombinationOnDeltaSet() throws CannotFindVpcException {
@@ -236,8 +252,7 @@ class TestAwsFacade extends EasyMockSupport {
 		
 		SearchCriteria criteria = new SearchCriteria(projectAndEnv);
 		EasyMock.expect(cfnRepository.getAllInstancesFor(criteria)).andReturn(instanceList);
-		EasyMock.expect(cloudRepository.getInstanceById(idA)).andReturn(instanceA);
-		EasyMock.expect(cloudRepository.getInstanceById(idB)).andReturn(instanceB);
+		EasyMock.expect(cloudRepository.getInstancesById(instanceList)).andReturn(Map.of(idA, instanceA, idB, instanceB));
 		
 		replayAll();
 		List<InstanceSummary> results = aws.listInstances(criteria);
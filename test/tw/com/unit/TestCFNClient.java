@@ -15,9 +15,11 @@ import tw.com.exceptions.NotReadyException;
 import tw.com.exceptions.WrongNumberOfStacksException;
 import tw.com.providers.CFNClient;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 class TestCFNClient extends EasyMockSupport {
 
@@ -45,13 +47,65 @@ class TestCFNClient extends EasyMockSupport {
         Assertions.assertEquals(result, stack);
     }
 
+    @Test
+    void shouldThrowRatherThanReturnPartOfTheStacksWhenInterrupted() {
+        EasyMock.expect(cfnClient.describeStacks(DescribeStacksRequest.builder().build())).
+                andReturn(DescribeStacksResponse.builder().stacks(Stack.builder().build()).build());
+        Thread caller = Thread.currentThread();
+
+        replayAll();
+        Assertions.assertThrows(RuntimeException.class, () -> client.describeAllStacks(page -> {
+            caller.interrupt();
+            try {
+                Thread.sleep(500); // still decoding when the caller is interrupted
+            } catch (InterruptedException shutdown) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        verifyAll();
+        Assertions.assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    void shouldOnlyPageBackToLastSeenEvent() {
+        Instant now = Instant.now();
+        DescribeStackEventsRequest first = DescribeStackEventsRequest.builder().stackName("stackId").build();
+        DescribeStackEventsRequest second = DescribeStackEventsRequest.builder().stackName("stackId").nextToken("token").build();
+        EasyMock.expect(cfnClient.describeStackEvents(first)).andReturn(DescribeStackEventsResponse.builder().
+                stackEvents(event("e4", now), event("e3", now)).nextToken("token").build());
+        EasyMock.expect(cfnClient.describeStackEvents(second)).andReturn(DescribeStackEventsResponse.builder().
+                stackEvents(event("e2", now), event("e1", now)).nextToken("more").build());
+
+        replayAll();
+        List<StackEvent> result = client.describeStackEventsSince("stackId", "e2", now.minusSeconds(60));
+        verifyAll();
+        Assertions.assertEquals(List.of("e3", "e4"), result.stream().map(StackEvent::eventId).toList());
+    }
+
+    @Test
+    void shouldStopAtEventsFromBeforeWatchStarted() {
+        Instant now = Instant.now();
+        EasyMock.expect(cfnClient.describeStackEvents(DescribeStackEventsRequest.builder().stackName("stackId").build())).
+                andReturn(DescribeStackEventsResponse.builder().stackEvents(event("e2", now),
+                        event("e1", now.minusSeconds(600))).nextToken("token").build());
+
+        replayAll();
+        List<StackEvent> result = client.describeStackEventsSince("stackId", null, now.minusSeconds(60));
+        verifyAll();
+        Assertions.assertEquals(List.of("e2"), result.stream().map(StackEvent::eventId).toList());
+    }
+
+    private StackEvent event(String eventId, Instant timestamp) {
+        return StackEvent.builder().eventId(eventId).timestamp(timestamp).build();
+    }
+
     @Test
     void shouldDescribesAllStacks() {
 
         Stack stackA = Stack.builder().build();
         Stack stackB = Stack.builder().build();
         DescribeStacksResponse answer = DescribeStacksResponse.builder().stacks(stackA, stackB).build();
-        EasyMock.expect(cfnClient.describeStacks()).andReturn(answer);
+        EasyMock.expect(cfnClient.describeStacks(DescribeStacksRequest.builder().build())).andReturn(answer);
 
         replayAll();
         List<Stack> result = client.describeAllStacks();
@@ -61,6 +115,33 @@ class TestCFNClient extends EasyMockSupport {
         Assertions.assertTrue(result.contains(stackB));
     }
 
+    @Test
+    void shouldDescribesAllStacksFollowingNextToken() {
+
+        Stack stackA = Stack.builder().stackName("stackA").build();
+        Stack stackB = Stack.builder().stackName("stackB").build();
+        Stack stackC = Stack.builder().stackName("stackC").build();
+
+        EasyMock.expect(cfnClient.describeStacks(DescribeStacksRequest.builder().build())).
+                andReturn(DescribeStacksResponse.builder().stacks(stackA).nextToken("tokenA").build());
+        EasyMock.expect(cfnClient.describeStacks(DescribeStacksRequest.builder().nextToken("tokenA").build())).
+                andReturn(DescribeStacksResponse.builder().stacks(stackB, stackC).nextToken("tokenB").build());
+        EasyMock.expect(cfnClient.describeStacks(DescribeStacksRequest.builder().nextToken("tokenB").build())).
+                andReturn(DescribeStacksResponse.builder().build());
+
+        List<List<Stack>> pages = new LinkedList<>();
+
+        replayAll();
+        int count = client.describeAllStacks(pages::add);
+        verifyAll();
+
+        Assertions.assertEquals(3, count);
+        Assertions.assertEquals(3, pages.size());
+        Assertions.assertEquals(List.of(stackA), pages.get(0));
+        Assertions.assertEquals(List.of(stackB, stackC), pages.get(1));
+        Assertions.assertTrue(pages.get(2).isEmpty());
+    }
+
     @Test
     void shouldCreateStack() throws CfnAssistException {
         Collection<Tag> tags = new LinkedList<>();
@@ -157,6 +238,26 @@ class TestCFNClient extends EasyMockSupport {
                 StackStatus.UPDATE_ROLLBACK_FAILED).build();
     }
 
+    @Test
+    void shouldListStatusesOfStacksNotDeleted() {
+        ListStacksRequest firstPage = ListStacksRequest.builder().stackStatusFilters(CFNClient.NOT_DELETED).build();
+        ListStacksRequest secondPage = firstPage.toBuilder().nextToken("token").build();
+        EasyMock.expect(cfnClient.listStacks(firstPage)).andReturn(ListStacksResponse.builder().
+                stackSummaries(StackSummary.builder().stackName("stackA").stackStatus(StackStatus.CREATE_COMPLETE).build()).
+                nextToken("token").build());
+        EasyMock.expect(cfnClient.listStacks(secondPage)).andReturn(ListStacksResponse.builder().
+                stackSummaries(StackSummary.builder().stackName("stackB").stackStatus(StackStatus.DELETE_IN_PROGRESS).build()).
+                build());
+
+        replayAll();
+        Map<String, StackStatus> result = client.listStackStatuses();
+        verifyAll();
+
+        Assertions.assertEquals(Map.of("stackA", StackStatus.CREATE_COMPLETE, "stackB", StackStatus.DELETE_IN_PROGRESS), result);
+        Assertions.assertFalse(firstPage.stackStatusFilters().contains(StackStatus.DELETE_COMPLETE));
+        Assertions.assertTrue(firstPage.stackStatusFilters().contains(StackStatus.DELETE_IN_PROGRESS));
+    }
+
     @Test
     void shouldTestStackExists() {
 
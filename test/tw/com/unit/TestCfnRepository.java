@@ -17,6 +17,9 @@ import tw.com.repository.CfnRepository;
 import tw.com.repository.CloudRepository;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 class TestCfnRepository extends EasyMockSupport {
 	
@@ -45,7 +48,7 @@ class TestCfnRepository extends EasyMockSupport {
 		list.add(Stack.builder().tags(tags).stackName("matchingStack").build());
 		list.add(Stack.builder().stackName("noMatchingTags").build());
 		
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 
 		replayAll();
 		List<StackEntry> results = repository.getStacks();
@@ -56,13 +59,30 @@ class TestCfnRepository extends EasyMockSupport {
 		verifyAll();	
 	}
 
+	@Test
+	void shouldNotCacheStacksFromFailedLoad() {
+		List<Tag> tags = EnvironmentSetupForTests.createExpectedStackTags("",noBuildNumber, "CfnAssist");
+		Stack stack = Stack.builder().tags(tags).stackName("matchingStack").build();
+		EasyMock.expect(formationClient.describeAllStacks(EasyMock.<Consumer<List<Stack>>>anyObject())).andAnswer(() -> {
+			Consumer<List<Stack>> consumer = EasyMock.getCurrentArgument(0);
+			consumer.accept(List.of(stack));
+			throw new RuntimeException("interrupted after first page");
+		});
+		EnvironmentSetupForTests.expectAllStacks(formationClient, List.of(stack), List.of(stack.toBuilder().stackName("other").build()));
+
+		replayAll();
+		Assertions.assertThrows(RuntimeException.class, () -> repository.getStacks());
+		Assertions.assertEquals(2, repository.getStacks().size());
+		verifyAll();
+	}
+
 	@Test
     void shouldGetDrifts() {
 		List<Tag> tags = EnvironmentSetupForTests.createExpectedStackTags("",noBuildNumber, "CfnAssist");
 
 		List<Stack> stacks = new LinkedList<>();
 		stacks.add(Stack.builder().stackName("stackName").tags(tags).build());
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(stacks);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, stacks);
 
 		String refID = "someRefId";
 		EasyMock.expect(formationClient.detectDrift("stackName")).andReturn(refID);
@@ -92,7 +112,7 @@ class TestCfnRepository extends EasyMockSupport {
 		list.add(Stack.builder().tags(tagsA).stackName("matchingStack").build());
 		list.add(createStackWithTags("wrongEnvStack", tagsB));
 		
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 
 		replayAll();
 		List<StackEntry> results = repository.getStacks(envTag);
@@ -121,7 +141,7 @@ class TestCfnRepository extends EasyMockSupport {
         list.add(createStackWithTags("wrongStackB", tagsB));
         list.add(createStackWithTags("wrongStackC", tagsC));
 
-        EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+        EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 
         replayAll();
         StackEntry result = repository.getStacknameByIndex(envTag, 4);
@@ -153,7 +173,7 @@ class TestCfnRepository extends EasyMockSupport {
         list.add(createStackWithTags("wrongStackB",tagsB));
         list.add(createStackWithTags("wrongStackC",tagsC));
 
-        EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+        EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 
         replayAll();
         StackEntry result = repository.getStacknameByIndex(envTag, 4);
@@ -177,7 +197,7 @@ class TestCfnRepository extends EasyMockSupport {
         list.add(createStackWithTags("wrongStackB",tagsB));
         list.add(createStackWithTags("wrongStackC",tagsC));
 
-        EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+        EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 
         replayAll();
         StackEntry result = repository.getStacknameByIndex(envTag, 4);
@@ -200,7 +220,7 @@ class TestCfnRepository extends EasyMockSupport {
 		list.add(createStackWithTags(stackName,
 				EnvironmentSetupForTests.createExpectedStackTags("",noBuildNumber, "CfnAssist")));
 		
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 		EasyMock.expect(formationClient.describeStackResources(stackName)).andReturn(stackResources);
 		replayAll();
 		
@@ -220,9 +240,9 @@ class TestCfnRepository extends EasyMockSupport {
     void testShouldWaitForStatusToChange() throws WrongNumberOfStacksException, InterruptedException {
 		String stackName = "testStack";
 
-		EasyMock.expect(formationClient.currentStatus(stackName)).andReturn(StackStatus.CREATE_IN_PROGRESS);
-		EasyMock.expect(formationClient.currentStatus(stackName)).andReturn(StackStatus.CREATE_IN_PROGRESS);
-		EasyMock.expect(formationClient.currentStatus(stackName)).andReturn(StackStatus.CREATE_COMPLETE);
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.CREATE_IN_PROGRESS));
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.CREATE_IN_PROGRESS));
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.CREATE_COMPLETE));
 		
 		replayAll();
 		StackStatus result = repository.waitForStatusToChangeFrom(stackName, StackStatus.CREATE_IN_PROGRESS, Arrays.asList(StackMonitor.CREATE_ABORTS));
@@ -234,9 +254,9 @@ class TestCfnRepository extends EasyMockSupport {
     void testWaitForStatusShouldAbort() throws WrongNumberOfStacksException, InterruptedException {
 		String stackName = "testStack";
 
-		EasyMock.expect(formationClient.currentStatus(stackName)).andReturn(StackStatus.CREATE_IN_PROGRESS);
-		EasyMock.expect(formationClient.currentStatus(stackName)).andReturn(StackStatus.CREATE_IN_PROGRESS);
-		EasyMock.expect(formationClient.currentStatus(stackName)).andReturn(StackStatus.CREATE_FAILED);
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.CREATE_IN_PROGRESS));
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.CREATE_IN_PROGRESS));
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.CREATE_FAILED));
 		
 		replayAll();
 		StackStatus result = repository.waitForStatusToChangeFrom(stackName, StackStatus.CREATE_IN_PROGRESS, Arrays.asList(StackMonitor.CREATE_ABORTS));
@@ -244,6 +264,36 @@ class TestCfnRepository extends EasyMockSupport {
 		verifyAll();
 	}
 	
+	@Test
+    void testShouldShareStatusChecksBetweenWaitingStacks() throws ExecutionException, InterruptedException {
+		List<StackStatus> aborts = Arrays.asList(StackMonitor.CREATE_ABORTS);
+
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(
+				"stackA", StackStatus.CREATE_COMPLETE, "stackB", StackStatus.CREATE_IN_PROGRESS));
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(
+				"stackA", StackStatus.CREATE_COMPLETE, "stackB", StackStatus.CREATE_FAILED));
+
+		replayAll();
+		CompletableFuture<StackStatus> stackA = repository.watchForStatusToChangeFrom("stackA", StackStatus.CREATE_IN_PROGRESS, aborts);
+		CompletableFuture<StackStatus> stackB = repository.watchForStatusToChangeFrom("stackB", StackStatus.CREATE_IN_PROGRESS, aborts);
+		Assertions.assertEquals(StackStatus.CREATE_COMPLETE, stackA.get());
+		Assertions.assertEquals(StackStatus.CREATE_FAILED, stackB.get());
+		verifyAll();
+	}
+
+	@Test
+    void testWaitForStatusShouldTreatMissingStackAsDeleted() throws WrongNumberOfStacksException, InterruptedException {
+		String stackName = "testStack";
+
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of(stackName, StackStatus.DELETE_IN_PROGRESS));
+		EasyMock.expect(formationClient.listStackStatuses()).andReturn(Map.of("other", StackStatus.CREATE_COMPLETE));
+
+		replayAll();
+		StackStatus result = repository.waitForStatusToChangeFrom(stackName, StackStatus.DELETE_IN_PROGRESS, Arrays.asList(StackMonitor.DELETE_ABORTS));
+		Assertions.assertEquals(StackStatus.DELETE_COMPLETE, result);
+		verifyAll();
+	}
+
 	@Test
     void testShouldCheckIfStackExists() {
 		String stackName = "testStack";
@@ -266,7 +316,7 @@ class TestCfnRepository extends EasyMockSupport {
 		List<Stack> stacks = new LinkedList<>();
 		stacks.add(inProgressStack);
 		stacks.add(abortedStack);
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(stacks); // cached after first call
+		EnvironmentSetupForTests.expectAllStacks(formationClient, stacks); // cached after first call
 		EasyMock.expect(formationClient.describeStack(stackName)).andReturn(inProgressStack);
 		EasyMock.expect(formationClient.describeStack(stackName)).andReturn(inProgressStack);
 		
@@ -278,13 +328,26 @@ class TestCfnRepository extends EasyMockSupport {
 		verifyAll();
 	}
 	
+	@Test
+	void shouldGetCurrentStatusOfStackNotInCache() throws WrongNumberOfStacksException {
+		EasyMock.expect(formationClient.describeStack("stackId")).andReturn(
+				createStackWithNameAndStatus("createdSinceCacheLoaded", StackStatus.CREATE_COMPLETE, new LinkedList<>()));
+		EasyMock.expect(formationClient.describeStack("missingId")).andThrow(
+				CloudFormationException.builder().statusCode(400).message("Stack does not exist").build());
+
+		replayAll();
+		Assertions.assertEquals(StackStatus.CREATE_COMPLETE, repository.getCurrentStackStatus("stackId"));
+		Assertions.assertThrows(WrongNumberOfStacksException.class, () -> repository.getCurrentStackStatus("missingId"));
+		verifyAll();
+	}
+
 	@Test
     void shouldThrowIfNoSuchStack() {
 		List<Stack> stacks = new LinkedList<>();
 		stacks.add(createStackWithNameAndStatus("ThisIsNotTheStackYouAreLookingFor", StackStatus.CREATE_COMPLETE,
 				new LinkedList<>()));
 			
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(stacks); 
+		EnvironmentSetupForTests.expectAllStacks(formationClient, stacks); 
 
 		replayAll();
         try {
@@ -344,7 +407,7 @@ class TestCfnRepository extends EasyMockSupport {
 		
 		List<Stack> list = new LinkedList<>();
 		list.add(stack);
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 		EasyMock.expect(formationClient.describeStackResources(stackName)).andReturn(resources);
 	}
 	
@@ -389,11 +452,13 @@ class TestCfnRepository extends EasyMockSupport {
 				
 		List<Stack> stacks = new LinkedList<>();
 		stacks.add(stack);
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(stacks);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, stacks);
 		EasyMock.expect(formationClient.describeStackResources(stackName)).andReturn(resources);
 		String typeTag = "theTypeTag";
-		EasyMock.expect(cloudRepository.getTagsForInstance(instanceIdA)).andStubReturn(withTags("0042", typeTag));
-		EasyMock.expect(cloudRepository.getTagsForInstance(instanceIdB)).andStubReturn(withTags("0042", "wrongTypeTag"));
+		Map<String, List<software.amazon.awssdk.services.ec2.model.Tag>> tagsForInstances = new HashMap<>();
+		tagsForInstances.put(instanceIdA, withTags("0042", typeTag));
+		tagsForInstances.put(instanceIdB, withTags("0042", "wrongTypeTag"));
+		EasyMock.expect(cloudRepository.getTagsForInstances(List.of(instanceIdA, instanceIdB))).andStubReturn(tagsForInstances);
 		replayAll();
 		
 		Set<Instance> result = repository.getAllInstancesMatchingType(criteria,typeTag);
@@ -414,7 +479,7 @@ class TestCfnRepository extends EasyMockSupport {
 		List<Tag> tags = EnvironmentSetupForTests.createExpectedStackTags("",noBuildNumber, "CfnAssist");
 		list.add(createStackWithTagsAndId(stackName, "correctId",tags));
 		list.add(createStackWithTagsAndId("someOtherName", "wrongId", tags));
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 		
 		replayAll();
 		Stack result = repository.getStack(stackName);
@@ -436,7 +501,7 @@ class TestCfnRepository extends EasyMockSupport {
 		list.add(createStackWithTagsAndId("CfnAssistTestsomeOtherName","idE",
 				EnvironmentSetupForTests.createExpectedStackTags("",noBuildNumber, "CfnAssist")));
 		
-		EasyMock.expect(formationClient.describeAllStacks()).andReturn(list);
+		EnvironmentSetupForTests.expectAllStacks(formationClient, list);
 		
 		replayAll();
 		List<StackEntry> result = repository.getStacksMatching(mainProjectAndEnv.getEnvTag(),"simpleStack");
@@ -525,6 +590,20 @@ class TestCfnRepository extends EasyMockSupport {
 		Assertions.assertEquals(1, result.size());
 	}
 
+	@Test
+    void shouldOnlyValidateSameTemplateContentsOnce() {
+		List<TemplateParameter> params = new LinkedList<>();
+		params.add(TemplateParameter.builder().defaultValue("aDefaultValue").build());
+		EasyMock.expect(formationClient.validateTemplate("someContents")).andReturn(params);
+		EasyMock.expect(formationClient.validateTemplate("otherContents")).andReturn(new LinkedList<>());
+
+		replayAll();
+		Assertions.assertEquals(params, repository.validateStackTemplate("someContents"));
+		Assertions.assertEquals(params, repository.validateStackTemplate("someContents"));
+		Assertions.assertTrue(repository.validateStackTemplate("otherContents").isEmpty());
+		verifyAll();
+	}
+
 	private List<software.amazon.awssdk.services.ec2.model.Tag> withTags(String buildNumber, String typeTag) {
 		List<software.amazon.awssdk.services.ec2.model.Tag> tags = new LinkedList<>();
 		tags.add(EnvironmentSetupForTests.createEc2Tag(AwsFacade.BUILD_TAG,buildNumber));
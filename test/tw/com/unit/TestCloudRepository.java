@@ -8,7 +8,6 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import tw.com.EnvironmentSetupForTests;
 import tw.com.exceptions.CfnAssistException;
-import tw.com.exceptions.WrongNumberOfInstancesException;
 import tw.com.providers.CloudClient;
 import tw.com.providers.SavesFile;
 import tw.com.repository.CloudRepository;
@@ -44,7 +43,7 @@ class TestCloudRepository extends EasyMockSupport {
 		String vpcId = "vpcId";
 		String subnetId = "subnetId";
 		
-		EasyMock.expect(cloudClient.getAllSubnets()).andReturn(createSubnets(vpcId, subnetId));
+		EasyMock.expect(cloudClient.getSubnetsForVpc(vpcId)).andReturn(List.of(Subnet.builder().vpcId(vpcId).subnetId(subnetId).build()));
 		
 		replayAll();
 		repository.getSubnetsForVpc(vpcId);
@@ -100,7 +99,7 @@ class TestCloudRepository extends EasyMockSupport {
 		addresses.add(Address.builder().privateIpAddress("10.9.8.7").instanceId(instanceB.instanceId()).build());
 		
 		EasyMock.expect(cloudClient.getEIPs()).andReturn(addresses);
-		EasyMock.expect(cloudClient.getInstances()).andReturn(instances);
+		EasyMock.expect(cloudClient.getInstancesForVpc(vpcId)).andReturn(List.of(instanceA));
 		
 		replayAll();
 		repository.getEIPForVPCId(vpcId);
@@ -148,6 +147,27 @@ class TestCloudRepository extends EasyMockSupport {
 		Assertions.assertEquals(instanceId, result.instanceId());
 	}
 	
+	@Test
+    void shouldNotLoadAllInstancesWhenAlreadyFoundByBatch() throws CfnAssistException {
+		Instance instance = Instance.builder().instanceId("idA").subnetId("subnetId").build();
+		EasyMock.expect(cloudClient.getInstancesById(List.of("idA"))).andReturn(List.of(instance));
+
+		replayAll();
+		repository.getTagsForInstances(List.of("idA"));
+		Instance result = repository.getInstanceById("idA");
+		verifyAll();
+		Assertions.assertSame(instance, result);
+	}
+
+	@Test
+    void shouldThrowIfInstanceNotFound() {
+		EasyMock.expect(cloudClient.getInstances()).andReturn(createInstances("instanceId", "subnetId"));
+
+		replayAll();
+		Assertions.assertThrows(CfnAssistException.class, () -> repository.getInstanceById("notThere"));
+		verifyAll();
+	}
+
 	@Test
     void shouldFindInstancesForASubnet() {
 		String subnetId = "subnetId";
@@ -166,17 +186,33 @@ class TestCloudRepository extends EasyMockSupport {
 		Assertions.assertEquals(2, result.size());
 	}
 	
+	@Test
+    void shouldOnlyFetchInstancesForTheVpcOfAKnownSubnet() {
+		String vpcId = "vpcId";
+		String subnetId = "subnetId";
+		Instance instance = Instance.builder().instanceId("instanceId").subnetId(subnetId).vpcId(vpcId).build();
+
+		EasyMock.expect(cloudClient.getSubnetsForVpc(vpcId)).andReturn(List.of(Subnet.builder().vpcId(vpcId).subnetId(subnetId).build()));
+		EasyMock.expect(cloudClient.getInstancesForVpc(vpcId)).andReturn(List.of(instance));
+
+		replayAll();
+		repository.getSubnetsForVpc(vpcId);
+		List<Instance> result = repository.getInstancesForSubnet(subnetId);
+		repository.getInstancesForSubnet(subnetId); // cached
+		verifyAll();
+		Assertions.assertEquals(1, result.size());
+		Assertions.assertEquals("instanceId", result.get(0).instanceId());
+	}
+
 	@Test
     void shouldGetRouteTablesForVPC() {
 		String vpcId = "vpcId";
 		String tableId = "tableId";
 
 		List<RouteTable> tables = new LinkedList<>();
-		tables.add(RouteTable.builder().routeTableId("someId").vpcId("someVpcID").build());
 		tables.add(RouteTable.builder().routeTableId(tableId).vpcId(vpcId).build());
-		tables.add(RouteTable.builder().routeTableId("someOtherId").vpcId("someOtherVpcID").build());
 	
-		EasyMock.expect(cloudClient.getRouteTables()).andReturn(tables);
+		EasyMock.expect(cloudClient.getRouteTablesForVpc(vpcId)).andReturn(tables);
 		
 		replayAll();
 		List<RouteTable> result = repository.getRouteTablesForVPC(vpcId);
@@ -192,11 +228,9 @@ class TestCloudRepository extends EasyMockSupport {
 		String aclId = "aclId";
 
 		List<NetworkAcl> acls = new LinkedList<>();
-		acls.add(NetworkAcl.builder().networkAclId("someId").vpcId("someVpcID").build());
 		acls.add(NetworkAcl.builder().networkAclId(aclId).vpcId(vpcId).build());
-		acls.add(NetworkAcl.builder().networkAclId("someOtherId").vpcId("someOtherVpcID").build());
 	
-		EasyMock.expect(cloudClient.getACLs()).andReturn(acls);
+		EasyMock.expect(cloudClient.getACLsForVpc(vpcId)).andReturn(acls);
 		
 		replayAll();
 		List<NetworkAcl> result = repository.getALCsForVPC(vpcId);
@@ -244,21 +278,39 @@ class TestCloudRepository extends EasyMockSupport {
 	}
 	
 	@Test
-    void shouldGetTagsForAnInstance() throws WrongNumberOfInstancesException {
-		String instanceId = "someId";
-		
-		Tag tag = EnvironmentSetupForTests.createEc2Tag("theKey","theValue");
-		Instance theInstance = Instance.builder().instanceId(instanceId).tags(tag).build();
-		EasyMock.expect(cloudClient.getInstanceById(instanceId)).andReturn(theInstance);
-		
+    void shouldGetTagsForInstancesInOneBatchAndCache() {
+		Instance instanceA = Instance.builder().instanceId("idA").tags(EnvironmentSetupForTests.createEc2Tag("key","valueA")).build();
+		Instance instanceB = Instance.builder().instanceId("idB").tags(EnvironmentSetupForTests.createEc2Tag("key","valueB")).build();
+		EasyMock.expect(cloudClient.getInstancesById(List.of("idA", "idB", "idMissing"))).andReturn(List.of(instanceA, instanceB));
+		EasyMock.expect(cloudClient.getInstancesById(List.of("idMissing"))).andReturn(List.of());
+
 		replayAll();
-		List<Tag> results = repository.getTagsForInstance(instanceId);
+		Map<String, List<Tag>> results = repository.getTagsForInstances(List.of("idA", "idB", "idMissing"));
+		Map<String, List<Tag>> cached = repository.getTagsForInstances(List.of("idB", "idMissing"));
 		verifyAll();
-		
-		Assertions.assertEquals(1, results.size());
-		Tag result = results.get(0);
-		Assertions.assertEquals("theKey", result.key());
-		Assertions.assertEquals("theValue", result.value());
+
+		Assertions.assertEquals(2, results.size());
+		Assertions.assertEquals("valueA", results.get("idA").get(0).value());
+		Assertions.assertEquals("valueB", results.get("idB").get(0).value());
+		Assertions.assertEquals(1, cached.size());
+		Assertions.assertEquals("valueB", cached.get("idB").get(0).value());
+	}
+
+	@Test
+    void shouldGetInstancesByIdInOneBatchWithoutLoadingRegion() {
+		Instance instanceA = Instance.builder().instanceId("idA").privateIpAddress("10.1.2.3").build();
+		Instance instanceB = Instance.builder().instanceId("idB").privateIpAddress("10.8.7.6").build();
+		EasyMock.expect(cloudClient.getInstancesById(List.of("idB", "idA"))).andReturn(List.of(instanceA, instanceB));
+		// no expectation for cloudClient.getInstances(), so loading the whole region would fail the test
+
+		replayAll();
+		Map<String, Instance> results = repository.getInstancesById(List.of("idB", "idA"));
+		Map<String, Instance> cached = repository.getInstancesById(List.of("idA"));
+		verifyAll();
+
+		Assertions.assertEquals(List.of("idB", "idA"), new LinkedList<>(results.keySet()));
+		Assertions.assertSame(instanceA, results.get("idA"));
+		Assertions.assertSame(instanceA, cached.get("idA"));
 	}
 
 	@Test
@@ -12,6 +12,7 @@ import software.amazon.awssdk.services.cloudformation.model.StackDriftStatus;
 import software.amazon.awssdk.services.cloudformation.model.StackStatus;
 import tw.com.*;
 import tw.com.commandline.CommandExecutor;
+import tw.com.commandline.LogFetchReporter;
 import tw.com.commandline.Main;
 import tw.com.entity.*;
 import tw.com.exceptions.CfnAssistException;
@@ -28,10 +29,13 @@ import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 
 import static java.lang.String.format;
 
@@ -180,6 +184,43 @@ class TestCommandLineActions extends EasyMockSupport {
 		validate(CLIArgBuilder.deployFromDir(FilesForTesting.ORDERED_SCRIPTS_FOLDER, "-sns", comment));
 	}
 
+	@Test
+    void shouldCreateStacksFromDirWithSNSQueuePerRun() throws MissingArgumentException, CfnAssistException, InterruptedException, IOException {
+		setFactoryExpectations();
+		factory.setSNSMonitoring();
+		factory.setSNSQueuePerRun();
+
+		ArrayList<StackNameAndId> stacks = new ArrayList<>();
+		projectAndEnv.setUseSNS();
+		EasyMock.expect(facade.applyTemplatesFromFolder(FilesForTesting.ORDERED_SCRIPTS_FOLDER, projectAndEnv, params)).andReturn(stacks);
+
+		validate(CLIArgBuilder.deployFromDirWithSNS(FilesForTesting.ORDERED_SCRIPTS_FOLDER, comment, "-snsQueuePerRun"));
+	}
+
+	@Test
+    void shouldCreateStacksFromDirStreamingEvents() throws MissingArgumentException, CfnAssistException, InterruptedException, IOException {
+		setFactoryExpectations();
+		factory.setStreamStackEvents();
+
+		ArrayList<StackNameAndId> stacks = new ArrayList<>();
+		EasyMock.expect(facade.applyTemplatesFromFolder(FilesForTesting.ORDERED_SCRIPTS_FOLDER, projectAndEnv, params)).andReturn(stacks);
+
+		validate(CLIArgBuilder.deployFromDir(FilesForTesting.ORDERED_SCRIPTS_FOLDER, "-streamEvents", comment));
+	}
+
+	@Test
+    void shouldCreateStacksFromDirWithSNSAndPolling() throws MissingArgumentException, CfnAssistException, InterruptedException, IOException {
+		setFactoryExpectations();
+		factory.setSNSMonitoring();
+		factory.setSNSWithPolling();
+
+		ArrayList<StackNameAndId> stacks = new ArrayList<>();
+		projectAndEnv.setUseSNS();
+		EasyMock.expect(facade.applyTemplatesFromFolder(FilesForTesting.ORDERED_SCRIPTS_FOLDER, projectAndEnv, params)).andReturn(stacks);
+
+		validate(CLIArgBuilder.deployFromDirWithSNS(FilesForTesting.ORDERED_SCRIPTS_FOLDER, comment, "-snsWithPolling"));
+	}
+
 	@Test
     void testShouldListInstances() throws MissingArgumentException, CfnAssistException, InterruptedException {
 		SearchCriteria criteria = new SearchCriteria(projectAndEnv);
@@ -394,12 +435,22 @@ class TestCommandLineActions extends EasyMockSupport {
 
 	    int days = 4;
 
-	    facade.removeCloudWatchLogsOlderThan(projectAndEnv, days);
-	    EasyMock.expectLastCall();
+	    EasyMock.expect(facade.removeCloudWatchLogsOlderThan(projectAndEnv, days)).andReturn(new LogPurgeSummary(false, 3));
 
 	    validate(CLIArgBuilder.tidyCloudWatch(days));
     }
 
+    @Test
+    void shouldReportOldCloudwatchLogsForDryRun() throws InterruptedException, MissingArgumentException, CfnAssistException {
+	    setFactoryExpectations();
+
+	    int days = 4;
+
+	    EasyMock.expect(facade.removeCloudWatchLogsOlderThan(projectAndEnv, days)).andReturn(new LogPurgeSummary(true, 3));
+
+	    validate(CLIArgBuilder.tidyCloudWatchDryRun(days));
+    }
+
     @Test
     void shouldTagCloudwatchLog() throws InterruptedException, MissingArgumentException, CfnAssistException {
 	    setFactoryExpectations();
@@ -414,11 +465,120 @@ class TestCommandLineActions extends EasyMockSupport {
     void shouldGetLogs() throws InterruptedException, MissingArgumentException, CfnAssistException {
 	    setFactoryExpectations();
         Integer hours = 42;
+        EasyMock.expect(factory.getFollowLogs()).andReturn(Duration.ZERO);
+        EasyMock.expect(factory.getLogFilter()).andReturn(Optional.empty());
+        EasyMock.expect(factory.createLogFetchReporter()).andReturn(quietReporter());
         EasyMock.expect(facade.fetchLogs(projectAndEnv, hours)).andReturn(new LinkedList<>());
 
 	    validate(CLIArgBuilder.getLogs(hours));
     }
 
+	@Test
+    void shouldGetLogsWithinMemoryCeiling() throws InterruptedException, MissingArgumentException, CfnAssistException {
+	    setFactoryExpectations();
+        Integer hours = 42;
+        factory.setLogMemoryCeiling(256L * 1024 * 1024);
+        EasyMock.expect(factory.getFollowLogs()).andReturn(Duration.ZERO);
+        EasyMock.expect(factory.getLogFilter()).andReturn(Optional.empty());
+        EasyMock.expect(factory.createLogFetchReporter()).andReturn(quietReporter());
+        EasyMock.expect(facade.fetchLogs(projectAndEnv, hours)).andReturn(new LinkedList<>());
+
+	    validate(CLIArgBuilder.getLogsWithMemory(hours, "256MB"));
+    }
+
+	@Test
+    void shouldQueryLogs() throws IOException {
+        LogIndexQuery query = createMock(LogIndexQuery.class);
+        EasyMock.expect(factory.createLogIndexQuery()).andReturn(query);
+        EasyMock.expect(query.query(EasyMock.eq(Paths.get("fetched.log")), EasyMock.eq(Instant.parse("2024-05-01T10:00:00Z")),
+                EasyMock.eq(Instant.parse("2024-05-01T11:00:00Z")), EasyMock.eq(Optional.empty()),
+                EasyMock.anyObject())).andReturn(42L);
+
+	    validate(CLIArgBuilder.queryLogs("fetched.log", "2024-05-01T10:00:00Z", "2024-05-01T11:00:00Z"));
+    }
+
+	@Test
+    void shouldQueryLogsForAStream() throws IOException {
+        LogIndexQuery query = createMock(LogIndexQuery.class);
+        EasyMock.expect(factory.createLogIndexQuery()).andReturn(query);
+        EasyMock.expect(query.query(EasyMock.eq(Paths.get("fetched.log")), EasyMock.eq(Instant.parse("2024-05-01T10:00:00Z")),
+                EasyMock.eq(Instant.parse("2024-05-01T11:00:00Z")), EasyMock.eq(Optional.of("streamA")),
+                EasyMock.anyObject())).andReturn(42L);
+
+	    validate(CLIArgBuilder.queryLogs("fetched.log", "2024-05-01T10:00:00Z", "2024-05-01T11:00:00Z", "streamA"));
+    }
+
+	@Test
+    void shouldNotQueryLogsIfStartIsAfterEnd() {
+		expectCommandLineFailureStatus(CLIArgBuilder.queryLogs("fetched.log", "2024-05-01T11:00:00Z", "2024-05-01T10:00:00Z"));
+		expectCommandLineFailureStatus(CLIArgBuilder.queryLogs("fetched.log", "yesterday", "2024-05-01T10:00:00Z"));
+    }
+
+	@Test
+    void shouldNotIndexCompressedLogs() {
+		String[] args = {
+				"-env", EnvironmentSetupForTests.ENV,
+				"-project", EnvironmentSetupForTests.PROJECT,
+				"-logs", "42",
+				"-gzipLogs",
+				"-indexLogs"
+				};
+		expectCommandLineFailureStatus(args);
+    }
+
+	@Test
+    void shouldGetLogsAndSaveMetrics() throws InterruptedException, MissingArgumentException, CfnAssistException {
+	    setFactoryExpectations();
+        Integer hours = 42;
+        factory.setLogMetricsFile(Paths.get("metrics.json"));
+        EasyMock.expect(factory.getFollowLogs()).andReturn(Duration.ZERO);
+        EasyMock.expect(factory.getLogFilter()).andReturn(Optional.empty());
+        EasyMock.expect(factory.createLogFetchReporter()).andReturn(quietReporter());
+        EasyMock.expect(facade.fetchLogs(projectAndEnv, hours)).andReturn(new LinkedList<>());
+
+	    String output = validate(CLIArgBuilder.getLogsWithMetrics(hours, "metrics.json"));
+
+        Assertions.assertTrue(output.contains("Fetched 0 events from 0 groups in 0 pages"), output);
+    }
+
+	@Test
+    void shouldSearchLogs() throws InterruptedException, MissingArgumentException, CfnAssistException {
+	    setFactoryExpectations();
+        Integer hours = 6;
+        factory.setLogFilter("ERROR");
+        EasyMock.expect(factory.getFollowLogs()).andReturn(Duration.ZERO);
+        EasyMock.expect(factory.getLogFilter()).andReturn(Optional.of("ERROR"));
+        EasyMock.expect(factory.createLogFetchReporter()).andReturn(quietReporter());
+        EasyMock.expect(facade.searchLogs(projectAndEnv, hours, "ERROR")).andReturn(new LinkedList<>());
+
+	    validate(CLIArgBuilder.searchLogs(hours, "ERROR"));
+    }
+
+	@Test
+    void shouldNotFollowSearches() {
+		String[] args = {
+				"-env", EnvironmentSetupForTests.ENV,
+				"-project", EnvironmentSetupForTests.PROJECT,
+				"-logs", "6",
+				"--grep", "ERROR",
+				"-follow", "30"
+				};
+		expectCommandLineFailureStatus(args);
+    }
+
+	@Test
+    void shouldGetLogsIncrementally() throws InterruptedException, MissingArgumentException, CfnAssistException {
+	    setFactoryExpectations();
+        Integer hours = 42;
+        factory.setIncrementalLogs();
+        EasyMock.expect(factory.getFollowLogs()).andReturn(Duration.ZERO);
+        EasyMock.expect(factory.getLogFilter()).andReturn(Optional.empty());
+        EasyMock.expect(factory.createLogFetchReporter()).andReturn(quietReporter());
+        EasyMock.expect(facade.fetchLogs(projectAndEnv, hours)).andReturn(new LinkedList<>());
+
+	    validate(CLIArgBuilder.getLogsIncrementally(hours));
+    }
+
     @Test
     void testShouldBlockHostOnELB() throws MissingArgumentException, CfnAssistException, InterruptedException, UnknownHostException {
         setFactoryExpectations();
@@ -582,6 +742,10 @@ class TestCommandLineActions extends EasyMockSupport {
 		expectCommandLineFailureStatus(args);
 	}
 
+	private LogFetchReporter quietReporter() {
+		return new LogFetchReporter(new LogFetchMetrics(), Optional.empty(), Optional.empty(), LogFetchReporter.DEFAULT_INTERVAL);
+	}
+
 	private void expectCommandLineFailureStatus(String[] args) {
 		Main main = new Main(args);
 		int result = main.parse(factory,true);
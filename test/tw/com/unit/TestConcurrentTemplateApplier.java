@@ -0,0 +1,113 @@
+package tw.com.unit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.TemplateParameter;
+import tw.com.ConcurrentTemplateApplier;
+import tw.com.TemplateDependencies;
+import tw.com.entity.StackNameAndId;
+import tw.com.exceptions.CfnAssistException;
+import tw.com.exceptions.InvalidStackParameterException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestConcurrentTemplateApplier {
+    private final File folder = new File("testConcurrentTemplateApplier");
+
+    private List<File> files;
+    private Map<File, List<TemplateParameter>> declared;
+    private List<Integer> deltaIndexes;
+    private List<StackNameAndId> removed;
+
+    @BeforeEach
+    public void beforeEachTestRuns() throws IOException {
+        FileUtils.deleteQuietly(folder);
+        files = new LinkedList<>();
+        declared = new HashMap<>();
+        deltaIndexes = Collections.synchronizedList(new LinkedList<>());
+        removed = new LinkedList<>();
+        for (int index = 1; index <= 3; index++) {
+            File file = new File(folder, "0" + index + "subnet.json");
+            FileUtils.writeStringToFile(file, "{ \"Resources\" : { \"subnet" + index + "\" : {} } }", Charset.defaultCharset());
+            files.add(file);
+            declared.put(file, new LinkedList<>());
+        }
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldApplyIndependentTemplatesAtTheSameTime() throws CfnAssistException, IOException, InterruptedException {
+        CountDownLatch allStarted = new CountDownLatch(files.size());
+        ConcurrentTemplateApplier applier = createApplier(3);
+
+        List<StackNameAndId> result = applier.apply(file -> {
+            allStarted.countDown();
+            // only completes if all three are running together
+            assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+            return stackIdFor(file);
+        }, deltaIndexes::add, this::remove);
+
+        assertEquals(List.of(stackIdFor(files.get(0)), stackIdFor(files.get(1)), stackIdFor(files.get(2))), result);
+        assertEquals(3, deltaIndexes.get(deltaIndexes.size()-1));
+    }
+
+    @Test
+    public void shouldWaitForDependencies() throws CfnAssistException, IOException, InterruptedException {
+        declared.put(files.get(2), List.of(TemplateParameter.builder().parameterKey("subnet").description("::subnet1").build()));
+        Set<File> done = Collections.synchronizedSet(new HashSet<>());
+        ConcurrentTemplateApplier applier = createApplier(3);
+
+        applier.apply(file -> {
+            if (file.equals(files.get(2))) {
+                assertTrue(done.contains(files.get(0)));
+            }
+            done.add(file);
+            return stackIdFor(file);
+        }, deltaIndexes::add, this::remove);
+
+        assertEquals(3, done.size());
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void shouldOnlyMoveDeltaIndexPastContiguousFilesOnFailure() throws InterruptedException {
+        ConcurrentTemplateApplier applier = createApplier(3);
+
+        assertThrows(InvalidStackParameterException.class, () -> applier.apply(file -> {
+            if (file.equals(files.get(1))) {
+                throw new InvalidStackParameterException("failed");
+            }
+            return stackIdFor(file);
+        }, deltaIndexes::add, this::remove));
+
+        assertEquals(List.of(1), deltaIndexes);
+        // so that applying the folder again does not try to create it twice
+        assertEquals(List.of(stackIdFor(files.get(2))), removed);
+    }
+
+    private ConcurrentTemplateApplier createApplier(int parallelism) {
+        TemplateDependencies dependencies = new TemplateDependencies(files, declared);
+        return new ConcurrentTemplateApplier(files, dependencies, file -> files.indexOf(file)+1, parallelism);
+    }
+
+    private void remove(File file, StackNameAndId stackId) {
+        removed.add(stackId);
+    }
+
+    private StackNameAndId stackIdFor(File file) {
+        return new StackNameAndId(file.getName(), "id" + file.getName());
+    }
+}
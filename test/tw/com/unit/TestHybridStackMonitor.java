@@ -0,0 +1,261 @@
+package tw.com.unit;
+
+import org.apache.commons.io.FileUtils;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.HybridStackMonitor;
+import tw.com.NotificationProvider;
+import tw.com.SetsDeltaIndex;
+import tw.com.entity.DeletionsPending;
+import tw.com.entity.StackNameAndId;
+import tw.com.entity.StackNotification;
+import tw.com.exceptions.CfnAssistException;
+import tw.com.exceptions.NotReadyException;
+import tw.com.exceptions.WrongStackStatus;
+import tw.com.providers.StackDurationStore;
+import tw.com.repository.CheckStackExists;
+import tw.com.repository.StackRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestHybridStackMonitor extends EasyMockSupport {
+    private static final String STACK_RESOURCE_TYPE = "AWS::CloudFormation::Stack";
+    private static final HybridStackMonitor.Pacing PACING = new HybridStackMonitor.Pacing(Duration.ofMillis(50),
+            Duration.ofMillis(200), Duration.ofMillis(400), Duration.ofSeconds(5));
+
+    private final Path durationsFile = Paths.get("testDurations.json");
+    private final Path durationsDir = Paths.get("testDurationsCache");
+    private final StackNameAndId stackA = new StackNameAndId("stackA", "idA");
+    private BlockingQueue<List<StackNotification>> batches;
+    private boolean queueFails;
+    private StackRepository stackRepository;
+    private CheckStackExists checkStackExists;
+    private StackDurationStore durations;
+    private HybridStackMonitor monitor;
+
+    @BeforeEach
+    public void beforeEachTestRuns() throws IOException {
+        Files.deleteIfExists(durationsFile);
+        FileUtils.deleteQuietly(durationsDir.toFile());
+        batches = new LinkedBlockingQueue<>();
+        queueFails = false;
+        stackRepository = createMock(StackRepository.class);
+        checkStackExists = createMock(CheckStackExists.class);
+        durations = new StackDurationStore(durationsFile);
+        monitor = new HybridStackMonitor(new QueueProvider(), checkStackExists, stackRepository, durations, PACING);
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() throws IOException {
+        Files.deleteIfExists(durationsFile);
+        FileUtils.deleteQuietly(durationsDir.toFile());
+    }
+
+    @Test
+    public void shouldReturnWhenNotifiedWithoutCheckingStatus() throws Exception {
+        batches.add(List.of(notification(stackA, StackStatus.CREATE_COMPLETE)));
+
+        replayAll();
+        assertEquals(StackStatus.CREATE_COMPLETE, monitor.waitForCreateFinished(stackA));
+        verifyAll();
+
+        assertTrue(durations.expected(StackStatus.CREATE_COMPLETE.toString(), "stackA").isPresent());
+    }
+
+    @Test
+    public void shouldCheckStatusWhenNotificationsAreLost() throws Exception {
+        // stack cache is not used, it does not know about stacks created since it loaded
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andReturn(StackStatus.UPDATE_IN_PROGRESS);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andReturn(StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andReturn(StackStatus.UPDATE_COMPLETE);
+
+        replayAll();
+        assertEquals(StackStatus.UPDATE_COMPLETE, monitor.waitForUpdateFinished(stackA));
+        verifyAll();
+    }
+
+    @Test
+    public void shouldFailWhenStatusCheckFindsStackRolledBack() throws Exception {
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andReturn(StackStatus.ROLLBACK_COMPLETE);
+        EasyMock.expect(stackRepository.getStackEvents("stackA")).andReturn(new LinkedList<>());
+
+        replayAll();
+        WrongStackStatus failure = assertThrows(WrongStackStatus.class, () -> monitor.waitForCreateFinished(stackA));
+        verifyAll();
+
+        assertTrue(failure.getMessage().contains(StackStatus.ROLLBACK_COMPLETE.toString()), failure.getMessage());
+    }
+
+    @Test
+    public void shouldGiveUpOnceTimedOut() throws Exception {
+        HybridStackMonitor.Pacing pacing = new HybridStackMonitor.Pacing(Duration.ofMillis(10), Duration.ofMillis(20),
+                Duration.ofMillis(20), Duration.ofMillis(200));
+        monitor = new HybridStackMonitor(new QueueProvider(), checkStackExists, stackRepository, durations, pacing);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andStubReturn(StackStatus.CREATE_IN_PROGRESS);
+        EasyMock.expect(stackRepository.getStackEvents("stackA")).andReturn(new LinkedList<>());
+
+        replayAll();
+        WrongStackStatus failure = assertThrows(WrongStackStatus.class, () -> monitor.waitForCreateFinished(stackA));
+        verifyAll();
+
+        assertTrue(failure.getMessage().contains(StackStatus.CREATE_IN_PROGRESS.toString()), failure.getMessage());
+    }
+
+    @Test
+    public void shouldPutOffStatusChecksWhileHearingAboutStack() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            batches.add(List.of(new StackNotification("stackA", StackStatus.CREATE_IN_PROGRESS, "idA",
+                    "AWS::EC2::Instance", "")));
+        }
+        batches.add(List.of(notification(stackA, StackStatus.CREATE_COMPLETE)));
+
+        replayAll(); // no status checks expected
+        assertEquals(StackStatus.CREATE_COMPLETE, monitor.waitForCreateFinished(stackA));
+        verifyAll();
+    }
+
+    @Test
+    public void shouldFindPendingDeletesByNotificationOrStatusCheck() throws CfnAssistException {
+        StackNameAndId stackB = new StackNameAndId("stackB", "idB");
+        DeletionsPending pending = new DeletionsPending();
+        pending.add(3, stackA);
+        pending.add(2, stackB);
+        SetsDeltaIndex setsDeltaIndex = createMock(SetsDeltaIndex.class);
+
+        batches.add(List.of(notification(stackA, StackStatus.DELETE_COMPLETE)));
+        EasyMock.expect(checkStackExists.stackExists("stackA")).andStubReturn(true);
+        EasyMock.expect(checkStackExists.stackExists("stackB")).andReturn(true);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andStubReturn(StackStatus.DELETE_IN_PROGRESS);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idB")).andReturn(StackStatus.DELETE_IN_PROGRESS);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idB")).andReturn(StackStatus.DELETE_COMPLETE);
+        setsDeltaIndex.setDeltaIndex(1);
+        EasyMock.expectLastCall();
+
+        replayAll();
+        List<String> deleted = monitor.waitForDeleteFinished(pending, setsDeltaIndex);
+        verifyAll();
+
+        assertEquals(2, deleted.size());
+        assertTrue(deleted.containsAll(List.of("stackA", "stackB")));
+    }
+
+    @Test
+    public void shouldCarryOnCheckingPendingDeletesWhenQueueCannotBeRead() throws CfnAssistException {
+        queueFails = true;
+        DeletionsPending pending = new DeletionsPending();
+        pending.add(3, stackA);
+        SetsDeltaIndex setsDeltaIndex = createMock(SetsDeltaIndex.class);
+
+        EasyMock.expect(checkStackExists.stackExists("stackA")).andReturn(true);
+        EasyMock.expect(stackRepository.getCurrentStackStatus("idA")).andReturn(StackStatus.DELETE_COMPLETE);
+        setsDeltaIndex.setDeltaIndex(2);
+        EasyMock.expectLastCall();
+
+        replayAll();
+        List<String> deleted = monitor.waitForDeleteFinished(pending, setsDeltaIndex);
+        verifyAll();
+
+        assertEquals(List.of("stackA"), deleted);
+    }
+
+    @Test
+    public void shouldPaceChecksByExpectedDuration() {
+        HybridStackMonitor.Pacing pacing = new HybridStackMonitor.Pacing(Duration.ofSeconds(10), Duration.ofMinutes(2),
+                Duration.ofMinutes(5), Duration.ofHours(1));
+        Duration expected = Duration.ofMinutes(4);
+
+        assertEquals(Duration.ofMinutes(1), pacing.silenceAllowed(expected));
+        assertEquals(Duration.ofSeconds(10), pacing.silenceAllowed(Duration.ofSeconds(20)));
+        assertEquals(Duration.ofMinutes(2), pacing.silenceAllowed(Duration.ofHours(1)));
+
+        // closer together nearing the expected finish
+        assertEquals(Duration.ofMinutes(1), pacing.interval(expected, Duration.ofMinutes(2), 0));
+        assertEquals(Duration.ofSeconds(15), pacing.interval(expected, Duration.ofSeconds(210), 0));
+        // then backing off when overdue
+        assertEquals(Duration.ofSeconds(20), pacing.interval(expected, Duration.ofMinutes(5), 1));
+        assertEquals(Duration.ofSeconds(80), pacing.interval(expected, Duration.ofMinutes(6), 3));
+        assertEquals(Duration.ofMinutes(2), pacing.interval(expected, Duration.ofMinutes(9), 8));
+
+        assertEquals(Duration.ofHours(1), pacing.giveUpAfter(expected));
+        assertEquals(Duration.ofHours(3), pacing.giveUpAfter(Duration.ofHours(1)));
+    }
+
+    @Test
+    public void shouldRememberDurationsPerStackAndOperation() {
+        durations.record("CREATE_COMPLETE", "stackA", Duration.ofSeconds(100));
+        durations.record("CREATE_COMPLETE", "stackA", Duration.ofSeconds(200));
+        durations.record("CREATE_COMPLETE", "stackB", Duration.ofSeconds(300));
+
+        StackDurationStore reloaded = new StackDurationStore(durationsFile);
+        assertEquals(Duration.ofSeconds(150), reloaded.expected("CREATE_COMPLETE", "stackA").orElseThrow());
+        assertEquals(Duration.ofSeconds(200), reloaded.expected("CREATE_COMPLETE", "unseen").orElseThrow());
+        assertTrue(reloaded.expected("DELETE_COMPLETE", "stackA").isEmpty());
+    }
+
+    @Test
+    public void shouldKeepDurationsApartForEachAccountRegionAndProject() {
+        new StackDurationStore(durationsDir, "111111111111", "eu-west-1", "project").
+                record("CREATE_COMPLETE", "stackA", Duration.ofSeconds(100));
+        new StackDurationStore(durationsDir, "222222222222", "eu-west-1", "project").
+                record("CREATE_COMPLETE", "stackA", Duration.ofSeconds(300));
+
+        assertEquals(Duration.ofSeconds(100), new StackDurationStore(durationsDir, "111111111111", "eu-west-1", "project").
+                expected("CREATE_COMPLETE", "stackA").orElseThrow());
+        assertTrue(Files.exists(durationsDir.resolve("222222222222").resolve("eu-west-1").resolve("project").
+                resolve("durations.json")));
+        assertTrue(new StackDurationStore(durationsDir, "111111111111", "us-east-1", "project").
+                expected("CREATE_COMPLETE", "unseen").isEmpty());
+        assertTrue(new StackDurationStore(durationsDir, "111111111111", "eu-west-1", "other").
+                expected("CREATE_COMPLETE", "stackA").isEmpty());
+    }
+
+    private StackNotification notification(StackNameAndId id, StackStatus status) {
+        return new StackNotification(id.getStackName(), status, id.getStackId(), STACK_RESOURCE_TYPE, "");
+    }
+
+    // stands in for the queue, each receive returns the next batch or times out with nothing
+    private class QueueProvider implements NotificationProvider {
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public List<StackNotification> receiveNotifications() throws NotReadyException {
+            if (queueFails) {
+                throw new NotReadyException("queue cannot be read");
+            }
+            try {
+                List<StackNotification> batch = batches.poll(20, TimeUnit.MILLISECONDS);
+                return batch==null ? new LinkedList<>() : batch;
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                return new LinkedList<>();
+            }
+        }
+
+        @Override
+        public boolean isInit() {
+            return true;
+        }
+
+        @Override
+        public String getSNSArn() {
+            return "snsArn";
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package tw.com.unit;
+
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.*;
+import tw.com.AwsFacade;
+import tw.com.EnvironmentSetupForTests;
+import tw.com.entity.OutputLogEventDecorator;
+import tw.com.providers.LogClient;
+import tw.com.providers.LogFetchMetrics;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestLogClient extends EasyMockSupport {
+    private CloudWatchLogsClient cloudWatchLogsClient;
+    private LogClient logClient;
+    private DeleteLogStreamRequest request;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        cloudWatchLogsClient = createStrictMock(CloudWatchLogsClient.class);
+        logClient = new LogClient(cloudWatchLogsClient, 1);
+        request = DeleteLogStreamRequest.builder().logGroupName("group").logStreamName("stream").build();
+    }
+
+    @Test
+    public void shouldRetryWhenThrottled() {
+        EasyMock.expect(cloudWatchLogsClient.deleteLogStream(request)).andThrow(createException("ThrottlingException"));
+        EasyMock.expect(cloudWatchLogsClient.deleteLogStream(request)).andThrow(createException("ThrottlingException"));
+        EasyMock.expect(cloudWatchLogsClient.deleteLogStream(request)).andReturn(DeleteLogStreamResponse.builder().build());
+
+        replayAll();
+        logClient.deleteLogStream("group", "stream");
+        verifyAll();
+    }
+
+    @Test
+    public void shouldNotRetryOtherFailures() {
+        EasyMock.expect(cloudWatchLogsClient.deleteLogStream(request)).andThrow(createException("ResourceNotFoundException"));
+
+        replayAll();
+        assertThrows(CloudWatchLogsException.class, () -> logClient.deleteLogStream("group", "stream"));
+        verifyAll();
+    }
+
+    @Test
+    public void shouldScanAllPagesOfGroupsAndCacheTags() {
+        CloudWatchLogsClient client = createMock(CloudWatchLogsClient.class); // tags fetched concurrently
+        LogClient cachingClient = new LogClient(client, 1, Duration.ofMinutes(5));
+
+        EasyMock.expect(client.describeLogGroups(DescribeLogGroupsRequest.builder().build())).
+                andReturn(DescribeLogGroupsResponse.builder().logGroups(group("groupA")).nextToken("token").build());
+        EasyMock.expect(client.describeLogGroups(DescribeLogGroupsRequest.builder().nextToken("token").build())).
+                andReturn(DescribeLogGroupsResponse.builder().logGroups(group("groupB")).build());
+        EasyMock.expect(client.listTagsLogGroup(tagsRequest("groupA"))).
+                andReturn(ListTagsLogGroupResponse.builder().tags(Collections.singletonMap("CFN_ASSIST_ENV", "Dev")).build());
+        EasyMock.expect(client.listTagsLogGroup(tagsRequest("groupB"))).
+                andReturn(ListTagsLogGroupResponse.builder().tags(Collections.emptyMap()).build());
+
+        replayAll();
+        Map<String, Map<String, String>> first = cachingClient.getGroupsWithTags();
+        Map<String, Map<String, String>> second = cachingClient.getGroupsWithTags();
+        verifyAll();
+
+        assertEquals(2, first.size());
+        assertEquals("Dev", first.get("groupA").get("CFN_ASSIST_ENV"));
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void shouldUpdateCachedTagsWhenGroupTagged() {
+        CloudWatchLogsClient client = createMock(CloudWatchLogsClient.class);
+        LogClient cachingClient = new LogClient(client, 1, Duration.ofMinutes(5));
+
+        EasyMock.expect(client.describeLogGroups(DescribeLogGroupsRequest.builder().build())).
+                andReturn(DescribeLogGroupsResponse.builder().logGroups(group("groupA")).build());
+        EasyMock.expect(client.listTagsLogGroup(tagsRequest("groupA"))).
+                andReturn(ListTagsLogGroupResponse.builder().tags(Collections.emptyMap()).build());
+        EasyMock.expect(client.tagLogGroup(EasyMock.<TagLogGroupRequest>anyObject())).
+                andReturn(TagLogGroupResponse.builder().build());
+
+        replayAll();
+        assertEquals(Collections.emptyMap(), cachingClient.getGroupsWithTags().get("groupA"));
+        cachingClient.tagGroupFor(EnvironmentSetupForTests.getMainProjectAndEnv(), "groupA");
+        Map<String, Map<String, String>> result = cachingClient.getGroupsWithTags();
+        verifyAll();
+
+        Map<String, String> tags = new HashMap<>(result.get("groupA"));
+        assertEquals(EnvironmentSetupForTests.ENV, tags.get(AwsFacade.ENVIRONMENT_TAG));
+        assertEquals(EnvironmentSetupForTests.PROJECT, tags.get(AwsFacade.PROJECT_TAG));
+    }
+
+    @Test
+    public void shouldRescanOnceCacheExpires() {
+        CloudWatchLogsClient client = createMock(CloudWatchLogsClient.class);
+        LogClient uncachedClient = new LogClient(client, 1, Duration.ZERO);
+
+        EasyMock.expect(client.describeLogGroups(DescribeLogGroupsRequest.builder().build())).
+                andReturn(DescribeLogGroupsResponse.builder().logGroups(group("groupA")).build()).times(2);
+        EasyMock.expect(client.listTagsLogGroup(tagsRequest("groupA"))).
+                andReturn(ListTagsLogGroupResponse.builder().tags(Collections.emptyMap()).build()).times(2);
+
+        replayAll();
+        uncachedClient.getGroupsWithTags();
+        uncachedClient.getGroupsWithTags();
+        verifyAll();
+    }
+
+    @Test
+    public void shouldPageOldestStreamsFirstUntilNewerStream() {
+        long when = 1000;
+        DescribeLogStreamsRequest.Builder builder = DescribeLogStreamsRequest.builder().logGroupName("group").
+                orderBy(OrderBy.LAST_EVENT_TIME).descending(false);
+
+        LogStream empty = LogStream.builder().logStreamName("empty").creationTime(10L).build();
+        LogStream oldA = LogStream.builder().logStreamName("oldA").lastEventTimestamp(100L).build();
+        LogStream oldB = LogStream.builder().logStreamName("oldB").lastEventTimestamp(999L).build();
+        LogStream newer = LogStream.builder().logStreamName("newer").lastEventTimestamp(1000L).build();
+
+        EasyMock.expect(cloudWatchLogsClient.describeLogStreams(builder.build())).
+                andReturn(DescribeLogStreamsResponse.builder().logStreams(empty, oldA).nextToken("token").build());
+        EasyMock.expect(cloudWatchLogsClient.describeLogStreams(builder.nextToken("token").build())).
+                andReturn(DescribeLogStreamsResponse.builder().logStreams(oldB, newer).nextToken("more").build());
+
+        replayAll();
+        List<List<LogStream>> pages = new LinkedList<>();
+        logClient.getStreamsOlderThan("group", when, pages::add);
+        verifyAll();
+
+        assertEquals(2, pages.size());
+        assertEquals(Arrays.asList(empty, oldA), pages.get(0));
+        assertEquals(Collections.singletonList(oldB), pages.get(1));
+    }
+
+    @Test
+    public void shouldSearchStreamsInBatchesUntilNoMoreResults() {
+        List<String> streamNames = new LinkedList<>();
+        for (int index = 0; index < LogClient.MAX_STREAMS_PER_FILTER + 1; index++) {
+            streamNames.add("stream" + index);
+        }
+        FilterLogEventsRequest.Builder first = FilterLogEventsRequest.builder().logGroupName("group").
+                logStreamNames(streamNames.subList(0, LogClient.MAX_STREAMS_PER_FILTER)).startTime(42L).filterPattern("ERROR");
+        FilterLogEventsRequest.Builder second = FilterLogEventsRequest.builder().logGroupName("group").
+                logStreamNames(streamNames.subList(LogClient.MAX_STREAMS_PER_FILTER, streamNames.size())).startTime(42L).
+                filterPattern("ERROR");
+
+        EasyMock.expect(cloudWatchLogsClient.filterLogEvents(first.build())).andReturn(FilterLogEventsResponse.builder().
+                events(filtered("stream0", 50L, "ERROR one")).nextToken("token").build());
+        EasyMock.expect(cloudWatchLogsClient.filterLogEvents(first.nextToken("token").build())).andReturn(FilterLogEventsResponse.builder().
+                events(Collections.emptyList()).nextToken("again").build()); // search still in progress
+        EasyMock.expect(cloudWatchLogsClient.filterLogEvents(first.nextToken("again").build())).andReturn(FilterLogEventsResponse.builder().
+                events(filtered("stream3", 60L, "ERROR two")).build());
+        EasyMock.expect(cloudWatchLogsClient.filterLogEvents(second.build())).andReturn(FilterLogEventsResponse.builder().
+                events(Collections.emptyList()).build());
+
+        replayAll();
+        List<Stream<OutputLogEventDecorator>> results = logClient.searchLogs("group", streamNames, 42L, "ERROR");
+        assertEquals(2, results.size());
+        List<String> firstBatch = results.get(0).map(OutputLogEventDecorator::toString).collect(Collectors.toList());
+        long secondBatch = results.get(1).count();
+        verifyAll();
+
+        assertEquals(Arrays.asList("stream0 ERROR one", "stream3 ERROR two"), firstBatch);
+        assertEquals(0, secondBatch);
+    }
+
+    @Test
+    public void shouldLimitEventsPerPage() {
+        GetLogEventsRequest request = GetLogEventsRequest.builder().logGroupName("group").logStreamName("stream").
+                startTime(42L).limit(100).startFromHead(true).build();
+        EasyMock.expect(cloudWatchLogsClient.getLogEvents(request)).andReturn(GetLogEventsResponse.builder().
+                events(Collections.emptyList()).nextForwardToken("token").build());
+
+        replayAll();
+        List<Stream<OutputLogEventDecorator>> results = logClient.fetchLogs("group", List.of("stream"), 42L, 100);
+        assertEquals(0, results.getFirst().count());
+        verifyAll();
+    }
+
+    @Test
+    public void shouldRecordCallsPagesAndThrottling() {
+        LogFetchMetrics metrics = new LogFetchMetrics();
+        LogClient measuredClient = new LogClient(cloudWatchLogsClient, 1, Duration.ofMinutes(5), metrics);
+        GetLogEventsRequest first = GetLogEventsRequest.builder().logGroupName("group").logStreamName("stream").
+                startTime(42L).startFromHead(true).build();
+        GetLogEventsRequest second = first.toBuilder().nextToken("tokenA").build();
+        List<OutputLogEvent> events = List.of(OutputLogEvent.builder().timestamp(43L).message("A").build(),
+                OutputLogEvent.builder().timestamp(44L).message("B").build());
+        EasyMock.expect(cloudWatchLogsClient.getLogEvents(first)).andThrow(createException("ThrottlingException"));
+        EasyMock.expect(cloudWatchLogsClient.getLogEvents(first)).andReturn(GetLogEventsResponse.builder().
+                events(events).nextForwardToken("tokenA").build());
+        EasyMock.expect(cloudWatchLogsClient.getLogEvents(second)).andReturn(GetLogEventsResponse.builder().
+                events(Collections.emptyList()).nextForwardToken("tokenA").build());
+
+        replayAll();
+        List<Stream<OutputLogEventDecorator>> results = measuredClient.fetchLogs("group", List.of("stream"), 42L);
+        assertEquals(2, results.getFirst().count());
+        verifyAll();
+
+        assertEquals(2, metrics.getPages());
+        assertEquals(2, metrics.getEventsFetched());
+        assertEquals(1, metrics.getThrottleRetries());
+        assertEquals(Set.of("GetLogEvents"), metrics.getApiLatency().keySet());
+        assertEquals(3, metrics.getApiLatency().get("GetLogEvents").getCount());
+    }
+
+    private FilteredLogEvent filtered(String streamName, long timestamp, String message) {
+        return FilteredLogEvent.builder().logStreamName(streamName).timestamp(timestamp).message(message).build();
+    }
+
+    private LogGroup group(String name) {
+        return LogGroup.builder().logGroupName(name).build();
+    }
+
+    private ListTagsLogGroupRequest tagsRequest(String name) {
+        return ListTagsLogGroupRequest.builder().logGroupName(name).build();
+    }
+
+    private CloudWatchLogsException createException(String errorCode) {
+        return (CloudWatchLogsException) CloudWatchLogsException.builder().statusCode(400).
+                awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).build()).build();
+    }
+}
@@ -0,0 +1,167 @@
+package tw.com.unit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tw.com.commandline.LogFetchReporter;
+import tw.com.providers.LogFetchMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLogFetchMetrics {
+    private final Path jsonFile = Paths.get("testMetrics.json");
+    private LogFetchMetrics metrics;
+
+    @BeforeEach
+    public void beforeEachTestRuns() throws IOException {
+        Files.deleteIfExists(jsonFile);
+        metrics = new LogFetchMetrics();
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() throws IOException {
+        Files.deleteIfExists(jsonFile);
+    }
+
+    @Test
+    public void shouldGiveApproximatePercentiles() {
+        LogFetchMetrics.Histogram histogram = new LogFetchMetrics.Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(63, histogram.percentile(0.5)); // 50 is in the 32 to 63 bucket
+        assertEquals(100, histogram.percentile(0.99)); // never more than the max
+        assertEquals(0, new LogFetchMetrics.Histogram().percentile(0.5));
+    }
+
+    @Test
+    public void shouldCountAcrossCallTypes() {
+        metrics.pageFetched(10);
+        metrics.pageFetched(5);
+        metrics.eventWritten(100);
+        metrics.eventWritten(50);
+        metrics.throttled("GetLogEvents");
+        metrics.throttled("DescribeLogStreams");
+        metrics.throttled("GetLogEvents");
+        metrics.apiCall("GetLogEvents", TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.apiCall("DescribeLogStreams", TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.groupFetched();
+
+        assertEquals(2, metrics.getPages());
+        assertEquals(15, metrics.getEventsFetched());
+        assertEquals(2, metrics.getEventsWritten());
+        assertEquals(150, metrics.getBytesWritten());
+        assertEquals(3, metrics.getThrottleRetries());
+        assertEquals(1, metrics.getGroups());
+        assertEquals(20, metrics.getApiLatency().get("GetLogEvents").getMax());
+        assertEquals(40, metrics.getApiLatency().get("DescribeLogStreams").getMax());
+    }
+
+    @Test
+    public void shouldExportAsJson() throws IOException {
+        metrics.pageFetched(10);
+        metrics.eventWritten(100);
+        metrics.throttled("GetLogEvents");
+        metrics.apiCall("GetLogEvents", TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.queueDepth(7);
+        metrics.setBufferedBytes(() -> 42);
+
+        metrics.writeJson(jsonFile);
+
+        JsonNode json = new ObjectMapper().readTree(jsonFile.toFile());
+        assertEquals(1, json.get("pages").asLong());
+        assertEquals(10, json.get("eventsFetched").asLong());
+        assertEquals(1, json.get("eventsWritten").asLong());
+        assertEquals(100, json.get("bytesWritten").asLong());
+        assertEquals(1, json.get("throttleRetries").get("GetLogEvents").asLong());
+        assertEquals(1, json.get("apiLatencyMillis").get("GetLogEvents").get("count").asLong());
+        assertEquals(20, json.get("apiLatencyMillis").get("GetLogEvents").get("max").asLong());
+        assertEquals(7, json.get("queueDepth").get("max").asLong());
+        assertTrue(json.has("eventsPerSecond"));
+        assertTrue(json.has("diskWriteMillis"));
+    }
+
+    @Test
+    public void shouldReportSummaryAndSaveJson() {
+        LogFetchReporter reporter = new LogFetchReporter(metrics, Optional.empty(), Optional.of(jsonFile),
+                LogFetchReporter.DEFAULT_INTERVAL);
+        reporter.start();
+        metrics.pageFetched(3);
+        metrics.eventWritten(2048);
+        metrics.apiCall("GetLogEvents", TimeUnit.MILLISECONDS.toNanos(20));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (reporter) {
+            reporter.report(new PrintStream(output, true, StandardCharsets.UTF_8));
+        }
+
+        String text = output.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("Fetched 3 events from 0 groups in 1 pages, wrote 2.0KB"), text);
+        assertTrue(text.contains("GetLogEvents 1 calls, latency p50 20ms"), text);
+        assertTrue(Files.exists(jsonFile));
+    }
+
+    @Test
+    public void shouldReportEachFetchOnItsOwn() throws InterruptedException {
+        LogFetchReporter reporter = new LogFetchReporter(metrics, Optional.empty(), Optional.empty(),
+                LogFetchReporter.DEFAULT_INTERVAL);
+        reporter.start();
+        metrics.pageFetched(3);
+        metrics.eventWritten(2048);
+        metrics.throttled("GetLogEvents");
+        metrics.apiCall("GetLogEvents", TimeUnit.MILLISECONDS.toNanos(20));
+        Thread.sleep(200); // waiting to follow
+
+        reporter.nextFetch();
+        metrics.pageFetched(2);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (reporter) {
+            reporter.report(new PrintStream(output, true, StandardCharsets.UTF_8));
+        }
+
+        String text = output.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("Fetched 2 events from 0 groups in 1 pages, wrote 0B"), text);
+        assertTrue(text.contains("0 calls throttled"), text);
+        assertFalse(text.contains("GetLogEvents"), text);
+        assertTrue(metrics.getElapsedSeconds() < 0.2);
+        assertEquals(0, metrics.getDiskWrites().getMax());
+    }
+
+    @Test
+    public void shouldShowProgressWhileRunning() throws InterruptedException {
+        ByteArrayOutputStream progress = new ByteArrayOutputStream();
+        LogFetchReporter reporter = new LogFetchReporter(metrics, Optional.of(new PrintStream(progress, true,
+                StandardCharsets.UTF_8)), Optional.empty(), Duration.ofMillis(10));
+        metrics.setBufferedBytes(() -> 3 * 1024 * 1024);
+
+        try (reporter) {
+            reporter.start();
+            metrics.throttled("GetLogEvents");
+            metrics.pageFetched(5);
+            Thread.sleep(100);
+        }
+
+        String text = progress.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("\rgroups 0 pages 1 events 0"), text);
+        assertTrue(text.contains("buffered 3.0MB throttled 1"), text);
+        assertTrue(text.endsWith("\r"), text); // line cleared
+    }
+}
@@ -0,0 +1,155 @@
+package tw.com.unit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+import tw.com.entity.OutputLogEventDecorator;
+import tw.com.providers.LogFileOptions;
+import tw.com.providers.LogIndex;
+import tw.com.providers.LogIndexQuery;
+import tw.com.providers.SavesFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLogIndex {
+    private static final Instant START = Instant.parse("2024-05-01T10:00:00Z");
+
+    private Path folder;
+    private Path logFile;
+    private SavesFile savesFile;
+    private LogIndexQuery query;
+
+    @BeforeEach
+    public void beforeEachTestRuns() throws IOException {
+        folder = Files.createTempDirectory("logIndex");
+        logFile = folder.resolve("group.log");
+        savesFile = new SavesFile(LogFileOptions.defaults().withIndex());
+        query = new LogIndexQuery();
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() {
+        FileUtils.deleteQuietly(folder.toFile());
+    }
+
+    @Test
+    public void shouldIndexWhileWritingAndQueryByTime() throws IOException {
+        savesFile.saveLogs(logFile, events(0, 20000)); // one event a second, several blocks
+
+        Optional<LogIndex> index = LogIndex.load(logFile);
+        assertTrue(index.isPresent());
+        assertTrue(index.get().isCurrentFor(logFile));
+        assertTrue(index.get().getBlocks() > 10);
+        assertEquals(Set.of("streamA", "streamB"), index.get().getStreamNames());
+
+        List<String> lines = query(START.plusSeconds(100), START.plusSeconds(104), Optional.empty());
+
+        assertEquals(List.of(
+                "2024-05-01T10:01:40.000Z streamA message 100",
+                "2024-05-01T10:01:41.000Z streamB message 101",
+                "2024-05-01T10:01:42.000Z streamA message 102",
+                "2024-05-01T10:01:43.000Z streamB message 103"), lines);
+    }
+
+    @Test
+    public void shouldOnlyReadBlocksInRange() throws IOException {
+        savesFile.saveLogs(logFile, events(0, 20000));
+        LogIndex index = LogIndex.load(logFile).orElseThrow();
+
+        List<long[]> ranges = index.rangesFor(START.plusSeconds(100).toEpochMilli(), START.plusSeconds(104).toEpochMilli(),
+                Optional.empty(), Long.MAX_VALUE);
+
+        assertEquals(1, ranges.size());
+        assertTrue(ranges.getFirst()[1] - ranges.getFirst()[0] < 2 * LogIndex.BLOCK_BYTES);
+    }
+
+    @Test
+    public void shouldQueryByStream() throws IOException {
+        savesFile.saveLogs(logFile, events(0, 100));
+
+        List<String> lines = query(START, START.plusSeconds(6), Optional.of("streamB"));
+
+        assertEquals(List.of(
+                "2024-05-01T10:00:01.000Z streamB message 1",
+                "2024-05-01T10:00:03.000Z streamB message 3",
+                "2024-05-01T10:00:05.000Z streamB message 5"), lines);
+        assertTrue(query(START, START.plusSeconds(6), Optional.of("missing")).isEmpty());
+    }
+
+    @Test
+    public void shouldKeepMultiLineMessagesTogether() throws IOException {
+        savesFile.saveLogs(logFile, Stream.of(event(0, "streamA", "before"),
+                event(1, "streamA", "Exception\n\tat somewhere\n\tat elsewhere"), event(2, "streamA", "after")));
+
+        List<String> lines = query(START.plusSeconds(1), START.plusSeconds(2), Optional.empty());
+
+        assertEquals(List.of("2024-05-01T10:00:01.000Z streamA Exception", "\tat somewhere", "\tat elsewhere"), lines);
+    }
+
+    @Test
+    public void shouldCarryOnIndexWhenAppending() throws IOException {
+        savesFile.saveLogs(logFile, events(0, 5000));
+        savesFile.saveLogs(logFile, events(5000, 5000));
+
+        LogIndex index = LogIndex.load(logFile).orElseThrow();
+        assertTrue(index.isCurrentFor(logFile));
+
+        assertEquals(List.of("2024-05-01T10:00:10.000Z streamA message 10"),
+                query(START.plusSeconds(10), START.plusSeconds(11), Optional.empty()));
+        assertEquals(List.of("2024-05-01T11:40:00.000Z streamA message 6000"),
+                query(START.plusSeconds(6000), START.plusSeconds(6001), Optional.empty()));
+    }
+
+    @Test
+    public void shouldRebuildMissingIndexWhenQueried() throws IOException {
+        new SavesFile().saveLogs(logFile, events(0, 20000));
+        assertTrue(LogIndex.load(logFile).isEmpty());
+
+        List<String> lines = query(START.plusSeconds(19998), START.plusSeconds(20000), Optional.empty());
+
+        assertEquals(List.of("2024-05-01T15:33:18.000Z streamA message 19998",
+                "2024-05-01T15:33:19.000Z streamB message 19999"), lines);
+        LogIndex rebuilt = LogIndex.load(logFile).orElseThrow();
+        assertTrue(rebuilt.isCurrentFor(logFile));
+
+        savesFile.saveLogs(folder.resolve("other.log"), events(0, 20000));
+        LogIndex written = LogIndex.load(folder.resolve("other.log")).orElseThrow();
+        assertEquals(written.getBlocks(), rebuilt.getBlocks());
+    }
+
+    @Test
+    public void shouldNotIndexCompressedFiles() {
+        assertThrows(IllegalArgumentException.class, () -> new LogFileOptions(true, 0, Duration.ZERO).withIndex());
+    }
+
+    private List<String> query(Instant from, Instant to, Optional<String> streamName) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        query.query(logFile, from, to, streamName, output);
+        String text = output.toString(StandardCharsets.UTF_8);
+        return text.isEmpty() ? Collections.emptyList() : Arrays.asList(text.split("\n"));
+    }
+
+    // one a second alternating between streams
+    private Stream<OutputLogEventDecorator> events(int first, int count) {
+        return IntStream.range(first, first + count).mapToObj(second ->
+                event(second, second % 2 == 0 ? "streamA" : "streamB", "message " + second));
+    }
+
+    private OutputLogEventDecorator event(int second, String streamName, String message) {
+        return new OutputLogEventDecorator(OutputLogEvent.builder().timestamp(START.plusSeconds(second).toEpochMilli()).
+                message(message).build(), "group", streamName);
+    }
+}
@@ -1,5 +1,6 @@
 package tw.com.unit;
 
+import org.apache.commons.io.FileUtils;
 import org.easymock.EasyMock;
 import org.easymock.EasyMockSupport;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,12 +9,18 @@ import software.amazon.awssdk.services.cloudwatchlogs.model.LogStream;
 import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
 import tw.com.AwsFacade;
 import tw.com.EnvironmentSetupForTests;
+import tw.com.entity.LogCheckpoint;
+import tw.com.entity.LogPurgeSummary;
 import tw.com.entity.OutputLogEventDecorator;
 import tw.com.entity.ProjectAndEnv;
+import tw.com.providers.LogCheckpointStore;
 import tw.com.providers.LogClient;
 import tw.com.providers.SavesFile;
+import tw.com.repository.LogMemoryBudget;
 import tw.com.repository.LogRepository;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
@@ -21,6 +28,9 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
@@ -63,20 +73,86 @@ public class TestLogRepository  extends EasyMockSupport {
     public void shouldRemoveOldStreamsForGroupList() {
         int days = 28;
 
-        LogStream streamA = createStream(EnvironmentSetupForTests.asMillis(timestamp.minusDays(20)), "streamA");
-        LogStream streamB = createStream(EnvironmentSetupForTests.asMillis(timestamp.minusDays(29)), "streamB");
-        LogStream streamC = createStream(EnvironmentSetupForTests.asMillis(timestamp.minusDays(27)), "streamC");
-        List<LogStream> streams = Arrays.asList(streamA, streamB, streamC);
+        LogStream streamB = LogStream.builder().logStreamName("streamB").
+                lastEventTimestamp(EnvironmentSetupForTests.asMillis(timestamp.minusDays(29))).build();
 
         long queryTime = EnvironmentSetupForTests.asMillis(timestamp.minusDays(days));
 
-        EasyMock.expect(logClient.getStreamsFor("groupName", queryTime)).andReturn(streams);
+        expectStreamsOlderThan("groupName", queryTime, Collections.singletonList(streamB));
         logClient.deleteLogStream("groupName", "streamB");
         EasyMock.expectLastCall();
 
         replayAll();
-        logRepository.removeOldStreamsFor("groupName", Duration.ofDays(days));
+        LogPurgeSummary result = logRepository.removeOldStreamsFor("groupName", Duration.ofDays(days), false);
         verifyAll();
+
+        assertEquals(new LogPurgeSummary(false, 1), result);
+    }
+
+    @Test
+    public void shouldOnlyReportOldStreamsForDryRun() {
+        int days = 28;
+
+        LogStream streamA = LogStream.builder().logStreamName("streamA").
+                lastEventTimestamp(EnvironmentSetupForTests.asMillis(timestamp.minusDays(30))).build();
+        LogStream streamB = LogStream.builder().logStreamName("streamB").
+                lastEventTimestamp(EnvironmentSetupForTests.asMillis(timestamp.minusDays(29))).build();
+
+        long queryTime = EnvironmentSetupForTests.asMillis(timestamp.minusDays(days));
+
+        expectStreamsOlderThan("groupName", queryTime, Arrays.asList(streamA, streamB));
+
+        replayAll();
+        LogPurgeSummary result = logRepository.removeOldStreamsFor("groupName", Duration.ofDays(days), true);
+        verifyAll();
+
+        assertEquals(new LogPurgeSummary(true, 2), result);
+    }
+
+    @Test
+    public void shouldSearchLogs() {
+        String groupName = "groupB";
+        int days = 1;
+        long queryTime = EnvironmentSetupForTests.asMillis(timestamp.minusDays(days));
+        long eventTime = EnvironmentSetupForTests.asMillis(timestamp.minusHours(2));
+
+        Path expectedPath = Paths.get(format("%s_%s.log",groupName, timestamp.format(DateTimeFormatter.ISO_DATE_TIME)));
+        OutputLogEvent errorA = OutputLogEvent.builder().message("ERROR A").timestamp(eventTime).build();
+        OutputLogEvent errorB = OutputLogEvent.builder().message("ERROR B").timestamp(eventTime+1).build();
+        Stream<OutputLogEventDecorator> found = Stream.of(new OutputLogEventDecorator(errorA, groupName, "streamA"),
+                new OutputLogEventDecorator(errorB, groupName, "streamB"));
+
+        Map<String, Map<String, String>> groups = new HashMap<>();
+        createExistingGroups(groups);
+
+        EasyMock.expect(logClient.getGroupsWithTags()).andReturn(groups);
+        EasyMock.expect(logClient.getStreamsFor(groupName, queryTime)).andReturn(Arrays.asList(
+                createStream(eventTime, "streamA"), createStream(eventTime+1, "streamB")));
+        EasyMock.expect(logClient.searchLogs(groupName, Arrays.asList("streamA", "streamB"), queryTime, "ERROR")).
+                andReturn(new LinkedList<>(Collections.singletonList(found)));
+        List<String> saved = new LinkedList<>();
+        EasyMock.expect(savesFile.saveLogs(EasyMock.eq(expectedPath), EasyMock.<Stream<OutputLogEventDecorator>>anyObject())).
+                andAnswer(() -> {
+                    Stream<OutputLogEventDecorator> merged = EasyMock.getCurrentArgument(1);
+                    merged.forEach(event -> saved.add(event.toString()));
+                    return Collections.singletonList(expectedPath);
+                });
+
+        replayAll();
+        List<Path> filenames = logRepository.searchLogs(projectAndEnv, Duration.ofDays(days), "ERROR");
+        verifyAll();
+
+        assertEquals(Collections.singletonList(expectedPath), filenames);
+        assertEquals(Arrays.asList("streamA ERROR A", "streamB ERROR B"), saved);
+    }
+
+    private void expectStreamsOlderThan(String groupName, long queryTime, List<LogStream> page) {
+        logClient.getStreamsOlderThan(EasyMock.eq(groupName), EasyMock.eq(queryTime), EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(() -> {
+            Consumer<List<LogStream>> onPage = EasyMock.getCurrentArgument(2);
+            onPage.accept(page);
+            return null;
+        });
     }
 
     @Test
@@ -130,17 +206,179 @@ public class TestLogRepository  extends EasyMockSupport {
 
         EasyMock.expect(logClient.getGroupsWithTags()).andReturn(groups);
         EasyMock.expect(logClient.getStreamsFor(groupName, queryTime)).andReturn(logStreams);
-        EasyMock.expect(logClient.fetchLogs(groupName, streamNames, queryTime)).andReturn(streamList);
-        EasyMock.expect(savesFile.save(expectedPath, streamList)).andReturn(true);
+        EasyMock.expect(logClient.fetchLogs(groupName, streamNames, queryTime, LogMemoryBudget.MAX_EVENTS_PER_PAGE)).andReturn(streamList);
+        List<String> saved = new LinkedList<>();
+        EasyMock.expect(savesFile.saveLogs(EasyMock.eq(expectedPath), EasyMock.<Stream<OutputLogEventDecorator>>anyObject())).
+                andAnswer(() -> {
+                    Stream<OutputLogEventDecorator> merged = EasyMock.getCurrentArgument(1);
+                    merged.forEach(event -> saved.add(event.toString()));
+                    return Collections.singletonList(expectedPath);
+                });
 
         replayAll();
         List<Path> filenames = logRepository.fetchLogs(projectAndEnv, Duration.ofDays(days));
         verifyAll();
 
+        assertEquals(Arrays.asList("streamA TEST", "streamB TEST"), saved);
+
         Path entry = filenames.get(0);
         assertEquals(expectedPath.toAbsolutePath().toString(), entry.toAbsolutePath().toString());
     }
 
+    @Test
+    public void shouldOnlyFetchNewEventsWhenIncremental() throws IOException {
+        Path checkpointDir = Files.createTempDirectory("logCheckpoints");
+        try {
+            LogCheckpointStore store = new LogCheckpointStore(checkpointDir);
+            logRepository = new LogRepository(logClient, () -> timestamp, savesFile, Optional.of(store));
+
+            String groupName = "groupB";
+            int days = 2;
+            long queryTime = EnvironmentSetupForTests.asMillis(timestamp.minusDays(days));
+            long previousEvent = EnvironmentSetupForTests.asMillis(timestamp.minusDays(1));
+            long newEvent = previousEvent + 10;
+            store.save(projectAndEnv, groupName, Collections.singletonMap("streamA", LogCheckpoint.timestampOnly(previousEvent)));
+
+            Map<String, Map<String, String>> groups = new HashMap<>();
+            createExistingGroups(groups);
+            Map<String, Long> expectedStarts = new LinkedHashMap<>();
+            expectedStarts.put("streamB", queryTime);
+            OutputLogEvent logEvent = OutputLogEvent.builder().message("NEW").timestamp(newEvent).build();
+            Path expectedPath = Paths.get("groupB.log");
+
+            EasyMock.expect(logClient.getGroupsWithTags()).andReturn(groups);
+            EasyMock.expect(logClient.getStreamsFor(groupName, queryTime)).andReturn(Arrays.asList(
+                    createStream(previousEvent, "streamA"), createStream(newEvent, "streamB")));
+            EasyMock.expect(logClient.fetchLogs(groupName, expectedStarts, LogMemoryBudget.MAX_EVENTS_PER_PAGE)).andReturn(new LinkedList<>(
+                    Collections.singletonList(Stream.of(new OutputLogEventDecorator(logEvent, groupName, "streamB")))));
+            EasyMock.expect(savesFile.saveLogs(EasyMock.eq(expectedPath), EasyMock.<Stream<OutputLogEventDecorator>>anyObject())).
+                    andAnswer(() -> {
+                        Stream<OutputLogEventDecorator> events = EasyMock.getCurrentArgument(1);
+                        assertEquals(1, events.count());
+                        return Collections.singletonList(expectedPath);
+                    });
+
+            replayAll();
+            List<Path> filenames = logRepository.fetchLogs(projectAndEnv, Duration.ofDays(days));
+            verifyAll();
+
+            assertEquals(Collections.singletonList(expectedPath), filenames);
+            Map<String, LogCheckpoint> checkpoints = store.load(projectAndEnv, groupName);
+            assertEquals(previousEvent, checkpoints.get("streamA").getLastSaved());
+            assertEquals(newEvent, checkpoints.get("streamB").getLastSaved());
+        }
+        finally {
+            FileUtils.deleteQuietly(checkpointDir.toFile());
+        }
+    }
+
+    @Test
+    public void shouldResumeBeforeCheckpointAndSkipEventsAlreadySaved() throws IOException {
+        Path checkpointDir = Files.createTempDirectory("logCheckpoints");
+        try {
+            LogCheckpointStore store = new LogCheckpointStore(checkpointDir);
+            logRepository = new LogRepository(logClient, () -> timestamp, savesFile, Optional.of(store));
+
+            String groupName = "groupB";
+            int days = 2;
+            long queryTime = EnvironmentSetupForTests.asMillis(timestamp.minusDays(days));
+            long previousEvent = EnvironmentSetupForTests.asMillis(timestamp.minusDays(1));
+            long resumeFrom = previousEvent - LogCheckpoint.OVERLAP_MILLIS;
+            store.save(projectAndEnv, groupName, Collections.singletonMap("streamA", new LogCheckpoint(resumeFrom,
+                    previousEvent, 0, Collections.singletonMap(previousEvent, Set.of("SAVED".hashCode())))));
+
+            Map<String, Map<String, String>> groups = new HashMap<>();
+            createExistingGroups(groups);
+            Map<String, Long> expectedStarts = Collections.singletonMap("streamA", resumeFrom);
+            Path expectedPath = Paths.get("groupB.log");
+            List<OutputLogEventDecorator> fetched = Arrays.asList(
+                    new OutputLogEventDecorator(OutputLogEvent.builder().message("LATE").timestamp(previousEvent - 10).build(), groupName, "streamA"),
+                    new OutputLogEventDecorator(OutputLogEvent.builder().message("SAVED").timestamp(previousEvent).build(), groupName, "streamA"),
+                    new OutputLogEventDecorator(OutputLogEvent.builder().message("SAME_MILLI").timestamp(previousEvent).build(), groupName, "streamA"));
+            List<String> saved = new LinkedList<>();
+
+            EasyMock.expect(logClient.getGroupsWithTags()).andReturn(groups);
+            EasyMock.expect(logClient.getStreamsFor(groupName, queryTime)).andReturn(Collections.singletonList(
+                    createStream(previousEvent, "streamA")));
+            EasyMock.expect(logClient.fetchLogs(groupName, expectedStarts, LogMemoryBudget.MAX_EVENTS_PER_PAGE)).andReturn(new LinkedList<>(
+                    Collections.singletonList(fetched.stream())));
+            EasyMock.expect(savesFile.saveLogs(EasyMock.eq(expectedPath), EasyMock.<Stream<OutputLogEventDecorator>>anyObject())).
+                    andAnswer(() -> {
+                        Stream<OutputLogEventDecorator> events = EasyMock.getCurrentArgument(1);
+                        events.forEach(event -> saved.add(event.getMessage()));
+                        return Collections.singletonList(expectedPath);
+                    });
+
+            replayAll();
+            logRepository.fetchLogs(projectAndEnv, Duration.ofDays(days));
+            verifyAll();
+
+            assertEquals(Arrays.asList("LATE", "SAME_MILLI"), saved);
+            LogCheckpoint checkpoint = store.load(projectAndEnv, groupName).get("streamA");
+            assertTrue(checkpoint.alreadySaved(previousEvent, "SAME_MILLI"));
+            assertTrue(checkpoint.alreadySaved(previousEvent - 10, "LATE"));
+            assertFalse(checkpoint.alreadySaved(previousEvent, "OTHER"));
+        }
+        finally {
+            FileUtils.deleteQuietly(checkpointDir.toFile());
+        }
+    }
+
+    @Test
+    public void shouldFetchGroupsConcurrently() {
+        int days = 1;
+        List<String> groupNames = Arrays.asList("groupA", "groupB");
+        Map<String, Map<String, String>> groups = new HashMap<>();
+        Map<String, String> tags = new HashMap<>();
+        tags.put(AwsFacade.ENVIRONMENT_TAG, projectAndEnv.getEnv());
+        tags.put(AwsFacade.PROJECT_TAG, projectAndEnv.getProject());
+        groupNames.forEach(groupName -> groups.put(groupName, tags));
+
+        // mocks serialise calls, so stub instead to let both groups be listed at the same time
+        CountDownLatch bothListing = new CountDownLatch(2);
+        LogClient concurrentClient = new LogClient(null) {
+            @Override
+            public Map<String, Map<String, String>> getGroupsWithTags() {
+                return groups;
+            }
+
+            @Override
+            public List<LogStream> getStreamsFor(String groupName, long when) {
+                bothListing.countDown();
+                try {
+                    // only completes if both groups are being fetched at the same time
+                    assertTrue(bothListing.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    fail("interrupted");
+                }
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<Stream<OutputLogEventDecorator>> fetchLogs(String groupName, List<String> streamNames, Long endEpoch,
+                                                                   Integer eventsPerPage) {
+                return new LinkedList<>();
+            }
+        };
+        List<Path> saved = Collections.synchronizedList(new LinkedList<>());
+        SavesFile recordsSaves = new SavesFile() {
+            @Override
+            public List<Path> saveLogs(Path path, Stream<OutputLogEventDecorator> events) {
+                saved.add(path);
+                return Collections.singletonList(path);
+            }
+        };
+        logRepository = new LogRepository(concurrentClient, () -> timestamp, recordsSaves);
+        projectAndEnv.setLogParallelism(4);
+
+        List<Path> filenames = logRepository.fetchLogs(projectAndEnv, Duration.ofDays(days));
+
+        List<Path> expected = Arrays.asList(logRepository.formFilenameFor("groupA", timestamp),
+                logRepository.formFilenameFor("groupB", timestamp));
+        assertEquals(new HashSet<>(expected), new HashSet<>(filenames));
+        assertEquals(new HashSet<>(expected), new HashSet<>(saved));
+    }
+
     @Test
     public void shouldCorrectFormFilenameEvenIfGroupNameIsPath() {
         String exampleGroupName = "/var/log/syslog_20181114T141219.117Z.log";
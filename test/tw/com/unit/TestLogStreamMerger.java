@@ -0,0 +1,134 @@
+package tw.com.unit;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+import tw.com.entity.OutputLogEventDecorator;
+import tw.com.repository.LogMemoryBudget;
+import tw.com.repository.LogStreamMerger;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLogStreamMerger {
+
+    @Test
+    public void shouldMergeStreamsInTimestampOrder() {
+        List<Stream<OutputLogEventDecorator>> sources = List.of(
+                events("streamA", 1L, 4L, 7L),
+                events("streamB", 2L, 4L, 8L, 9L),
+                events("streamC"),
+                events("streamD", 3L));
+
+        List<String> result;
+        try (LogStreamMerger merger = new LogStreamMerger(sources, 2)) {
+            result = merger.merged().map(OutputLogEventDecorator::toString).collect(Collectors.toList());
+        }
+
+        assertEquals(List.of("streamA 1", "streamB 2", "streamD 3", "streamA 4", "streamB 4", "streamA 7",
+                "streamB 8", "streamB 9"), result);
+    }
+
+    @Test
+    public void shouldReadSourcesConcurrently() throws InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<Stream<OutputLogEventDecorator>> sources = List.of(
+                waitFor(bothStarted, events("streamA", 1L)),
+                waitFor(bothStarted, events("streamB", 2L)));
+
+        try (LogStreamMerger merger = new LogStreamMerger(sources)) {
+            assertEquals(2, merger.merged().count());
+        }
+        assertTrue(bothStarted.await(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldPassOnFailureFromASource() {
+        Stream<OutputLogEventDecorator> failing = Stream.generate(() -> {
+            throw new IllegalArgumentException("failed");
+        });
+
+        try (LogStreamMerger merger = new LogStreamMerger(List.of(events("streamA", 1L), failing))) {
+            assertThrows(IllegalArgumentException.class, () -> merger.merged().count());
+        }
+    }
+
+    @Test
+    public void shouldKeepBufferedEventsWithinMemoryBudget() {
+        int eventsPerSource = 500;
+        String message = "x".repeat(1000);
+        long eventBytes = LogMemoryBudget.EVENT_OVERHEAD_BYTES + message.length();
+        LogMemoryBudget budget = new LogMemoryBudget(20 * eventBytes);
+
+        List<Stream<OutputLogEventDecorator>> sources = List.of(
+                large("streamA", 0, eventsPerSource, message),
+                large("streamB", 1, eventsPerSource, message),
+                large("streamC", 2, eventsPerSource, message));
+
+        List<Long> timestamps;
+        try (LogStreamMerger merger = new LogStreamMerger(sources, LogStreamMerger.DEFAULT_BUFFER_SIZE, budget)) {
+            timestamps = merger.merged().map(OutputLogEventDecorator::getTimestamp).collect(Collectors.toList());
+        }
+
+        assertEquals(3 * eventsPerSource, timestamps.size());
+        List<Long> sorted = new ArrayList<>(timestamps);
+        Collections.sort(sorted);
+        assertEquals(sorted, timestamps);
+        // an empty buffer can always take one more event so the merge never waits on a full budget
+        assertTrue(budget.getPeak() <= budget.getCeiling() + (sources.size() * eventBytes), "peak " + budget.getPeak());
+        assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void shouldGiveBackBudgetWhenClosedEarly() throws InterruptedException {
+        LogMemoryBudget budget = new LogMemoryBudget(1024 * 1024);
+        List<Stream<OutputLogEventDecorator>> sources = List.of(
+                large("streamA", 0, 1000, "a"), large("streamB", 1, 1000, "b"));
+
+        try (LogStreamMerger merger = new LogStreamMerger(sources, 10, budget)) {
+            assertEquals(5, merger.merged().limit(5).count());
+        }
+
+        for (int attempt = 0; attempt < 100 && budget.getUsed() > 0; attempt++) {
+            TimeUnit.MILLISECONDS.sleep(10); // a source may be part way through adding an event
+        }
+        assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void shouldSizePagesToFitBudget() {
+        LogMemoryBudget budget = new LogMemoryBudget(10L * 1024 * 1024);
+
+        assertEquals(LogMemoryBudget.MAX_EVENTS_PER_PAGE, budget.eventsPerPage(1));
+        assertEquals(204, budget.eventsPerPage(100));
+        assertEquals(LogMemoryBudget.MIN_EVENTS_PER_PAGE, budget.eventsPerPage(5000));
+    }
+
+    private Stream<OutputLogEventDecorator> large(String streamName, int offset, int count, String message) {
+        return IntStream.range(0, count).mapToObj(index -> new OutputLogEventDecorator(OutputLogEvent.builder().
+                timestamp((long) (index * 3) + offset).message(message).build(), "group", streamName));
+    }
+
+    // each source only produces events once every source has started
+    private Stream<OutputLogEventDecorator> waitFor(CountDownLatch started, Stream<OutputLogEventDecorator> source) {
+        return Stream.of(source).flatMap(events -> {
+            started.countDown();
+            try {
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                fail("interrupted");
+            }
+            return events;
+        });
+    }
+
+    private Stream<OutputLogEventDecorator> events(String streamName, Long... timestamps) {
+        return Arrays.stream(timestamps).map(timestamp -> new OutputLogEventDecorator(
+                OutputLogEvent.builder().timestamp(timestamp).message(timestamp.toString()).build(), "group", streamName));
+    }
+}
@@ -0,0 +1,153 @@
+package tw.com.unit;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.model.LogStream;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ResourceNotFoundException;
+import tw.com.entity.LogPurgeSummary;
+import tw.com.providers.LogClient;
+import tw.com.repository.LogStreamPurger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestLogStreamPurger {
+
+    @Test
+    public void shouldDeleteEveryPageOfStreamsConcurrently() {
+        Set<String> deleted = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // stub rather than mock as deletes happen on several threads at once
+        LogClient logClient = new LogClient(null) {
+            @Override
+            public void getStreamsOlderThan(String groupName, long when, Consumer<List<LogStream>> onPage) {
+                onPage.accept(createStreams(0, 50));
+                onPage.accept(createStreams(50, 50));
+            }
+
+            @Override
+            public void deleteLogStream(String groupName, String streamName) {
+                threads.add(Thread.currentThread().getName());
+                if (streamName.equals("stream7")) {
+                    throw ResourceNotFoundException.builder().message("gone").build();
+                }
+                deleted.add(streamName);
+            }
+        };
+
+        LogStreamPurger purger = new LogStreamPurger(logClient, 4);
+        LogPurgeSummary result = purger.purge("group", 1000, false);
+
+        assertEquals(new LogPurgeSummary(false, 99), result);
+        assertEquals(99, deleted.size());
+        assertEquals(4, threads.size());
+    }
+
+    @Test
+    public void shouldNotDeleteForDryRun() {
+        LogClient logClient = new LogClient(null) {
+            @Override
+            public void getStreamsOlderThan(String groupName, long when, Consumer<List<LogStream>> onPage) {
+                onPage.accept(createStreams(0, 5));
+            }
+
+            @Override
+            public void deleteLogStream(String groupName, String streamName) {
+                throw new IllegalStateException("should not delete");
+            }
+        };
+
+        LogPurgeSummary result = new LogStreamPurger(logClient).purge("group", 1000, true);
+
+        assertEquals(new LogPurgeSummary(true, 5), result);
+    }
+
+    @Test
+    public void shouldPassOnFailuresToDelete() {
+        LogClient logClient = new LogClient(null) {
+            @Override
+            public void getStreamsOlderThan(String groupName, long when, Consumer<List<LogStream>> onPage) {
+                onPage.accept(createStreams(0, 5));
+            }
+
+            @Override
+            public void deleteLogStream(String groupName, String streamName) {
+                throw new IllegalStateException("failed");
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> new LogStreamPurger(logClient).purge("group", 1000, false));
+    }
+
+    @Test
+    public void shouldBoundDeletesInFlightWhileListing() {
+        Set<String> deleted = ConcurrentHashMap.newKeySet();
+        AtomicInteger mostInFlight = new AtomicInteger();
+
+        LogClient logClient = new LogClient(null) {
+            @Override
+            public void getStreamsOlderThan(String groupName, long when, Consumer<List<LogStream>> onPage) {
+                for (int page = 0; page < 10; page++) {
+                    onPage.accept(createStreams(page * 10, 10));
+                    mostInFlight.accumulateAndGet((page + 1) * 10 - deleted.size(), Math::max);
+                }
+            }
+
+            @Override
+            public void deleteLogStream(String groupName, String streamName) {
+                sleep(5); // slower than listing
+                deleted.add(streamName);
+            }
+        };
+
+        LogPurgeSummary result = new LogStreamPurger(logClient, 2).purge("group", 1000, false);
+
+        assertEquals(new LogPurgeSummary(false, 100), result);
+        assertTrue(mostInFlight.get() <= 4, "in flight " + mostInFlight.get());
+    }
+
+    @Test
+    public void shouldStopListingOnceADeleteFails() {
+        AtomicInteger pages = new AtomicInteger();
+
+        LogClient logClient = new LogClient(null) {
+            @Override
+            public void getStreamsOlderThan(String groupName, long when, Consumer<List<LogStream>> onPage) {
+                for (int page = 0; page < 100; page++) {
+                    pages.incrementAndGet();
+                    onPage.accept(createStreams(page * 10, 10));
+                }
+            }
+
+            @Override
+            public void deleteLogStream(String groupName, String streamName) {
+                throw new IllegalStateException("failed");
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> new LogStreamPurger(logClient, 2).purge("group", 1000, false));
+        assertTrue(pages.get() < 100, "listed " + pages.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<LogStream> createStreams(int first, int count) {
+        List<LogStream> streams = new LinkedList<>();
+        for (int index = first; index < first + count; index++) {
+            streams.add(LogStream.builder().logStreamName("stream" + index).lastEventTimestamp((long) index).build());
+        }
+        return streams;
+    }
+}
@@ -0,0 +1,183 @@
+package tw.com.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.NotificationDispatcher;
+import tw.com.NotificationProvider;
+import tw.com.SNSMonitor;
+import tw.com.entity.StackNameAndId;
+import tw.com.entity.StackNotification;
+import tw.com.exceptions.NotReadyException;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestNotificationDispatcher {
+    private static final String STACK_RESOURCE_TYPE = "AWS::CloudFormation::Stack";
+
+    private BlockingQueue<List<StackNotification>> batches;
+    private AtomicInteger receives;
+    private NotificationProvider provider;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        batches = new LinkedBlockingQueue<>();
+        receives = new AtomicInteger();
+        // stands in for the queue, each receive returns the next batch or times out with nothing
+        provider = new NotificationProvider() {
+            @Override
+            public void init() {
+            }
+
+            @Override
+            public List<StackNotification> receiveNotifications() {
+                receives.incrementAndGet();
+                try {
+                    List<StackNotification> batch = batches.poll(50, TimeUnit.MILLISECONDS);
+                    return batch==null ? new LinkedList<>() : batch;
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return new LinkedList<>();
+                }
+            }
+
+            @Override
+            public boolean isInit() {
+                return true;
+            }
+
+            @Override
+            public String getSNSArn() {
+                return "snsArn";
+            }
+        };
+    }
+
+    @Test
+    public void shouldRouteNotificationsByStackId() throws NotReadyException, InterruptedException {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(provider);
+        batches.add(List.of(notification("idA", StackStatus.CREATE_IN_PROGRESS), notification("idB", StackStatus.UPDATE_IN_PROGRESS),
+                notification("idA", StackStatus.CREATE_COMPLETE)));
+
+        try (NotificationDispatcher.Subscription first = dispatcher.subscribe(List.of("idA"));
+             NotificationDispatcher.Subscription second = dispatcher.subscribe(List.of("idB"))) {
+            List<StackNotification> forFirst = first.next();
+            List<StackNotification> forSecond = second.next();
+
+            assertEquals(List.of(StackStatus.CREATE_IN_PROGRESS, StackStatus.CREATE_COMPLETE),
+                    forFirst.stream().map(StackNotification::getStatus).toList());
+            assertEquals(List.of(StackStatus.UPDATE_IN_PROGRESS), forSecond.stream().map(StackNotification::getStatus).toList());
+        }
+    }
+
+    @Test
+    public void shouldReturnNothingWhenReadTimesOut() throws NotReadyException, InterruptedException {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(provider);
+
+        try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(List.of("idA"))) {
+            assertTrue(subscription.next().isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldKeepNotificationsForStacksNotYetSubscribed() throws NotReadyException, InterruptedException {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(provider);
+        batches.add(List.of(notification("idA", StackStatus.CREATE_IN_PROGRESS), notification("idB", StackStatus.CREATE_COMPLETE)));
+
+        try (NotificationDispatcher.Subscription first = dispatcher.subscribe(List.of("idA"))) {
+            assertEquals(1, first.next().size());
+        }
+        int receivesSoFar = receives.get();
+        try (NotificationDispatcher.Subscription second = dispatcher.subscribe(List.of("idB"))) {
+            List<StackNotification> early = second.next();
+            assertEquals(1, early.size());
+            assertEquals(StackStatus.CREATE_COMPLETE, early.getFirst().getStatus());
+        }
+        assertEquals(receivesSoFar, receives.get()); // did not need to read the queue again
+    }
+
+    @Test
+    public void shouldDropUnclaimedNotificationsOnceTooOld() throws NotReadyException, InterruptedException {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(provider, Duration.ZERO);
+        batches.add(List.of(notification("idA", StackStatus.CREATE_IN_PROGRESS), notification("idB", StackStatus.CREATE_COMPLETE)));
+
+        try (NotificationDispatcher.Subscription first = dispatcher.subscribe(List.of("idA"))) {
+            assertEquals(1, first.next().size());
+        }
+        try (NotificationDispatcher.Subscription second = dispatcher.subscribe(List.of("idB"))) {
+            assertTrue(second.next().isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldOnlyReadQueueWhileSomeoneIsWaiting() throws NotReadyException, InterruptedException {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(provider);
+
+        try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(List.of("idA"))) {
+            Thread.sleep(200);
+            assertEquals(0, receives.get());
+            subscription.next();
+            Thread.sleep(200);
+            assertEquals(1, receives.get());
+        }
+    }
+
+    @Test
+    public void shouldPassOnFailureToReceive() {
+        NotificationProvider failing = new NotificationProvider() {
+            @Override
+            public void init() {
+            }
+
+            @Override
+            public List<StackNotification> receiveNotifications() throws NotReadyException {
+                throw new NotReadyException("not ready");
+            }
+
+            @Override
+            public boolean isInit() {
+                return false;
+            }
+
+            @Override
+            public String getSNSArn() {
+                return "snsArn";
+            }
+        };
+        NotificationDispatcher dispatcher = new NotificationDispatcher(failing);
+
+        try (NotificationDispatcher.Subscription subscription = dispatcher.subscribe(List.of("idA"))) {
+            assertThrows(NotReadyException.class, subscription::next);
+        }
+    }
+
+    @Test
+    public void shouldWaitForSeveralStacksAtOnceSharingOneQueue() throws Exception {
+        SNSMonitor monitor = new SNSMonitor(provider, stackName -> true, null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<StackStatus> created = executor.submit(() -> monitor.waitForCreateFinished(new StackNameAndId("stackA", "idA")));
+            Future<StackStatus> updated = executor.submit(() -> monitor.waitForUpdateFinished(new StackNameAndId("stackB", "idB")));
+
+            batches.add(List.of(notification("idA", StackStatus.CREATE_IN_PROGRESS), notification("idB", StackStatus.UPDATE_IN_PROGRESS)));
+            batches.add(List.of(notification("idB", StackStatus.UPDATE_COMPLETE)));
+            assertEquals(StackStatus.UPDATE_COMPLETE, updated.get(10, TimeUnit.SECONDS));
+            assertFalse(created.isDone());
+
+            batches.add(List.of(notification("idA", StackStatus.CREATE_COMPLETE)));
+            assertEquals(StackStatus.CREATE_COMPLETE, created.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private StackNotification notification(String stackId, StackStatus status) {
+        return new StackNotification("name" + stackId, status, stackId, STACK_RESOURCE_TYPE, "reason");
+    }
+}
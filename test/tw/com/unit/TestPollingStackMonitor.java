@@ -18,6 +18,7 @@ import tw.com.repository.CloudFormRepository;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -195,12 +196,12 @@ public class TestPollingStackMonitor extends EasyMockSupport implements SetsDelt
 		pending.add(2, new StackNameAndId("stackB", "id2"));
 		pending.add(1, new StackNameAndId("stackA", "id1"));
 		
-		EasyMock.expect(cfnRepository.waitForStatusToChangeFrom("stackC", StackStatus.DELETE_IN_PROGRESS, aborts))
-			.andReturn(targetStatus);
-		EasyMock.expect(cfnRepository.waitForStatusToChangeFrom("stackB", StackStatus.DELETE_IN_PROGRESS, aborts))
-		.andReturn(targetStatus);
-		EasyMock.expect(cfnRepository.waitForStatusToChangeFrom("stackA", StackStatus.DELETE_IN_PROGRESS, aborts))
-		.andReturn(targetStatus);
+		EasyMock.expect(cfnRepository.watchForStatusToChangeFrom("stackC", StackStatus.DELETE_IN_PROGRESS, aborts))
+			.andReturn(CompletableFuture.completedFuture(targetStatus));
+		EasyMock.expect(cfnRepository.watchForStatusToChangeFrom("stackB", StackStatus.DELETE_IN_PROGRESS, aborts))
+			.andReturn(CompletableFuture.completedFuture(targetStatus));
+		EasyMock.expect(cfnRepository.watchForStatusToChangeFrom("stackA", StackStatus.DELETE_IN_PROGRESS, aborts))
+			.andReturn(CompletableFuture.completedFuture(targetStatus));
 		
 		replayAll();
 		monitor.waitForDeleteFinished(pending, this);
@@ -218,10 +219,12 @@ public class TestPollingStackMonitor extends EasyMockSupport implements SetsDelt
 		pending.add(2, new StackNameAndId("stackB", "id2"));
 		pending.add(1, new StackNameAndId("stackA", "id1"));
 		
-		EasyMock.expect(cfnRepository.waitForStatusToChangeFrom("stackC", StackStatus.DELETE_IN_PROGRESS, aborts))
-			.andReturn(targetStatus);
-		EasyMock.expect(cfnRepository.waitForStatusToChangeFrom("stackB", StackStatus.DELETE_IN_PROGRESS, aborts))
-			.andReturn(StackStatus.DELETE_FAILED);
+		EasyMock.expect(cfnRepository.watchForStatusToChangeFrom("stackC", StackStatus.DELETE_IN_PROGRESS, aborts))
+			.andReturn(CompletableFuture.completedFuture(targetStatus));
+		EasyMock.expect(cfnRepository.watchForStatusToChangeFrom("stackB", StackStatus.DELETE_IN_PROGRESS, aborts))
+			.andReturn(CompletableFuture.completedFuture(StackStatus.DELETE_FAILED));
+		EasyMock.expect(cfnRepository.watchForStatusToChangeFrom("stackA", StackStatus.DELETE_IN_PROGRESS, aborts))
+			.andReturn(new CompletableFuture<>());
 		List<StackEvent> events = new LinkedList<>();
 		EasyMock.expect(cfnRepository.getStackEvents("stackB")).andReturn(events);
 	
@@ -0,0 +1,29 @@
+package tw.com.unit;
+
+import org.junit.jupiter.api.Test;
+import tw.com.providers.RateLimiter;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRateLimiter {
+
+    @Test
+    public void shouldAllowBurstThenLimitRate() {
+        RateLimiter limiter = new RateLimiter(20, 5);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+        }
+        long burstMillis = (System.nanoTime() - start) / 1_000_000;
+
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+        long totalMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(burstMillis < 100, "burst took " + burstMillis);
+        // 4 more permits at 20 a second is at least 200ms
+        assertTrue(totalMillis >= 190, "took " + totalMillis);
+    }
+}
@@ -0,0 +1,156 @@
+package tw.com.unit;
+
+import org.apache.commons.cli.MissingArgumentException;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.*;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.entity.StackNotification;
+import tw.com.exceptions.FailedToCreateQueueException;
+import tw.com.exceptions.NotReadyException;
+import tw.com.providers.SNSEventSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSNSEventSource extends EasyMockSupport {
+    private static final String TOPIC_ARN = "topicArn";
+    private static final String RUN_QUEUE_URL = "https://sqs/runQueue";
+    private static final String RUN_QUEUE_ARN = "arn:aws:sqs:eu-west-1:123:runQueue";
+
+    private SnsClient snsClient;
+    private SqsClient sqsClient;
+    private SNSEventSource eventSource;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        snsClient = createMock(SnsClient.class);
+        sqsClient = createMock(SqsClient.class);
+        eventSource = new SNSEventSource(snsClient, sqsClient, true);
+    }
+
+    @Test
+    public void shouldCreateQueueForRunAndRemoveItAfter() throws MissingArgumentException, FailedToCreateQueueException,
+            InterruptedException, NotReadyException {
+        expectTopic();
+        expectListQueues(); // no orphans
+        Capture<CreateQueueRequest> created = expectRunQueueCreated();
+
+        EasyMock.expect(snsClient.unsubscribe(UnsubscribeRequest.builder().subscriptionArn("runSubscription").build())).
+                andReturn(UnsubscribeResponse.builder().build());
+        EasyMock.expect(sqsClient.deleteQueue(DeleteQueueRequest.builder().queueUrl(RUN_QUEUE_URL).build())).
+                andReturn(DeleteQueueResponse.builder().build());
+
+        replayAll();
+        eventSource.init();
+        assertEquals(RUN_QUEUE_URL, eventSource.getQueueURL());
+        assertTrue(created.getValue().queueName().startsWith(SNSEventSource.RUN_QUEUE_PREFIX));
+        assertTrue(created.getValue().tags().containsKey(SNSEventSource.HEARTBEAT_TAG));
+
+        eventSource.deleteRunQueue();
+        eventSource.deleteRunQueue(); // only once
+        assertFalse(eventSource.isInit());
+        verifyAll();
+    }
+
+    @Test
+    public void shouldRemoveQueuesLeftByRunsThatDied() throws MissingArgumentException, FailedToCreateQueueException,
+            InterruptedException {
+        long orphaned = System.currentTimeMillis() - SNSEventSource.ORPHANED_AFTER.toMillis() - 1000;
+        expectTopic();
+        expectListQueues("https://sqs/orphaned", "https://sqs/inUse", "https://sqs/alreadyGone");
+        expectHeartbeat("https://sqs/orphaned", orphaned);
+        expectHeartbeat("https://sqs/inUse", System.currentTimeMillis());
+        EasyMock.expect(sqsClient.listQueueTags(ListQueueTagsRequest.builder().queueUrl("https://sqs/alreadyGone").build())).
+                andThrow(QueueDoesNotExistException.builder().build());
+
+        EasyMock.expect(sqsClient.getQueueAttributes(GetQueueAttributesRequest.builder().queueUrl("https://sqs/orphaned").
+                attributeNames(QueueAttributeName.QUEUE_ARN).build())).
+                andReturn(GetQueueAttributesResponse.builder().attributes(Map.of(QueueAttributeName.QUEUE_ARN, "orphanedArn")).build());
+        EasyMock.expect(snsClient.listSubscriptionsByTopic(ListSubscriptionsByTopicRequest.builder().topicArn(TOPIC_ARN).build())).
+                andReturn(ListSubscriptionsByTopicResponse.builder().subscriptions(
+                        subscription("inUseSubscription", "inUseArn"),
+                        subscription("orphanedSubscription", "orphanedArn")).build());
+        EasyMock.expect(snsClient.unsubscribe(UnsubscribeRequest.builder().subscriptionArn("orphanedSubscription").build())).
+                andReturn(UnsubscribeResponse.builder().build());
+        EasyMock.expect(sqsClient.deleteQueue(DeleteQueueRequest.builder().queueUrl("https://sqs/orphaned").build())).
+                andReturn(DeleteQueueResponse.builder().build());
+
+        expectRunQueueCreated();
+
+        replayAll();
+        eventSource.init();
+        verifyAll();
+    }
+
+    @Test
+    public void shouldDeleteReceivedMessagesInOneBatch() throws MissingArgumentException, FailedToCreateQueueException,
+            InterruptedException, NotReadyException {
+        expectTopic();
+        expectListQueues();
+        expectRunQueueCreated();
+
+        String body = "{\"Type\":\"Notification\",\"Signature\":{\"ignored\":[1,2]},\"Message\":" +
+                "\"StackName='stack'\\nStackId='stackId'\\nResourceStatus='CREATE_COMPLETE'\\n\"}";
+        EasyMock.expect(sqsClient.receiveMessage(EasyMock.anyObject(ReceiveMessageRequest.class))).
+                andReturn(ReceiveMessageResponse.builder().messages(
+                        Message.builder().messageId("idA").receiptHandle("handleA").body(body).build(),
+                        Message.builder().messageId("idB").receiptHandle("handleB").body("not json").build()).build());
+        DeleteMessageBatchRequest batch = DeleteMessageBatchRequest.builder().queueUrl(RUN_QUEUE_URL).entries(
+                DeleteMessageBatchRequestEntry.builder().id("0").receiptHandle("handleA").build(),
+                DeleteMessageBatchRequestEntry.builder().id("1").receiptHandle("handleB").build()).build();
+        EasyMock.expect(sqsClient.deleteMessageBatch(batch)).andReturn(DeleteMessageBatchResponse.builder().
+                failed(BatchResultErrorEntry.builder().id("1").code("ReceiptHandleIsInvalid").build()).build());
+
+        replayAll();
+        eventSource.init();
+        List<StackNotification> notifications = eventSource.receiveNotifications();
+        verifyAll();
+
+        assertEquals(1, notifications.size());
+        assertEquals("stackId", notifications.getFirst().getStackId());
+        assertEquals(StackStatus.CREATE_COMPLETE, notifications.getFirst().getStatus());
+    }
+
+    private void expectTopic() {
+        EasyMock.expect(snsClient.createTopic(CreateTopicRequest.builder().name(SNSEventSource.SNS_TOPIC_NAME).build())).
+                andReturn(CreateTopicResponse.builder().topicArn(TOPIC_ARN).build());
+    }
+
+    private void expectListQueues(String... urls) {
+        EasyMock.expect(sqsClient.listQueues(ListQueuesRequest.builder().queueNamePrefix(SNSEventSource.RUN_QUEUE_PREFIX).build())).
+                andReturn(ListQueuesResponse.builder().queueUrls(urls).build());
+    }
+
+    private void expectHeartbeat(String url, long heartbeat) {
+        EasyMock.expect(sqsClient.listQueueTags(ListQueueTagsRequest.builder().queueUrl(url).build())).
+                andReturn(ListQueueTagsResponse.builder().tags(Map.of(SNSEventSource.HEARTBEAT_TAG, Long.toString(heartbeat))).build());
+    }
+
+    private Capture<CreateQueueRequest> expectRunQueueCreated() {
+        Capture<CreateQueueRequest> created = Capture.newInstance();
+        EasyMock.expect(sqsClient.createQueue(EasyMock.capture(created))).
+                andReturn(CreateQueueResponse.builder().queueUrl(RUN_QUEUE_URL).build());
+        EasyMock.expect(sqsClient.getQueueAttributes(EasyMock.anyObject(GetQueueAttributesRequest.class))).
+                andReturn(GetQueueAttributesResponse.builder().attributes(Map.of(QueueAttributeName.QUEUE_ARN, RUN_QUEUE_ARN,
+                        QueueAttributeName.POLICY, "policy")).build());
+        EasyMock.expect(snsClient.subscribe(SubscribeRequest.builder().topicArn(TOPIC_ARN).protocol(SNSEventSource.SQS_PROTO).
+                endpoint(RUN_QUEUE_ARN).returnSubscriptionArn(true).build())).
+                andReturn(SubscribeResponse.builder().subscriptionArn("runSubscription").build());
+        return created;
+    }
+
+    private Subscription subscription(String subscriptionArn, String queueArn) {
+        return Subscription.builder().subscriptionArn(subscriptionArn).protocol(SNSEventSource.SQS_PROTO).
+                endpoint(queueArn).build();
+    }
+}
@@ -55,5 +55,37 @@ public class TestSNSMessageParsing {
 		assertEquals("arn:aws:cloudformation:eu-west-1:619378453009:stack/CfnAssistTestelb/3f12d2c0-af8b-11e3-a939-5088487db896", notification.getStackId());
 		assertEquals("VPC vpc-38d6XXXX has no internet gateway",notification.getStatusReason());
 	}
-	
+
+	@Test
+	public void testKeepsValuesContainingEqualsAndQuotes() {
+		String text = "StackName='stack'\nStackId='stackId'\nResourceStatus='UPDATE_FAILED'\n" +
+				"ResourceStatusReason='Parameter 'Size=10' is not valid'\nResourceType='AWS::EC2::Volume'\n";
+
+		StackNotification notification = StackNotification.parseNotificationMessage(text);
+
+		assertEquals(StackStatus.UPDATE_FAILED, notification.getStatus());
+		assertEquals("Parameter 'Size=10' is not valid", notification.getStatusReason());
+		assertEquals("AWS::EC2::Volume", notification.getResourceType());
+	}
+
+	@Test
+	public void testIgnoresKeysInsideMultiLineValues() {
+		String text = "StackName='stack'\nResourceProperties='{\"UserData\":\"line\nStackName=other\"}\n'\n" +
+				"ResourceStatus='CREATE_COMPLETE'\nStackId='stackId'";
+
+		StackNotification notification = StackNotification.parseNotificationMessage(text);
+
+		assertEquals("stack", notification.getStackName());
+		assertEquals(StackStatus.CREATE_COMPLETE, notification.getStatus());
+		assertEquals("stackId", notification.getStackId());
+	}
+
+	@Test
+	public void testCopesWithUnterminatedValues() {
+		StackNotification notification = StackNotification.parseNotificationMessage("StackName='\nStackId='stackId");
+
+		assertEquals("", notification.getStackName());
+		assertEquals("stackId", notification.getStackId());
+	}
+
 }
@@ -132,13 +132,14 @@ public class TestSNSStackMonitor extends EasyMockSupport implements CheckStackEx
 	private void setExpectationsRepondInProgressUntilLimit(StackStatus inProgress) throws NotReadyException {
 		List<StackNotification> theEvents = new LinkedList<>();
 		addMatchingEvent(theEvents, inProgress, stackName, stackId);
-		for(int count=0; count<=LIMIT; count++) {
-			EasyMock.expect(eventSource.receiveNotifications()).andReturn(theEvents);
+		EasyMock.expect(eventSource.receiveNotifications()).andReturn(theEvents);
+		for(int count=0; count<LIMIT; count++) {
+			EasyMock.expect(eventSource.receiveNotifications()).andReturn(new LinkedList<>());
 		}
 	}
 	
 	@Test
-	public void shouldThrowIfNotifIsNotInit() throws WrongStackStatus {
+	public void shouldThrowIfNotifIsNotInit() throws WrongStackStatus, InterruptedException {
 		isStackFound= true;
 		EasyMock.expect(eventSource.isInit()).andReturn(false);
 		
@@ -5,18 +5,28 @@ import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.apache.commons.io.IOUtils;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
 import tw.com.EnvironmentSetupForTests;
+import tw.com.entity.OutputLogEventDecorator;
+import tw.com.providers.LogFileOptions;
 import tw.com.providers.SavesFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
+import java.time.Duration;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -55,6 +65,67 @@ public class TestSavesFile {
         assertEquals("someText", result);
     }
 
+    @Test
+    public void shouldSaveLogEventsWithTimestamps() throws IOException {
+        List<Path> paths = savesFile.saveLogs(filename, Stream.of(event(1000L, "first"), event(86_401_001L, "second")));
+
+        assertEquals(List.of(filename), paths);
+        List<String> lines = FileUtils.readLines(testFile, StandardCharsets.UTF_8);
+        assertEquals(List.of("1970-01-01T00:00:01.000Z streamA first", "1970-01-02T00:00:01.001Z streamA second"), lines);
+    }
+
+    @Test
+    public void shouldCompressAndRotateLogEvents() throws IOException {
+        savesFile = new SavesFile(LogFileOptions.parse(true, "1h"));
+        Path base = Paths.get("testFile.log");
+        long hour = 60 * 60 * 1000;
+
+        List<Path> paths = savesFile.saveLogs(base, Stream.of(event(0L, "a"), event(hour - 1, "b"), event(hour, "c"),
+                event(2 * hour + 5, "d")));
+
+        try {
+            assertEquals(List.of(Paths.get("testFile.log.gz"), Paths.get("testFile.1.log.gz"), Paths.get("testFile.2.log.gz")), paths);
+            assertEquals(2, gunzipLines(paths.get(0)).size());
+            assertEquals(List.of("1970-01-01T01:00:00.000Z streamA c"), gunzipLines(paths.get(1)));
+        }
+        finally {
+            paths.forEach(path -> FileUtils.deleteQuietly(path.toFile()));
+        }
+    }
+
+    @Test
+    public void shouldCarryOnFromLastRotatedFile() throws IOException {
+        savesFile = new SavesFile(new LogFileOptions(false, 50, Duration.ZERO));
+        Path base = Paths.get("testFile.log");
+        Path first = Paths.get("testFile.1.log");
+        Path second = Paths.get("testFile.2.log");
+
+        try {
+            // each line is 35 bytes
+            assertEquals(List.of(base), savesFile.saveLogs(base, Stream.of(event(1000L, "a"), event(2000L, "b"))));
+            assertEquals(List.of(first), savesFile.saveLogs(base, Stream.of(event(3000L, "c"))));
+            assertEquals(List.of(first), savesFile.saveLogs(base, Stream.of(event(4000L, "d"))));
+            assertEquals(List.of(second), savesFile.saveLogs(base, Stream.of(event(5000L, "e"))));
+
+            assertEquals(2, Files.readAllLines(base).size());
+            assertEquals(List.of("1970-01-01T00:00:03.000Z streamA c", "1970-01-01T00:00:04.000Z streamA d"),
+                    Files.readAllLines(first));
+        }
+        finally {
+            List.of(base, first, second).forEach(path -> FileUtils.deleteQuietly(path.toFile()));
+        }
+    }
+
+    @Test
+    public void shouldParseLogRotation() {
+        assertEquals(100L * 1024 * 1024, LogFileOptions.parse(false, "100MB").getMaxBytes());
+        assertEquals(Duration.ofMinutes(30), LogFileOptions.parse(false, "30m").getMaxSpan());
+        assertFalse(LogFileOptions.parse(false, "").rotatesBySize());
+        assertThrows(IllegalArgumentException.class, () -> LogFileOptions.parse(false, "10 days"));
+        assertEquals(2L * 1024 * 1024 * 1024, LogFileOptions.parseBytes("2gb"));
+        assertThrows(IllegalArgumentException.class, () -> LogFileOptions.parseBytes("lotsMB"));
+    }
+
     @Test
     public void shouldChangePermissions() throws IOException {
         savesFile.save(filename, "someText");
@@ -65,5 +136,14 @@ public class TestSavesFile {
         EnvironmentSetupForTests.checkKeyPairFilePermissions(permissions);
     }
 
+    private OutputLogEventDecorator event(long timestamp, String message) {
+        return new OutputLogEventDecorator(OutputLogEvent.builder().timestamp(timestamp).message(message).build(),
+                "group", "streamA");
+    }
 
+    private List<String> gunzipLines(Path path) throws IOException {
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(path))) {
+            return IOUtils.readLines(input, StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -1,18 +1,31 @@
 package tw.com.unit;
 
 
+import org.apache.commons.io.FileUtils;
 import org.easymock.EasyMock;
 import org.easymock.EasyMockSupport;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackResource;
 import tw.com.EnvironmentSetupForTests;
 import tw.com.StackCache;
+import tw.com.entity.EnvironmentTag;
+import tw.com.entity.LogicalIdIndex;
 import tw.com.entity.StackEntry;
+import tw.com.entity.StackNameAndId;
+import tw.com.exceptions.WrongNumberOfStacksException;
 import tw.com.providers.CFNClient;
+import tw.com.providers.StackSnapshotStore;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import static tw.com.EnvironmentSetupForTests.createCfnStackTAG;
@@ -30,7 +43,7 @@ public class TestStackCache extends EasyMockSupport {
                 createCfnStackTAG("CFN_ASSIST_BUILD_NUMBER", "42"),
                 createCfnStackTAG("CFN_ASSIST_DELTA", "8"),
                 createCfnStackTAG("CFN_ASSIST_UPDATE", "9,10,11")).build());
-        EasyMock.expect(formationClient.describeAllStacks()).andReturn(stacks);
+        EnvironmentSetupForTests.expectAllStacks(formationClient, stacks);
 
         StackCache stackCache = new StackCache(formationClient, EnvironmentSetupForTests.PROJECT);
 
@@ -52,5 +65,100 @@ public class TestStackCache extends EasyMockSupport {
 
     }
 
+    @Test
+    public void shouldFilterEntriesForProjectAcrossPages() {
+
+        CFNClient formationClient = createMock(CFNClient.class);
+        List<Stack> pageA = new LinkedList<>();
+        pageA.add(Stack.builder().stackName("stackA").tags(
+                createCfnStackTAG("CFN_ASSIST_PROJECT",EnvironmentSetupForTests.PROJECT),
+                createCfnStackTAG("CFN_ASSIST_ENV", EnvironmentSetupForTests.ENV)).build());
+        pageA.add(Stack.builder().stackName("otherProject").tags(
+                createCfnStackTAG("CFN_ASSIST_PROJECT","other"),
+                createCfnStackTAG("CFN_ASSIST_ENV", EnvironmentSetupForTests.ENV)).build());
+        List<Stack> pageB = new LinkedList<>();
+        pageB.add(Stack.builder().stackName("stackB").tags(
+                createCfnStackTAG("CFN_ASSIST_PROJECT",EnvironmentSetupForTests.PROJECT),
+                createCfnStackTAG("CFN_ASSIST_ENV", EnvironmentSetupForTests.ENV)).build());
+        pageB.add(Stack.builder().stackName("noTags").build());
+        EnvironmentSetupForTests.expectAllStacks(formationClient, pageA, pageB);
+
+        StackCache stackCache = new StackCache(formationClient, EnvironmentSetupForTests.PROJECT);
+
+        replayAll();
+        List<StackEntry> result = stackCache.getEntries();
+        result = stackCache.getEntries(); // cached
+        verifyAll();
+
+        Assertions.assertEquals(2, result.size());
+        Assertions.assertEquals("stackA", result.get(0).getStackName());
+        Assertions.assertEquals("stackB", result.get(1).getStackName());
+    }
+
+    @Test
+    public void shouldUseSnapshotInsteadOfDescribingAllStacks() {
+        Path baseDir = Paths.get("testStackCacheSnapshot");
+        FileUtils.deleteQuietly(baseDir.toFile());
+        ZonedDateTime now = ZonedDateTime.now(ZoneId.of("UTC"));
+        StackSnapshotStore store = new StackSnapshotStore(baseDir, "account", "region", EnvironmentSetupForTests.PROJECT,
+                Duration.ofMinutes(5), () -> now);
+
+        CFNClient formationClient = createMock(CFNClient.class);
+        List<Stack> stacks = new LinkedList<>();
+        stacks.add(Stack.builder().stackName("stackA").tags(
+                createCfnStackTAG("CFN_ASSIST_PROJECT",EnvironmentSetupForTests.PROJECT),
+                createCfnStackTAG("CFN_ASSIST_ENV", EnvironmentSetupForTests.ENV)).build());
+        EnvironmentSetupForTests.expectAllStacks(formationClient, stacks);
+
+        replayAll();
+        try {
+            List<StackEntry> first = new StackCache(formationClient, EnvironmentSetupForTests.PROJECT, Optional.of(store)).getEntries();
+            // second cache, as per a new invocation, should not call describe again
+            List<StackEntry> second = new StackCache(formationClient, EnvironmentSetupForTests.PROJECT, Optional.of(store)).getEntries();
+            verifyAll();
+
+            Assertions.assertEquals(1, first.size());
+            Assertions.assertEquals(first, second);
+        }
+        finally {
+            FileUtils.deleteQuietly(baseDir.toFile());
+        }
+    }
+
+    @Test
+    public void shouldIndexLogicalIdsAcrossStacksAndUpdateWhenStackChanges() throws WrongNumberOfStacksException {
+        CFNClient formationClient = createMock(CFNClient.class);
+        Stack stackA = Stack.builder().stackName("stackA").tags(
+                createCfnStackTAG("CFN_ASSIST_PROJECT",EnvironmentSetupForTests.PROJECT),
+                createCfnStackTAG("CFN_ASSIST_ENV", EnvironmentSetupForTests.ENV)).build();
+        Stack stackB = Stack.builder().stackName("stackB").tags(
+                createCfnStackTAG("CFN_ASSIST_PROJECT",EnvironmentSetupForTests.PROJECT),
+                createCfnStackTAG("CFN_ASSIST_ENV", EnvironmentSetupForTests.ENV)).build();
+        EnvironmentSetupForTests.expectAllStacks(formationClient, List.of(stackA, stackB));
+        EasyMock.expect(formationClient.describeStackResources("stackA")).andReturn(List.of(
+                StackResource.builder().logicalResourceId("subnet").physicalResourceId("subnetA").build()));
+        EasyMock.expect(formationClient.describeStackResources("stackB")).andReturn(List.of(
+                StackResource.builder().logicalResourceId("subnet").physicalResourceId("subnetB").build(),
+                StackResource.builder().logicalResourceId("acl").physicalResourceId("aclB").build()));
+        // stackB is updated, only its resources are loaded again
+        EasyMock.expect(formationClient.describeStack("stackB")).andReturn(stackB);
+        EasyMock.expect(formationClient.describeStackResources("stackB")).andReturn(List.of(
+                StackResource.builder().logicalResourceId("acl").physicalResourceId("aclB2").build()));
+
+        StackCache stackCache = new StackCache(formationClient, EnvironmentSetupForTests.PROJECT);
+        EnvironmentTag envTag = new EnvironmentTag(EnvironmentSetupForTests.ENV);
+
+        replayAll();
+        Assertions.assertEquals(2, stackCache.findByLogicalId(envTag, "subnet").size());
+        Assertions.assertEquals("aclB", stackCache.findByLogicalId(envTag, "acl").get(0).getPhysicalId());
+        Assertions.assertTrue(stackCache.findByLogicalId(new EnvironmentTag("other"), "acl").isEmpty());
+
+        stackCache.updateRepositoryFor(new StackNameAndId("stackB", "idB"));
+        List<LogicalIdIndex.Location> subnets = stackCache.findByLogicalId(envTag, "subnet");
+        Assertions.assertEquals(1, subnets.size());
+        Assertions.assertEquals("stackA", subnets.get(0).getStackName());
+        Assertions.assertEquals("aclB2", stackCache.findByLogicalId(envTag, "acl").get(0).getPhysicalId());
+        verifyAll();
+    }
 
 }
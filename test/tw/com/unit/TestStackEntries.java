@@ -0,0 +1,76 @@
+package tw.com.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.entity.EnvironmentTag;
+import tw.com.entity.StackEntries;
+import tw.com.entity.StackEntry;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStackEntries {
+    private final EnvironmentTag dev = new EnvironmentTag("Dev");
+    private final EnvironmentTag test = new EnvironmentTag("Test");
+    private StackEntries entries;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        entries = new StackEntries();
+    }
+
+    @Test
+    public void shouldIndexEntries() {
+        StackEntry subnet = entry("subnet", dev, StackStatus.CREATE_COMPLETE).setIndex(1).setUpdateIndex(Set.of(3, 4));
+        StackEntry acl = entry("acl", dev, StackStatus.CREATE_COMPLETE).setIndex(2);
+        StackEntry instance = entry("instance", test, StackStatus.CREATE_COMPLETE).setBuildNumber(42);
+
+        entries.put(subnet);
+        entries.put(acl);
+        entries.put(instance);
+
+        assertEquals(List.of(subnet, acl, instance), entries.all());
+        assertEquals(acl, entries.named("acl").orElseThrow());
+        assertTrue(entries.named("missing").isEmpty());
+        assertEquals(List.of(subnet, acl), entries.forEnv(dev));
+        assertEquals(List.of(acl), entries.forIndex(dev, 2));
+        assertTrue(entries.forIndex(test, 2).isEmpty());
+        assertEquals(List.of(subnet), entries.forUpdateIndex(dev, 4));
+        assertEquals(List.of(instance), entries.forBuildNumber(42));
+    }
+
+    @Test
+    public void shouldReplaceEntryWithSameStackName() {
+        StackEntry inProgress = entry("subnet", dev, StackStatus.CREATE_IN_PROGRESS).setIndex(1);
+        StackEntry complete = entry("subnet", dev, StackStatus.CREATE_COMPLETE).setIndex(1);
+
+        entries.put(inProgress);
+        List<StackEntry> before = entries.all();
+        assertEquals(inProgress, entries.put(complete).orElseThrow());
+
+        assertEquals(1, entries.size());
+        assertEquals(List.of(complete), entries.forIndex(dev, 1));
+        assertEquals(List.of(inProgress), before); // earlier reads are not changed
+    }
+
+    @Test
+    public void shouldRemoveFromAllIndexes() {
+        entries.put(entry("instance", dev, StackStatus.CREATE_COMPLETE).setIndex(1).setBuildNumber(7));
+
+        assertTrue(entries.remove("instance").isPresent());
+
+        assertTrue(entries.isEmpty());
+        assertTrue(entries.forEnv(dev).isEmpty());
+        assertTrue(entries.forIndex(dev, 1).isEmpty());
+        assertTrue(entries.forBuildNumber(7).isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> entries.all().add(null));
+    }
+
+    private StackEntry entry(String name, EnvironmentTag envTag, StackStatus status) {
+        return new StackEntry("project", envTag, Stack.builder().stackName(name).stackStatus(status).build());
+    }
+}
@@ -0,0 +1,94 @@
+package tw.com.unit;
+
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.StackEvent;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.PollingStackMonitor;
+import tw.com.StackEventStreamer;
+import tw.com.StackMonitor;
+import tw.com.entity.StackNameAndId;
+import tw.com.exceptions.WrongStackStatus;
+import tw.com.repository.StackRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStackEventStreamer extends EasyMockSupport {
+    private final StackNameAndId stackA = new StackNameAndId("stackA", "idA");
+    private StackRepository stackRepository;
+    private StackEventStreamer streamer;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        stackRepository = createMock(StackRepository.class);
+        streamer = new StackEventStreamer(stackRepository, Duration.ofMillis(10), 3);
+    }
+
+    @Test
+    public void shouldOnlyAskForNewEventsAndKeepMostRecent() {
+        expectEventsAfter(null, "e1", "e2", "e3");
+        expectEventsAfter("e3", "e4");
+        EasyMock.expect(stackRepository.getStackEventsSince(EasyMock.eq("idA"), EasyMock.eq("e4"),
+                EasyMock.anyObject(Instant.class))).andStubReturn(new LinkedList<>());
+
+        replayAll();
+        List<String> recent;
+        StackEventStreamer.Watch watch = streamer.watch(stackA);
+        try {
+            streamer.recentFor("stackA");
+            recent = streamer.recentFor("stackA").orElseThrow().stream().map(StackEvent::eventId).toList();
+        } finally {
+            watch.close();
+        }
+        verifyAll();
+
+        assertEquals(List.of("e2", "e3", "e4"), recent);
+        assertTrue(streamer.recentFor("stackA").isEmpty()); // no longer followed
+    }
+
+    @Test
+    public void shouldReportFailureFromRecentEventsWhenStreaming() throws Exception {
+        PollingStackMonitor monitor = new PollingStackMonitor(stackRepository);
+        monitor.setEventStreamer(streamer);
+        EasyMock.expect(stackRepository.waitForStatusToChangeFrom("stackA", StackStatus.CREATE_IN_PROGRESS,
+                Arrays.asList(StackMonitor.CREATE_ABORTS))).andReturn(StackStatus.CREATE_FAILED);
+        expectEventsAfter(null, "e1", "e2");
+        EasyMock.expect(stackRepository.getStackEventsSince(EasyMock.eq("idA"), EasyMock.eq("e2"),
+                EasyMock.anyObject(Instant.class))).andStubReturn(new LinkedList<>());
+        // no call to getStackEvents
+
+        replayAll();
+        assertThrows(WrongStackStatus.class, () -> monitor.waitForCreateFinished(stackA));
+        verifyAll();
+    }
+
+    @Test
+    public void shouldNotStreamUnlessAsked() throws Exception {
+        PollingStackMonitor monitor = new PollingStackMonitor(stackRepository);
+        EasyMock.expect(stackRepository.waitForStatusToChangeFrom("stackA", StackStatus.CREATE_IN_PROGRESS,
+                Arrays.asList(StackMonitor.CREATE_ABORTS))).andReturn(StackStatus.CREATE_COMPLETE);
+
+        replayAll();
+        assertEquals(StackStatus.CREATE_COMPLETE, monitor.waitForCreateFinished(stackA));
+        verifyAll();
+    }
+
+    private void expectEventsAfter(String lastSeen, String... eventIds) {
+        List<StackEvent> events = Arrays.stream(eventIds).map(id -> StackEvent.builder().eventId(id).
+                logicalResourceId("resource").resourceType("AWS::EC2::Instance").
+                resourceStatus("CREATE_IN_PROGRESS").build()).toList();
+        // matchers are recorded in argument order
+        String stack = EasyMock.eq("idA");
+        String lastSeenMatcher = lastSeen==null ? EasyMock.isNull() : EasyMock.eq(lastSeen);
+        EasyMock.expect(stackRepository.getStackEventsSince(stack, lastSeenMatcher, EasyMock.anyObject(Instant.class))).
+                andReturn(events);
+    }
+}
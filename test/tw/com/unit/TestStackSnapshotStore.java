@@ -0,0 +1,94 @@
+package tw.com.unit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.Output;
+import software.amazon.awssdk.services.cloudformation.model.Stack;
+import software.amazon.awssdk.services.cloudformation.model.StackResource;
+import software.amazon.awssdk.services.cloudformation.model.StackStatus;
+import tw.com.EnvironmentSetupForTests;
+import tw.com.providers.StackSnapshotStore;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tw.com.EnvironmentSetupForTests.createCfnStackTAG;
+
+public class TestStackSnapshotStore {
+    private final Path baseDir = Paths.get("testSnapshotCache");
+    private ZonedDateTime now;
+    private StackSnapshotStore store;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        FileUtils.deleteQuietly(baseDir.toFile());
+        now = ZonedDateTime.now(ZoneId.of("UTC"));
+        store = new StackSnapshotStore(baseDir, "123456789012", "eu-west-1", EnvironmentSetupForTests.PROJECT,
+                Duration.ofMinutes(10), () -> now);
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() {
+        FileUtils.deleteQuietly(baseDir.toFile());
+    }
+
+    @Test
+    public void shouldRoundTripStacks() {
+        Stack stack = Stack.builder().stackName("stackName").stackId("stackId").
+                stackStatus(StackStatus.CREATE_COMPLETE).
+                tags(createCfnStackTAG("CFN_ASSIST_PROJECT", EnvironmentSetupForTests.PROJECT),
+                        createCfnStackTAG("CFN_ASSIST_DELTA", "8")).
+                outputs(Output.builder().outputKey("key").outputValue("value").description("CFN_TAG_ON_OUTPUT").build()).
+                build();
+
+        assertTrue(store.loadStacks().isEmpty());
+        store.saveStacks(List.of(stack));
+
+        Optional<List<Stack>> result = store.loadStacks();
+        assertTrue(result.isPresent());
+        assertEquals(List.of(stack), result.get());
+    }
+
+    @Test
+    public void shouldRoundTripResources() {
+        StackResource resource = StackResource.builder().stackName("stackName").logicalResourceId("logicalId").
+                physicalResourceId("physicalId").resourceType("AWS::EC2::Instance").build();
+
+        store.saveResources("stackName", List.of(resource));
+
+        Optional<List<StackResource>> result = store.loadResources("stackName");
+        assertTrue(result.isPresent());
+        assertEquals(List.of(resource), result.get());
+        assertTrue(store.loadResources("otherStack").isEmpty());
+    }
+
+    @Test
+    public void shouldExpireAfterTimeToLive() {
+        store.saveStacks(List.of(Stack.builder().stackName("stackName").build()));
+        assertTrue(store.loadStacks().isPresent());
+
+        now = now.plusMinutes(11);
+        assertTrue(store.loadStacks().isEmpty());
+    }
+
+    @Test
+    public void shouldInvalidateStacksAndResourcesForStack() {
+        store.saveStacks(List.of(Stack.builder().stackName("stackName").build()));
+        store.saveResources("stackName", List.of(StackResource.builder().logicalResourceId("a").build()));
+        store.saveResources("otherStack", List.of(StackResource.builder().logicalResourceId("b").build()));
+
+        store.invalidate("stackName");
+
+        assertTrue(store.loadStacks().isEmpty());
+        assertTrue(store.loadResources("stackName").isEmpty());
+        assertTrue(store.loadResources("otherStack").isPresent());
+    }
+}
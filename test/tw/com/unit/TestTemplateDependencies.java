@@ -0,0 +1,79 @@
+package tw.com.unit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.TemplateParameter;
+import tw.com.TemplateDependencies;
+import tw.com.parameters.PopulatesParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTemplateDependencies {
+    private final File folder = new File("testTemplateDependencies");
+
+    private File subnet;
+    private File gateway;
+    private File acl;
+    private File routes;
+    private Map<File, List<TemplateParameter>> declared;
+
+    @BeforeEach
+    public void beforeEachTestRuns() throws IOException {
+        FileUtils.deleteQuietly(folder);
+        subnet = writeTemplate("01subnet.json", "{ \"Resources\" : { \"webSubnet\" : {} } }");
+        gateway = writeTemplate("02gateway.json", "{ \"Resources\" : { \"gateway\" : {} }, " +
+                "\"Outputs\" : { \"gatewayId\" : { \"Description\" : \"::CFN_TAG\" }, \"other\" : { \"Description\" : \"x\" } } }");
+        acl = writeTemplate("03acl.json", "{ \"Resources\" : { \"webAcl\" : {} } }");
+        routes = writeTemplate("04routes.json", "{ \"Resources\" : { \"routes\" : {} } }");
+
+        declared = new HashMap<>();
+        declared.put(subnet, List.of(parameter("env", null)));
+        declared.put(gateway, List.of(parameter("zoneA", PopulatesParameters.CFN_TAG_ZONE + "a")));
+        declared.put(acl, List.of(parameter("subnet", "::webSubnet"), parameter("existing", "::notInFolder")));
+        declared.put(routes, List.of(parameter("gatewayId", PopulatesParameters.CFN_TAG_ON_OUTPUT)));
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Test
+    public void shouldFindDependenciesFromLogicalIdsAndOutputTags() {
+        TemplateDependencies dependencies = new TemplateDependencies(List.of(subnet, gateway, acl, routes), declared);
+
+        assertTrue(dependencies.dependsOn(subnet).isEmpty());
+        assertTrue(dependencies.dependsOn(gateway).isEmpty());
+        assertEquals(Set.of(subnet), dependencies.dependsOn(acl));
+        assertEquals(Set.of(gateway), dependencies.dependsOn(routes));
+    }
+
+    @Test
+    public void shouldTreatUpdatesAsABarrier() throws IOException {
+        File update = writeTemplate("03subnet.update.json", "{ \"Resources\" : { \"webSubnet\" : {} } }");
+        declared.put(update, Collections.emptyList());
+
+        TemplateDependencies dependencies = new TemplateDependencies(List.of(subnet, gateway, update, routes), declared);
+
+        assertEquals(Set.of(subnet, gateway), dependencies.dependsOn(update));
+        assertEquals(Set.of(gateway, update), dependencies.dependsOn(routes));
+    }
+
+    private TemplateParameter parameter(String key, String description) {
+        return TemplateParameter.builder().parameterKey(key).description(description).build();
+    }
+
+    private File writeTemplate(String name, String contents) throws IOException {
+        File file = new File(folder, name);
+        FileUtils.writeStringToFile(file, contents, Charset.defaultCharset());
+        return file;
+    }
+}
@@ -0,0 +1,55 @@
+package tw.com.unit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudformation.model.TemplateParameter;
+import tw.com.providers.TemplateValidationStore;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTemplateValidationStore {
+    private final Path baseDir = Paths.get("testValidationStore");
+    private TemplateValidationStore store;
+
+    @BeforeEach
+    public void beforeEachTestRuns() {
+        FileUtils.deleteQuietly(baseDir.toFile());
+        store = new TemplateValidationStore(baseDir);
+    }
+
+    @AfterEach
+    public void afterEachTestRuns() {
+        FileUtils.deleteQuietly(baseDir.toFile());
+    }
+
+    @Test
+    public void shouldHashTemplateContents() {
+        String hash = TemplateValidationStore.hashOf("{}");
+        assertEquals(64, hash.length());
+        assertEquals(hash, TemplateValidationStore.hashOf("{}"));
+        assertNotEquals(hash, TemplateValidationStore.hashOf("{ }"));
+    }
+
+    @Test
+    public void shouldRoundTripParameters() {
+        List<TemplateParameter> parameters = List.of(
+                TemplateParameter.builder().parameterKey("env").build(),
+                TemplateParameter.builder().parameterKey("subnet").description("::webSubnet").
+                        defaultValue("default").noEcho(false).build());
+        String hash = TemplateValidationStore.hashOf("contents");
+
+        assertTrue(store.load(hash).isEmpty());
+        store.save(hash, parameters);
+
+        Optional<List<TemplateParameter>> result = store.load(hash);
+        assertTrue(result.isPresent());
+        assertEquals(parameters, result.get());
+    }
+}